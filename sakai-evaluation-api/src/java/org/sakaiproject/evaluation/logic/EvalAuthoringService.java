@@ -703,9 +703,13 @@ public interface EvalAuthoringService {
    public boolean isUsedTemplate(Long templateId);
    
    /**
-    * Save the specified template items in the order they appear in the {@link Map}, security is checked against passed user id
+    * Save the display order for the specified template items in a single batch, security is checked against passed user id,
+    * all the template items are loaded at once and only the ones whose display order changed are saved
     * @param orderingMap Item ids and corresponding positions to set
     * @param currentUserId the internal user id (not username)
+    * @throws IllegalArgumentException if any of the template items do not exist or they are not all in the same template
+    * @throws IllegalStateException if the template is locked
+    * @throws SecurityException if the user cannot control the template items
     */
    public void saveTemplateItemOrder(Map<Long, Integer> orderingMap, String currentUserId);
    
@@ -17,6 +17,7 @@ package org.sakaiproject.evaluation.logic;
 import java.util.List;
 
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
+import org.sakaiproject.evaluation.logic.model.EvalResponder;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalResponse;
@@ -136,6 +137,21 @@ public interface EvalDeliveryService {
     */
    public List<EvalResponse> getEvaluationResponses(Long evaluationId, String[] evalGroupIds, Boolean completed);
 
+   /**
+    * Get one page of the responders roster for an evaluation, this is every evaluator in the
+    * evaluation (or eval group) with the state of their response, for anonymous evaluations
+    * only the users who have responded are included (there are no assigned users),
+    * the users and groups for the page are looked up together
+    * 
+    * @param evaluationId the id of an EvalEvaluation object
+    * @param evalGroupId (OPTIONAL) the internal evalGroupId (represents a site or group),
+    * if null then include the roster for all eval groups
+    * @param start the index of the first entry to return
+    * @param limit the maximum number of entries to return, 0 for all entries
+    * @return a list of {@link EvalResponder} entries ordered by eval group and then user id
+    */
+   public List<EvalResponder> getResponders(Long evaluationId, String evalGroupId, int start, int limit);
+
 
    // ANSWERS
 
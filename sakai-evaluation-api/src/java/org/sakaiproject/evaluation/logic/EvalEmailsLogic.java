@@ -159,5 +159,15 @@ public interface EvalEmailsLogic {
      * @return the email address of the user
      */
     public String sendEvalSubmissionConfirmationEmail(String userId, Long evalId);
+
+    /**
+     * Send confirmation to a user that an evaluation has been submitted (might be required by Instructor)
+     * @param userId the UUID of the user to send this email to
+     * @param evalId the id of an EvalEvaluation object
+     * @param registerEvent if false then the email event is not recorded, use this when sending
+     * from a thread which has no session user (the caller should record the event instead)
+     * @return the email address of the user
+     */
+    public String sendEvalSubmissionConfirmationEmail(String userId, Long evalId, boolean registerEvent);
     
 }
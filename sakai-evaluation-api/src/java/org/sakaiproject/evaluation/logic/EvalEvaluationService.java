@@ -103,6 +103,39 @@ public interface EvalEvaluationService {
      * evaluations with a matching term id can be found
      */
     public List<EvalEvaluation> getEvaluationsByTermId(String termId);
+
+    /**
+     * Get the ids of the evaluations with the specified term id without loading the evaluations,
+     * partial evaluations are never included
+     * 
+     * @param termId the term id of one or more {@link EvalEvaluation} objects
+     * @param includeDeleted if true then evaluations which have already been deleted (but kept
+     * because they have responses) are included, otherwise they are skipped
+     * @return a list of {@link EvalEvaluation} ids ordered by id, an empty list if no 
+     * evaluations with a matching term id can be found
+     */
+    public List<Long> getEvaluationIdsByTermId(String termId, boolean includeDeleted);
+
+    /**
+     * Get the ids of the closed (or viewable) evaluations which were due before the given date
+     * and still have answers which have not been archived, oldest first
+     * 
+     * @param closedBefore only include evaluations which were due before this date
+     * @param maxResults the maximum number of ids to return, 0 for no limit
+     * @return a list of {@link EvalEvaluation} ids, empty if there is nothing to archive
+     */
+    public List<Long> getEvaluationIdsToArchive(Date closedBefore, int maxResults);
+
+    /**
+     * Move all the answers of an evaluation into the compressed answer archive,
+     * archived answers are still returned (read only) when the answers for the evaluation are fetched
+     * for reports and exports, the responses are not changed
+     * 
+     * @param evaluationId the id of an {@link EvalEvaluation}
+     * @return the number of answers archived
+     * @throws IllegalStateException if the evaluation is not closed yet
+     */
+    public int archiveAnswers(Long evaluationId);
     
     /**
      * Get a list of evaluations with the specified state.
@@ -165,6 +198,32 @@ public interface EvalEvaluationService {
      */
     public String returnAndFixEvalState(EvalEvaluation evaluation, boolean saveState);
 
+    /**
+     * Determines the current state of an evaluation without changing the evaluation object
+     * or writing anything to storage, this is the method to use when rendering lists of evaluations
+     * since it keeps page views from turning into write transactions<br/>
+     * If the stored state does not match the actual state then the evaluation is queued
+     * so that the stored state can be repaired in the background by {@link #processQueuedStateRepairs()}<br/>
+     * <b>NOTE:</b> like {@link #returnAndFixEvalState(EvalEvaluation, boolean)} this will
+     * return the special states ({@link EvalConstants#EVALUATION_STATE_PARTIAL} or {@link EvalConstants#EVALUATION_STATE_DELETED})
+     * as they are stored
+     *
+     * @param evaluation a persistent {@link EvalEvaluation} object
+     * @return an EVALUATION_STATE constant from
+     * {@link org.sakaiproject.evaluation.constant.EvalConstants}
+     */
+    public String getCurrentEvaluationState(EvalEvaluation evaluation);
+
+    /**
+     * Repairs the stored state of all evaluations which were queued by
+     * {@link #getCurrentEvaluationState(EvalEvaluation)}, the queued evaluations are loaded
+     * in one batch and each one is written at most once no matter how many times it was queued<br/>
+     * This is meant to be called periodically from a background thread
+     *
+     * @return the list of ids of the evaluations which had their stored state updated
+     */
+    public List<Long> processQueuedStateRepairs();
+
 
     // EVAL REMINDER STATUS
 
@@ -639,7 +698,9 @@ public interface EvalEvaluationService {
 
 	/**
      * UM method
-	 * Access a count of the number of evaluations in which the search string appears in the title.
+	 * Access a count of the number of evaluations which match the search string,
+	 * each word in the search string must match the start of a word in the title, term or owner
+	 * (id, username or name) of the evaluation, a blank search string counts all evaluations
 	 * @param searchString
 	 * @return the count
 	 */
@@ -647,7 +708,7 @@ public interface EvalEvaluationService {
 
 	/**
 	 * UM method
-	 * Access a subset of all evaluations in which the search string appears in the title.
+	 * Access a subset of all evaluations which match the search string (see {@link #countEvaluations(String)}).
 	 * Results will be returned in ascending order by the field specified in the order parameter.
 	 * @param searchString
 	 * @param order
@@ -658,12 +719,35 @@ public interface EvalEvaluationService {
 	public List<EvalEvaluation> getEvaluations(String searchString,
 			String order, int startResult, int maxResults);
 
+	/**
+	 * Count the evaluations assigned to groups which match the search string,
+	 * each word in the search string must match the start of a word in the id or title of an assigned group
+	 * @param searchString the text to search for
+	 * @return the count, 0 if the search string is blank
+	 */
+	public int countEvaluationsByGroupTitle(String searchString);
+
+	/**
+	 * Access a subset of the evaluations assigned to groups which match the search string
+	 * (see {@link #countEvaluationsByGroupTitle(String)}),
+	 * results will be returned in ascending order by the field specified in the order parameter
+	 * @param searchString the text to search for
+	 * @param order the evaluation property to sort by (e.g. title)
+	 * @param startResult the result to start with (for paging), 0 means start with the first one
+	 * @param maxResults the total number of results to return, 0 means return all
+	 * @return the list of evals based on the search, empty if the search string is blank
+	 */
+	public List<EvalEvaluation> getEvaluationsByGroupTitle(String searchString,
+			String order, int startResult, int maxResults);
+
 
     /**
      * Access one page of summary info needed to render consolidated email templates. 
      * The summary info consists of a user-id, a user-eid, a template-id (EmailTemplate.ID) and the earliest 
      * due date of Active evals which use the email template and which the referenced user can take.
-     * @param sendingAvailableEmails TODO
+     * @param jobId the job the recipients were staged for by {@link #selectConsoliatedEmailRecipients(String, boolean, Date, boolean, Date, String)}
+     * @param jobPartition only return mappings from this partition of the staged recipients, null for all partitions
+     * @param sendingAvailableEmails true if the users are being sent available emails, false for reminders
      * @param pageSize The maximum number of mappings to return. A mapping consists of a user-id, an email template
      * 		id and a date.
      * @param page The zero-based starting page. In other words, return a page of items beginning at index 
@@ -675,28 +759,31 @@ public interface EvalEvaluationService {
      * 		object for EvalConstants.KEY_EMAIL_TEMPLATE_ID and a Date object forEvalConstants.KEY_EARLIEST_DUE_DATE).  
 
      */
-	public List<Map<String, Object>> getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page);
+	public List<Map<String, Object>> getConsolidatedEmailMapping(String jobId, Integer jobPartition, boolean sendingAvailableEmails, int pageSize, int page);
 
 	/**
-	 * Retrieve the email processing queue by adding one record for each evalAssignUser record 
+	 * Update the email processing queue for a job so that it holds one record for each evalAssignUser record 
 	 * matching the search criteria.  Search criteria are determined based on the values of 
 	 * EvalAssignUser.availableEmailSent, EvalAssignUser.reminderEmailSent and 
-	 * EvalEmailTemplate.emailTemplateType.   
+	 * EvalEmailTemplate.emailTemplateType.
+	 * Only the records which stopped or started matching since the last run of the job are removed or added.
+	 * @param jobId the stable id of the job to stage the records for (e.g. the email template type)
 	 * @param useAvailableEmailSent Should be true if the availableEmailSent date should be used in selecting records.
 	 * @param availableEmailSent The date to use if querying by availableEmailSent.
 	 * @param useReminderEmailSent Should be true if the reminderEmailSent date should be used in selecting records.
 	 * @param reminderEmailSent The date to use if querying by reminderEmailSent.
 	 * @param emailTemplateType The type of template (ConsolidatedAvailable or ConsolidateReminder) to find.
-	 * @return count
+	 * @return the number of records staged for the job
 	 */
-	public int selectConsoliatedEmailRecipients(boolean useAvailableEmailSent,
+	public int selectConsoliatedEmailRecipients(String jobId, boolean useAvailableEmailSent,
 			Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType);
 	
 	/**
 	 * Reports the number of distinct eval groups for which mappings are currently in the email processing queue. 
+	 * @param jobId only count the records staged for this job, null to count all records
 	 * @return count
 	 */
-	public int countDistinctGroupsInConsolidatedEmailMapping();
+	public int countDistinctGroupsInConsolidatedEmailMapping(String jobId);
 	
    /**
     * getInProgressEvaluationOwners returns a set of Owner ID that have a saved
@@ -706,10 +793,11 @@ public interface EvalEvaluationService {
 	public Set<String> getInProgressEvaluationOwners();
 
 	/**
-	 * Remove all records from the the email processing queue and report the number of items removed.
-	 * @return 
+	 * Remove the records staged for a job from the the email processing queue and report the number of items removed.
+	 * @param jobId the job to remove the records for, null to remove all records
+	 * @return the number of records removed
 	 */
-	public int resetConsolidatedEmailRecipients();
+	public int resetConsolidatedEmailRecipients(String jobId);
 
 	/* Method used to get access to the ToolAPI */
     public void setToolApi(ToolApi t);
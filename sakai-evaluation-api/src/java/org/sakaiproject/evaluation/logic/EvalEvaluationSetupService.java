@@ -14,6 +14,7 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.sakaiproject.evaluation.beans.EvalBeanUtils;
@@ -104,6 +105,22 @@ public interface EvalEvaluationSetupService {
      */
     public void deleteEvaluation(Long evaluationId, String userId);
 
+    /**
+     * Delete a batch of evaluations at once (e.g. when purging a term), this works like
+     * {@link #deleteEvaluation(Long, String)} but the assignments, responses and search tokens
+     * for the whole batch are removed with a few bulk deletes instead of being loaded,
+     * keep the batches small since the whole batch is removed in a single transaction
+     * 
+     * @param evaluationIds the ids of {@link EvalEvaluation} objects, ids which do not exist are skipped
+     * @param removeResponses if true then all responses and answers for these evaluations are removed
+     * and the evaluations are removed completely, if false then evaluations with responses are only
+     * marked as deleted (the same as {@link #deleteEvaluation(Long, String)})
+     * @param userId the acting user, normally the current user, internal user id (not username)
+     * @return the number of evaluations which were deleted
+     * @throws SecurityException if the user cannot remove any of the evaluations
+     */
+    public int deleteEvaluations(Long[] evaluationIds, boolean removeResponses, String userId);
+
     /**
      * Get the evaluations that are currently visible to a user, this should be used
      * to determine evaluations that are visible from an administrative perspective,
@@ -260,6 +277,18 @@ public interface EvalEvaluationSetupService {
      */
     public void saveAssignGroup(EvalAssignGroup assignGroup, String userId);
 
+    /**
+     * Update many existing group assignments for one evaluation at once (e.g. the selection settings),
+     * this cannot create group assignments (use {@link #saveAssignGroup(EvalAssignGroup, String)})
+     * and cannot change the group or the evaluation, the assignments are saved together
+     * and the user assignments are synchronized once for the evaluation (if that is enabled)
+     * 
+     * @param evaluationId the id of an {@link EvalEvaluation} object
+     * @param assignGroups the saved group assignments for this evaluation to update
+     * @param userId (OPTIONAL) the acting user, normally the current user, internal user id (not username)
+     */
+    public void saveAssignGroups(Long evaluationId, Collection<EvalAssignGroup> assignGroups, String userId);
+
     /**
      * Remove the evalGroupId assignment, used to make a linkage from
      * an evaluation to an eval group (course, site, group, etc...),
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalSearchToken;
+
+/**
+ * Maintains the local search index for evaluations (title, term, owner and assigned group tokens),
+ * searches match the start of the indexed tokens so they can use the database index
+ * instead of scanning every evaluation title<br/>
+ * The index is updated when evaluations and assignments are saved or removed,
+ * evaluations which are missing from the index (e.g. created before the index existed) are
+ * added by a background task
+ */
+public interface EvalSearchIndex {
+
+    /**
+     * Add or update the tokens for an evaluation (id, title, term and owner),
+     * the group tokens are not changed
+     * 
+     * @param evaluation a saved {@link EvalEvaluation}
+     */
+    public void indexEvaluation(EvalEvaluation evaluation);
+
+    /**
+     * Add the tokens for groups which were assigned to an evaluation,
+     * tokens which are already indexed for the evaluation are skipped
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     * @param evalGroupIds the unique ids of the assigned eval groups
+     */
+    public void addEvaluationGroups(Long evaluationId, Collection<String> evalGroupIds);
+
+    /**
+     * Rebuild the group tokens for an evaluation from its current group assignments,
+     * use this after groups are unassigned
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     */
+    public void reindexEvaluationGroups(Long evaluationId);
+
+    /**
+     * Remove all the tokens for an evaluation, use this when the evaluation is removed
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     */
+    public void removeEvaluation(Long evaluationId);
+
+    /**
+     * Remove all the tokens for a set of evaluations at once
+     * 
+     * @param evaluationIds the unique ids of {@link EvalEvaluation}s
+     */
+    public void removeEvaluations(Long[] evaluationIds);
+
+    /**
+     * Add the evaluations which are not in the index yet
+     * 
+     * @param maxEvaluations the maximum number of evaluations to add
+     * @return the number of evaluations which were added to the index
+     */
+    public int indexMissingEvaluations(int maxEvaluations);
+
+    /**
+     * Count the evaluations which match the search text
+     * 
+     * @param searchText the text to search for, each word must match the start of a token
+     * @param sources [OPTIONAL] only match tokens from these sources (e.g. {@link EvalSearchToken#SOURCE_GROUP}), null for all
+     * @return the number of matching evaluations, 0 if the search text has no words
+     */
+    public int countEvaluations(String searchText, String[] sources);
+
+    /**
+     * Get the evaluations which match the search text
+     * 
+     * @param searchText the text to search for, each word must match the start of a token
+     * @param sources [OPTIONAL] only match tokens from these sources (e.g. {@link EvalSearchToken#SOURCE_GROUP}), null for all
+     * @param order [OPTIONAL] the evaluation property to sort by, null to sort by title
+     * @param startResult the result to start with (for paging), 0 means start with the first one
+     * @param maxResults the total number of results to return, 0 means return all
+     * @return the list of matching evaluations, empty if the search text has no words
+     */
+    public List<EvalEvaluation> getEvaluations(String searchText, String[] sources, String order, int startResult, int maxResults);
+
+}
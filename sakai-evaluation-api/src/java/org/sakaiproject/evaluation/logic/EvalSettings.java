@@ -640,4 +640,13 @@ public interface EvalSettings {
      */
     public void resetCache(String settingConstant);
 
+    /**
+     * Reload all the settings only if they were changed by another server since they were loaded
+     * (the settings version in the database is not the one loaded here),
+     * changes made through {@link #set(String, Object)} on this server are already loaded and do not cause a reload
+     * 
+     * @return true if the settings were reloaded
+     */
+    public boolean reloadIfChanged();
+
 }
@@ -14,6 +14,8 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import org.sakaiproject.evaluation.model.EvalEvaluation;
@@ -59,6 +61,20 @@ public interface ReportingPermissions {
     */
    public Set<String> getResultsViewableEvalGroupIdsForCurrentUser(EvalEvaluation evaluation);
 
+   /**
+    * Batch version of {@link #getResultsViewableEvalGroupIdsForCurrentUser(EvalEvaluation)} for a
+    * specific user, this works out the viewable groups for all the evaluations with a fixed number of
+    * queries (no matter how many evaluations there are) so it should be used when checking lists of evaluations<br/>
+    * The results are cached for each user and evaluation until the evaluation (dates, state, sharing),
+    * its assigned groups or the user assignments change
+    * 
+    * @param evaluations the {@link EvalEvaluation}s to check (must have been saved)
+    * @param userId the internal user id (not username)
+    * @return a map of evaluationId -> the set of evalGroupIds the user can choose from for viewing responses,
+    * every input evaluation has an entry, the set is empty if the user cannot view the responses from any groups
+    */
+   public Map<Long, Set<String>> getResultsViewableEvalGroupIdsForUser(Collection<EvalEvaluation> evaluations, String userId);
+
    /**
     * Decide whether the current user can view the responses for an evaluation
     * and set of groups that participated in it.
@@ -20,6 +20,7 @@ import java.util.Set;
 
 import org.sakaiproject.coursemanagement.api.Section;
 import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyTree;
 import org.sakaiproject.evaluation.providers.EvalHierarchyProvider;
 
 
@@ -118,4 +119,14 @@ public interface ExternalHierarchyLogic extends EvalHierarchyProvider, ExternalH
     */
    public List<EvalHierarchyNode> getSortedNodes(Collection<EvalHierarchyNode> nodes);
 
+   /**
+    * Get a snapshot of the entire hierarchy (all nodes, their assigned eval groups,
+    * rule counts and user permission counts) which can be traversed in memory,
+    * this is loaded using a small fixed number of lookups and is cached until the hierarchy
+    * is changed, use this instead of looking up each node separately when rendering the tree
+    * 
+    * @return an immutable {@link EvalHierarchyTree} for the current hierarchy
+    */
+   public EvalHierarchyTree getHierarchyTree();
+
 }
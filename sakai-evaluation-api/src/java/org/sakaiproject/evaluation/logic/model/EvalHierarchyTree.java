@@ -0,0 +1,196 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.model;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This is an immutable snapshot of the whole hierarchy (nodes, children, assigned eval groups,
+ * rule counts and user permission counts) which can be traversed in memory,
+ * the nodes in the snapshot are copies and changing them has no effect<br/>
+ * The version is used to tell if the hierarchy has changed since the snapshot was made
+ */
+public class EvalHierarchyTree {
+
+    private final long version;
+    private final long createdTime;
+    private final String rootNodeId;
+    private final Map<String, EvalHierarchyNode> nodes;
+    private final Map<String, Set<String>> nodeEvalGroups;
+    private final Map<String, Integer> nodeRuleCounts;
+    private final Map<String, Integer> nodeUserCounts;
+
+    /**
+     * @param version the version of the hierarchy this snapshot was made from
+     * @param rootNode the root node of the hierarchy
+     * @param nodes all the nodes in the hierarchy (can include the root node)
+     * @param nodeEvalGroups map of nodeId -> the eval group ids assigned to that node
+     * @param nodeRuleCounts map of nodeId -> the number of hierarchy rules on that node
+     * @param nodeUserCounts map of nodeId -> the number of users with permissions on that node
+     */
+    public EvalHierarchyTree(long version, EvalHierarchyNode rootNode, Collection<EvalHierarchyNode> nodes,
+            Map<String, Set<String>> nodeEvalGroups, Map<String, Integer> nodeRuleCounts, Map<String, Integer> nodeUserCounts) {
+        if (rootNode == null || rootNode.id == null) {
+            throw new IllegalArgumentException("rootNode must be set and must have an id");
+        }
+        this.version = version;
+        this.createdTime = System.currentTimeMillis();
+        this.rootNodeId = rootNode.id;
+
+        Map<String, EvalHierarchyNode> nodeMap = new HashMap<>();
+        nodeMap.put(rootNode.id, copyNode(rootNode));
+        if (nodes != null) {
+            for (EvalHierarchyNode node : nodes) {
+                if (node != null && node.id != null) {
+                    nodeMap.put(node.id, copyNode(node));
+                }
+            }
+        }
+        this.nodes = Collections.unmodifiableMap(nodeMap);
+
+        Map<String, Set<String>> groupsMap = new HashMap<>();
+        if (nodeEvalGroups != null) {
+            for (Map.Entry<String, Set<String>> entry : nodeEvalGroups.entrySet()) {
+                groupsMap.put(entry.getKey(), copySet(entry.getValue()));
+            }
+        }
+        this.nodeEvalGroups = Collections.unmodifiableMap(groupsMap);
+        this.nodeRuleCounts = nodeRuleCounts == null ? Collections.<String, Integer>emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(nodeRuleCounts));
+        this.nodeUserCounts = nodeUserCounts == null ? Collections.<String, Integer>emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(nodeUserCounts));
+    }
+
+    /**
+     * @return the version of the hierarchy this snapshot was made from
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the time (in ms) when this snapshot was made
+     */
+    public long getCreatedTime() {
+        return createdTime;
+    }
+
+    /**
+     * @return the root node of the hierarchy
+     */
+    public EvalHierarchyNode getRootNode() {
+        return nodes.get(rootNodeId);
+    }
+
+    /**
+     * @param nodeId a unique id for a hierarchy node
+     * @return the node or null if it is not in this hierarchy
+     */
+    public EvalHierarchyNode getNode(String nodeId) {
+        return nodes.get(nodeId);
+    }
+
+    /**
+     * @return the ids of all nodes in the hierarchy
+     */
+    public Set<String> getNodeIds() {
+        return nodes.keySet();
+    }
+
+    /**
+     * Get the direct children of a node which exist in this hierarchy,
+     * in the same order as the {@link EvalHierarchyNode#directChildNodeIds}
+     *
+     * @param nodeId a unique id for a hierarchy node
+     * @return the list of child nodes, empty if there are none
+     */
+    public List<EvalHierarchyNode> getChildNodes(String nodeId) {
+        List<EvalHierarchyNode> children = new ArrayList<>();
+        EvalHierarchyNode node = nodes.get(nodeId);
+        if (node != null) {
+            for (String childId : node.directChildNodeIds) {
+                EvalHierarchyNode child = nodes.get(childId);
+                if (child != null) {
+                    children.add(child);
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @param nodeId a unique id for a hierarchy node
+     * @return the eval group ids assigned to this node, empty if there are none
+     */
+    public Set<String> getEvalGroupsForNode(String nodeId) {
+        Set<String> groups = nodeEvalGroups.get(nodeId);
+        return groups == null ? Collections.<String>emptySet() : groups;
+    }
+
+    /**
+     * @param nodeId a unique id for a hierarchy node
+     * @return the number of eval groups assigned to this node
+     */
+    public int countEvalGroupsForNode(String nodeId) {
+        return getEvalGroupsForNode(nodeId).size();
+    }
+
+    /**
+     * @param nodeId a unique id for a hierarchy node
+     * @return the number of hierarchy rules on this node
+     */
+    public int countRulesForNode(String nodeId) {
+        Integer count = nodeRuleCounts.get(nodeId);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * @param nodeId a unique id for a hierarchy node
+     * @return the number of users with permissions on this node
+     */
+    public int countUsersForNode(String nodeId) {
+        Integer count = nodeUserCounts.get(nodeId);
+        return count == null ? 0 : count;
+    }
+
+    private static EvalHierarchyNode copyNode(EvalHierarchyNode node) {
+        EvalHierarchyNode copy = new EvalHierarchyNode(node.id, node.title, node.description);
+        copy.directChildNodeIds = copySet(node.directChildNodeIds);
+        copy.childNodeIds = copySet(node.childNodeIds);
+        copy.directParentNodeIds = copySet(node.directParentNodeIds);
+        copy.parentNodeIds = copySet(node.parentNodeIds);
+        return copy;
+    }
+
+    private static Set<String> copySet(Set<String> s) {
+        if (s == null || s.isEmpty()) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(s));
+    }
+
+    @Override
+    public String toString() {
+        return "version:" + this.version + ";root:" + this.rootNodeId + ";nodes:" + this.nodes.size();
+    }
+
+}
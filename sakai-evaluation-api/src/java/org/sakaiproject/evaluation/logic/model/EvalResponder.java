@@ -0,0 +1,93 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+
+/**
+ * This pea represents one entry in the responders roster for an evaluation,
+ * a user in an eval group and the state of their response (if any)
+ */
+public class EvalResponder implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The evalGroup ID string for the group this user is taking the evaluation in
+     */
+    public String evalGroupId;
+    /**
+     * The eval group this user is taking the evaluation in,
+     * null for anonymous evaluations (they have no group separation)
+     */
+    public EvalGroup group;
+    /**
+     * The internal user id of the responder
+     */
+    public String userId;
+    /**
+     * The user this entry is for (will be an invalid user if the user cannot be found)
+     */
+    public EvalUser user;
+    /**
+     * The id of the response for this user in this group, null if the user has not responded
+     */
+    public Long responseId;
+    /**
+     * The date the response was completed, null if the user has not responded or the response is incomplete
+     */
+    public Date completedDate;
+
+    /**
+     * Empty Constructor
+     */
+    public EvalResponder() {}
+
+    /**
+     * Full Constructor
+     * 
+     * @param evalGroupId unique id for the eval group
+     * @param group the eval group (null for anonymous evaluations)
+     * @param userId the internal user id
+     * @param user the user
+     * @param responseId the id of the response or null if there is none
+     * @param completedDate the date the response was completed or null
+     */
+    public EvalResponder(String evalGroupId, EvalGroup group, String userId, EvalUser user, Long responseId, Date completedDate) {
+        this.evalGroupId = evalGroupId;
+        this.group = group;
+        this.userId = userId;
+        this.user = user;
+        this.responseId = responseId;
+        this.completedDate = completedDate;
+    }
+
+    /**
+     * @return true if this user has started or completed a response
+     */
+    public boolean isResponded() {
+        return responseId != null;
+    }
+
+    /**
+     * @return true if this user has completed their response
+     */
+    public boolean isComplete() {
+        return completedDate != null;
+    }
+
+}
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.scheduling;
+
+import org.quartz.Job;
+
+public interface ArchiveAnswers extends Job {
+
+	/**
+	 * ArchiveAnswers: Name of class that moves the answers of old evaluations into the answer archive.
+	 */
+	public static final String ARCHIVE_ANSWERS_BEAN_NAME = "org.sakaiproject.evaluation.logic.scheduling.ArchiveAnswers";
+
+	/**
+	 * The sakai property for the number of days after the due date before the answers of
+	 * a closed evaluation are archived, used when the job does not set archive.days
+	 */
+	public static final String ARCHIVE_DAYS_PROPERTY = "evaluation.answers.archive.days";
+
+	public static final int DEFAULT_ARCHIVE_DAYS = 730;
+
+}
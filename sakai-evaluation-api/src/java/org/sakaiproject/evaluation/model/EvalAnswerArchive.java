@@ -0,0 +1,177 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+import java.util.Date;
+
+/**
+ * An {@link EvalAnswer} which was moved out of the answers table into the archive table
+ * because the evaluation it belongs to is old, the archived answer keeps the id of the original answer
+ * and refers to the response, template item and item by id only (no foreign keys) so the
+ * archive can be kept when the hot tables are cleaned up<br/>
+ * The text and comment are stored compressed (see {@link org.sakaiproject.evaluation.utils.EvalUtils#compressText(String)})
+ */
+public class EvalAnswerArchive implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Long id;
+    private Long evaluationId;
+    private Long responseId;
+    private Long templateItemId;
+    private Long itemId;
+    private Date lastModified;
+    private Integer numeric;
+    private String multiAnswerCode;
+    private String associatedId;
+    private String associatedType;
+    private byte[] textData;
+    private byte[] commentData;
+
+    public EvalAnswerArchive() {
+    }
+
+    /**
+     * FULL constructor
+     * 
+     * @param id the id of the original {@link EvalAnswer}
+     * @param evaluationId the unique id of the {@link EvalEvaluation} the answer belongs to
+     * @param responseId the unique id of the {@link EvalResponse} which holds the answer
+     * @param templateItemId the unique id of the {@link EvalTemplateItem} which was answered
+     * @param itemId the unique id of the {@link EvalItem} which was answered
+     * @param lastModified
+     * @param numeric
+     * @param multiAnswerCode
+     * @param associatedId
+     * @param associatedType
+     * @param textData the compressed text answer
+     * @param commentData the compressed comment
+     */
+    public EvalAnswerArchive(Long id, Long evaluationId, Long responseId, Long templateItemId, Long itemId,
+            Date lastModified, Integer numeric, String multiAnswerCode, String associatedId, String associatedType,
+            byte[] textData, byte[] commentData) {
+        this.id = id;
+        this.evaluationId = evaluationId;
+        this.responseId = responseId;
+        this.templateItemId = templateItemId;
+        this.itemId = itemId;
+        this.lastModified = lastModified;
+        this.numeric = numeric;
+        this.multiAnswerCode = multiAnswerCode;
+        this.associatedId = associatedId;
+        this.associatedType = associatedType;
+        this.textData = textData;
+        this.commentData = commentData;
+    }
+
+    // GETTERS AND SETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getEvaluationId() {
+        return evaluationId;
+    }
+
+    public void setEvaluationId(Long evaluationId) {
+        this.evaluationId = evaluationId;
+    }
+
+    public Long getResponseId() {
+        return responseId;
+    }
+
+    public void setResponseId(Long responseId) {
+        this.responseId = responseId;
+    }
+
+    public Long getTemplateItemId() {
+        return templateItemId;
+    }
+
+    public void setTemplateItemId(Long templateItemId) {
+        this.templateItemId = templateItemId;
+    }
+
+    public Long getItemId() {
+        return itemId;
+    }
+
+    public void setItemId(Long itemId) {
+        this.itemId = itemId;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public Integer getNumeric() {
+        return numeric;
+    }
+
+    public void setNumeric(Integer numeric) {
+        this.numeric = numeric;
+    }
+
+    public String getMultiAnswerCode() {
+        return multiAnswerCode;
+    }
+
+    public void setMultiAnswerCode(String multiAnswerCode) {
+        this.multiAnswerCode = multiAnswerCode;
+    }
+
+    public String getAssociatedId() {
+        return associatedId;
+    }
+
+    public void setAssociatedId(String associatedId) {
+        this.associatedId = associatedId;
+    }
+
+    public String getAssociatedType() {
+        return associatedType;
+    }
+
+    public void setAssociatedType(String associatedType) {
+        this.associatedType = associatedType;
+    }
+
+    public byte[] getTextData() {
+        return textData;
+    }
+
+    public void setTextData(byte[] textData) {
+        this.textData = textData;
+    }
+
+    public byte[] getCommentData() {
+        return commentData;
+    }
+
+    public void setCommentData(byte[] commentData) {
+        this.commentData = commentData;
+    }
+
+}
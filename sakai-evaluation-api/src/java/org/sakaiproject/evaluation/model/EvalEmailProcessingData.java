@@ -28,6 +28,14 @@ public class EvalEmailProcessingData implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * The number of partitions the staged recipients of a job are split into,
+     * all the rows for one user are always in the same partition<br/>
+     * The partitions only split up the reads of the staged rows, they are not claimed by servers,
+     * all of a job is sent by the server which holds the consolidated email job lock
+     */
+    public static final int JOB_PARTITIONS = 16;
+
     protected Long id;
 	protected Long eauId;
 	protected String userId;
@@ -37,6 +45,20 @@ public class EvalEmailProcessingData implements Serializable {
 	protected Date evalDueDate;
 	protected Long responseId;
 	protected Byte processingStatus;
+	protected String jobId;
+	protected Integer jobPartition;
+
+	/**
+	 * @param userId the internal user id
+	 * @return the partition (0 to {@link #JOB_PARTITIONS} - 1) the rows for this user are staged in
+	 */
+	public static int makeJobPartition(String userId) {
+		if (userId == null) {
+			return 0;
+		}
+		return (userId.hashCode() & Integer.MAX_VALUE) % JOB_PARTITIONS;
+	}
+
 	/**
 	 * @return the id
 	 */
@@ -145,4 +167,28 @@ public class EvalEmailProcessingData implements Serializable {
 	public void setProcessingStatus(Byte processingStatus) {
 		this.processingStatus = processingStatus;
 	}
+	/**
+	 * @return the id of the job this row was staged for
+	 */
+	public String getJobId() {
+		return jobId;
+	}
+	/**
+	 * @param jobId the jobId to set
+	 */
+	public void setJobId(String jobId) {
+		this.jobId = jobId;
+	}
+	/**
+	 * @return the jobPartition
+	 */
+	public Integer getJobPartition() {
+		return jobPartition;
+	}
+	/**
+	 * @param jobPartition the jobPartition to set
+	 */
+	public void setJobPartition(Integer jobPartition) {
+		this.jobPartition = jobPartition;
+	}
 }
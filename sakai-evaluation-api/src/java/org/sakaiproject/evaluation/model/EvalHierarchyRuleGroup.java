@@ -0,0 +1,53 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+import java.io.Serializable;
+
+/**
+ * One eval group which matched a hierarchy node rule ({@link EvalHierarchyRule}),
+ * these are refreshed in the background so the groups for a node can be
+ * looked up without running the rule queries against the site and section titles
+ */
+public class EvalHierarchyRuleGroup implements Serializable
+{
+    protected Long      id;
+    protected Long      ruleID;
+    protected String    nodeID;
+    protected String    evalGroupID;
+
+    // Default constructor
+    public EvalHierarchyRuleGroup() {};
+
+    // Parameterized constructor
+    public EvalHierarchyRuleGroup( Long ruleID, String nodeID, String evalGroupID )
+    {
+        this.ruleID         = ruleID;
+        this.nodeID         = nodeID;
+        this.evalGroupID    = evalGroupID;
+    }
+
+    // Getters
+    public Long     getId()             { return this.id; }
+    public Long     getRuleID()         { return this.ruleID; }
+    public String   getNodeID()         { return this.nodeID; }
+    public String   getEvalGroupID()    { return this.evalGroupID; }
+
+    // Setters
+    public void setId           ( Long id )             { this.id = id; }
+    public void setRuleID       ( Long rule )           { this.ruleID = rule; }
+    public void setNodeID       ( String node )         { this.nodeID = node; }
+    public void setEvalGroupID  ( String evalGroupID )  { this.evalGroupID = evalGroupID; }
+}
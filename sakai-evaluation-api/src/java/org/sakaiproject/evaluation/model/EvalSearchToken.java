@@ -0,0 +1,102 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.model;
+
+/**
+ * A single entry in the evaluation search index, links a search token
+ * (a lowercase word from the title, term, owner or assigned group titles) to an evaluation,
+ * searches match the start of the token so the token column must be indexed
+ */
+public class EvalSearchToken implements java.io.Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Token made from the evaluation id, every indexed evaluation has one of these
+     */
+    public static final String SOURCE_ID = "id";
+    /**
+     * Token from the evaluation title
+     */
+    public static final String SOURCE_TITLE = "title";
+    /**
+     * Token from the evaluation term id
+     */
+    public static final String SOURCE_TERM = "term";
+    /**
+     * Token from the evaluation owner (id, username or display name)
+     */
+    public static final String SOURCE_OWNER = "owner";
+    /**
+     * Token from an assigned group (id or title)
+     */
+    public static final String SOURCE_GROUP = "group";
+
+    private Long id;
+    private Long evaluationId;
+    private String source;
+    private String token;
+
+    public EvalSearchToken() {
+    }
+
+    /**
+     * FULL constructor
+     * 
+     * @param evaluationId the unique id of the {@link EvalEvaluation}
+     * @param source where the token came from, one of the SOURCE constants
+     * @param token the lowercase search token
+     */
+    public EvalSearchToken(Long evaluationId, String source, String token) {
+        this.evaluationId = evaluationId;
+        this.source = source;
+        this.token = token;
+    }
+
+    // GETTERS AND SETTERS
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getEvaluationId() {
+        return evaluationId;
+    }
+
+    public void setEvaluationId(Long evaluationId) {
+        this.evaluationId = evaluationId;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public void setToken(String token) {
+        this.token = token;
+    }
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects DAO call statistics (call count, rows returned and elapsed time) per logical
+ * operation (a request, a scheduled job or a service call) and flags call shapes which are
+ * repeated many times within a single operation as N+1 candidates<br/>
+ * NOTE: the "queries" counted here are calls to the DAO, one call may run several SQL statements
+ * (or none if hibernate already has the objects), use the hibernate statistics for the actual SQL<br/>
+ * Operations are tracked per thread, nested calls to {@link #beginOperation(String)} are
+ * folded into the outermost operation, the totals are kept for the life of the server<br/>
+ * Recording is off unless {@link #setEnabled(boolean)} is called, when off all methods are no-ops
+ */
+@Slf4j
+public class EvalQueryStatistics {
+
+    /**
+     * The number of times the same query shape has to run in one operation
+     * before it is reported as an N+1 candidate
+     */
+    public static final int DEFAULT_REPEAT_THRESHOLD = 10;
+
+    /**
+     * The maximum number of operation names kept in the DAO calls by operation totals,
+     * any other operations are counted under {@link #OTHER_OPERATIONS}
+     */
+    public static final int MAX_OPERATION_NAMES = 200;
+    public static final String OTHER_OPERATIONS = "other";
+
+    private static volatile boolean enabled = false;
+    private static volatile int repeatThreshold = DEFAULT_REPEAT_THRESHOLD;
+
+    private static final ThreadLocal<Operation> currentOperation = new ThreadLocal<>();
+
+    private static final AtomicLong totalOperations = new AtomicLong();
+    private static final AtomicLong totalQueries = new AtomicLong();
+    private static final AtomicLong totalRows = new AtomicLong();
+    private static final AtomicLong totalQueryNanos = new AtomicLong();
+    private static final AtomicLong totalRepeatedShapes = new AtomicLong();
+    private static final AtomicLong unscopedQueries = new AtomicLong();
+    private static final ConcurrentHashMap<String, AtomicLong> daoCallsByOperation = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, AtomicLong> repeatedShapes = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enable if true then queries will be recorded, if false nothing is recorded
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+        if (! enable) {
+            currentOperation.remove();
+        }
+    }
+
+    public static int getRepeatThreshold() {
+        return repeatThreshold;
+    }
+
+    /**
+     * @param threshold the number of identical query shapes in one operation
+     * which marks the shape as an N+1 candidate, must be 2 or more
+     */
+    public static void setRepeatThreshold(int threshold) {
+        if (threshold < 2) {
+            throw new IllegalArgumentException("threshold must be 2 or more: " + threshold);
+        }
+        repeatThreshold = threshold;
+    }
+
+    /**
+     * Start a logical operation on the current thread, if an operation is already open
+     * then this call is nested inside it and the queries count against the outer operation,
+     * every call to this must be matched by a call to {@link #endOperation()} (use a finally block)
+     *
+     * @param name the name of the operation (e.g. view:summary)
+     */
+    public static void beginOperation(String name) {
+        if (! enabled) {
+            return;
+        }
+        Operation op = currentOperation.get();
+        if (op == null) {
+            currentOperation.set(new Operation(name));
+        } else {
+            op.depth++;
+        }
+    }
+
+    /**
+     * @return true if an operation is currently open on this thread
+     */
+    public static boolean isOperationActive() {
+        return currentOperation.get() != null;
+    }
+
+    /**
+     * End the logical operation on the current thread, when the outermost operation ends
+     * the stats are added to the totals and a summary is written to the debug log
+     */
+    public static void endOperation() {
+        Operation op = currentOperation.get();
+        if (op == null) {
+            return;
+        }
+        if (op.depth > 0) {
+            op.depth--;
+            return;
+        }
+        currentOperation.remove();
+        long elapsedMS = (System.nanoTime() - op.startNanos) / 1000000;
+
+        totalOperations.incrementAndGet();
+        totalQueries.addAndGet(op.queries);
+        totalRows.addAndGet(op.rows);
+        totalQueryNanos.addAndGet(op.queryNanos);
+        if (op.queries > 0) {
+            String name = op.name;
+            if (daoCallsByOperation.size() >= MAX_OPERATION_NAMES && ! daoCallsByOperation.containsKey(name)) {
+                name = OTHER_OPERATIONS;
+            }
+            increment(daoCallsByOperation, name, op.queries);
+        }
+
+        Map<String, Integer> repeats = new TreeMap<>();
+        for (Map.Entry<String, int[]> entry : op.shapes.entrySet()) {
+            int count = entry.getValue()[0];
+            if (count >= repeatThreshold) {
+                repeats.put(entry.getKey(), count);
+                increment(repeatedShapes, entry.getKey(), 1);
+                totalRepeatedShapes.incrementAndGet();
+            }
+        }
+
+        if (! repeats.isEmpty()) {
+            log.info("Possible N+1 queries in " + op.name + ": " + repeats);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Query stats for " + op.name + ": queries=" + op.queries + ", rows=" + op.rows
+                    + ", queryTime=" + (op.queryNanos / 1000000) + "ms, totalTime=" + elapsedMS
+                    + "ms, distinctShapes=" + op.shapes.size());
+        }
+    }
+
+    /**
+     * Record one query against the operation on the current thread,
+     * queries which run outside any operation are only added to the totals
+     *
+     * @param shape the shape of the query (e.g. the dao method and the searched properties),
+     * this should not include the parameter values
+     * @param nanos the time the query took (in nanoseconds)
+     * @param rows the number of rows (objects) returned
+     */
+    public static void recordQuery(String shape, long nanos, int rows) {
+        if (! enabled) {
+            return;
+        }
+        Operation op = currentOperation.get();
+        if (op == null) {
+            unscopedQueries.incrementAndGet();
+            totalQueries.incrementAndGet();
+            totalRows.addAndGet(rows);
+            totalQueryNanos.addAndGet(nanos);
+            return;
+        }
+        op.queries++;
+        op.rows += rows;
+        op.queryNanos += nanos;
+        int[] count = op.shapes.get(shape);
+        if (count == null) {
+            op.shapes.put(shape, new int[] {1});
+        } else {
+            count[0]++;
+        }
+    }
+
+    public static long getTotalOperations() {
+        return totalOperations.get();
+    }
+
+    public static long getTotalQueries() {
+        return totalQueries.get();
+    }
+
+    public static long getTotalRows() {
+        return totalRows.get();
+    }
+
+    public static long getTotalQueryTimeMS() {
+        return totalQueryNanos.get() / 1000000;
+    }
+
+    /**
+     * @return the number of times a query shape crossed the repeat threshold in an operation
+     */
+    public static long getTotalRepeatedShapes() {
+        return totalRepeatedShapes.get();
+    }
+
+    /**
+     * @return the number of queries which ran outside of any operation
+     */
+    public static long getUnscopedQueries() {
+        return unscopedQueries.get();
+    }
+
+    /**
+     * @return map of operation name -> total DAO calls made by that operation
+     * (limited to {@link #MAX_OPERATION_NAMES} names, the rest are under {@link #OTHER_OPERATIONS})
+     */
+    public static Map<String, Long> getDaoCallsByOperation() {
+        return copyCounts(daoCallsByOperation);
+    }
+
+    /**
+     * @return map of query shape -> number of operations where the shape was an N+1 candidate
+     */
+    public static Map<String, Long> getRepeatedShapes() {
+        return copyCounts(repeatedShapes);
+    }
+
+    /**
+     * Clear all the totals (operations which are currently open are not affected)
+     */
+    public static void reset() {
+        totalOperations.set(0);
+        totalQueries.set(0);
+        totalRows.set(0);
+        totalQueryNanos.set(0);
+        totalRepeatedShapes.set(0);
+        unscopedQueries.set(0);
+        daoCallsByOperation.clear();
+        repeatedShapes.clear();
+    }
+
+    /**
+     * @return a short summary of the totals
+     */
+    public static String getSummary() {
+        return "enabled=" + enabled + ", operations=" + getTotalOperations() + ", queries=" + getTotalQueries()
+                + ", rows=" + getTotalRows() + ", queryTime=" + getTotalQueryTimeMS() + "ms, repeatedShapes="
+                + getTotalRepeatedShapes() + ", unscopedQueries=" + getUnscopedQueries();
+    }
+
+    /**
+     * Make the operation name for a tool request from the view id so all the requests
+     * for the same view are counted together (the rest of the path holds the view parameters)
+     *
+     * @param pathInfo the path info of the request (e.g. /take_eval/12)
+     * @return the operation name (e.g. view:take_eval)
+     */
+    public static String makeViewOperationName(String pathInfo) {
+        String viewId = "";
+        if (pathInfo != null) {
+            int start = pathInfo.startsWith("/") ? 1 : 0;
+            int end = pathInfo.indexOf('/', start);
+            viewId = end < 0 ? pathInfo.substring(start) : pathInfo.substring(start, end);
+        }
+        return "view:" + viewId;
+    }
+
+    private static void increment(ConcurrentHashMap<String, AtomicLong> counts, String key, long amount) {
+        AtomicLong count = counts.get(key);
+        if (count == null) {
+            AtomicLong newCount = new AtomicLong();
+            count = counts.putIfAbsent(key, newCount);
+            if (count == null) {
+                count = newCount;
+            }
+        }
+        count.addAndGet(amount);
+    }
+
+    private static Map<String, Long> copyCounts(Map<String, AtomicLong> counts) {
+        Map<String, Long> copy = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counts.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().get());
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * The stats for a single operation, only ever used by one thread
+     */
+    private static class Operation {
+        final String name;
+        final long startNanos = System.nanoTime();
+        final Map<String, int[]> shapes = new HashMap<>();
+        int depth = 0;
+        int queries = 0;
+        long rows = 0;
+        long queryNanos = 0;
+
+        Operation(String name) {
+            this.name = name;
+        }
+    }
+
+}
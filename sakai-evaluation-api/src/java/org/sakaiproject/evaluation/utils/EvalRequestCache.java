@@ -0,0 +1,234 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holds the results of repeated service lookups for a single scope (a request or a scheduled job)
+ * so that the same lookup with the same arguments only runs once in that scope<br/>
+ * Scopes are tracked per thread, nested calls to {@link #beginScope(String)} are folded into
+ * the outermost scope, nothing is cached outside of a scope and everything is dropped when it ends<br/>
+ * Caching is off unless {@link #setEnabled(boolean)} is called, when off all methods are no-ops
+ */
+@Slf4j
+public class EvalRequestCache {
+
+    /**
+     * Returned by {@link #get(Object)} when there is no cached value for the key
+     * (null is a valid cached value)
+     */
+    public static final Object NOT_CACHED = new Object();
+
+    /**
+     * The maximum number of values held by a single scope,
+     * the scope is cleared when this is reached
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    private static volatile boolean enabled = false;
+    private static volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private static final ThreadLocal<Scope> currentScope = new ThreadLocal<>();
+
+    private static final AtomicLong totalScopes = new AtomicLong();
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+    private static final AtomicLong totalInvalidations = new AtomicLong();
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enable if true then lookups are cached in the current scope, if false nothing is cached
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+        if (! enable) {
+            currentScope.remove();
+        }
+    }
+
+    public static int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param max the maximum number of values held by one scope, must be 1 or more
+     */
+    public static void setMaxEntries(int max) {
+        if (max < 1) {
+            throw new IllegalArgumentException("max entries must be 1 or more: " + max);
+        }
+        maxEntries = max;
+    }
+
+    /**
+     * Start a cache scope on the current thread, if a scope is already open then this call
+     * is nested inside it and shares the outer cache, every call to this must be matched
+     * by a call to {@link #endScope()} (use a finally block)
+     *
+     * @param name the name of the scope (e.g. view:summary)
+     */
+    public static void beginScope(String name) {
+        if (! enabled) {
+            return;
+        }
+        Scope scope = currentScope.get();
+        if (scope == null) {
+            currentScope.set(new Scope(name));
+        } else {
+            scope.depth++;
+        }
+    }
+
+    /**
+     * @return true if a cache scope is currently open on this thread
+     */
+    public static boolean isScopeActive() {
+        return currentScope.get() != null;
+    }
+
+    /**
+     * End the cache scope on the current thread, when the outermost scope ends
+     * all the cached values are dropped and the hit/miss counts are added to the totals
+     */
+    public static void endScope() {
+        Scope scope = currentScope.get();
+        if (scope == null) {
+            return;
+        }
+        if (scope.depth > 0) {
+            scope.depth--;
+            return;
+        }
+        currentScope.remove();
+        totalScopes.incrementAndGet();
+        totalHits.addAndGet(scope.hits);
+        totalMisses.addAndGet(scope.misses);
+        totalInvalidations.addAndGet(scope.invalidations);
+        if (log.isDebugEnabled()) {
+            log.debug("Request cache for " + scope.name + ": hits=" + scope.hits + ", misses=" + scope.misses
+                    + ", invalidations=" + scope.invalidations + ", entries=" + scope.values.size());
+        }
+    }
+
+    /**
+     * Get a cached value from the current scope, a call which finds nothing counts as a miss
+     *
+     * @param key the key for the lookup (e.g. the method and the argument values),
+     * this must have a value based equals and hashCode
+     * @return the cached value (which may be null) OR {@link #NOT_CACHED} if there is nothing cached
+     * for this key or there is no scope open
+     */
+    public static Object get(Object key) {
+        Scope scope = currentScope.get();
+        if (scope == null) {
+            return NOT_CACHED;
+        }
+        if (scope.values.containsKey(key)) {
+            scope.hits++;
+            return scope.values.get(key);
+        }
+        scope.misses++;
+        return NOT_CACHED;
+    }
+
+    /**
+     * Put a value into the current scope, does nothing if there is no scope open
+     *
+     * @param key the key for the lookup (see {@link #get(Object)})
+     * @param value the value to cache (can be null)
+     */
+    public static void put(Object key, Object value) {
+        Scope scope = currentScope.get();
+        if (scope == null) {
+            return;
+        }
+        if (scope.values.size() >= maxEntries) {
+            scope.values.clear();
+        }
+        scope.values.put(key, value);
+    }
+
+    /**
+     * Drop all the values cached in the current scope,
+     * this should be called whenever something is written inside the scope
+     */
+    public static void invalidate() {
+        Scope scope = currentScope.get();
+        if (scope == null || scope.values.isEmpty()) {
+            return;
+        }
+        scope.values.clear();
+        scope.invalidations++;
+    }
+
+    public static long getTotalScopes() {
+        return totalScopes.get();
+    }
+
+    public static long getTotalHits() {
+        return totalHits.get();
+    }
+
+    public static long getTotalMisses() {
+        return totalMisses.get();
+    }
+
+    public static long getTotalInvalidations() {
+        return totalInvalidations.get();
+    }
+
+    /**
+     * Clear all the totals (scopes which are currently open are not affected)
+     */
+    public static void reset() {
+        totalScopes.set(0);
+        totalHits.set(0);
+        totalMisses.set(0);
+        totalInvalidations.set(0);
+    }
+
+    /**
+     * @return a short summary of the totals
+     */
+    public static String getSummary() {
+        return "enabled=" + enabled + ", scopes=" + getTotalScopes() + ", hits=" + getTotalHits()
+                + ", misses=" + getTotalMisses() + ", invalidations=" + getTotalInvalidations();
+    }
+
+    /**
+     * The cached values for a single scope, only ever used by one thread
+     */
+    private static class Scope {
+        final String name;
+        final Map<Object, Object> values = new HashMap<>();
+        int depth = 0;
+        int hits = 0;
+        int misses = 0;
+        int invalidations = 0;
+
+        Scope(String name) {
+            this.name = name;
+        }
+    }
+
+}
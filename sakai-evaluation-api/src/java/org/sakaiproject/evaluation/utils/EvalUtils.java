@@ -14,6 +14,12 @@
  */
 package org.sakaiproject.evaluation.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
@@ -27,6 +33,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
@@ -611,6 +619,80 @@ public class EvalUtils {
     }
 
 
+    /**
+     * The maximum length of a search token, longer tokens are truncated
+     */
+    public static final int SEARCH_TOKEN_MAX_LENGTH = 64;
+
+    /**
+     * Split some text into lowercase search tokens (runs of letters and digits),
+     * tokens longer than {@link #SEARCH_TOKEN_MAX_LENGTH} are truncated,
+     * e.g. "Fall 2010: Math-101" becomes [fall, 2010, math, 101]
+     * 
+     * @param text any text (can be null)
+     * @return the unique tokens in the order they appear, empty if there are none
+     */
+    public static Set<String> makeSearchTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text != null) {
+            for (String token : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+                if (token.length() > SEARCH_TOKEN_MAX_LENGTH) {
+                    token = token.substring(0, SEARCH_TOKEN_MAX_LENGTH);
+                }
+                if (token.length() > 0) {
+                    tokens.add(token);
+                }
+            }
+        }
+        return tokens;
+    }
+
+
+    /**
+     * Compress some text (UTF-8, gzip) so it can be stored in a binary column,
+     * this is used for the answer text in the archive tables
+     * 
+     * @param text any text (can be null)
+     * @return the compressed text OR null if the text is null
+     */
+    public static byte[] compressText(String text) {
+        if (text == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Failure compressing text: " + e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Restore text compressed with {@link #compressText(String)}
+     * 
+     * @param data the compressed text (can be null)
+     * @return the text OR null if the data is null
+     * @throws IllegalArgumentException if the data is not compressed text
+     */
+    public static String decompressText(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length * 4);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid compressed text: " + e.getMessage(), e);
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
     /**
      * Shuffle the evals which are closed (or later) to the end of the list and otherwise maintain the current order of evaluations
      * @param evaluations collection of evals
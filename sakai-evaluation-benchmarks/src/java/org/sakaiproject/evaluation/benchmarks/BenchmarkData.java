@@ -0,0 +1,195 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.model.EvalItem;
+import org.sakaiproject.evaluation.model.EvalResponse;
+import org.sakaiproject.evaluation.model.EvalScale;
+import org.sakaiproject.evaluation.model.EvalTemplate;
+import org.sakaiproject.evaluation.model.EvalTemplateItem;
+
+/**
+ * Builds the synthetic data used by the benchmarks, this is a realistically sized template
+ * (50 items including blocks, scaled, multiple answer and text items) with a set of
+ * responses which answer every answerable item<br/>
+ * The data is generated using a fixed seed so every run uses the same data
+ */
+public class BenchmarkData {
+
+    public static final String OWNER = "benchmark-owner";
+    public static final String EVAL_GROUP_ID = "/site/benchmark";
+    public static final int DEFAULT_RESPONSES = 5000;
+    public static final int BLOCKS = 4;
+    public static final int BLOCK_CHILDREN = 5;
+    public static final int SCALED_ITEMS = 15;
+    public static final int MULTIPLE_ANSWER_ITEMS = 5;
+    public static final int TEXT_ITEMS = 5;
+    public static final int SCALE_OPTIONS = 5;
+    /**
+     * The percentage of scaled answers which are NA
+     */
+    public static final int NA_PERCENT = 5;
+
+    private final Random random = new Random(5000L);
+    private long nextId = 1;
+
+    public final EvalTemplate template;
+    public final EvalScale scale;
+    /**
+     * All the template items in the template (in display order)
+     */
+    public final List<EvalTemplateItem> templateItems = new ArrayList<>();
+    public final List<EvalResponse> responses = new ArrayList<>();
+    public final List<EvalAnswer> answers = new ArrayList<>();
+
+    /**
+     * Generates a template with 50 items and {@link #DEFAULT_RESPONSES} responses
+     */
+    public BenchmarkData() {
+        this(DEFAULT_RESPONSES);
+    }
+
+    /**
+     * @param responseCount the number of responses to generate
+     */
+    public BenchmarkData(int responseCount) {
+        List<String> options = new ArrayList<>();
+        for (int i = 0; i < SCALE_OPTIONS; i++) {
+            options.add("option " + i);
+        }
+        scale = new EvalScale(OWNER, "Benchmark scale", EvalConstants.SCALE_MODE_SCALE, 
+                EvalConstants.SHARING_PRIVATE, Boolean.FALSE, null, null, options, Boolean.FALSE);
+        scale.setId(nextId++);
+        template = new EvalTemplate(OWNER, EvalConstants.TEMPLATE_TYPE_STANDARD, "Benchmark template", 
+                EvalConstants.SHARING_PRIVATE, Boolean.FALSE);
+        template.setId(nextId++);
+
+        int displayOrder = 1;
+        templateItems.add( makeTemplateItem(EvalConstants.ITEM_TYPE_HEADER, displayOrder++, null, null) );
+        for (int b = 0; b < BLOCKS; b++) {
+            EvalTemplateItem parent = makeTemplateItem(EvalConstants.ITEM_TYPE_BLOCK_PARENT, displayOrder++, Boolean.TRUE, null);
+            templateItems.add(parent);
+            for (int c = 0; c < BLOCK_CHILDREN; c++) {
+                templateItems.add( makeTemplateItem(EvalConstants.ITEM_TYPE_SCALED, c + 1, Boolean.FALSE, parent.getId()) );
+            }
+        }
+        for (int i = 0; i < SCALED_ITEMS; i++) {
+            templateItems.add( makeTemplateItem(EvalConstants.ITEM_TYPE_SCALED, displayOrder++, null, null) );
+        }
+        for (int i = 0; i < MULTIPLE_ANSWER_ITEMS; i++) {
+            templateItems.add( makeTemplateItem(EvalConstants.ITEM_TYPE_MULTIPLEANSWER, displayOrder++, null, null) );
+        }
+        for (int i = 0; i < TEXT_ITEMS; i++) {
+            templateItems.add( makeTemplateItem(EvalConstants.ITEM_TYPE_TEXT, displayOrder++, null, null) );
+        }
+
+        Date now = new Date();
+        for (int r = 0; r < responseCount; r++) {
+            EvalResponse response = new EvalResponse("student" + r, EVAL_GROUP_ID, null, now, now, null);
+            response.setId(nextId++);
+            responses.add(response);
+            for (EvalTemplateItem templateItem : templateItems) {
+                EvalAnswer answer = makeAnswer(response, templateItem);
+                if (answer != null) {
+                    answers.add(answer);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the template items in a random (but repeatable) order
+     */
+    public List<EvalTemplateItem> makeShuffledTemplateItems() {
+        List<EvalTemplateItem> shuffled = new ArrayList<>(templateItems);
+        Collections.shuffle(shuffled, new Random(50L));
+        return shuffled;
+    }
+
+    /**
+     * @param count the number of arrays to make
+     * @return arrays of answer keys (1 to {@link #SCALE_OPTIONS} keys each, unsorted)
+     */
+    public Integer[][] makeMultipleAnswerKeys(int count) {
+        Integer[][] keys = new Integer[count][];
+        for (int i = 0; i < count; i++) {
+            keys[i] = makeAnswerKeys();
+        }
+        return keys;
+    }
+
+    private EvalTemplateItem makeTemplateItem(String classification, int displayOrder, Boolean blockParent, Long blockId) {
+        EvalItem item = new EvalItem(OWNER, classification + " item " + displayOrder, 
+                EvalConstants.SHARING_PRIVATE, classification, Boolean.FALSE);
+        item.setId(nextId++);
+        item.setCategory(EvalConstants.ITEM_CATEGORY_COURSE);
+        if (! EvalConstants.ITEM_TYPE_TEXT.equals(classification) 
+                && ! EvalConstants.ITEM_TYPE_HEADER.equals(classification)) {
+            item.setScale(scale);
+            item.setScaleDisplaySetting(EvalConstants.ITEM_SCALE_DISPLAY_COMPACT);
+        }
+        Integer displayRows = EvalConstants.ITEM_TYPE_TEXT.equals(classification) ? 3 : null;
+        EvalTemplateItem templateItem = new EvalTemplateItem(OWNER, template, item, displayOrder, 
+                EvalConstants.ITEM_CATEGORY_COURSE, EvalConstants.HIERARCHY_LEVEL_TOP, EvalConstants.HIERARCHY_NODE_ID_NONE, 
+                displayRows, item.getScaleDisplaySetting(), Boolean.TRUE, Boolean.FALSE, Boolean.FALSE, blockParent, blockId, null);
+        templateItem.setId(nextId++);
+        return templateItem;
+    }
+
+    private EvalAnswer makeAnswer(EvalResponse response, EvalTemplateItem templateItem) {
+        String classification = templateItem.getItem().getClassification();
+        EvalAnswer answer = null;
+        if (EvalConstants.ITEM_TYPE_SCALED.equals(classification)) {
+            Integer numeric = random.nextInt(100) < NA_PERCENT ? EvalConstants.NA_VALUE : random.nextInt(SCALE_OPTIONS);
+            answer = new EvalAnswer(response, templateItem, templateItem.getItem(), null, null, numeric);
+        } else if (EvalConstants.ITEM_TYPE_MULTIPLEANSWER.equals(classification)) {
+            Integer[] keys = makeAnswerKeys();
+            Arrays.sort(keys);
+            StringBuilder code = new StringBuilder(":");
+            for (Integer key : keys) {
+                code.append(key).append(':');
+            }
+            answer = new EvalAnswer(response, templateItem, templateItem.getItem(), null, null, 
+                    null, null, code.toString(), null);
+        } else if (EvalConstants.ITEM_TYPE_TEXT.equals(classification)) {
+            answer = new EvalAnswer(response, templateItem, templateItem.getItem(), null, null, 
+                    "Some answer text for response " + response.getId());
+        }
+        if (answer != null) {
+            answer.setId(nextId++);
+        }
+        return answer;
+    }
+
+    private Integer[] makeAnswerKeys() {
+        int size = 1 + random.nextInt(SCALE_OPTIONS);
+        List<Integer> all = new ArrayList<>();
+        for (int i = 0; i < SCALE_OPTIONS; i++) {
+            all.add(i);
+        }
+        Collections.shuffle(all, random);
+        return all.subList(0, size).toArray(new Integer[size]);
+    }
+
+}
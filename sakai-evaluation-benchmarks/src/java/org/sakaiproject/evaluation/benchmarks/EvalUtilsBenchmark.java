@@ -0,0 +1,91 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.utils.EvalUtils;
+
+/**
+ * Benchmarks for the answer encoding and decoding in {@link EvalUtils}
+ * which is run for every answer when taking an evaluation and when reporting
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalUtilsBenchmark {
+
+    private static final int KEY_SETS = 1024;
+
+    private Integer[][] answerKeys;
+    private String[] encodedAnswers;
+    private List<EvalAnswer> answers;
+    private int index = 0;
+
+    @Setup
+    public void setup() {
+        BenchmarkData data = new BenchmarkData();
+        answers = data.answers;
+        answerKeys = data.makeMultipleAnswerKeys(KEY_SETS);
+        encodedAnswers = new String[KEY_SETS];
+        for (int i = 0; i < KEY_SETS; i++) {
+            encodedAnswers[i] = EvalUtils.encodeMultipleAnswers(answerKeys[i].clone());
+        }
+    }
+
+    @Benchmark
+    public String encodeMultipleAnswers() {
+        // clone since the encoding sorts the array in place
+        return EvalUtils.encodeMultipleAnswers(answerKeys[next()].clone());
+    }
+
+    @Benchmark
+    public Integer[] decodeMultipleAnswers() {
+        return EvalUtils.decodeMultipleAnswers(encodedAnswers[next()]);
+    }
+
+    /**
+     * Decodes the NA value for all the answers in all the responses (as a report does)
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void decodeAnswerNAForAllAnswers(Blackhole bh) {
+        for (EvalAnswer answer : answers) {
+            bh.consume( EvalUtils.decodeAnswerNA(answer) );
+        }
+    }
+
+    private int next() {
+        index = (index + 1) % KEY_SETS;
+        return index;
+    }
+
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.evaluation.model.EvalEmailProcessingData;
+
+/**
+ * Insert throughput (rows per second) of a high volume table in an in-memory HSQLDB,
+ * comparing the pooled table ids from the mapping with native (identity) ids
+ * and JDBC batching on and off, the rows are saved the same way as
+ * EvaluationDaoImpl#saveEvalAssignUsers (flush and evict every batch)
+ * <br/>
+ * Uses {@link EvalEmailProcessingData} since it has no foreign keys,
+ * EVAL_ANSWER, EVAL_RESPONSE and EVAL_ASSIGN_USER use the same id generator
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertThroughputBenchmark {
+
+    private static final String MAPPING = "org/sakaiproject/evaluation/dao/hbm/EvalEmailProcessingData.hbm.xml";
+    private static final String POOLED_GENERATOR = "(?s)<generator class=\"org.hibernate.id.enhanced.TableGenerator\">.*?</generator>";
+    private static final String NATIVE_GENERATOR = "<generator class=\"native\" />";
+    private static final int ROWS = 1000;
+    /**
+     * matches EvaluationDaoImpl.INSERT_BATCH_SIZE
+     */
+    private static final int FLUSH_SIZE = 100;
+
+    /**
+     * pooled uses the id generator from the mapping, native switches back to identity columns
+     */
+    @Param({"pooled", "native"})
+    public String idGenerator;
+
+    /**
+     * the hibernate.jdbc.batch_size, 1 is no JDBC batching
+     */
+    @Param({"1", "100"})
+    public int batchSize;
+
+    private SessionFactory sessionFactory;
+    private Date dueDate;
+    private int counter = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        String mapping = readMapping();
+        if ("native".equals(idGenerator)) {
+            mapping = mapping.replaceAll(POOLED_GENERATOR, NATIVE_GENERATOR);
+        } else if (! "pooled".equals(idGenerator)) {
+            throw new IllegalArgumentException("Unknown idGenerator: " + idGenerator);
+        }
+        Configuration configuration = new Configuration();
+        configuration.setProperty("hibernate.connection.driver_class", "org.hsqldb.jdbcDriver");
+        configuration.setProperty("hibernate.connection.url", "jdbc:hsqldb:mem:insert-" + idGenerator + "-" + batchSize);
+        configuration.setProperty("hibernate.connection.username", "sa");
+        configuration.setProperty("hibernate.connection.password", "");
+        configuration.setProperty("hibernate.connection.pool_size", "1");
+        configuration.setProperty("hibernate.dialect", "org.hibernate.dialect.HSQLDialect");
+        configuration.setProperty("hibernate.hbm2ddl.auto", "create");
+        configuration.setProperty("hibernate.show_sql", "false");
+        configuration.setProperty("hibernate.jdbc.batch_size", Integer.toString(batchSize));
+        configuration.setProperty("hibernate.order_inserts", "true");
+        configuration.addInputStream( new ByteArrayInputStream(mapping.getBytes(StandardCharsets.UTF_8)) );
+        sessionFactory = configuration.buildSessionFactory();
+        dueDate = new Date();
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    /**
+     * Clear the table so each iteration inserts into the same size table
+     */
+    @TearDown(Level.Iteration)
+    public void clearRows() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            session.createQuery("delete from EvalEmailProcessingData").executeUpdate();
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Inserts {@value #ROWS} rows in one transaction, the score is rows per second
+     */
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insertRows() {
+        Session session = sessionFactory.openSession();
+        try {
+            session.beginTransaction();
+            List<EvalEmailProcessingData> batch = new ArrayList<>(FLUSH_SIZE);
+            for (int i = 0; i < ROWS; i++) {
+                EvalEmailProcessingData data = makeRow(counter++);
+                session.save(data);
+                batch.add(data);
+                if (batch.size() >= FLUSH_SIZE) {
+                    flushAndEvict(session, batch);
+                }
+            }
+            flushAndEvict(session, batch);
+            session.getTransaction().commit();
+        } finally {
+            session.close();
+        }
+    }
+
+    private EvalEmailProcessingData makeRow(int n) {
+        EvalEmailProcessingData data = new EvalEmailProcessingData();
+        String userId = "user-" + n;
+        data.setEauId((long) n);
+        data.setUserId(userId);
+        data.setGroupId("/site/site-" + (n % 50));
+        data.setEmailTemplateId(1L);
+        data.setEvalId(1L);
+        data.setEvalDueDate(dueDate);
+        data.setProcessingStatus((byte) 0);
+        data.setJobPartition(EvalEmailProcessingData.makeJobPartition(userId));
+        return data;
+    }
+
+    private void flushAndEvict(Session session, List<?> batch) {
+        if (! batch.isEmpty()) {
+            session.flush();
+            for (Object object : batch) {
+                session.evict(object);
+            }
+            batch.clear();
+        }
+    }
+
+    private String readMapping() throws IOException {
+        try (InputStream in = getClass().getClassLoader().getResourceAsStream(MAPPING)) {
+            if (in == null) {
+                throw new IllegalStateException("Could not find the mapping on the classpath: " + MAPPING);
+            }
+            Scanner scanner = new Scanner(in, StandardCharsets.UTF_8.name()).useDelimiter("\\A");
+            return scanner.hasNext() ? scanner.next() : "";
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sakaiproject.evaluation.model.EvalTemplateItem;
+import org.sakaiproject.evaluation.utils.TemplateItemDataList;
+import org.sakaiproject.evaluation.utils.TemplateItemUtils;
+
+/**
+ * Benchmarks for ordering the template items and building the {@link TemplateItemDataList}
+ * which happens for every take evaluation page and every report
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TemplateItemBenchmark {
+
+    /**
+     * The number of responses, 0 is the take evaluation case (no answers)
+     */
+    @Param({"0", "5000"})
+    public int responses;
+
+    private BenchmarkData data;
+    private List<EvalTemplateItem> shuffledItems;
+
+    @Setup
+    public void setup() {
+        data = new BenchmarkData(responses);
+        shuffledItems = data.makeShuffledTemplateItems();
+    }
+
+    @Benchmark
+    public List<EvalTemplateItem> orderTemplateItems() {
+        return TemplateItemUtils.orderTemplateItems(new ArrayList<>(shuffledItems), false);
+    }
+
+    @Benchmark
+    public TemplateItemDataList constructTemplateItemDataList() {
+        TemplateItemDataList tidl = new TemplateItemDataList(new ArrayList<>(shuffledItems), null, null, data.answers);
+        tidl.getFlatListOfDataTemplateItems(true);
+        return tidl;
+    }
+
+}
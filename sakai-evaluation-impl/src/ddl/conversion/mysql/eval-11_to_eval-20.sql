@@ -0,0 +1,78 @@
+--
+-- Copyright 2003 Sakai Foundation Licensed under the
+-- Educational Community License, Version 2.0 (the "License"); you may
+-- not use this file except in compliance with the License. You may
+-- obtain a copy of the License at
+--
+-- http://www.osedu.org/licenses/ECL-2.0
+--
+-- Unless required by applicable law or agreed to in writing,
+-- software distributed under the License is distributed on an "AS IS"
+-- BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+-- or implied. See the License for the specific language governing
+-- permissions and limitations under the License.
+--
+
+-- MySQL conversion script - 11 to 20
+
+-- evaluation search index (filled in the background after startup)
+create table EVAL_SEARCH_TOKEN (
+    ID bigint not null auto_increment,
+    EVALUATION_ID bigint not null,
+    SOURCE varchar(10) not null,
+    TOKEN varchar(64) not null,
+    primary key (ID)
+) ENGINE=InnoDB;
+
+create index eval_searchtoken_eval on EVAL_SEARCH_TOKEN (EVALUATION_ID);
+create index eval_searchtoken_token on EVAL_SEARCH_TOKEN (TOKEN);
+
+-- groups matched by the hierarchy node rules (refreshed in the background after startup)
+create table EVAL_HIERARCHY_RULE_GROUP (
+    ID bigint not null auto_increment,
+    RULE_ID bigint not null,
+    NODE_ID varchar(255) not null,
+    EVAL_GROUP_ID varchar(255) not null,
+    primary key (ID)
+) ENGINE=InnoDB;
+
+create index eval_hrulegroup_rule on EVAL_HIERARCHY_RULE_GROUP (RULE_ID);
+create index eval_hrulegroup_node on EVAL_HIERARCHY_RULE_GROUP (NODE_ID);
+
+-- pooled ids for the high volume tables, each sequence starts after the highest existing id
+create table EVAL_ID_SEQUENCES (
+    SEQUENCE_NAME varchar(255) not null,
+    NEXT_VAL bigint,
+    primary key (SEQUENCE_NAME)
+) ENGINE=InnoDB;
+
+insert into EVAL_ID_SEQUENCES (SEQUENCE_NAME, NEXT_VAL) select 'EVAL_ANSWER', COALESCE(max(ID), 0) + 101 from EVAL_ANSWER;
+insert into EVAL_ID_SEQUENCES (SEQUENCE_NAME, NEXT_VAL) select 'EVAL_RESPONSE', COALESCE(max(ID), 0) + 101 from EVAL_RESPONSE;
+insert into EVAL_ID_SEQUENCES (SEQUENCE_NAME, NEXT_VAL) select 'EVAL_ASSIGN_USER', COALESCE(max(ID), 0) + 101 from EVAL_ASSIGN_USER;
+insert into EVAL_ID_SEQUENCES (SEQUENCE_NAME, NEXT_VAL) select 'EVAL_EMAIL_PROCESSING_QUEUE', COALESCE(max(ID), 0) + 101 from EVAL_EMAIL_PROCESSING_QUEUE;
+
+-- consolidated email recipients are staged per job and partition and only changed rows are rewritten
+delete from EVAL_EMAIL_PROCESSING_QUEUE;
+alter table EVAL_EMAIL_PROCESSING_QUEUE add column JOB_ID varchar(255);
+alter table EVAL_EMAIL_PROCESSING_QUEUE add column JOB_PARTITION integer;
+create index eval_emailq_job on EVAL_EMAIL_PROCESSING_QUEUE (JOB_ID, JOB_PARTITION);
+
+-- answers of old evaluations are moved here (text compressed) by the archive answers job
+create table EVAL_ANSWER_ARCHIVE (
+    ID bigint not null,
+    EVALUATION_ID bigint not null,
+    RESPONSE_ID bigint not null,
+    TEMPLATEITEM_ID bigint not null,
+    ITEM_ID bigint,
+    LAST_MODIFIED datetime not null,
+    NUM_ANSWER integer,
+    MULTI_ANSWER_CODE varchar(255),
+    ASSOCIATED_ID varchar(255),
+    ASSOCIATED_TYPE varchar(255),
+    TEXT_DATA longblob,
+    COMMENT_DATA longblob,
+    primary key (ID)
+) ENGINE=InnoDB;
+
+create index eval_answerarch_eval on EVAL_ANSWER_ARCHIVE (EVALUATION_ID, RESPONSE_ID);
+create index eval_answerarch_resp on EVAL_ANSWER_ARCHIVE (RESPONSE_ID);
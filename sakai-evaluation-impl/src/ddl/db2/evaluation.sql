@@ -56,7 +56,7 @@
     );
 
     create table EVAL_ANSWER (
-        ID bigint generated by default as identity,
+        ID bigint not null,
         LAST_MODIFIED timestamp not null,
         TEMPLATEITEM_FK bigint not null,
         ITEM_FK bigint,
@@ -70,6 +70,22 @@
         primary key (ID)
     );
 
+    create table EVAL_ANSWER_ARCHIVE (
+        ID bigint not null,
+        EVALUATION_ID bigint not null,
+        RESPONSE_ID bigint not null,
+        TEMPLATEITEM_ID bigint not null,
+        ITEM_ID bigint,
+        LAST_MODIFIED timestamp not null,
+        NUM_ANSWER integer,
+        MULTI_ANSWER_CODE varchar(255),
+        ASSOCIATED_ID varchar(255),
+        ASSOCIATED_TYPE varchar(255),
+        TEXT_DATA blob(16777215),
+        COMMENT_DATA blob(16777215),
+        primary key (ID)
+    );
+
     create table EVAL_ASSIGN_GROUP (
         ID bigint generated by default as identity,
         EID varchar(255),
@@ -101,7 +117,7 @@
     );
 
     create table EVAL_ASSIGN_USER (
-        ID bigint generated by default as identity,
+        ID bigint not null,
         EID varchar(255),
         LAST_MODIFIED timestamp not null,
         OWNER varchar(255) not null,
@@ -128,7 +144,7 @@
     );
 
     create table EVAL_EMAIL_PROCESSING_QUEUE (
-        ID bigint generated by default as identity,
+        ID bigint not null,
         EAU_ID bigint,
         USER_ID varchar(255),
         GROUP_ID varchar(255) not null,
@@ -137,6 +153,8 @@
         RESPONSE_ID bigint,
         EVAL_DUE_DATE timestamp,
         PROCESSING_STATUS smallint,
+        JOB_ID varchar(255),
+        JOB_PARTITION integer,
         primary key (ID)
     );
 
@@ -218,6 +236,20 @@
         primary key (ID)
     );
 
+    create table EVAL_HIERARCHY_RULE_GROUP (
+        ID bigint generated by default as identity,
+        RULE_ID bigint not null,
+        NODE_ID varchar(255) not null,
+        EVAL_GROUP_ID varchar(255) not null,
+        primary key (ID)
+    );
+
+    create table EVAL_ID_SEQUENCES (
+        SEQUENCE_NAME varchar(255) not null,
+        NEXT_VAL bigint,
+        primary key (SEQUENCE_NAME)
+    );
+
     create table EVAL_ITEM (
         ID bigint generated by default as identity,
         EID varchar(255),
@@ -265,7 +297,7 @@
     );
 
     create table EVAL_RESPONSE (
-        ID bigint generated by default as identity,
+        ID bigint not null,
         LAST_MODIFIED timestamp not null,
         OWNER varchar(255) not null,
         GROUP_ID varchar(255) not null,
@@ -302,6 +334,14 @@
         primary key (ID, SCALE_OPTION_INDEX)
     );
 
+    create table EVAL_SEARCH_TOKEN (
+        ID bigint generated by default as identity,
+        EVALUATION_ID bigint not null,
+        SOURCE varchar(10) not null,
+        TOKEN varchar(64) not null,
+        primary key (ID)
+    );
+
     create table EVAL_TAGS (
         ID bigint generated by default as identity,
         LAST_MODIFIED timestamp,
@@ -394,6 +434,10 @@
 
     create index eval_answer_num on EVAL_ANSWER (NUM_ANSWER);
 
+    create index eval_answerarch_eval on EVAL_ANSWER_ARCHIVE (EVALUATION_ID, RESPONSE_ID);
+
+    create index eval_answerarch_resp on EVAL_ANSWER_ARCHIVE (RESPONSE_ID);
+
     alter table EVAL_ANSWER 
         add constraint ANSWER_RESPONSE_FKC 
         foreign key (RESPONSE_FK) 
@@ -460,6 +504,8 @@
 
     create index eval_emailq_evalid on EVAL_EMAIL_PROCESSING_QUEUE (EVALUATION_ID);
 
+    create index eval_emailq_job on EVAL_EMAIL_PROCESSING_QUEUE (JOB_ID, JOB_PARTITION);
+
     create index eval_templ_owner on EVAL_EMAIL_TEMPLATE (OWNER);
 
     create index eval_templ_type on EVAL_EMAIL_TEMPLATE (TEMPLATE_TYPE);
@@ -506,6 +552,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES;
 
+    create index eval_hrulegroup_rule on EVAL_HIERARCHY_RULE_GROUP (RULE_ID);
+
+    create index eval_hrulegroup_node on EVAL_HIERARCHY_RULE_GROUP (NODE_ID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -559,6 +609,10 @@
         foreign key (ID) 
         references EVAL_SCALE;
 
+    create index eval_searchtoken_eval on EVAL_SEARCH_TOKEN (EVALUATION_ID);
+
+    create index eval_searchtoken_token on EVAL_SEARCH_TOKEN (TOKEN);
+
     create index eval_tags_tag on EVAL_TAGS (TAG);
 
     create index eval_tagsmeta_owner on EVAL_TAGS_META (OWNER);
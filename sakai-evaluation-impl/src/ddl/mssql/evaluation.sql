@@ -56,7 +56,7 @@
     );
 
     create table EVAL_ANSWER (
-        ID numeric(19,0) identity not null,
+        ID numeric(19,0) not null,
         LAST_MODIFIED datetime not null,
         TEMPLATEITEM_FK numeric(19,0) not null,
         ITEM_FK numeric(19,0) null,
@@ -70,6 +70,22 @@
         primary key (ID)
     );
 
+    create table EVAL_ANSWER_ARCHIVE (
+        ID numeric(19,0) not null,
+        EVALUATION_ID numeric(19,0) not null,
+        RESPONSE_ID numeric(19,0) not null,
+        TEMPLATEITEM_ID numeric(19,0) not null,
+        ITEM_ID numeric(19,0) null,
+        LAST_MODIFIED datetime not null,
+        NUM_ANSWER int null,
+        MULTI_ANSWER_CODE varchar(255) null,
+        ASSOCIATED_ID varchar(255) null,
+        ASSOCIATED_TYPE varchar(255) null,
+        TEXT_DATA image null,
+        COMMENT_DATA image null,
+        primary key (ID)
+    );
+
     create table EVAL_ASSIGN_GROUP (
         ID numeric(19,0) identity not null,
         EID varchar(255) null,
@@ -101,7 +117,7 @@
     );
 
     create table EVAL_ASSIGN_USER (
-        ID numeric(19,0) identity not null,
+        ID numeric(19,0) not null,
         EID varchar(255) null,
         LAST_MODIFIED datetime not null,
         OWNER varchar(255) not null,
@@ -128,7 +144,7 @@
     );
 
     create table EVAL_EMAIL_PROCESSING_QUEUE (
-        ID numeric(19,0) identity not null,
+        ID numeric(19,0) not null,
         EAU_ID numeric(19,0) null,
         USER_ID varchar(255) null,
         GROUP_ID varchar(255) not null,
@@ -137,6 +153,8 @@
         RESPONSE_ID numeric(19,0) null,
         EVAL_DUE_DATE datetime null,
         PROCESSING_STATUS tinyint null,
+        JOB_ID varchar(255) null,
+        JOB_PARTITION int null,
         primary key (ID)
     );
 
@@ -218,6 +236,20 @@
         primary key (ID)
     );
 
+    create table EVAL_HIERARCHY_RULE_GROUP (
+        ID numeric(19,0) identity not null,
+        RULE_ID numeric(19,0) not null,
+        NODE_ID varchar(255) not null,
+        EVAL_GROUP_ID varchar(255) not null,
+        primary key (ID)
+    );
+
+    create table EVAL_ID_SEQUENCES (
+        SEQUENCE_NAME varchar(255) not null,
+        NEXT_VAL numeric(19,0),
+        primary key (SEQUENCE_NAME)
+    );
+
     create table EVAL_ITEM (
         ID numeric(19,0) identity not null,
         EID varchar(255) null,
@@ -265,7 +297,7 @@
     );
 
     create table EVAL_RESPONSE (
-        ID numeric(19,0) identity not null,
+        ID numeric(19,0) not null,
         LAST_MODIFIED datetime not null,
         OWNER varchar(255) not null,
         GROUP_ID varchar(255) not null,
@@ -302,6 +334,14 @@
         primary key (ID, SCALE_OPTION_INDEX)
     );
 
+    create table EVAL_SEARCH_TOKEN (
+        ID numeric(19,0) identity not null,
+        EVALUATION_ID numeric(19,0) not null,
+        SOURCE varchar(10) not null,
+        TOKEN varchar(64) not null,
+        primary key (ID)
+    );
+
     create table EVAL_TAGS (
         ID numeric(19,0) identity not null,
         LAST_MODIFIED datetime null,
@@ -394,6 +434,10 @@
 
     create index eval_answer_num on EVAL_ANSWER (NUM_ANSWER);
 
+    create index eval_answerarch_eval on EVAL_ANSWER_ARCHIVE (EVALUATION_ID, RESPONSE_ID);
+
+    create index eval_answerarch_resp on EVAL_ANSWER_ARCHIVE (RESPONSE_ID);
+
     alter table EVAL_ANSWER 
         add constraint ANSWER_RESPONSE_FKC 
         foreign key (RESPONSE_FK) 
@@ -460,6 +504,8 @@
 
     create index eval_emailq_evalid on EVAL_EMAIL_PROCESSING_QUEUE (EVALUATION_ID);
 
+    create index eval_emailq_job on EVAL_EMAIL_PROCESSING_QUEUE (JOB_ID, JOB_PARTITION);
+
     create index eval_templ_owner on EVAL_EMAIL_TEMPLATE (OWNER);
 
     create index eval_templ_type on EVAL_EMAIL_TEMPLATE (TEMPLATE_TYPE);
@@ -506,6 +552,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES;
 
+    create index eval_hrulegroup_rule on EVAL_HIERARCHY_RULE_GROUP (RULE_ID);
+
+    create index eval_hrulegroup_node on EVAL_HIERARCHY_RULE_GROUP (NODE_ID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -559,6 +609,10 @@
         foreign key (ID) 
         references EVAL_SCALE;
 
+    create index eval_searchtoken_eval on EVAL_SEARCH_TOKEN (EVALUATION_ID);
+
+    create index eval_searchtoken_token on EVAL_SEARCH_TOKEN (TOKEN);
+
     create index eval_tags_tag on EVAL_TAGS (TAG);
 
     create index eval_tagsmeta_owner on EVAL_TAGS_META (OWNER);
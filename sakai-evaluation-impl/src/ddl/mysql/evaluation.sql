@@ -56,7 +56,7 @@
     ) ENGINE=InnoDB;
 
     create table EVAL_ANSWER (
-        ID bigint not null auto_increment,
+        ID bigint not null,
         LAST_MODIFIED datetime not null,
         TEMPLATEITEM_FK bigint not null,
         ITEM_FK bigint,
@@ -70,6 +70,22 @@
         primary key (ID)
     ) ENGINE=InnoDB;
 
+    create table EVAL_ANSWER_ARCHIVE (
+        ID bigint not null,
+        EVALUATION_ID bigint not null,
+        RESPONSE_ID bigint not null,
+        TEMPLATEITEM_ID bigint not null,
+        ITEM_ID bigint,
+        LAST_MODIFIED datetime not null,
+        NUM_ANSWER integer,
+        MULTI_ANSWER_CODE varchar(255),
+        ASSOCIATED_ID varchar(255),
+        ASSOCIATED_TYPE varchar(255),
+        TEXT_DATA longblob,
+        COMMENT_DATA longblob,
+        primary key (ID)
+    ) ENGINE=InnoDB;
+
     create table EVAL_ASSIGN_GROUP (
         ID bigint not null auto_increment,
         EID varchar(255),
@@ -101,7 +117,7 @@
     ) ENGINE=InnoDB;
 
     create table EVAL_ASSIGN_USER (
-        ID bigint not null auto_increment,
+        ID bigint not null,
         EID varchar(255),
         LAST_MODIFIED datetime not null,
         OWNER varchar(255) not null,
@@ -128,7 +144,7 @@
     ) ENGINE=InnoDB;
 
     create table EVAL_EMAIL_PROCESSING_QUEUE (
-        ID bigint not null auto_increment,
+        ID bigint not null,
         EAU_ID bigint,
         USER_ID varchar(255),
         GROUP_ID varchar(255) not null,
@@ -137,6 +153,8 @@
         RESPONSE_ID bigint,
         EVAL_DUE_DATE datetime,
         PROCESSING_STATUS tinyint,
+        JOB_ID varchar(255),
+        JOB_PARTITION integer,
         primary key (ID)
     ) ENGINE=InnoDB;
 
@@ -218,6 +236,20 @@
         primary key (ID)
     ) ENGINE=InnoDB;
 
+    create table EVAL_HIERARCHY_RULE_GROUP (
+        ID bigint not null auto_increment,
+        RULE_ID bigint not null,
+        NODE_ID varchar(255) not null,
+        EVAL_GROUP_ID varchar(255) not null,
+        primary key (ID)
+    ) ENGINE=InnoDB;
+
+    create table EVAL_ID_SEQUENCES (
+        SEQUENCE_NAME varchar(255) not null,
+        NEXT_VAL bigint,
+        primary key (SEQUENCE_NAME)
+    ) ENGINE=InnoDB;
+
     create table EVAL_ITEM (
         ID bigint not null auto_increment,
         EID varchar(255),
@@ -265,7 +297,7 @@
     ) ENGINE=InnoDB;
 
     create table EVAL_RESPONSE (
-        ID bigint not null auto_increment,
+        ID bigint not null,
         LAST_MODIFIED datetime not null,
         OWNER varchar(255) not null,
         GROUP_ID varchar(255) not null,
@@ -302,6 +334,14 @@
         primary key (ID, SCALE_OPTION_INDEX)
     ) ENGINE=InnoDB;
 
+    create table EVAL_SEARCH_TOKEN (
+        ID bigint not null auto_increment,
+        EVALUATION_ID bigint not null,
+        SOURCE varchar(10) not null,
+        TOKEN varchar(64) not null,
+        primary key (ID)
+    ) ENGINE=InnoDB;
+
     create table EVAL_TAGS (
         ID bigint not null auto_increment,
         LAST_MODIFIED datetime,
@@ -396,6 +436,10 @@
 
     create index eval_answer_num on EVAL_ANSWER (NUM_ANSWER);
 
+    create index eval_answerarch_eval on EVAL_ANSWER_ARCHIVE (EVALUATION_ID, RESPONSE_ID);
+
+    create index eval_answerarch_resp on EVAL_ANSWER_ARCHIVE (RESPONSE_ID);
+
     alter table EVAL_ANSWER 
         add index ANSWER_RESPONSE_FKC (RESPONSE_FK), 
         add constraint ANSWER_RESPONSE_FKC 
@@ -468,6 +512,8 @@
 
     create index eval_emailq_evalid on EVAL_EMAIL_PROCESSING_QUEUE (EVALUATION_ID);
 
+    create index eval_emailq_job on EVAL_EMAIL_PROCESSING_QUEUE (JOB_ID, JOB_PARTITION);
+
     create index eval_templ_owner on EVAL_EMAIL_TEMPLATE (OWNER);
 
     create index eval_templ_type on EVAL_EMAIL_TEMPLATE (TEMPLATE_TYPE);
@@ -518,6 +564,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES (ID);
 
+    create index eval_hrulegroup_rule on EVAL_HIERARCHY_RULE_GROUP (RULE_ID);
+
+    create index eval_hrulegroup_node on EVAL_HIERARCHY_RULE_GROUP (NODE_ID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -576,6 +626,10 @@
         foreign key (ID) 
         references EVAL_SCALE (ID);
 
+    create index eval_searchtoken_eval on EVAL_SEARCH_TOKEN (EVALUATION_ID);
+
+    create index eval_searchtoken_token on EVAL_SEARCH_TOKEN (TOKEN);
+
     create index eval_tags_tag on EVAL_TAGS (TAG);
 
     create index eval_tagsmeta_owner on EVAL_TAGS_META (OWNER);
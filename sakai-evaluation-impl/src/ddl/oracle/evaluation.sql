@@ -70,6 +70,22 @@
         primary key (ID)
     );
 
+    create table EVAL_ANSWER_ARCHIVE (
+        ID number(19,0) not null,
+        EVALUATION_ID number(19,0) not null,
+        RESPONSE_ID number(19,0) not null,
+        TEMPLATEITEM_ID number(19,0) not null,
+        ITEM_ID number(19,0),
+        LAST_MODIFIED timestamp not null,
+        NUM_ANSWER number(10,0),
+        MULTI_ANSWER_CODE varchar2(255 char),
+        ASSOCIATED_ID varchar2(255 char),
+        ASSOCIATED_TYPE varchar2(255 char),
+        TEXT_DATA blob,
+        COMMENT_DATA blob,
+        primary key (ID)
+    );
+
     create table EVAL_ASSIGN_GROUP (
         ID number(19,0) not null,
         EID varchar2(255 char),
@@ -137,6 +153,8 @@
         RESPONSE_ID number(19,0),
         EVAL_DUE_DATE timestamp,
         PROCESSING_STATUS number(3,0),
+        JOB_ID varchar2(255 char),
+        JOB_PARTITION number(10,0),
         primary key (ID)
     );
 
@@ -218,6 +236,20 @@
         primary key (ID)
     );
 
+    create table EVAL_HIERARCHY_RULE_GROUP (
+        ID number(19,0) not null,
+        RULE_ID number(19,0) not null,
+        NODE_ID varchar2(255 char) not null,
+        EVAL_GROUP_ID varchar2(255 char) not null,
+        primary key (ID)
+    );
+
+    create table EVAL_ID_SEQUENCES (
+        SEQUENCE_NAME varchar2(255 char) not null,
+        NEXT_VAL number(19,0),
+        primary key (SEQUENCE_NAME)
+    );
+
     create table EVAL_ITEM (
         ID number(19,0) not null,
         EID varchar2(255 char),
@@ -302,6 +334,14 @@
         primary key (ID, SCALE_OPTION_INDEX)
     );
 
+    create table EVAL_SEARCH_TOKEN (
+        ID number(19,0) not null,
+        EVALUATION_ID number(19,0) not null,
+        SOURCE varchar2(10 char) not null,
+        TOKEN varchar2(64 char) not null,
+        primary key (ID)
+    );
+
     create table EVAL_TAGS (
         ID number(19,0) not null,
         LAST_MODIFIED timestamp,
@@ -394,6 +434,10 @@
 
     create index eval_answer_num on EVAL_ANSWER (NUM_ANSWER);
 
+    create index eval_answerarch_eval on EVAL_ANSWER_ARCHIVE (EVALUATION_ID, RESPONSE_ID);
+
+    create index eval_answerarch_resp on EVAL_ANSWER_ARCHIVE (RESPONSE_ID);
+
     alter table EVAL_ANSWER 
         add constraint ANSWER_RESPONSE_FKC 
         foreign key (RESPONSE_FK) 
@@ -460,6 +504,8 @@
 
     create index eval_emailq_evalid on EVAL_EMAIL_PROCESSING_QUEUE (EVALUATION_ID);
 
+    create index eval_emailq_job on EVAL_EMAIL_PROCESSING_QUEUE (JOB_ID, JOB_PARTITION);
+
     create index eval_templ_owner on EVAL_EMAIL_TEMPLATE (OWNER);
 
     create index eval_templ_type on EVAL_EMAIL_TEMPLATE (TEMPLATE_TYPE);
@@ -506,6 +552,10 @@
         foreign key (ID) 
         references EVAL_GROUPNODES;
 
+    create index eval_hrulegroup_rule on EVAL_HIERARCHY_RULE_GROUP (RULE_ID);
+
+    create index eval_hrulegroup_node on EVAL_HIERARCHY_RULE_GROUP (NODE_ID);
+
     create index eval_item_owner on EVAL_ITEM (OWNER);
 
     create index eval_item_sharing on EVAL_ITEM (SHARING);
@@ -559,6 +609,10 @@
         foreign key (ID) 
         references EVAL_SCALE;
 
+    create index eval_searchtoken_eval on EVAL_SEARCH_TOKEN (EVALUATION_ID);
+
+    create index eval_searchtoken_token on EVAL_SEARCH_TOKEN (TOKEN);
+
     create index eval_tags_tag on EVAL_TAGS (TAG);
 
     create index eval_tagsmeta_owner on EVAL_TAGS_META (OWNER);
@@ -15,9 +15,14 @@
 package org.sakaiproject.evaluation.dao;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalSettings;
@@ -56,6 +61,45 @@ public class EvalAdhocSupportImpl implements EvalAdhocSupport {
       this.settings = settings;
    }
 
+   /**
+    * How long (in ms) an entry in the membership index is used before it is reloaded,
+    * this limits how stale the index can be when a group is changed on another server
+    */
+   protected static final long MEMBERSHIP_INDEX_TTL = 5 * 60 * 1000L;
+   /**
+    * The default maximum number of (userId, permission) entries held in the membership index
+    */
+   protected static final int MEMBERSHIP_INDEX_MAX_ENTRIES = 10000;
+
+   /**
+    * The adhoc group membership index, (userId, permission) -> adhoc group ids,
+    * when it is full the expired entries are dropped and if it is still full then it is cleared
+    */
+   private final Map<String, MembershipEntry> membershipIndex = new ConcurrentHashMap<>();
+
+   private volatile int membershipIndexMaxEntries = MEMBERSHIP_INDEX_MAX_ENTRIES;
+   /**
+    * @param membershipIndexMaxEntries the maximum number of (userId, permission) entries in the membership index, must be 1 or more
+    */
+   public void setMembershipIndexMaxEntries(int membershipIndexMaxEntries) {
+      if (membershipIndexMaxEntries < 1) {
+         throw new IllegalArgumentException("membershipIndexMaxEntries must be 1 or more: " + membershipIndexMaxEntries);
+      }
+      this.membershipIndexMaxEntries = membershipIndexMaxEntries;
+   }
+
+   /**
+    * The adhoc group ids for one (userId, permission) key in the membership index
+    */
+   private static class MembershipEntry {
+      final Set<Long> groupIds;
+      final long loadedTime;
+      MembershipEntry(Set<Long> groupIds) {
+         this.groupIds = groupIds;
+         this.loadedTime = System.currentTimeMillis();
+      }
+   }
+
 
    // USERS
 
@@ -271,6 +315,7 @@ public class EvalAdhocSupportImpl implements EvalAdhocSupport {
    public void deleteAdhocGroup(Long adhocGroupId) {
        if (adhocGroupId != null) {
            dao.delete(EvalAdhocGroup.class, adhocGroupId);
+           invalidateMembershipIndex(adhocGroupId, null);
        }
     }
 
@@ -292,6 +337,7 @@ public class EvalAdhocSupportImpl implements EvalAdhocSupport {
       }
 
       dao.save(group);
+      invalidateMembershipIndex(group.getId(), group);
       log.info("Saved adhoc group: " + group.getEvalGroupId());
    }
 
@@ -326,8 +372,12 @@ public class EvalAdhocSupportImpl implements EvalAdhocSupport {
    public List<EvalAdhocGroup> getAdhocGroupsByUserAndPerm(String userId, String permissionConstant) {
       List<EvalAdhocGroup> groups = new ArrayList<>(0);
       if ( (Boolean) settings.get(EvalSettings.ENABLE_ADHOC_GROUPS) ) {
-         // passthrough to the dao method
-         groups = dao.getEvalAdhocGroupsByUserAndPerm(userId, permissionConstant);
+         Set<Long> groupIds = getAdhocGroupIdsByUserAndPerm(userId, permissionConstant);
+         if (! groupIds.isEmpty()) {
+            groups = dao.findBySearch(EvalAdhocGroup.class, new Search(
+                    new Restriction("id", groupIds.toArray(new Long[groupIds.size()])), 
+                    new Order("id") ) );
+         }
       }
       return groups;
    }
@@ -344,10 +394,99 @@ public class EvalAdhocSupportImpl implements EvalAdhocSupport {
    public boolean isUserAllowedInAdhocGroup(String userId, String permissionConstant, String evalGroupId) {
       boolean allowed = false;
       if ( (Boolean) settings.get(EvalSettings.ENABLE_ADHOC_GROUPS) ) {
-         // passthrough to the dao method
-         allowed = dao.isUserAllowedInAdhocGroup(userId, permissionConstant, evalGroupId);
+         if (userId == null || evalGroupId == null) {
+            throw new IllegalArgumentException("userId and evalGroupId must not be null");
+         }
+         Long adhocGroupId = EvalAdhocGroup.getIdFromAdhocEvalGroupId(evalGroupId);
+         if (adhocGroupId != null) {
+            allowed = getAdhocGroupIdsByUserAndPerm(userId, permissionConstant).contains(adhocGroupId);
+         }
       }
       return allowed;
    }
 
+
+   // MEMBERSHIP INDEX
+
+   /**
+    * Get the ids of the adhoc groups in which a user has a permission from the membership index,
+    * loads the entry from the database if it is not in the index (or has expired)
+    * 
+    * @param userId the internal user id (not username)
+    * @param permissionConstant {@link EvalConstants#PERM_BE_EVALUATED} or {@link EvalConstants#PERM_TAKE_EVALUATION},
+    * other permissions will return no results
+    * @return the set of adhoc group ids (persistent ids, not evalGroupIds)
+    */
+   protected Set<Long> getAdhocGroupIdsByUserAndPerm(String userId, String permissionConstant) {
+      if (! EvalConstants.PERM_BE_EVALUATED.equals(permissionConstant)
+            && ! EvalConstants.PERM_TAKE_EVALUATION.equals(permissionConstant)) {
+         return Collections.emptySet();
+      }
+      String key = makeMembershipKey(userId, permissionConstant);
+      MembershipEntry entry = membershipIndex.get(key);
+      if (entry == null 
+            || System.currentTimeMillis() - entry.loadedTime > MEMBERSHIP_INDEX_TTL) {
+         Set<Long> groupIds = ConcurrentHashMap.newKeySet();
+         for (EvalAdhocGroup group : dao.getEvalAdhocGroupsByUserAndPerm(userId, permissionConstant)) {
+            groupIds.add(group.getId());
+         }
+         entry = new MembershipEntry(groupIds);
+         if (membershipIndex.size() >= membershipIndexMaxEntries && ! membershipIndex.containsKey(key)) {
+            removeExpiredMembershipEntries();
+            if (membershipIndex.size() >= membershipIndexMaxEntries) {
+               membershipIndex.clear();
+            }
+         }
+         membershipIndex.put(key, entry);
+      }
+      return entry.groupIds;
+   }
+
+   /**
+    * @return the number of entries in the membership index (including expired entries which have not been removed yet)
+    */
+   protected int getMembershipIndexSize() {
+      return membershipIndex.size();
+   }
+
+   private void removeExpiredMembershipEntries() {
+      long now = System.currentTimeMillis();
+      for (Iterator<MembershipEntry> iterator = membershipIndex.values().iterator(); iterator.hasNext();) {
+         if (now - iterator.next().loadedTime > MEMBERSHIP_INDEX_TTL) {
+            iterator.remove();
+         }
+      }
+   }
+
+   /**
+    * Remove all membership index entries which could be affected by a change to an adhoc group,
+    * this is every entry which contains the group and the entries for the current members of the group
+    * 
+    * @param adhocGroupId the persistent id of the changed group
+    * @param group (OPTIONAL) the group as it is now, null if it was removed
+    */
+   protected void invalidateMembershipIndex(Long adhocGroupId, EvalAdhocGroup group) {
+      for (Iterator<Entry<String, MembershipEntry>> iterator = membershipIndex.entrySet().iterator(); iterator.hasNext();) {
+         if (iterator.next().getValue().groupIds.contains(adhocGroupId)) {
+            iterator.remove();
+         }
+      }
+      if (group != null) {
+         if (group.getParticipantIds() != null) {
+            for (String userId : group.getParticipantIds()) {
+               membershipIndex.remove( makeMembershipKey(userId, EvalConstants.PERM_TAKE_EVALUATION) );
+            }
+         }
+         if (group.getEvaluateeIds() != null) {
+            for (String userId : group.getEvaluateeIds()) {
+               membershipIndex.remove( makeMembershipKey(userId, EvalConstants.PERM_BE_EVALUATED) );
+            }
+         }
+      }
+   }
+
+   private String makeMembershipKey(String userId, String permissionConstant) {
+      return userId + ":" + permissionConstant;
+   }
+
 }
@@ -14,6 +14,7 @@
  */
 package org.sakaiproject.evaluation.dao;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -22,12 +23,18 @@ import java.util.Set;
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.model.EvalAdhocGroup;
 import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.model.EvalAnswerArchive;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
+import org.sakaiproject.evaluation.model.EvalEmailProcessingData;
+import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalHierarchyRule;
+import org.sakaiproject.evaluation.model.EvalHierarchyRuleGroup;
 import org.sakaiproject.evaluation.model.EvalItem;
 import org.sakaiproject.evaluation.model.EvalItemGroup;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalScale;
+import org.sakaiproject.evaluation.model.EvalSearchToken;
 import org.sakaiproject.evaluation.model.EvalTemplate;
 import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.genericdao.api.GeneralGenericDao;
@@ -98,6 +105,108 @@ public interface EvaluationDao extends GeneralGenericDao {
             String[] evalGroupIds, String assignTypeConstant, String assignStatusConstant, 
             String includeConstant, String evalStateConstant);
 
+    /**
+     * Get the minimal data needed to synchronize the user assignments for an evaluation,
+     * this is a single projection query so no {@link EvalAssignUser} entities are loaded
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     * @param evalGroupId [OPTIONAL] the internal group id of an eval group, limits the results to this group
+     * @return a list of rows of [id (Long), userId, evalGroupId, type, status] for the assignments with any status
+     */
+    public List<Object[]> getEvalAssignUserRows(Long evaluationId, String evalGroupId);
+
+    /**
+     * Insert a large number of new user assignments, the inserts are flushed in batches
+     * and the saved assignments are evicted from the session after each batch
+     * 
+     * @param assignUsers the new {@link EvalAssignUser}s to insert (must not have ids set)
+     */
+    public void saveEvalAssignUsers(Collection<EvalAssignUser> assignUsers);
+
+    /**
+     * Remove user assignments by id using bulk deletes (in chunks),
+     * this does not load the assignments
+     * 
+     * @param assignUserIds the ids of {@link EvalAssignUser}s to remove
+     * @return the number of assignments removed
+     */
+    public int removeEvalAssignUsers(Long[] assignUserIds);
+
+    /**
+     * Get scales with their options already loaded (in one query per chunk of ids),
+     * this avoids a query for the options of every scale
+     * 
+     * @param scaleIds the ids of {@link EvalScale}s
+     * @return the list of scales (with options loaded) ordered by id
+     */
+    public List<EvalScale> getScalesWithOptions(Long[] scaleIds);
+
+    /**
+     * Insert new entities in the order given, ids are assigned as each entity is saved
+     * and the inserts are flushed in batches (the entities stay in the session)
+     * 
+     * @param entities the new persistent objects to insert (must not have ids set)
+     */
+    public void saveNewEntities(Collection<?> entities);
+
+    /**
+     * Get the search tokens indexed for an evaluation
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     * @param source [OPTIONAL] only get tokens from this source (e.g. {@link EvalSearchToken#SOURCE_GROUP}), null for all
+     * @return the set of tokens
+     */
+    public Set<String> getSearchTokens(Long evaluationId, String source);
+
+    /**
+     * Store search tokens for an evaluation
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     * @param source where the tokens came from (e.g. {@link EvalSearchToken#SOURCE_TITLE})
+     * @param tokens the lowercase search tokens
+     * @param replace if true then existing tokens for this evaluation and source are removed first,
+     * otherwise the tokens are added (the caller should skip tokens which are already stored)
+     */
+    public void saveSearchTokens(Long evaluationId, String source, Collection<String> tokens, boolean replace);
+
+    /**
+     * Remove all the search tokens for evaluations (in chunked bulk deletes)
+     * 
+     * @param evaluationIds the unique ids of {@link EvalEvaluation}s
+     * @return the number of tokens removed
+     */
+    public int removeSearchTokens(Long[] evaluationIds);
+
+    /**
+     * Get the ids of evaluations which are not in the search index yet
+     * (they do not have a {@link EvalSearchToken#SOURCE_ID} token)
+     * 
+     * @param limit the maximum number of ids to return
+     * @return the list of evaluation ids (lowest first)
+     */
+    public List<Long> getEvaluationIdsWithoutSearchTokens(int limit);
+
+    /**
+     * Count the evaluations in the search index which match all the search prefixes
+     * 
+     * @param prefixes the lowercase token prefixes, each one must match the start of a token for the evaluation
+     * @param sources [OPTIONAL] only match tokens from these sources (e.g. {@link EvalSearchToken#SOURCE_GROUP}), null for all
+     * @return the number of matching evaluations
+     */
+    public int countEvaluationsBySearchTokens(String[] prefixes, String[] sources);
+
+    /**
+     * Get the evaluations in the search index which match all the search prefixes
+     * 
+     * @param prefixes the lowercase token prefixes, each one must match the start of a token for the evaluation
+     * @param sources [OPTIONAL] only match tokens from these sources (e.g. {@link EvalSearchToken#SOURCE_GROUP}), null for all
+     * @param order [OPTIONAL] the evaluation property to sort by (e.g. title), null to sort by title
+     * @param start the result to start with (for paging), 0 means start with the first one
+     * @param limit the total number of results to return, 0 means return all
+     * @return the list of matching evaluations
+     */
+    public List<EvalEvaluation> getEvaluationsBySearchTokens(String[] prefixes, String[] sources, String order, int start, int limit);
+
     /**
      * Returns all evaluations which the given user can take,
      * can also include anonymous evaluations and filter on active/approved
@@ -215,10 +324,40 @@ public interface EvaluationDao extends GeneralGenericDao {
      * if null then just return answers for all groups
      * @param templateItemIds the ids of the template items you want answers for,
      * if null then return answers for all template items
-     * @return a list of EvalAnswer objects or empty list if none found
+     * @return a list of EvalAnswer objects or empty list if none found,
+     * answers which were archived (see {@link #archiveAnswers(Long)}) are included but are not persistent
      */
     public List<EvalAnswer> getAnswers(Long evalId, String[] evalGroupIds, Long[] templateItemIds);
 
+    /**
+     * Get the evaluations which closed before a date and still have answers in the answers table
+     * 
+     * @param closedBefore only include evaluations which were due before this date
+     * @param maxResults the maximum number of ids to return, 0 for all
+     * @return the list of evaluation ids (oldest first)
+     */
+    public List<Long> getEvaluationIdsToArchive(Date closedBefore, int maxResults);
+
+    /**
+     * Move all the answers for an evaluation out of the answers table into the archive table
+     * ({@link EvalAnswerArchive}), the text and comments are compressed and the responses are left in place<br/>
+     * {@link #getAnswers(Long, String[], Long[])} reads the archived answers so reports are not affected
+     * 
+     * @param evaluationId the id of the evaluation to archive the answers for
+     * @return the number of answers archived
+     */
+    public int archiveAnswers(Long evaluationId);
+
+    /**
+     * Move all the archived answers for an evaluation back into the answers table,
+     * this must be done before an evaluation is reopened since responses only see the answers in the answers table
+     * (the restored answers get new ids)
+     * 
+     * @param evaluationId the id of the evaluation to restore the answers for
+     * @return the number of answers restored (0 if none were archived)
+     */
+    public int restoreAnswers(Long evaluationId);
+
     /**
      * Removes a group of templateItems and updates all related items 
      * and templates at the same time (inside one transaction)
@@ -306,6 +445,21 @@ public interface EvaluationDao extends GeneralGenericDao {
      */
     public List<Long> getResponseIds(Long evalId, String[] evalGroupIds, String[] userIds, Boolean completed);
 
+    /**
+     * Get one page of the responders roster for an evaluation, the evaluator assignments
+     * are joined to the responses in the database so no entities are loaded
+     * 
+     * @param evaluationId the unique id of an {@link EvalEvaluation}
+     * @param evalGroupId [OPTIONAL] the internal group id of an eval group, limits the results to this group
+     * @param respondersOnly if true then only users who have responded are included (use this for anonymous
+     * evaluations which have no assignments), otherwise all evaluators which are not removed are included
+     * @param start the index of the first row to return
+     * @param limit the maximum number of rows to return, 0 for all rows
+     * @return a list of rows of [evalGroupId, userId, responseId (Long or null), endTime (Date or null)]
+     * ordered by group and then user
+     */
+    public List<Object[]> getResponderRows(Long evaluationId, String evalGroupId, boolean respondersOnly, int start, int limit);
+
     /**
      * Removes an array of responses and all their associated answers at
      * the same time (in a single transaction)<br/>
@@ -317,6 +471,52 @@ public interface EvaluationDao extends GeneralGenericDao {
      */
     public void removeResponses(Long[] responseIds);
 
+    /**
+     * Get the ids of all evaluations in a term, ordered by id,
+     * partial evaluations are never included
+     *
+     * @param termId the unique id of a term
+     * @param includeDeleted if true then include evaluations which are in the deleted state,
+     * otherwise only include evaluations which have not been deleted yet
+     * @return a list of the ids of {@link EvalEvaluation}s
+     */
+    public List<Long> getEvaluationIdsByTermId(String termId, boolean includeDeleted);
+
+    /**
+     * Find which of a set of evaluations have at least one response
+     *
+     * @param evaluationIds the unique ids of {@link EvalEvaluation}s
+     * @return the set of evaluation ids which have responses
+     */
+    public Set<Long> getEvaluationIdsWithResponses(Long[] evaluationIds);
+
+    /**
+     * Removes all responses and their answers for a set of evaluations
+     * (in chunked bulk deletes without loading them)<br/>
+     * <b>WARNING:</b> This does not check permissions for removal of responses
+     *
+     * @param evaluationIds the unique ids of {@link EvalEvaluation}s
+     * @return the number of responses removed
+     */
+    public int removeResponsesForEvaluations(Long[] evaluationIds);
+
+    /**
+     * Removes all the assigned users, groups and hierarchy nodes for a set of evaluations
+     * (in chunked bulk deletes without loading them)
+     *
+     * @param evaluationIds the unique ids of {@link EvalEvaluation}s
+     * @return the number of assignments removed
+     */
+    public int removeAssignmentsForEvaluations(Long[] evaluationIds);
+
+    /**
+     * Find which of a set of email templates are still used by any evaluation
+     *
+     * @param emailTemplateIds the unique ids of {@link EvalEmailTemplate}s
+     * @return the set of email template ids which are in use
+     */
+    public Set<Long> getEmailTemplateIdsInUse(Long[] emailTemplateIds);
+
     /**
      * Get a list of evaluation categories
      * 
@@ -348,6 +548,20 @@ public interface EvaluationDao extends GeneralGenericDao {
      */
     public Set<String> getResponseUserIds(Long evaluationId, String[] evalGroupIds, Boolean completed);
 
+    /**
+     * Get the ids of all the evaluations which a user has responded to (completely or partly),
+     * this is a single query so it is the way to split a set of evaluations into taken and untaken
+     * 
+     * @param userId the internal user id (not username)
+     * @param evaluationIds [OPTIONAL] the unique ids of the {@link EvalEvaluation}s to limit the results to,
+     * can be null to check all evaluations
+     * @param completed if true only include completed responses, 
+     * if false only include incomplete responses,
+     * if null then include all responses
+     * @return the set of evaluation ids which the user has responded to
+     */
+    public Set<Long> getResponseEvaluationIds(String userId, Long[] evaluationIds, Boolean completed);
+
     /**
      * Get all the evalGroupIds for an evaluation which are viewable by
      * the input permission,
@@ -367,6 +581,29 @@ public interface EvaluationDao extends GeneralGenericDao {
     public Set<String> getViewableEvalGroupIds(Long evaluationId, String permissionConstant,
             String[] evalGroupIds);
 
+    /**
+     * Get the groups a user is assigned to (with any type) in many evaluations along with the
+     * results viewing flags of the assigned group, this is the data needed to work out which
+     * groups a user can view the results for by role in a single query<br/>
+     * Removed user assignments and groups which are not assigned to the evaluation are not included
+     * 
+     * @param evaluationIds the unique ids of {@link EvalEvaluation} objects
+     * @param userId the internal user id (not username)
+     * @return a list of rows of [evaluationId (Long), evalGroupId, type, instructorsViewResults (Boolean), studentsViewResults (Boolean)]
+     */
+    public List<Object[]> getUserAssignGroupRows(Long[] evaluationIds, String userId);
+
+    /**
+     * Get a stamp for the assigned groups of each evaluation and the assignments of a user in it,
+     * the stamp changes when groups or the user assignments are added, removed or updated
+     * so it can be used to tell if anything cached for the user and evaluation is stale
+     * 
+     * @param evaluationIds the unique ids of {@link EvalEvaluation} objects
+     * @param userId the internal user id (not username)
+     * @return a map of evaluationId -> stamp, evaluations with no groups and no user assignments are not included
+     */
+    public Map<Long, String> getAssignmentStamps(Long[] evaluationIds, String userId);
+
     /**
      * Get adhoc groups for a user and permission, 
      * this is a way to check the perms for a user
@@ -486,6 +723,9 @@ public interface EvaluationDao extends GeneralGenericDao {
      * Access one page of summary info needed to render consolidated email templates. 
      * The summary info consists of a user-id, a user-eid, a template-id (EmailTemplate.ID) and the earliest 
      * due date of Active evals which use the email template and which the referenced user can take.
+     * @param jobId the job the recipients were staged for (see {@link #selectConsolidatedEmailRecipients(String, boolean, Date, boolean, Date, String)})
+     * @param jobPartition only return mappings from this partition of the staged recipients
+     *      (see {@link EvalEmailProcessingData#makeJobPartition(String)}), null for all partitions
      * @param sendingAvailableEmails Should be true if the results will be used to send notifications that new 
      * 		evaluations are opening, and false if they are to be used for reminders. 
      * @param pageSize The maximum number of mappings to return. A mapping consists of a user-id, an email template
@@ -498,28 +738,33 @@ public interface EvaluationDao extends GeneralGenericDao {
      * 		object for EvalConstants.KEY_USER_ID, a String object for EvalConstants.KEY_USER_EID, a Long 
      * 		object for EvalConstants.KEY_EMAIL_TEMPLATE_ID and a Date object forEvalConstants.KEY_EARLIEST_DUE_DATE).  
      */
-    public List<Map<String,Object>> getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page);
+    public List<Map<String,Object>> getConsolidatedEmailMapping(String jobId, Integer jobPartition, boolean sendingAvailableEmails, int pageSize, int page);
 
     /**
-     * Build the email processing queue by adding one record for each evalAssignUser record 
+     * Build the email processing queue for a job so that it holds one record for each evalAssignUser record 
      * matching the search criteria.  Search criteria are determined based on the values of 
      * EvalAssignUser.availableEmailSent, EvalAssignUser.reminderEmailSent and 
-     * EvalEmailTemplate.emailTemplateType.   
+     * EvalEmailTemplate.emailTemplateType.<br/>
+     * The records staged by the previous run of the same job are kept, only the records which no longer
+     * match (or whose evaluation due date or template changed) are removed and only the newly matching ones are added
+     * @param jobId the stable id of the job to stage the records for (e.g. the email template type),
+     *      records staged for other jobs are not touched
      * @param useAvailableEmailSent Should be true if the availableEmailSent date should be used in selecting records.
      * @param availableEmailSent The date to use if querying by availableEmailSent.
      * @param useReminderEmailSent Should be true if the reminderEmailSent date should be used in selecting records.
      * @param reminderEmailSent The date to use if querying by reminderEmailSent.
      * @param emailTemplateType The type of template (ConsolidatedAvailable or ConsolidateReminder) to find.
-     * @return
+     * @return the number of records staged for the job
      */
-    public int selectConsolidatedEmailRecipients(boolean useAvailableEmailSent,
+    public int selectConsolidatedEmailRecipients(String jobId, boolean useAvailableEmailSent,
             Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType);
 
     /**
-     * Remove all records from the the email processing queue and report the number of items removed.
-     * @return 
+     * Remove the records staged for a job from the the email processing queue and report the number of items removed.
+     * @param jobId the job to remove the records for, null to remove all records
+     * @return the number of records removed
      */
-    public int resetConsolidatedEmailRecipients();
+    public int resetConsolidatedEmailRecipients(String jobId);
 
     /**
      * Returns a list of evaluation responses that have been saved but not 
@@ -534,9 +779,10 @@ public interface EvaluationDao extends GeneralGenericDao {
 
     /**
      * Reports the number of distinct eval groups for which mappings are currently in the email processing queue. 
+     * @param jobId only count the records staged for this job, null to count all records
      * @return
      */
-    public int countDistinctGroupsInConsolidatedEmailMapping();
+    public int countDistinctGroupsInConsolidatedEmailMapping(String jobId);
 
     /**
      * Get a list of site IDs that have a section attached that matches the section title provided
@@ -553,4 +799,37 @@ public interface EvaluationDao extends GeneralGenericDao {
      * @return a list of site IDs that match the criteria
      */
     public Set<String> getAllSiteIDsMatchingSiteTitle( String siteTitleWithWildcards );
+
+    /**
+     * Get the eval groups which matched the hierarchy node rules for a set of nodes,
+     * these are stored by the hierarchy logic as {@link EvalHierarchyRuleGroup}s
+     * 
+     * @param nodeIds the unique ids of hierarchy nodes
+     * @return a map of nodeId -> set of evalGroupIds, nodes without any rule groups are not included
+     */
+    public Map<String, Set<String>> getRuleGroupsForNodes(String[] nodeIds);
+
+    /**
+     * @return the ids of all the hierarchy rules which have stored rule groups
+     */
+    public Set<Long> getRuleGroupRuleIds();
+
+    /**
+     * Replace the stored eval groups for a hierarchy node rule,
+     * only the rows which changed are removed or added
+     * 
+     * @param ruleId the unique id of an {@link EvalHierarchyRule}
+     * @param nodeId the unique id of the node the rule is assigned to
+     * @param evalGroupIds the eval groups currently matched by the rule
+     * @return true if the stored groups changed, false otherwise
+     */
+    public boolean replaceRuleGroups(Long ruleId, String nodeId, Set<String> evalGroupIds);
+
+    /**
+     * Remove all stored eval groups for a set of hierarchy node rules
+     * 
+     * @param ruleIds the unique ids of {@link EvalHierarchyRule}s
+     * @return the number of rule groups removed
+     */
+    public int removeRuleGroups(Long[] ruleIds);
 }
@@ -16,13 +16,18 @@ package org.sakaiproject.evaluation.dao;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.hibernate.HibernateException;
@@ -39,14 +44,18 @@ import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
 import org.sakaiproject.evaluation.model.EvalAdhocGroup;
 import org.sakaiproject.evaluation.model.EvalAnswer;
+import org.sakaiproject.evaluation.model.EvalAnswerArchive;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
+import org.sakaiproject.evaluation.model.EvalEmailProcessingData;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalHierarchyRuleGroup;
 import org.sakaiproject.evaluation.model.EvalItem;
 import org.sakaiproject.evaluation.model.EvalItemGroup;
 import org.sakaiproject.evaluation.model.EvalLock;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalScale;
+import org.sakaiproject.evaluation.model.EvalSearchToken;
 import org.sakaiproject.evaluation.model.EvalTemplate;
 import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
@@ -81,6 +90,29 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 
     protected static final int MAX_UPDATE_SIZE = 999;
 
+    /**
+     * The largest number of values bound into a single IN clause, larger arrays
+     * are split into chunks of this size (Oracle fails at more than 1000),
+     * this must be a power of 2 so that padded chunks line up with the buckets
+     */
+    protected static final int MAX_IN_CLAUSE_SIZE = 512;
+    /**
+     * The number of inserts which are flushed together when saving large numbers of new entities
+     */
+    protected static final int INSERT_BATCH_SIZE = 100;
+    /**
+     * The number of new consolidated email recipients read and staged at a time
+     */
+    protected static final int STAGING_PAGE_SIZE = 1000;
+
+    private static final String SQL_SELECT_RESPONDER_ROWS = "SELECT au.GROUP_ID, au.USER_ID, r.ID, r.END_TIME "
+            + "FROM EVAL_ASSIGN_USER au "
+            + "LEFT OUTER JOIN EVAL_RESPONSE r "
+            + "ON r.EVALUATION_FK = au.EVALUATION_FK AND r.OWNER = au.USER_ID AND r.GROUP_ID = au.GROUP_ID "
+            + "WHERE au.EVALUATION_FK = :evalId "
+            + "AND au.ASSIGN_TYPE = :evaluatorType "
+            + "AND au.ASSIGN_STATUS <> :removedStatus";
+
     private static final String SQL_SELECT_SITE_IDS_MATCHING_SECTION_TITLE = "SELECT DISTINCT realm.realm_id "
             + "FROM SAKAI_REALM realm "
             + "JOIN SAKAI_REALM_PROVIDER provider "
@@ -302,7 +334,11 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         // get the assignments based on the search/HQL
         String hql = "select eau from EvalAssignUser eau "+joinHQL+" where 1=1 "+evalHQL+userHQL+evalStateHQL+assignStatusHQL+assignTypeHQL+groupsHQL
         +" order by eau.id";
-        List<EvalAssignUser> results = (List<EvalAssignUser>) executeHqlQuery(hql, params, 0, 0);
+        List<EvalAssignUser> results = executeChunkedHqlQuery(hql, params, new Comparator<EvalAssignUser>() {
+            public int compare(EvalAssignUser o1, EvalAssignUser o2) {
+                return o1.getId().compareTo(o2.getId());
+            }
+        }, 0, 0);
         List<EvalAssignUser> assignments = new ArrayList<>( results );
 
         // This code is potentially expensive but there is not really a better way to handle it -AZ
@@ -349,6 +385,387 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         return evals;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEvalAssignUserRows(java.lang.Long, java.lang.String)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getEvalAssignUserRows(Long evaluationId, String evalGroupId) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("evalId", evaluationId);
+        String groupHQL = "";
+        if (evalGroupId != null) {
+            params.put("evalGroupId", evalGroupId);
+            groupHQL = " and eau.evalGroupId = :evalGroupId";
+        }
+        String hql = "select eau.id, eau.userId, eau.evalGroupId, eau.type, eau.status from EvalAssignUser eau"
+            + " where eau.evaluation.id = :evalId" + groupHQL + " order by eau.id";
+        return (List<Object[]>) executeHqlQuery(hql, params, 0, 0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#saveEvalAssignUsers(java.util.Collection)
+     */
+    public void saveEvalAssignUsers(Collection<EvalAssignUser> assignUsers) {
+        if (assignUsers == null || assignUsers.isEmpty()) {
+            return;
+        }
+        Session session = currentSession();
+        List<EvalAssignUser> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (EvalAssignUser evalAssignUser : assignUsers) {
+            if (evalAssignUser.getId() != null) {
+                throw new IllegalArgumentException("Only new user assignments can be inserted: " + evalAssignUser);
+            }
+            if (evalAssignUser.getLastModified() == null) {
+                evalAssignUser.setLastModified(new Date());
+            }
+            session.save(evalAssignUser);
+            batch.add(evalAssignUser);
+            if (batch.size() >= INSERT_BATCH_SIZE) {
+                flushAndEvict(session, batch);
+            }
+        }
+        flushAndEvict(session, batch);
+    }
+
+    /**
+     * Flush the pending inserts and then evict the inserted objects so the session does not grow
+     * @param session the current hibernate session
+     * @param batch the objects which were just saved, this will be cleared
+     */
+    private void flushAndEvict(Session session, List<?> batch) {
+        if (! batch.isEmpty()) {
+            session.flush();
+            for (Object object : batch) {
+                session.evict(object);
+            }
+            batch.clear();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeEvalAssignUsers(java.lang.Long[])
+     */
+    public int removeEvalAssignUsers(Long[] assignUserIds) {
+        int removed = 0;
+        if (assignUserIds != null && assignUserIds.length > 0) {
+            // make sure pending changes are written before the rows are deleted underneath the session
+            getHibernateTemplate().flush();
+            for (Object[] chunk : makeInClauseChunks(assignUserIds)) {
+                Query query = currentSession().createQuery("delete EvalAssignUser eau where eau.id in (:ids)");
+                query.setParameterList("ids", chunk);
+                removed += query.executeUpdate();
+            }
+        }
+        return removed;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getScalesWithOptions(java.lang.Long[])
+     */
+    @SuppressWarnings("unchecked")
+    public List<EvalScale> getScalesWithOptions(Long[] scaleIds) {
+        List<EvalScale> scales = new ArrayList<>();
+        if (scaleIds != null && scaleIds.length > 0) {
+            Set<EvalScale> found = new LinkedHashSet<>();
+            for (Object[] chunk : makeInClauseChunks(scaleIds)) {
+                Query query = currentSession().createQuery("select distinct s from EvalScale s left join fetch s.options where s.id in (:ids)");
+                query.setParameterList("ids", chunk);
+                found.addAll( query.list() );
+            }
+            scales.addAll(found);
+            Collections.sort(scales, new Comparator<EvalScale>() {
+                public int compare(EvalScale o1, EvalScale o2) {
+                    return o1.getId().compareTo(o2.getId());
+                }
+            });
+        }
+        return scales;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#saveNewEntities(java.util.Collection)
+     */
+    public void saveNewEntities(Collection<?> entities) {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        Session session = currentSession();
+        int count = 0;
+        for (Object entity : entities) {
+            session.save(entity);
+            count++;
+            if (count % INSERT_BATCH_SIZE == 0) {
+                session.flush();
+            }
+        }
+        session.flush();
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getSearchTokens(java.lang.Long, java.lang.String)
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> getSearchTokens(Long evaluationId, String source) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("evalId", evaluationId);
+        String sourceHQL = "";
+        if (source != null) {
+            params.put("source", source);
+            sourceHQL = " and st.source = :source";
+        }
+        String hql = "select st.token from EvalSearchToken st where st.evaluationId = :evalId" + sourceHQL;
+        return new HashSet<>( (List<String>) executeHqlQuery(hql, params, 0, 0) );
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#saveSearchTokens(java.lang.Long, java.lang.String, java.util.Collection, boolean)
+     */
+    public void saveSearchTokens(Long evaluationId, String source, Collection<String> tokens, boolean replace) {
+        if (evaluationId == null || source == null) {
+            throw new IllegalArgumentException("evaluationId and source must be set");
+        }
+        if (replace) {
+            Query query = currentSession().createQuery("delete EvalSearchToken st where st.evaluationId = :evalId and st.source = :source");
+            query.setParameter("evalId", evaluationId);
+            query.setParameter("source", source);
+            query.executeUpdate();
+        }
+        if (tokens != null && ! tokens.isEmpty()) {
+            List<EvalSearchToken> searchTokens = new ArrayList<>(tokens.size());
+            for (String token : tokens) {
+                searchTokens.add( new EvalSearchToken(evaluationId, source, token) );
+            }
+            saveNewEntities(searchTokens);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeSearchTokens(java.lang.Long[])
+     */
+    public int removeSearchTokens(Long[] evaluationIds) {
+        int removed = 0;
+        if (evaluationIds != null && evaluationIds.length > 0) {
+            for (Object[] chunk : makeInClauseChunks(evaluationIds)) {
+                Query query = currentSession().createQuery("delete EvalSearchToken st where st.evaluationId in (:ids)");
+                query.setParameterList("ids", chunk);
+                removed += query.executeUpdate();
+            }
+        }
+        return removed;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEvaluationIdsWithoutSearchTokens(int)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> getEvaluationIdsWithoutSearchTokens(int limit) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("source", EvalSearchToken.SOURCE_ID);
+        String hql = "select eval.id from EvalEvaluation eval where not exists (select st.id from EvalSearchToken st"
+            + " where st.evaluationId = eval.id and st.source = :source) order by eval.id";
+        return (List<Long>) executeHqlQuery(hql, params, 0, limit);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#countEvaluationsBySearchTokens(java.lang.String[], java.lang.String[])
+     */
+    public int countEvaluationsBySearchTokens(String[] prefixes, String[] sources) {
+        Map<String, Object> params = new HashMap<>();
+        String hql = "select count(eval.id)" + makeSearchTokensHQL(prefixes, sources, params);
+        List<?> results = executeHqlQuery(hql, params, 0, 0);
+        return results.isEmpty() ? 0 : ((Number) results.get(0)).intValue();
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEvaluationsBySearchTokens(java.lang.String[], java.lang.String[], java.lang.String, int, int)
+     */
+    @SuppressWarnings("unchecked")
+    public List<EvalEvaluation> getEvaluationsBySearchTokens(String[] prefixes, String[] sources, String order, int start, int limit) {
+        if (order == null || order.length() == 0) {
+            order = "title";
+        } else if (! order.matches("[A-Za-z]+")) {
+            throw new IllegalArgumentException("Invalid order property: " + order);
+        }
+        Map<String, Object> params = new HashMap<>();
+        String hql = "select eval" + makeSearchTokensHQL(prefixes, sources, params) + " order by eval." + order + ", eval.id";
+        return (List<EvalEvaluation>) executeHqlQuery(hql, params, start, limit);
+    }
+
+    /**
+     * Makes the from and where clauses for a search of the evaluation search index,
+     * each prefix becomes an indexed subquery (token like 'prefix%') so all of them have to match
+     * 
+     * @param prefixes the lowercase token prefixes (at least one)
+     * @param sources [OPTIONAL] limit the matching tokens to these sources
+     * @param params the map to put the query params into
+     * @return the HQL from and where clauses
+     */
+    private String makeSearchTokensHQL(String[] prefixes, String[] sources, Map<String, Object> params) {
+        if (prefixes == null || prefixes.length == 0) {
+            throw new IllegalArgumentException("At least one search prefix must be set");
+        }
+        StringBuilder hql = new StringBuilder(" from EvalEvaluation eval where ");
+        for (int i = 0; i < prefixes.length; i++) {
+            if (i > 0) {
+                hql.append(" and ");
+            }
+            String alias = "st" + i;
+            hql.append("eval.id in (select ").append(alias).append(".evaluationId from EvalSearchToken ").append(alias)
+                .append(" where ").append(alias).append(".token like :token").append(i);
+            if (sources != null) {
+                hql.append(" and ").append(alias).append(".source in (:sources)");
+            }
+            hql.append(")");
+            params.put("token" + i, prefixes[i] + "%");
+        }
+        if (sources != null) {
+            params.put("sources", sources);
+        }
+        return hql.toString();
+    }
+
+    /**
+     * Pads an array of IN clause values out to the next power of 2 (never more than
+     * {@link #MAX_IN_CLAUSE_SIZE}) by repeating the last value, this keeps the number of
+     * distinct generated statements (and cached plans) small no matter how many values are bound
+     *
+     * @param values the values to bind into an IN clause, should be no larger than {@link #MAX_IN_CLAUSE_SIZE}
+     * @return the padded array (of the same component type) or the input array if no padding is needed
+     */
+    protected static Object[] padInClauseValues(Object[] values) {
+        if (values == null || values.length == 0) {
+            return values;
+        }
+        int size = 1;
+        while (size < values.length && size < MAX_IN_CLAUSE_SIZE) {
+            size = size << 1;
+        }
+        if (size <= values.length) {
+            return values;
+        }
+        Object[] padded = Arrays.copyOf(values, size);
+        Arrays.fill(padded, values.length, size, values[values.length - 1]);
+        return padded;
+    }
+
+    /**
+     * Splits an array of IN clause values into chunks which are no larger than {@link #MAX_IN_CLAUSE_SIZE},
+     * each chunk is padded using {@link #padInClauseValues(Object[])}
+     *
+     * @param values the values to bind into an IN clause
+     * @return the list of chunks (only one if the array is small enough), empty if the input is null or empty
+     */
+    protected static List<Object[]> makeInClauseChunks(Object[] values) {
+        List<Object[]> chunks = new ArrayList<>();
+        if (values != null) {
+            for (int i = 0; i < values.length; i += MAX_IN_CLAUSE_SIZE) {
+                int end = Math.min(values.length, i + MAX_IN_CLAUSE_SIZE);
+                chunks.add( padInClauseValues( Arrays.copyOfRange(values, i, end) ) );
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Executes an HQL query where every array param is bound into an IN clause,
+     * arrays larger than {@link #MAX_IN_CLAUSE_SIZE} are split into chunks and the query is run once for
+     * each combination of chunks with the results merged, smaller arrays are padded so the statement is reused<br/>
+     * <b>NOTE:</b> the query must only use the array params in IN clauses (not NOT IN) so that the union of the
+     * chunked results is the same as the unchunked result, merged results are distinct
+     *
+     * @param hql the HQL query, should include an order by matching the comparator
+     * @param params the named params, array values are treated as IN clause values
+     * @param comparator (OPTIONAL) used to put the merged results in order when the query had to be chunked
+     * @param start the result to start with (for paging), 0 means start with the first one
+     * @param limit the total number of results to return, 0 means return all
+     * @return the list of results
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> List<T> executeChunkedHqlQuery(String hql, Map<String, Object> params,
+            Comparator<? super T> comparator, int start, int limit) {
+        Map<String, Object> queryParams = new HashMap<>(params);
+        List<String> chunkedNames = new ArrayList<>();
+        List<List<Object[]>> chunkedValues = new ArrayList<>();
+        for (Entry<String, Object> entry : params.entrySet()) {
+            if (entry.getValue() instanceof Object[]) {
+                Object[] values = (Object[]) entry.getValue();
+                if (values.length > MAX_IN_CLAUSE_SIZE) {
+                    chunkedNames.add(entry.getKey());
+                    chunkedValues.add( makeInClauseChunks(values) );
+                } else {
+                    queryParams.put(entry.getKey(), padInClauseValues(values));
+                }
+            }
+        }
+
+        if (chunkedNames.isEmpty()) {
+            return (List<T>) executeHqlQuery(hql, queryParams, start, limit);
+        }
+
+        // run the query for every combination of chunks and merge the results
+        Set<T> merged = new LinkedHashSet<>();
+        int[] position = new int[chunkedNames.size()];
+        int queries = 0;
+        boolean done = false;
+        while (! done) {
+            for (int i = 0; i < position.length; i++) {
+                queryParams.put(chunkedNames.get(i), chunkedValues.get(i).get(position[i]));
+            }
+            merged.addAll( (List<T>) executeHqlQuery(hql, queryParams, 0, 0) );
+            queries++;
+            // advance to the next combination
+            done = true;
+            for (int i = 0; i < position.length; i++) {
+                position[i]++;
+                if (position[i] < chunkedValues.get(i).size()) {
+                    done = false;
+                    break;
+                }
+                position[i] = 0;
+            }
+        }
+        log.debug("Chunked IN clause query for params " + chunkedNames + " into " + queries + " queries, " + merged.size() + " results");
+
+        List<T> results = new ArrayList<>(merged);
+        if (comparator != null) {
+            Collections.sort(results, comparator);
+        }
+        if (start > 0 || limit > 0) {
+            int from = Math.min(Math.max(start, 0), results.size());
+            int to = limit > 0 ? Math.min(from + limit, results.size()) : results.size();
+            results = new ArrayList<>( results.subList(from, to) );
+        }
+        return results;
+    }
+
+    /**
+     * Find entities with a property value IN a (possibly very large) array of values,
+     * the values are chunked using {@link #makeInClauseChunks(Object[])} and the results merged
+     *
+     * @param type the entity class
+     * @param property the entity property to match against the values
+     * @param values the values for the IN clause
+     * @param restrictions (OPTIONAL) additional restrictions to add to every search
+     * @return the merged list of matching entities (in no particular order)
+     */
+    protected <T> List<T> findByChunkedValues(Class<T> type, String property, Object[] values, Restriction... restrictions) {
+        List<T> results = new ArrayList<>();
+        for (Object[] chunk : makeInClauseChunks(values)) {
+            Search search = new Search(property, chunk);
+            for (Restriction restriction : restrictions) {
+                search.addRestriction(restriction);
+            }
+            results.addAll( findBySearch(type, search) );
+        }
+        return results;
+    }
+
     /**
      * Construct the HQL to do the sharing query based on sharing constants and userId
      * @return the HQL query string
@@ -544,11 +961,11 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         String groupsHQL = "";
         if (evalGroupIds != null && evalGroupIds.length > 0) {
 
-            Search search = new Search("evalGroupId", evalGroupIds);
+            Restriction[] restrictions = new Restriction[] {};
             if (approvedOnly != null) {
-                search.addRestriction( new Restriction("instructorApproval", approvedOnly) );
+                restrictions = new Restriction[] { new Restriction("instructorApproval", approvedOnly) };
             }
-            List<EvalAssignGroup> eags = findBySearch(EvalAssignGroup.class, search);
+            List<EvalAssignGroup> eags = findByChunkedValues(EvalAssignGroup.class, "evalGroupId", evalGroupIds, restrictions);
             for (EvalAssignGroup evalAssignGroup : eags) {
                 Long evalId = evalAssignGroup.getEvaluation().getId();
                 if (! evalToAGList.containsKey(evalId)) {
@@ -632,7 +1049,7 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
             String hql = "select eval from EvalEvaluation as eval " 
                 + " where 1=1 " + activeHQL + groupsHQL //+ responsesHQL 
                 + " order by eval.dueDate, eval.title, eval.id";
-            evals = (List<EvalEvaluation>) executeHqlQuery(hql, params, startResult, maxResults);
+            evals = executeChunkedHqlQuery(hql, params, new ComparatorsUtils.EvaluationDateTitleIdComparator(), startResult, maxResults);
             Collections.sort(evals, new ComparatorsUtils.EvaluationDateTitleIdComparator());
         }
         // add in the filtered assign groups which we retrieved earlier
@@ -868,10 +1285,190 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
             + " order by ansswerresp.id, answer.id";
         // TODO optimize this once we are using a newer version of hibernate that supports "with"
 
-        List<EvalAnswer> results = (List<EvalAnswer>) executeHqlQuery(hql, params, 0, 0);
+        Comparator<EvalAnswer> answerComparator = new Comparator<EvalAnswer>() {
+            public int compare(EvalAnswer o1, EvalAnswer o2) {
+                int comparison = o1.getResponse().getId().compareTo(o2.getResponse().getId());
+                if (comparison == 0) {
+                    comparison = o1.getId().compareTo(o2.getId());
+                }
+                return comparison;
+            }
+        };
+        List<EvalAnswer> results = executeChunkedHqlQuery(hql, params, answerComparator, 0, 0);
+
+        // read through to the archive for answers which were moved out of the answers table
+        List<EvalAnswer> archived = getArchivedAnswers(evalId, evalGroupIds, templateItemIds);
+        if (! archived.isEmpty()) {
+            results = new ArrayList<>(results);
+            results.addAll(archived);
+            Collections.sort(results, answerComparator);
+        }
         return results;
     }
 
+    /**
+     * Get the archived answers for an evaluation as (non-persistent) {@link EvalAnswer} objects,
+     * only returns the answers for completed responses
+     * 
+     * @param evalId the id of the evaluation
+     * @param evalGroupIds (OPTIONAL) only return answers for these groups
+     * @param templateItemIds (OPTIONAL) only return answers for these template items
+     * @return the list of answers or empty list if none are archived
+     */
+    protected List<EvalAnswer> getArchivedAnswers(Long evalId, String[] evalGroupIds, Long[] templateItemIds) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("evalId", evalId);
+        String hql = "select archive, resp from EvalAnswerArchive as archive, EvalResponse as resp"
+            + " where archive.evaluationId = :evalId and resp.id = archive.responseId and resp.endTime is not null";
+        if (evalGroupIds != null && evalGroupIds.length > 0) {
+            hql += " and resp.evalGroupId in (:evalGroupIds)";
+            params.put("evalGroupIds", evalGroupIds);
+        }
+        if (templateItemIds != null && templateItemIds.length > 0) {
+            hql += " and archive.templateItemId in (:templateItemIds)";
+            params.put("templateItemIds", templateItemIds);
+        }
+        hql += " order by archive.responseId, archive.id";
+        List<Object[]> rows = executeChunkedHqlQuery(hql, params, new Comparator<Object[]>() {
+            public int compare(Object[] o1, Object[] o2) {
+                EvalAnswerArchive a1 = (EvalAnswerArchive) o1[0];
+                EvalAnswerArchive a2 = (EvalAnswerArchive) o2[0];
+                int comparison = a1.getResponseId().compareTo(a2.getResponseId());
+                if (comparison == 0) {
+                    comparison = a1.getId().compareTo(a2.getId());
+                }
+                return comparison;
+            }
+        }, 0, 0);
+
+        List<EvalAnswer> answers = new ArrayList<>(rows.size());
+        Session session = currentSession();
+        for (Object[] row : rows) {
+            EvalAnswerArchive archive = (EvalAnswerArchive) row[0];
+            EvalTemplateItem templateItem = (EvalTemplateItem) session.load(EvalTemplateItem.class, archive.getTemplateItemId());
+            EvalItem item = archive.getItemId() == null ? null : (EvalItem) session.load(EvalItem.class, archive.getItemId());
+            EvalAnswer answer = new EvalAnswer((EvalResponse) row[1], templateItem, item,
+                    archive.getAssociatedId(), archive.getAssociatedType(), EvalUtils.decompressText(archive.getTextData()),
+                    archive.getNumeric(), archive.getMultiAnswerCode(), EvalUtils.decompressText(archive.getCommentData()));
+            answer.setId(archive.getId());
+            answer.setLastModified(archive.getLastModified());
+            answers.add(answer);
+        }
+        // the archived answers are only read so they do not need to stay in the session
+        for (Object[] row : rows) {
+            session.evict(row[0]);
+        }
+        return answers;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEvaluationIdsToArchive(java.util.Date, int)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> getEvaluationIdsToArchive(Date closedBefore, int maxResults) {
+        if (closedBefore == null) {
+            throw new IllegalArgumentException("closedBefore must be set");
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("closedBefore", closedBefore);
+        params.put("states", new String[] {EvalConstants.EVALUATION_STATE_CLOSED, EvalConstants.EVALUATION_STATE_VIEWABLE});
+        String hql = "select eval.id from EvalEvaluation eval where eval.state in (:states) and eval.dueDate < :closedBefore"
+            + " and exists (select answer.id from EvalAnswer answer where answer.response.evaluation.id = eval.id)"
+            + " order by eval.dueDate, eval.id";
+        return (List<Long>) executeHqlQuery(hql, params, 0, maxResults);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#archiveAnswers(java.lang.Long)
+     */
+    @SuppressWarnings("unchecked")
+    public int archiveAnswers(Long evaluationId) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        Session session = currentSession();
+        String hql = "select answer.id, resp.id, answer.templateItem.id, answer.item.id, answer.lastModified,"
+            + " answer.numeric, answer.multiAnswerCode, answer.associatedId, answer.associatedType, answer.text, answer.comment"
+            + " from EvalAnswer as answer join answer.response as resp where resp.evaluation.id = :evalId order by answer.id";
+        int archived = 0;
+        List<Object[]> rows;
+        do {
+            // always read the first page, the answers from the previous page have been removed
+            Query query = session.createQuery(hql);
+            query.setLong("evalId", evaluationId);
+            query.setMaxResults(MAX_IN_CLAUSE_SIZE);
+            rows = query.list();
+            if (rows.isEmpty()) {
+                break;
+            }
+            List<EvalAnswerArchive> archives = new ArrayList<>(rows.size());
+            Long[] answerIds = new Long[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                Object[] row = rows.get(i);
+                answerIds[i] = (Long) row[0];
+                archives.add(new EvalAnswerArchive((Long) row[0], evaluationId, (Long) row[1], (Long) row[2], (Long) row[3],
+                        (Date) row[4], (Integer) row[5], (String) row[6], (String) row[7], (String) row[8],
+                        EvalUtils.compressText((String) row[9]), EvalUtils.compressText((String) row[10])));
+            }
+            saveNewEntities(archives);
+            for (EvalAnswerArchive archive : archives) {
+                session.evict(archive);
+            }
+            Query delete = session.createQuery("delete EvalAnswer answer where answer.id in (:ids)");
+            delete.setParameterList("ids", answerIds);
+            delete.executeUpdate();
+            archived += rows.size();
+        } while (rows.size() == MAX_IN_CLAUSE_SIZE);
+        log.info("Archived " + archived + " answers for evaluation " + evaluationId);
+        return archived;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#restoreAnswers(java.lang.Long)
+     */
+    @SuppressWarnings("unchecked")
+    public int restoreAnswers(Long evaluationId) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        Session session = currentSession();
+        int restored = 0;
+        List<EvalAnswerArchive> archives;
+        do {
+            // always read the first page, the archived answers from the previous page have been removed
+            Query query = session.createQuery("from EvalAnswerArchive as archive where archive.evaluationId = :evalId order by archive.id");
+            query.setLong("evalId", evaluationId);
+            query.setMaxResults(MAX_IN_CLAUSE_SIZE);
+            archives = query.list();
+            if (archives.isEmpty()) {
+                break;
+            }
+            List<EvalAnswer> answers = new ArrayList<>(archives.size());
+            Long[] archiveIds = new Long[archives.size()];
+            for (int i = 0; i < archives.size(); i++) {
+                EvalAnswerArchive archive = archives.get(i);
+                archiveIds[i] = archive.getId();
+                EvalItem item = archive.getItemId() == null ? null : (EvalItem) session.load(EvalItem.class, archive.getItemId());
+                EvalAnswer answer = new EvalAnswer((EvalResponse) session.load(EvalResponse.class, archive.getResponseId()),
+                        (EvalTemplateItem) session.load(EvalTemplateItem.class, archive.getTemplateItemId()), item,
+                        archive.getAssociatedId(), archive.getAssociatedType(), EvalUtils.decompressText(archive.getTextData()),
+                        archive.getNumeric(), archive.getMultiAnswerCode(), EvalUtils.decompressText(archive.getCommentData()));
+                answer.setLastModified(archive.getLastModified());
+                answers.add(answer);
+                session.evict(archive);
+            }
+            saveNewEntities(answers);
+            Query delete = session.createQuery("delete EvalAnswerArchive archive where archive.id in (:ids)");
+            delete.setParameterList("ids", archiveIds);
+            delete.executeUpdate();
+            restored += archives.size();
+        } while (archives.size() == MAX_IN_CLAUSE_SIZE);
+        if (restored > 0) {
+            log.info("Restored " + restored + " archived answers for evaluation " + evaluationId);
+        }
+        return restored;
+    }
+
     /**
      * Removes a group of templateItems and updates all related items 
      * and templates at the same time (inside one transaction)
@@ -1065,10 +1662,16 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 
             hql.append(") order by ti.displayOrder, ti.template.id");
 
-            List<?> things = executeHqlQuery(hql.toString(), params, 0, 0);
-            for (Object object : things) {
-                results.add((EvalTemplateItem) object);
-            }
+            List<EvalTemplateItem> things = executeChunkedHqlQuery(hql.toString(), params, new Comparator<EvalTemplateItem>() {
+                public int compare(EvalTemplateItem o1, EvalTemplateItem o2) {
+                    int comparison = o1.getDisplayOrder().compareTo(o2.getDisplayOrder());
+                    if (comparison == 0) {
+                        comparison = o1.getTemplate().getId().compareTo(o2.getTemplate().getId());
+                    }
+                    return comparison;
+                }
+            }, 0, 0);
+            results.addAll(things);
         }
         return results;
     }
@@ -1122,15 +1725,54 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         params.put("evalId", evalId);
         String hql = "SELECT response.id from EvalResponse as response where response.evaluation.id = :evalId "
             + groupsHQL + usersHQL + completedHQL + " order by response.id";
-        List<?> results = executeHqlQuery(hql, params, 0, 0);
-        List<Long> responseIds = new ArrayList<>();
-        for (Object object : results) {
-            responseIds.add((Long) object);
-        }
+        List<Long> responseIds = executeChunkedHqlQuery(hql, params, Comparator.<Long>naturalOrder(), 0, 0);
         return responseIds;
     }
 
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getResponderRows(java.lang.Long, java.lang.String, boolean, int, int)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Object[]> getResponderRows(Long evaluationId, String evalGroupId, boolean respondersOnly, int start, int limit) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        Query query;
+        if (respondersOnly) {
+            String hql = "select response.evalGroupId, response.owner, response.id, response.endTime from EvalResponse response"
+                + " where response.evaluation.id = :evalId"
+                + (evalGroupId != null ? " and response.evalGroupId = :evalGroupId" : "")
+                + " order by response.evalGroupId, response.owner";
+            query = currentSession().createQuery(hql);
+        } else {
+            // there is no mapped association between assignments and responses so this has to be done in SQL
+            query = currentSession().createSQLQuery(SQL_SELECT_RESPONDER_ROWS
+                    + (evalGroupId != null ? " and au.GROUP_ID = :evalGroupId" : "")
+                    + " order by au.GROUP_ID, au.USER_ID, au.ID");
+            query.setParameter("evaluatorType", EvalAssignUser.TYPE_EVALUATOR);
+            query.setParameter("removedStatus", EvalAssignUser.STATUS_REMOVED);
+        }
+        query.setParameter("evalId", evaluationId);
+        if (evalGroupId != null) {
+            query.setParameter("evalGroupId", evalGroupId);
+        }
+        if (start > 0) {
+            query.setFirstResult(start);
+        }
+        if (limit > 0) {
+            query.setMaxResults(limit);
+        }
+        List<Object[]> rows = query.list();
+        for (Object[] row : rows) {
+            // native queries return the database numeric type for ids (e.g. BigDecimal on oracle)
+            if (row[2] instanceof Number) {
+                row[2] = ((Number) row[2]).longValue();
+            }
+        }
+        return rows;
+    }
+
     /**
      * Removes an array of responses and all their associated answers at
      * the same time (in a single transaction)<br/>
@@ -1141,20 +1783,128 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      * @param responseIds the array of ids for {@link EvalResponse} objects to remove
      */
     public void removeResponses(Long[] responseIds) {
-        if (responseIds != null && responseIds.length > 0) {
-            String rids = "(" + ArrayUtils.arrayToString(responseIds) + ")";
+        if (responseIds == null || responseIds.length == 0) {
+            return;
+        }
+        // large arrays are removed in chunks to stay under the IN clause limits
+        for (Object[] chunk : makeInClauseChunks(responseIds)) {
             // purge out the answers first
-            String hql = "delete EvalAnswer answer where answer.response.id in " + rids;
-            log.debug("delete EvalAnswer HQL:" + hql);
-            int results = getHibernateTemplate().bulkUpdate(hql);
-            log.info("Remove " + results + " answers that were associated with the following responses: " + rids);
+            Query query = currentSession().createQuery("delete EvalAnswer answer where answer.response.id in (:ids)");
+            query.setParameterList("ids", chunk);
+            int results = query.executeUpdate();
+            log.info("Remove " + results + " answers that were associated with the responses being removed");
+
+            query = currentSession().createQuery("delete EvalAnswerArchive archive where archive.responseId in (:ids)");
+            query.setParameterList("ids", chunk);
+            results = query.executeUpdate();
+            if (results > 0) {
+                log.info("Remove " + results + " archived answers that were associated with the responses being removed");
+            }
 
             // purge out the responses
-            hql = "delete EvalResponse response where response.id in " + rids;
-            log.debug("delete EvalResponse HQL:" + hql);
-            results = getHibernateTemplate().bulkUpdate(hql);
-            log.info("Remove " + results + " responses with the following ids: " + rids);
+            query = currentSession().createQuery("delete EvalResponse response where response.id in (:ids)");
+            query.setParameterList("ids", chunk);
+            results = query.executeUpdate();
+            log.info("Remove " + results + " responses");
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEvaluationIdsByTermId(java.lang.String, boolean)
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> getEvaluationIdsByTermId(String termId, boolean includeDeleted) {
+        if (termId == null || "".equals(termId)) {
+            throw new IllegalArgumentException("termId must be set");
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("termId", termId);
+        params.put("partialState", EvalConstants.EVALUATION_STATE_PARTIAL);
+        String hql = "select eval.id from EvalEvaluation eval where eval.termId = :termId and eval.state <> :partialState";
+        if (! includeDeleted) {
+            params.put("deletedState", EvalConstants.EVALUATION_STATE_DELETED);
+            hql += " and eval.state <> :deletedState";
         }
+        hql += " order by eval.id";
+        return (List<Long>) executeHqlQuery(hql, params, 0, 0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEvaluationIdsWithResponses(java.lang.Long[])
+     */
+    public Set<Long> getEvaluationIdsWithResponses(Long[] evaluationIds) {
+        if (evaluationIds == null || evaluationIds.length == 0) {
+            return new HashSet<>();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("evalIds", evaluationIds);
+        String hql = "select distinct response.evaluation.id from EvalResponse response where response.evaluation.id in (:evalIds)";
+        List<Long> results = executeChunkedHqlQuery(hql, params, null, 0, 0);
+        return new HashSet<>(results);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeResponsesForEvaluations(java.lang.Long[])
+     */
+    public int removeResponsesForEvaluations(Long[] evaluationIds) {
+        int removed = 0;
+        if (evaluationIds != null && evaluationIds.length > 0) {
+            for (Object[] chunk : makeInClauseChunks(evaluationIds)) {
+                // purge out the answers first, the responses are matched in the database so they are never loaded
+                Query query = currentSession().createQuery("delete EvalAnswer answer where answer.response.id in "
+                        + "(select response.id from EvalResponse response where response.evaluation.id in (:evalIds))");
+                query.setParameterList("evalIds", chunk);
+                int answers = query.executeUpdate();
+
+                query = currentSession().createQuery("delete EvalAnswerArchive archive where archive.evaluationId in (:evalIds)");
+                query.setParameterList("evalIds", chunk);
+                answers += query.executeUpdate();
+
+                query = currentSession().createQuery("delete EvalResponse response where response.evaluation.id in (:evalIds)");
+                query.setParameterList("evalIds", chunk);
+                int responses = query.executeUpdate();
+                removed += responses;
+                log.info("Remove " + responses + " responses and " + answers + " answers for a chunk of evaluations");
+            }
+        }
+        return removed;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeAssignmentsForEvaluations(java.lang.Long[])
+     */
+    public int removeAssignmentsForEvaluations(Long[] evaluationIds) {
+        int removed = 0;
+        if (evaluationIds != null && evaluationIds.length > 0) {
+            String[] entityNames = new String[] {"EvalAssignUser", "EvalAssignGroup", "EvalAssignHierarchy"};
+            for (Object[] chunk : makeInClauseChunks(evaluationIds)) {
+                for (String entityName : entityNames) {
+                    Query query = currentSession().createQuery("delete " + entityName + " assign where assign.evaluation.id in (:evalIds)");
+                    query.setParameterList("evalIds", chunk);
+                    removed += query.executeUpdate();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getEmailTemplateIdsInUse(java.lang.Long[])
+     */
+    public Set<Long> getEmailTemplateIdsInUse(Long[] emailTemplateIds) {
+        Set<Long> inUse = new HashSet<>();
+        if (emailTemplateIds == null || emailTemplateIds.length == 0) {
+            return inUse;
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("templateIds", emailTemplateIds);
+        String[] properties = new String[] {"availableEmailTemplate", "reminderEmailTemplate", "submissionConfirmationEmailTemplate"};
+        for (String property : properties) {
+            String hql = "select distinct eval." + property + ".id from EvalEvaluation eval where eval." + property + ".id in (:templateIds)";
+            List<Long> results = executeChunkedHqlQuery(hql, params, null, 0, 0);
+            inUse.addAll(results);
+        }
+        return inUse;
     }
 
 
@@ -1242,7 +1992,7 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         params.put("evaluationId", evaluationId);
         String hql = "SELECT response.owner from EvalResponse as response where response.evaluation.id = :evaluationId "
             + completeHQL + groupsHQL + " order by response.id";
-        List<?> results = executeHqlQuery(hql, params, 0, 0);
+        List<?> results = executeChunkedHqlQuery(hql, params, null, 0, 0);
         // put the results into a set and convert them to strings
         Set<String> responseUsers = new HashSet<>();
         for (Object object : results) {
@@ -1255,6 +2005,35 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         return responseUsers;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getResponseEvaluationIds(java.lang.String, java.lang.Long[], java.lang.Boolean)
+     */
+    public Set<Long> getResponseEvaluationIds(String userId, Long[] evaluationIds, Boolean completed) {
+        if (userId == null) {
+            throw new IllegalArgumentException("userId must not be null");
+        }
+        Set<Long> evalIds = new HashSet<>();
+        if (evaluationIds != null && evaluationIds.length == 0) {
+            return evalIds;
+        }
+        Map<String, Object> params = new HashMap<>();
+        String evalsHQL = "";
+        if (evaluationIds != null) {
+            evalsHQL = " and response.evaluation.id in (:evaluationIds) ";
+            params.put("evaluationIds", evaluationIds);
+        }
+        String completeHQL = "";
+        if (completed != null) {
+            completeHQL = " and response.endTime is "+(completed ? "not" : "")+" null ";
+        }
+        params.put("userId", userId);
+        String hql = "SELECT distinct response.evaluation.id from EvalResponse as response where response.owner = :userId "
+            + completeHQL + evalsHQL;
+        List<Long> results = executeChunkedHqlQuery(hql, params, null, 0, 0);
+        evalIds.addAll(results);
+        return evalIds;
+    }
+
     /** getResponsesSavedInProgress returns a List of EvalResponses that have been saved
      * but not submitted, meaning that they will not be included in any statistics.
      * @param activeEvaluationsOnly If true, only include responses associated with Evaluations
@@ -1318,7 +2097,7 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
                 + " and eag.evalGroupId in (select distinct eau.evalGroupId from EvalAssignUser eau " +
                 		"where eau.evaluation.id = :evaluationId and eau.type = :assignTypeConstant)"
                 + " and eag."+permCheck+" = true " + groupsHQL;
-            List<?> results = executeHqlQuery(hql, params, 0, 0);
+            List<?> results = executeChunkedHqlQuery(hql, params, null, 0, 0);
             // put the results into a set and convert them to strings
             for (Object object : results) {
                 viewableEvalGroupIds.add((String) object);
@@ -1327,6 +2106,64 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         return viewableEvalGroupIds;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getUserAssignGroupRows(java.lang.Long[], java.lang.String)
+     */
+    public List<Object[]> getUserAssignGroupRows(Long[] evaluationIds, String userId) {
+        if (evaluationIds == null || userId == null) {
+            throw new IllegalArgumentException("evaluationIds and userId both must not be null");
+        }
+        if (evaluationIds.length == 0) {
+            return new ArrayList<>();
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("evaluationIds", evaluationIds);
+        params.put("userId", userId);
+        params.put("removed", EvalAssignUser.STATUS_REMOVED);
+        String hql = "select eau.evaluation.id, eau.evalGroupId, eau.type, eag.instructorsViewResults, eag.studentsViewResults"
+            + " from EvalAssignUser eau, EvalAssignGroup eag where eau.evaluation.id in (:evaluationIds)"
+            + " and eau.userId = :userId and eau.status <> :removed"
+            + " and eag.evaluation.id = eau.evaluation.id and eag.evalGroupId = eau.evalGroupId";
+        return executeChunkedHqlQuery(hql, params, null, 0, 0);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getAssignmentStamps(java.lang.Long[], java.lang.String)
+     */
+    public Map<Long, String> getAssignmentStamps(Long[] evaluationIds, String userId) {
+        if (evaluationIds == null || userId == null) {
+            throw new IllegalArgumentException("evaluationIds and userId both must not be null");
+        }
+        Map<Long, String> stamps = new HashMap<>();
+        if (evaluationIds.length == 0) {
+            return stamps;
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("evaluationIds", evaluationIds);
+        String groupsHQL = "select eag.evaluation.id, count(eag.id), max(eag.lastModified) from EvalAssignGroup eag"
+            + " where eag.evaluation.id in (:evaluationIds) group by eag.evaluation.id";
+        List<Object[]> groupRows = executeChunkedHqlQuery(groupsHQL, params, null, 0, 0);
+        params.put("userId", userId);
+        params.put("removed", EvalAssignUser.STATUS_REMOVED);
+        String usersHQL = "select eau.evaluation.id, count(eau.id), max(eau.lastModified) from EvalAssignUser eau"
+            + " where eau.evaluation.id in (:evaluationIds) and eau.userId = :userId and eau.status <> :removed"
+            + " group by eau.evaluation.id";
+        List<Object[]> userRows = executeChunkedHqlQuery(usersHQL, params, null, 0, 0);
+        for (Object[] row : groupRows) {
+            stamps.put((Long) row[0], "g" + row[1] + "@" + stampTime(row[2]));
+        }
+        for (Object[] row : userRows) {
+            Long evaluationId = (Long) row[0];
+            String groupStamp = stamps.get(evaluationId);
+            stamps.put(evaluationId, (groupStamp == null ? "" : groupStamp) + ":u" + row[1] + "@" + stampTime(row[2]));
+        }
+        return stamps;
+    }
+
+    private long stampTime(Object date) {
+        return date instanceof Date ? ((Date) date).getTime() : 0l;
+    }
+
 
     /**
      * Get adhoc groups for a user and permission, 
@@ -1813,21 +2650,27 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 
     /*
      * (non-Javadoc)
-     * @see org.sakaiproject.evaluation.dao.EvaluationDao#countDistinctGroupsInConsolidatedEmailMapping()
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#countDistinctGroupsInConsolidatedEmailMapping(java.lang.String)
      */
     @SuppressWarnings("rawtypes")
-	public int countDistinctGroupsInConsolidatedEmailMapping() {
+	public int countDistinctGroupsInConsolidatedEmailMapping(String jobId) {
     	String hql = "select count(distinct groupId) from EvalEmailProcessingData";
+    	if(jobId != null) {
+    		hql += " where jobId = :jobId";
+    	}
     	Session session = currentSession();
     	
         Query query = session.createQuery(hql);
+        if(jobId != null) {
+        	query.setString("jobId", jobId);
+        }
     	
         List results = query.list();
         int count = 0;
         if(results == null || results.isEmpty()) {
         	// log error
         } else {
-        	count = ((Integer) results.get(0));
+        	count = ((Number) results.get(0)).intValue();
         }
         return count;
     }
@@ -1837,6 +2680,9 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      * The summary info consists of a user-id, a user-eid, a template-id (EmailTemplate.ID) 
      * and the earliest due date of Active evals which use the email template and which the 
      * referenced user can take.
+     * @param jobId only use the records staged for this job, null for all records
+     * @param jobPartition only use the records in this partition, null for all partitions
+     * @param sendingAvailableEmails true if the users are being sent available emails, false for reminders
      * @param pageSize The maximum number of mappings to return. A mapping consists of a user-id, an email template
      * 		id and a date.
      * @param page The zero-based starting page. In other words, return a page of items beginning at index 
@@ -1844,18 +2690,31 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
      * @return map of email mappings
      */
     @SuppressWarnings("rawtypes")
-	public List<Map<String,Object>>  getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page) {
-    	String query1 = "select userId,emailTemplateId,min(evalDueDate) from EvalEmailProcessingData group by emailTemplateId,userId order by emailTemplateId,userId";
+	public List<Map<String,Object>>  getConsolidatedEmailMapping(String jobId, Integer jobPartition, boolean sendingAvailableEmails, int pageSize, int page) {
+    	StringBuilder query1 = new StringBuilder("select userId,emailTemplateId,min(evalDueDate) from EvalEmailProcessingData ");
+    	if(jobId != null) {
+    		query1.append("where jobId = :jobId ");
+    	}
+    	if(jobPartition != null) {
+    		query1.append(jobId == null ? "where " : "and ").append("jobPartition = :jobPartition ");
+    	}
+    	query1.append("group by emailTemplateId,userId order by emailTemplateId,userId");
     	
     	if(log.isDebugEnabled()) {
-    		log.debug("getConsolidatedEmailMapping(" + sendingAvailableEmails + ", " + pageSize + ", " + page + ")");
+    		log.debug("getConsolidatedEmailMapping(" + jobId + ", " + jobPartition + ", " + sendingAvailableEmails + ", " + pageSize + ", " + page + ")");
     	}
     	
     	List<Map<String,Object>> rv = new ArrayList<>();
     	
     	Session session = currentSession();
     	
-        Query query = session.createQuery(query1);
+        Query query = session.createQuery(query1.toString());
+        if(jobId != null) {
+        	query.setString("jobId", jobId);
+        }
+        if(jobPartition != null) {
+        	query.setInteger("jobPartition", jobPartition);
+        }
         query.setFirstResult(pageSize * page);
         query.setMaxResults(pageSize);
         
@@ -1889,7 +2748,7 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
                 log.info("added email-processing entry for user: " + userId + " templateId: " + templateId);
                 if(templateId.longValue() != previousTemplateId.longValue() || userIdList.size() > MAX_UPDATE_SIZE) {
                     // mark eval_assign_user records as sent 
-                    markRecordsAsSent(session, sendingAvailableEmails, templateId,
+                    markRecordsAsSent(session, jobId, sendingAvailableEmails, templateId,
                             userIdList);
                 }
                 userIdList.add(userId);
@@ -1901,7 +2760,7 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 			log.info("Can't mark EvalAssignUser records due to null values: userId == " + userIdList + "   templateId == " + templateId);
     	} else {
 			// mark eval_assign_user records as sent 
-	    	markRecordsAsSent(session, sendingAvailableEmails, templateId,
+	    	markRecordsAsSent(session, jobId, sendingAvailableEmails, templateId,
 					userIdList);
 
     	}
@@ -1912,11 +2771,12 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 	/**
 	 * 
 	 * @param session
+	 * @param jobId only mark the records staged for this job, null for all records
 	 * @param sendingAvailableEmails
 	 * @param templateId
 	 * @param userIdList
 	 */
-	protected void markRecordsAsSent(Session session,
+	protected void markRecordsAsSent(Session session, String jobId,
 			boolean sendingAvailableEmails, Long templateId,
 			List<String> userIdList) {
 		
@@ -1929,9 +2789,16 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 		} else {
 			hqlBuffer.append("set reminderEmailSent = :dateSent ");
 		}
-		hqlBuffer.append("where id in (select eauId from EvalEmailProcessingData where emailTemplateId = :emailTemplateId and userId = :userId)");
+		hqlBuffer.append("where id in (select eauId from EvalEmailProcessingData where emailTemplateId = :emailTemplateId and userId = :userId");
+		if(jobId != null) {
+			hqlBuffer.append(" and jobId = :jobId");
+		}
+		hqlBuffer.append(")");
 		
 		Query updateQuery = session.createQuery(hqlBuffer.toString());
+		if(jobId != null) {
+			updateQuery.setString("jobId", jobId);
+		}
 		
 		updateQuery.setDate("dateSent", new Date());
 		updateQuery.setLong("emailTemplateId", templateId);
@@ -1955,82 +2822,142 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
 
     /*
      * (non-Javadoc)
-     * @see org.sakaiproject.evaluation.dao.EvaluationDao#resetConsolidatedEmailRecipients()
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#resetConsolidatedEmailRecipients(java.lang.String)
      */
-	public int resetConsolidatedEmailRecipients() {
+	public int resetConsolidatedEmailRecipients(String jobId) {
 		String deleteHql = "delete from EvalEmailProcessingData";
+		if(jobId != null) {
+			deleteHql += " where jobId = :jobId";
+		}
 		Query query = currentSession().createQuery(deleteHql);
+		if(jobId != null) {
+			query.setString("jobId", jobId);
+		}
 		return query.executeUpdate();
 	}
 	
     /*
      * (non-Javadoc)
-     * @see org.sakaiproject.evaluation.dao.EvaluationDao#selectConsolidatedEmailRecipients(boolean, java.util.Date, boolean, java.util.Date, java.lang.String)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#selectConsolidatedEmailRecipients(java.lang.String, boolean, java.util.Date, boolean, java.util.Date, java.lang.String)
      */
-	public int selectConsolidatedEmailRecipients(boolean useAvailableEmailSent, Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType) {
+	@SuppressWarnings("unchecked")
+	public int selectConsolidatedEmailRecipients(String jobId, boolean useAvailableEmailSent, Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType) {
+		if(jobId == null) {
+			throw new IllegalArgumentException("jobId must be set");
+		}
+		String templateProperty;
+		if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE.equalsIgnoreCase(emailTemplateType)) {
+			templateProperty = "eval.availableEmailTemplate";
+		} else if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER.equalsIgnoreCase(emailTemplateType)) {
+			templateProperty = "eval.reminderEmailTemplate";
+		} else {
+			throw new IllegalArgumentException("Invalid consolidated email template type: " + emailTemplateType);
+		}
 		int count = 0;
 		try {
-    	StringBuilder queryBuf = new StringBuilder();
-    	Map<String,Object> params = new HashMap<>();
-    	
-	    	queryBuf.append("insert into EvalEmailProcessingData (eauId,userId,groupId,emailTemplateId,evalId,evalDueDate) ");
-	    	queryBuf.append("select user.id as eauId,user.userId as userId,user.evalGroupId as groupId, ");
-    	if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("eval.availableEmailTemplate.id as emailTemplateId");
-    	} else if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("eval.reminderEmailTemplate.id as emailTemplateId");
-    	} else {
-    		queryBuf.append("'' as emailTemplateId");
-    	}
-	    	queryBuf.append(",eval.id as evalId, eval.dueDate as evalDueDate ");
-	    	queryBuf.append("from EvalAssignUser as user ");
-		queryBuf.append("inner join user.evaluation as eval ");
-			queryBuf.append("where user.type = :userType and eval.startDate <= current_timestamp() and user.completedDate is null ");
-		params.put("userType", EvalAssignUser.TYPE_EVALUATOR);
-    	if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("and eval.availableEmailTemplate.type = :emailTemplateType ");
-    		params.put("emailTemplateType", emailTemplateType);
-    		
-    	} else if(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER.equalsIgnoreCase(emailTemplateType)) {
-    		queryBuf.append("and eval.reminderEmailTemplate.type = :emailTemplateType ");
-    		params.put("emailTemplateType", emailTemplateType);
-    	} 
-    	
-    	if(useAvailableEmailSent) {
-    		if(availableEmailSent == null) {
-    			queryBuf.append("and user.availableEmailSent is null ");
-    		} else {
-    			queryBuf.append("and (user.availableEmailSent is null or user.availableEmailSent < :availableEmailSent) ");
-    			params.put("availableEmailSent", availableEmailSent);
-    		}
-    	}
-   	
-    	if(useReminderEmailSent) {
-    		if(reminderEmailSent == null) {
-    			queryBuf.append("and user.reminderEmailSent is null ");
-    		} else {
-    			queryBuf.append("and (user.reminderEmailSent is null or user.reminderEmailSent < :reminderEmailSent) ");
-    			params.put("reminderEmailSent", reminderEmailSent);
-    		}
-    	}
-		
-    	Query query = currentSession().createQuery(queryBuf.toString());
-    	
-    	for(Map.Entry<String,Object> entry : params.entrySet()) {
-    		if(entry.getValue() instanceof Date) {
-    			query.setDate(entry.getKey(), (Date) entry.getValue());
-    		} else if(entry.getValue() instanceof String) {
-    			query.setString(entry.getKey(), (String) entry.getValue());
-    		}
-    	}
-    	
-	    	count = query.executeUpdate();
-    	log.debug("Rows inserted into EVAL_EMAIL_PROCESSING_QUEUE: " + count);
+			// the assignments which should be staged right now
+			StringBuilder matchingHQL = new StringBuilder();
+			Map<String,Object> params = new HashMap<>();
+			matchingHQL.append("from EvalAssignUser as user ");
+			matchingHQL.append("inner join user.evaluation as eval ");
+			matchingHQL.append("where user.type = :userType and eval.startDate <= current_timestamp() and user.completedDate is null ");
+			matchingHQL.append("and ").append(templateProperty).append(".type = :emailTemplateType ");
+			params.put("userType", EvalAssignUser.TYPE_EVALUATOR);
+			params.put("emailTemplateType", emailTemplateType);
+			params.put("jobId", jobId);
+
+			if(useAvailableEmailSent) {
+				if(availableEmailSent == null) {
+					matchingHQL.append("and user.availableEmailSent is null ");
+				} else {
+					matchingHQL.append("and (user.availableEmailSent is null or user.availableEmailSent < :availableEmailSent) ");
+					params.put("availableEmailSent", availableEmailSent);
+				}
+			}
+
+			if(useReminderEmailSent) {
+				if(reminderEmailSent == null) {
+					matchingHQL.append("and user.reminderEmailSent is null ");
+				} else {
+					matchingHQL.append("and (user.reminderEmailSent is null or user.reminderEmailSent < :reminderEmailSent) ");
+					params.put("reminderEmailSent", reminderEmailSent);
+				}
+			}
+
+			Session session = currentSession();
+
+			// remove the staged records which no longer match (or whose due date or template changed)
+			String staleHql = "select proc.id from EvalEmailProcessingData as proc where proc.jobId = :jobId "
+					+ "and not exists (select user.id " + matchingHQL
+					+ "and user.id = proc.eauId and eval.id = proc.evalId and " + templateProperty + ".id = proc.emailTemplateId "
+					+ "and (eval.dueDate = proc.evalDueDate or (eval.dueDate is null and proc.evalDueDate is null)))";
+			int removed = 0;
+			List<Long> staleIds;
+			do {
+				Query staleQuery = session.createQuery(staleHql);
+				setConsolidatedEmailParams(staleQuery, params);
+				staleQuery.setMaxResults(MAX_IN_CLAUSE_SIZE);
+				staleIds = staleQuery.list();
+				if(! staleIds.isEmpty()) {
+					Query deleteQuery = session.createQuery("delete from EvalEmailProcessingData where id in (:ids)");
+					deleteQuery.setParameterList("ids", staleIds);
+					removed += deleteQuery.executeUpdate();
+				}
+			} while(staleIds.size() == MAX_IN_CLAUSE_SIZE);
+
+			// add the matching records which are not staged yet, always read the first page since the
+			// records added by the previous page are excluded by the query
+			String newHql = "select user.id, user.userId, user.evalGroupId, " + templateProperty + ".id, eval.id, eval.dueDate "
+					+ matchingHQL
+					+ "and not exists (select proc.id from EvalEmailProcessingData as proc where proc.jobId = :jobId and proc.eauId = user.id)";
+			int added = 0;
+			List<Object[]> rows;
+			do {
+				Query newQuery = session.createQuery(newHql);
+				setConsolidatedEmailParams(newQuery, params);
+				newQuery.setMaxResults(STAGING_PAGE_SIZE);
+				rows = newQuery.list();
+				List<EvalEmailProcessingData> staged = new ArrayList<>(rows.size());
+				for(Object[] row : rows) {
+					EvalEmailProcessingData data = new EvalEmailProcessingData();
+					data.setEauId((Long) row[0]);
+					data.setUserId((String) row[1]);
+					data.setGroupId((String) row[2]);
+					data.setEmailTemplateId((Long) row[3]);
+					data.setEvalId((Long) row[4]);
+					data.setEvalDueDate((Date) row[5]);
+					data.setJobId(jobId);
+					data.setJobPartition(EvalEmailProcessingData.makeJobPartition(data.getUserId()));
+					staged.add(data);
+				}
+				saveNewEntities(staged);
+				for(EvalEmailProcessingData data : staged) {
+					session.evict(data);
+				}
+				added += staged.size();
+			} while(rows.size() == STAGING_PAGE_SIZE);
+
+			Query countQuery = session.createQuery("select count(*) from EvalEmailProcessingData where jobId = :jobId");
+			countQuery.setString("jobId", jobId);
+			count = ((Number) countQuery.uniqueResult()).intValue();
+			if(log.isDebugEnabled()) {
+				log.debug("Consolidated email recipients staged for job " + jobId + ": " + count + " (removed " + removed + ", added " + added + ")");
+			}
 		} catch(DataAccessResourceFailureException | IllegalStateException | HibernateException e) {
 			log.warn("error processing consolidated-email query: " + e);
 		}
 		
-    	return count;
+		return count;
+	}
+
+	private void setConsolidatedEmailParams(Query query, Map<String,Object> params) {
+		for(Map.Entry<String,Object> entry : params.entrySet()) {
+			if(entry.getValue() instanceof Date) {
+				query.setDate(entry.getKey(), (Date) entry.getValue());
+			} else if(entry.getValue() instanceof String) {
+				query.setString(entry.getKey(), (String) entry.getValue());
+			}
+		}
 	}
 
     /*
@@ -2061,6 +2988,88 @@ public class EvaluationDaoImpl extends HibernateGeneralGenericDao implements Eva
         return results;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getRuleGroupsForNodes(java.lang.String[])
+     */
+    public Map<String, Set<String>> getRuleGroupsForNodes(String[] nodeIds) {
+        Map<String, Set<String>> nodeGroups = new HashMap<>();
+        if (nodeIds == null || nodeIds.length == 0) {
+            return nodeGroups;
+        }
+        Map<String, Object> params = new HashMap<>();
+        params.put("nodeIds", nodeIds);
+        String hql = "select rg.nodeID, rg.evalGroupID from EvalHierarchyRuleGroup rg where rg.nodeID in (:nodeIds)";
+        List<Object[]> results = executeChunkedHqlQuery(hql, params, null, 0, 0);
+        for (Object[] result : results) {
+            String nodeId = (String) result[0];
+            Set<String> groups = nodeGroups.get(nodeId);
+            if (groups == null) {
+                groups = new HashSet<>();
+                nodeGroups.put(nodeId, groups);
+            }
+            groups.add( (String) result[1] );
+        }
+        return nodeGroups;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#getRuleGroupRuleIds()
+     */
+    @SuppressWarnings("unchecked")
+    public Set<Long> getRuleGroupRuleIds() {
+        String hql = "select distinct rg.ruleID from EvalHierarchyRuleGroup rg";
+        return new HashSet<>( (List<Long>) executeHqlQuery(hql, new HashMap<String, Object>(), 0, 0) );
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#replaceRuleGroups(java.lang.Long, java.lang.String, java.util.Set)
+     */
+    public boolean replaceRuleGroups(Long ruleId, String nodeId, Set<String> evalGroupIds) {
+        if (ruleId == null || nodeId == null) {
+            throw new IllegalArgumentException("ruleId and nodeId must be set");
+        }
+        Set<String> added = evalGroupIds == null ? new HashSet<String>() : new HashSet<>(evalGroupIds);
+        List<Long> removedIds = new ArrayList<>();
+        List<EvalHierarchyRuleGroup> existing = findBySearch(EvalHierarchyRuleGroup.class, new Search("ruleID", ruleId));
+        for (EvalHierarchyRuleGroup ruleGroup : existing) {
+            // a group stays only if the rule still matches it and the rule was not moved to another node
+            if (nodeId.equals(ruleGroup.getNodeID()) && added.remove(ruleGroup.getEvalGroupID())) {
+                continue;
+            }
+            removedIds.add(ruleGroup.getId());
+        }
+        if (! removedIds.isEmpty()) {
+            for (Object[] chunk : makeInClauseChunks(removedIds.toArray())) {
+                Query query = currentSession().createQuery("delete EvalHierarchyRuleGroup rg where rg.id in (:ids)");
+                query.setParameterList("ids", chunk);
+                query.executeUpdate();
+            }
+        }
+        if (! added.isEmpty()) {
+            List<EvalHierarchyRuleGroup> ruleGroups = new ArrayList<>(added.size());
+            for (String evalGroupId : added) {
+                ruleGroups.add( new EvalHierarchyRuleGroup(ruleId, nodeId, evalGroupId) );
+            }
+            saveNewEntities(ruleGroups);
+        }
+        return ! removedIds.isEmpty() || ! added.isEmpty();
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.dao.EvaluationDao#removeRuleGroups(java.lang.Long[])
+     */
+    public int removeRuleGroups(Long[] ruleIds) {
+        int removed = 0;
+        if (ruleIds != null && ruleIds.length > 0) {
+            for (Object[] chunk : makeInClauseChunks(ruleIds)) {
+                Query query = currentSession().createQuery("delete EvalHierarchyRuleGroup rg where rg.ruleID in (:ids)");
+                query.setParameterList("ids", chunk);
+                removed += query.executeUpdate();
+            }
+        }
+        return removed;
+    }
+
     /**
      * Cleans up lock if there was a failure
      * 
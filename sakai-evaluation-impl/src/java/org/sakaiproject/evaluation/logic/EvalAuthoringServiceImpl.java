@@ -15,10 +15,12 @@
 package org.sakaiproject.evaluation.logic;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -1581,28 +1583,39 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             throw new IllegalArgumentException("Invalid ownerId, cannot be null or empty string");         
         }
 
-        Set<EvalScale> copiedScales = new HashSet<>();
+        Set<EvalScale> copiedScales = new LinkedHashSet<>();
         if (scaleIds != null && scaleIds.length > 0) {
             scaleIds = ArrayUtils.unique(scaleIds);
-            List<EvalScale> scales = dao.findBySearch(EvalScale.class, new Search("id", scaleIds));
+            List<EvalScale> scales = dao.getScalesWithOptions(scaleIds);
             if (scales.size() != scaleIds.length) {
                 throw new IllegalArgumentException("Invalid scaleIds in the scaleIds array: " + scaleIds);
             }
+            copiedScales.addAll( makeScaleCopies(scales, title, ownerId, hidden).values() );
+            dao.saveNewEntities(copiedScales);
+        }
+        return copiedScales;
+    }
 
-            for (EvalScale original : scales) {
-                String newTitle = title;
-                if (newTitle == null || newTitle.length() == 0) {
-                    newTitle = original.getTitle() + " (copy)";
-                }
-                EvalScale copy = new EvalScale(ownerId, newTitle, original.getMode(), EvalConstants.SHARING_PRIVATE, 
-                        false, null, original.getIdeal(), new ArrayList<String>(original.getOptions()), false);
-                copy.setCopyOf(original.getId());
-                copy.setHidden(hidden);
-                copiedScales.add(copy);
+    /**
+     * Makes non-persistent copies of scales
+     * @param scales the original scales (with options loaded)
+     * @return map of original scale id -> copy (not persisted) in the order of the originals
+     */
+    private Map<Long, EvalScale> makeScaleCopies(Collection<EvalScale> scales, String title, String ownerId,
+            boolean hidden) {
+        Map<Long, EvalScale> originalIdToCopy = new LinkedHashMap<>(scales.size());
+        for (EvalScale original : scales) {
+            String newTitle = title;
+            if (newTitle == null || newTitle.length() == 0) {
+                newTitle = original.getTitle() + " (copy)";
             }
-            dao.saveSet(copiedScales);
+            EvalScale copy = new EvalScale(ownerId, newTitle, original.getMode(), EvalConstants.SHARING_PRIVATE, 
+                    false, null, original.getIdeal(), new ArrayList<>(original.getOptions()), false);
+            copy.setCopyOf(original.getId());
+            copy.setHidden(hidden);
+            originalIdToCopy.put(original.getId(), copy);
         }
-        return copiedScales;
+        return originalIdToCopy;
     }
 
     /* (non-Javadoc)
@@ -1634,7 +1647,7 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             throw new IllegalArgumentException("Invalid ownerId, cannot be null or empty string");         
         }
 
-        Set<EvalItem> copiedItems = new HashSet<>();
+        Set<EvalItem> copiedItems = new LinkedHashSet<>();
         if (itemIds != null && itemIds.length > 0) {
             itemIds = ArrayUtils.unique(itemIds);
             List<EvalItem> items = dao.findBySearch(EvalItem.class, new Search("id", itemIds));
@@ -1642,50 +1655,70 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
                 throw new IllegalArgumentException("Invalid itemIds in array: " + itemIds);
             }
 
-            for (EvalItem original : items) {
-                EvalItem copy = new EvalItem(ownerId, original.getItemText(), original.getDescription(), EvalConstants.SHARING_PRIVATE,
-                        original.getClassification(), false, null, original.getScale(), null, original.getUsesNA(), original.getUsesComment(),
-                        false, original.getDisplayRows(), original.getScaleDisplaySetting(), original.getCategory(), false);
-                // NOTE: no longer copying scales here - EVALSYS-689
-                copy.setCopyOf(original.getId());
-                copy.setHidden(hidden);
-                copy.setCompulsory(original.isCompulsory());
-                copiedItems.add(copy);
-            }
-
+            Map<Long, EvalItem> originalIdToCopy = makeItemCopies(items, ownerId, hidden);
+            Collection<EvalScale> copiedScales = new ArrayList<>();
             if (includeChildren) {
-                // make a copy of all Scales and put them into the Items to replace the originals
-                HashSet<Long> scaleIdSet = new HashSet<>();
-                for (EvalItem item : copiedItems) {
-                    if (item.getScale() != null) {
-                        Long scaleId = item.getScale().getId();
-                        scaleIdSet.add(scaleId);
-                    }
-                }
-                Long[] scaleIds = scaleIdSet.toArray(new Long[scaleIdSet.size()]);
-                // do the scales copy
                 // https://bugs.caret.cam.ac.uk/browse/CTL-1531 - hide all the internal things which are copied (do not pass through the hidden variable)
-                Set<EvalScale> copiedScales = copyScalesInternal(scaleIds, null, ownerId, true);
-                HashMap<Long, EvalScale> originalIdToCopy = new HashMap<>(copiedItems.size());
-                for (EvalScale scale : copiedScales) {
-                    originalIdToCopy.put(scale.getCopyOf(), scale);
-                }
-                // insert the copied items into the copied template items (update the foreign keys when we save)
-                for (EvalItem item : copiedItems) {
-                    if (item.getScale() != null) {
-                        Long scaleId = item.getScale().getId(); // original id
-                        EvalScale copy = originalIdToCopy.get(scaleId);
-                        if (copy != null) {
-                            item.setScale(copy);
-                        }
-                    }
-                }
+                copiedScales = copyItemScales(originalIdToCopy.values(), ownerId);
             }
-            dao.saveSet(copiedItems);
+            copiedItems.addAll( originalIdToCopy.values() );
+            List<Object> toSave = new ArrayList<Object>(copiedScales);
+            toSave.addAll(copiedItems);
+            dao.saveNewEntities(toSave);
         }
         return copiedItems;
     }
 
+    /**
+     * Makes non-persistent copies of items, the copies still point at the original scales
+     * @param items the original items
+     * @return map of original item id -> copy (not persisted) in the order of the originals
+     */
+    private Map<Long, EvalItem> makeItemCopies(Collection<EvalItem> items, String ownerId, boolean hidden) {
+        Map<Long, EvalItem> originalIdToCopy = new LinkedHashMap<>(items.size());
+        for (EvalItem original : items) {
+            EvalItem copy = new EvalItem(ownerId, original.getItemText(), original.getDescription(), EvalConstants.SHARING_PRIVATE,
+                    original.getClassification(), false, null, original.getScale(), null, original.getUsesNA(), original.getUsesComment(),
+                    false, original.getDisplayRows(), original.getScaleDisplaySetting(), original.getCategory(), false);
+            // NOTE: no longer copying scales here - EVALSYS-689
+            copy.setCopyOf(original.getId());
+            copy.setHidden(hidden);
+            copy.setCompulsory(original.isCompulsory());
+            originalIdToCopy.put(original.getId(), copy);
+        }
+        return originalIdToCopy;
+    }
+
+    /**
+     * Makes hidden non-persistent copies of the scales used by the copied items (once per scale)
+     * and puts them into the items to replace the originals
+     * @param copiedItems the copied items (still pointing at the original scales)
+     * @return the copied scales (not persisted)
+     */
+    private Collection<EvalScale> copyItemScales(Collection<EvalItem> copiedItems, String ownerId) {
+        Set<Long> scaleIdSet = new LinkedHashSet<>();
+        for (EvalItem item : copiedItems) {
+            if (item.getScale() != null) {
+                scaleIdSet.add(item.getScale().getId());
+            }
+        }
+        if (scaleIdSet.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<EvalScale> scales = dao.getScalesWithOptions(scaleIdSet.toArray(new Long[scaleIdSet.size()]));
+        Map<Long, EvalScale> originalIdToCopy = makeScaleCopies(scales, null, ownerId, true);
+        // insert the copied scales into the copied items (update the foreign keys when we save)
+        for (EvalItem item : copiedItems) {
+            if (item.getScale() != null) {
+                EvalScale copy = originalIdToCopy.get(item.getScale().getId());
+                if (copy != null) {
+                    item.setScale(copy);
+                }
+            }
+        }
+        return originalIdToCopy.values();
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.EvalAuthoringService#copyTemplateItems(java.lang.Long[], java.lang.String, boolean, java.lang.Long, boolean)
      */
@@ -1706,6 +1739,7 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             }
         }
 
+        // this also loads the items and scales (join fetch)
         List<EvalTemplateItem> templateItemsList = dao.findBySearch(EvalTemplateItem.class, new Search("id", templateItemIds));
         if (templateItemsList.size() != templateItemIds.length) {
             throw new IllegalArgumentException("Invalid templateItemIds in array: " + templateItemIds);
@@ -1715,11 +1749,11 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
         if (toTemplate == null) {
             // all templateItems must be from the same template if this is the case
             for (EvalTemplateItem templateItem : templateItemsList) {
-                Long templateId = templateItem.getTemplate().getId();
+                EvalTemplate template = templateItem.getTemplate();
                 if (toTemplate == null) {
-                    toTemplate = getTemplateById(templateId);
+                    toTemplate = template;
                 } else {
-                    if (! toTemplate.getId().equals(templateId)) {
+                    if (! toTemplate.getId().equals(template.getId())) {
                         throw new IllegalArgumentException("All templateItems must be from the same template when doing a copy within a template, "
                                 + "if you want to copy templateItems from multiple templates into the same templates they are currently in you must "
                                 + "do it in batches where each set if from one template");
@@ -1728,9 +1762,6 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             }
         }
 
-        // sort the list of template items
-        templateItemsList = TemplateItemUtils.orderTemplateItems(templateItemsList, false);
-
         int itemCount = 1; // start at display order 1
         if (toTemplateId == null && toTemplate != null) {
             // copying inside one template so start at the item count + 1
@@ -1738,66 +1769,83 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
             itemCount = getItemCountForTemplate(toTemplate.getId()) + 1;
         }
 
+        Set<EvalTemplateItem> copiedTemplateItems = copyTemplateItemsInternal(templateItemsList, ownerId, hidden, 
+                toTemplate, itemCount, includeChildren);
+
+        Long[] copiedIds = new Long[copiedTemplateItems.size()];
+        int counter = 0;
+        for (EvalTemplateItem copiedTemplateItem : copiedTemplateItems) {
+            copiedIds[counter] = copiedTemplateItem.getId();
+            counter++;
+        }
+        return copiedIds;
+    }
+
+    /**
+     * Internal method: copies the loaded template items (and the items and scales if includeChildren is true)
+     * into a template, all the copies are made in memory and then written with batched inserts
+     * (scales, items and block parents first so the block children can be linked to the new parent ids)
+     * 
+     * @param templateItemsList the original template items (with items and scales loaded)
+     * @param toTemplate the template to copy the template items into
+     * @param itemCount the display order to start the copied template items at
+     * @return the set of saved copies in display order
+     */
+    private Set<EvalTemplateItem> copyTemplateItemsInternal(List<EvalTemplateItem> templateItemsList, String ownerId, 
+            boolean hidden, EvalTemplate toTemplate, int itemCount, boolean includeChildren) {
+        // sort the list of template items
+        templateItemsList = TemplateItemUtils.orderTemplateItems(templateItemsList, false);
+
         /* http://bugs.sakaiproject.org/jira/browse/EVALSYS-689
          * need to track the copied items and scales to avoid copying them more than once
          */
         LinkedHashSet<EvalTemplateItem> copiedTemplateItems = new LinkedHashSet<>(templateItemsList.size());
 
-        // shallow copy all block parents first so we can know their new IDs, then later we will update them
-        List<EvalTemplateItem> parentItems = TemplateItemUtils.getParentItems(templateItemsList);
-        HashMap<Long, EvalTemplateItem> parentIdToCopy = new HashMap<>(parentItems.size());
-        if (! parentItems.isEmpty()) {
-            for (EvalTemplateItem original : parentItems) {
-                Long originalBlockParentId = original.getId();
-                List<EvalTemplateItem> childItems = TemplateItemUtils.getChildItems(templateItemsList, originalBlockParentId);
-                if (childItems.size() > 0) {
-                    // only copy this if it has children, lone parents do not get copied
-                    EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
-                    parentIdToCopy.put(originalBlockParentId, copy);
+        // index the children by the original block parent so each block is only searched once
+        Map<Long, List<EvalTemplateItem>> blockChildren = new HashMap<>();
+        for (EvalTemplateItem templateItem : templateItemsList) {
+            if (TemplateItemUtils.isBlockChild(templateItem)) {
+                List<EvalTemplateItem> children = blockChildren.get(templateItem.getBlockId());
+                if (children == null) {
+                    children = new ArrayList<>();
+                    blockChildren.put(templateItem.getBlockId(), children);
                 }
+                children.add(templateItem);
             }
-            HashSet<EvalTemplateItem> parentItemsToSave = new HashSet<>( parentIdToCopy.values() );
-            dao.saveSet( parentItemsToSave );
         }
 
-        // check for block items
-        List<EvalTemplateItem> nonChildItems = TemplateItemUtils.getNonChildItems(templateItemsList);
-
         // iterate though in display order and copy the template items
+        Map<EvalTemplateItem, EvalTemplateItem> childToParentCopy = new HashMap<>();
+        Set<Long> copiedBlockIds = new HashSet<>();
+        List<EvalTemplateItem> parentCopies = new ArrayList<>();
         int displayOrder = 0;
-        for (EvalTemplateItem original : nonChildItems) {
-            templateItemsList.remove(original); // take this out of the list
+        for (EvalTemplateItem original : TemplateItemUtils.getNonChildItems(templateItemsList)) {
             if (TemplateItemUtils.isBlockParent(original)) {
-                // this is a block parent so copy it and its children
-                Long originalBlockParentId = original.getId();
-                if (parentIdToCopy.containsKey(originalBlockParentId)) {
-                    EvalTemplateItem copyParent = parentIdToCopy.get(originalBlockParentId);
+                // this is a block parent so copy it and its children (lone parents do not get copied)
+                List<EvalTemplateItem> childItems = blockChildren.get(original.getId());
+                if (childItems != null && childItems.size() > 0) {
+                    copiedBlockIds.add(original.getId());
+                    Collections.sort(childItems, new ComparatorsUtils.TemplateItemComparatorByOrder());
+                    EvalTemplateItem copyParent = copyTemplateItem(original, toTemplate, ownerId, hidden);
                     copyParent.setDisplayOrder(itemCount + displayOrder); // fix up display order
                     copyParent.setBlockId(null);
                     copyParent.setBlockParent(true);
-                    //dao.save(copyParent);
                     copiedTemplateItems.add(copyParent);
-                    Long blockParentId = copyParent.getId();
+                    parentCopies.add(copyParent);
 
-                    // loop through and copy all the children and assign them to the parent
-                    List<EvalTemplateItem> childItems = TemplateItemUtils.getChildItems(templateItemsList, originalBlockParentId);
+                    // copy all the children, they are assigned to the parent once it has an id
                     for (int j = 0; j < childItems.size(); j++) {
-                        EvalTemplateItem child = childItems.get(j);
-                        templateItemsList.remove(child); // take this out of the list
-                        // copy the child item
-                        EvalTemplateItem copy = copyTemplateItem(child, toTemplate, ownerId, hidden);
+                        EvalTemplateItem copy = copyTemplateItem(childItems.get(j), toTemplate, ownerId, hidden);
                         copy.setDisplayOrder(j); // fix up display order
-                        copy.setBlockId(blockParentId);
                         copy.setBlockParent(false);
-                        //dao.save(copy);
                         copiedTemplateItems.add(copy);
+                        childToParentCopy.put(copy, copyParent);
                     }
                 }
             } else {
                 // not a block parent
                 EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
                 copy.setDisplayOrder(itemCount + displayOrder); // fix up display order
-                //dao.save(copy);
                 copiedTemplateItems.add(copy);
             }
             displayOrder++;
@@ -1805,50 +1853,54 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
 
         // now copy any remaining orphaned block children into normal items
         for (EvalTemplateItem original : templateItemsList) {
-            displayOrder++;
-            EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
-            copy.setDisplayOrder(itemCount + displayOrder); // fix up display order
-            //dao.save(copy);
-            copiedTemplateItems.add(copy);
+            if (TemplateItemUtils.isBlockChild(original) && ! copiedBlockIds.contains(original.getBlockId())) {
+                displayOrder++;
+                EvalTemplateItem copy = copyTemplateItem(original, toTemplate, ownerId, hidden);
+                copy.setDisplayOrder(itemCount + displayOrder); // fix up display order
+                copiedTemplateItems.add(copy);
+            }
         }
 
+        List<Object> toSave = new ArrayList<>();
         if (includeChildren) {
-            // make a copy of all items and put them into the TIs to replace the originals
-            HashSet<Long> itemIdSet = new HashSet<>();
+            // make a copy of all items (once each) and put them into the TIs to replace the originals
+            Map<Long, EvalItem> originalItems = new LinkedHashMap<>();
             for (EvalTemplateItem eti : copiedTemplateItems) {
                 if (eti.getItem() != null) {
-                    Long itemId = eti.getItem().getId();
-                    itemIdSet.add(itemId);
+                    originalItems.put(eti.getItem().getId(), eti.getItem());
                 }
             }
-            Long[] itemIds = itemIdSet.toArray(new Long[itemIdSet.size()]);
-            // do the items copy
-            Set<EvalItem> copiedItems = copyItemsInternal(itemIds, ownerId, hidden, includeChildren);
-            HashMap<Long, EvalItem> originalIdToCopy = new HashMap<>(copiedItems.size());
-            for (EvalItem evalItem : copiedItems) {
-                originalIdToCopy.put(evalItem.getCopyOf(), evalItem);
-            }
+            Map<Long, EvalItem> originalIdToCopy = makeItemCopies(originalItems.values(), ownerId, hidden);
+            toSave.addAll( copyItemScales(originalIdToCopy.values(), ownerId) );
+            toSave.addAll( originalIdToCopy.values() );
             // insert the copied items into the copied template items (update the foreign keys when we save)
             for (EvalTemplateItem eti : copiedTemplateItems) {
                 if (eti.getItem() != null) {
-                    Long itemId = eti.getItem().getId(); // original id
-                    EvalItem copy = originalIdToCopy.get(itemId);
+                    EvalItem copy = originalIdToCopy.get(eti.getItem().getId());
                     if (copy != null) {
                         eti.setItem(copy);
                     }
                 }
             }
         }
-        // save the template items
-        dao.saveSet(copiedTemplateItems);
 
-        Long[] copiedIds = new Long[copiedTemplateItems.size()];
-        int counter = 0;
-        for (EvalTemplateItem copiedTemplateItem : copiedTemplateItems) {
-            copiedIds[counter] = copiedTemplateItem.getId();
-            counter++;
+        // save the scales, items and block parents first so the parents have ids
+        toSave.addAll(parentCopies);
+        dao.saveNewEntities(toSave);
+
+        // now link the children to the new parents and save the rest of the template items
+        List<EvalTemplateItem> remaining = new ArrayList<>(copiedTemplateItems.size());
+        for (EvalTemplateItem copy : copiedTemplateItems) {
+            EvalTemplateItem copyParent = childToParentCopy.get(copy);
+            if (copyParent != null) {
+                copy.setBlockId(copyParent.getId());
+            }
+            if (copy.getId() == null) {
+                remaining.add(copy);
+            }
         }
-        return copiedIds;
+        dao.saveNewEntities(remaining);
+        return copiedTemplateItems;
     }
 
     /**
@@ -1895,16 +1947,15 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
 
         dao.save(copy);
 
-        if (original.getTemplateItems() != null 
-                && original.getTemplateItems().size() > 0) {
-            // now copy the template items and save the new linkages
-            Long[] originalTIIds = TemplateItemUtils.makeTemplateItemsIdsArray(original.getTemplateItems());
+        // load the template items (and items and scales) in one query
+        List<EvalTemplateItem> originalTemplateItems = dao.findBySearch(EvalTemplateItem.class, 
+                new Search("template.id", templateId));
+        if (originalTemplateItems.size() > 0) {
+            // now copy the template items and set the new linkages (the template side is inverse so it does not need saving)
             // https://bugs.caret.cam.ac.uk/browse/CTL-1531 - hide all the internal things which are copied (do not pass through the hidden variable)
-            Long[] templateItemIds = copyTemplateItems(originalTIIds, ownerId, true, copy.getId(), includeChildren);
-            List<EvalTemplateItem> templateItemsList = dao.findBySearch(EvalTemplateItem.class, 
-                    new Search("id", templateItemIds));
-            copy.setTemplateItems( new HashSet<>(templateItemsList) );
-            dao.save(copy);
+            Set<EvalTemplateItem> copiedTemplateItems = copyTemplateItemsInternal(originalTemplateItems, ownerId, true, 
+                    copy, 1, includeChildren);
+            copy.setTemplateItems( new HashSet<>(copiedTemplateItems) );
         }
 
         return copy.getId();
@@ -2145,21 +2196,56 @@ public class EvalAuthoringServiceImpl implements EvalAuthoringService {
 	 * @see org.sakaiproject.evaluation.logic.EvalAuthoringService#saveTemplateItemOrder(java.util.Map, java.lang.String)
 	 */
 	public void saveTemplateItemOrder(Map<Long, Integer> orderingMap, String currentUserId) {
-	    /* TODO - warning! this method does not even check to see if these template items are in the same template
-	     * This is very dangerous and was written poorly by the original author, this should be rewritten
-	     */
-		Iterator<Map.Entry<Long, Integer>> selector = orderingMap.entrySet().iterator();
-        while ( selector.hasNext() ) {
-        	Map.Entry<Long, Integer> pairs = selector.next();
-        	Long templateItemId = pairs.getKey();
-        	Integer order = pairs.getValue();
-        	
-            EvalTemplateItem templateItem = getTemplateItemById(templateItemId);
-            templateItem.setDisplayOrder(order);
-            
-            saveTemplateItem(templateItem, currentUserId);
-			
+        if (orderingMap == null || orderingMap.isEmpty()) {
+            return;
+        }
+        Long[] templateItemIds = orderingMap.keySet().toArray(new Long[orderingMap.size()]);
+        // load all the template items at once
+        List<EvalTemplateItem> templateItems = dao.findBySearch(EvalTemplateItem.class, new Search("id", templateItemIds));
+        if (templateItems.size() != templateItemIds.length) {
+            throw new IllegalArgumentException("Invalid templateItemIds ("+ArrayUtils.arrayToString(templateItemIds)
+                    +"), only "+templateItems.size()+" of "+templateItemIds.length+" template items exist");
+        }
+
+        // all the items must be in the same unlocked template
+        EvalTemplate template = null;
+        Set<String> checkedOwners = new HashSet<>();
+        for (EvalTemplateItem templateItem : templateItems) {
+            if (template == null) {
+                template = templateItem.getTemplate();
+                if (template.getLocked()) {
+                    throw new IllegalStateException("This template ("+template.getId()+") is locked, templateItems cannot be reordered");
+                }
+            } else if (! template.getId().equals(templateItem.getTemplate().getId())) {
+                throw new IllegalArgumentException("All template items must be in the same template ("+template.getId()
+                        +") to be reordered, templateItem ("+templateItem.getId()+") is in template ("+templateItem.getTemplate().getId()+")");
+            }
+            // only need to check each owner once
+            if (checkedOwners.add(templateItem.getOwner())) {
+                securityChecks.checkUserControlTemplateItem(currentUserId, templateItem);
+            }
+        }
+
+        // only save the items where the order actually changed
+        Date now = new Date();
+        Set<EvalTemplateItem> changedItems = new HashSet<>();
+        for (EvalTemplateItem templateItem : templateItems) {
+            Integer order = orderingMap.get(templateItem.getId());
+            if (order == null) {
+                throw new IllegalArgumentException("No display order set for templateItem ("+templateItem.getId()+")");
+            }
+            if (! order.equals(templateItem.getDisplayOrder())) {
+                templateItem.setDisplayOrder(order);
+                templateItem.setLastModified(now);
+                changedItems.add(templateItem);
+            }
+        }
+        if (! changedItems.isEmpty()) {
+            dao.saveSet(changedItems);
+            commonLogic.registerEntityEvent(EVENT_TEMPLATE_UPDATE, template);
         }
+        log.debug("User ("+currentUserId+") reordered "+changedItems.size()+" of "+templateItems.size()
+                +" templateItems in template ("+template.getId()+")");
 	}
 
 	public List<EvalTemplateItem> getCompulsoryTemplateItems(List<EvalTemplateItem> templateItemsList, EvalEvaluation evaluation) {  
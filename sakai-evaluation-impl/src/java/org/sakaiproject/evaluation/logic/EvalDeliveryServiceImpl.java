@@ -14,20 +14,32 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.dao.EvaluationDao;
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic;
+import org.sakaiproject.evaluation.logic.model.EvalGroup;
+import org.sakaiproject.evaluation.logic.model.EvalResponder;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
@@ -41,6 +53,8 @@ import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 import org.sakaiproject.genericdao.api.search.Order;
 import org.sakaiproject.genericdao.api.search.Restriction;
 import org.sakaiproject.genericdao.api.search.Search;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -55,6 +69,7 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
     // Event names cannot be over 32 chars long              // max-32:12345678901234567890123456789012
     protected final String EVENT_RESPONSE_CREATED =                   "eval.response.created";
     protected final String EVENT_RESPONSE_UPDATED =                   "eval.response.updated";
+    protected final String EVENT_EMAIL_SUBMISSION =                   "eval.email.eval.submission";
 
     private EvaluationDao dao;
     public void setDao(EvaluationDao dao) {
@@ -91,9 +106,116 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
        this.emailsLogic = emailsLogic;
     }
 
+    /**
+     * The number of worker threads which send the emails after a response is submitted
+     */
+    protected static final int POST_SUBMISSION_THREADS = 2;
+    /**
+     * The max number of post submission tasks waiting for a worker,
+     * once this is reached the submitting thread runs the task itself
+     */
+    protected static final int POST_SUBMISSION_QUEUE_SIZE = 5000;
+
+    private ThreadPoolExecutor postSubmissionExecutor;
+    /**
+     * The keys of the post submission tasks which are waiting to run,
+     * the same task is never queued twice so repeated submits do not repeat the work
+     */
+    private final Set<String> queuedPostSubmissionTasks = ConcurrentHashMap.newKeySet();
+
     // INIT method
     public void init() {
         log.debug("Init");
+        initiatePostSubmissionExecutor();
+    }
+
+    public void destroy() {
+        if (postSubmissionExecutor != null) {
+            // let the queued locks and emails finish before shutting down
+            postSubmissionExecutor.shutdown();
+            try {
+                if (! postSubmissionExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    log.warn("Post submission tasks still running on shutdown, "+postSubmissionExecutor.getQueue().size()+" tasks not run");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts the bounded pool of daemon threads which send confirmation emails
+     * after a response is submitted, this keeps the mail server out of the submitting request
+     */
+    protected void initiatePostSubmissionExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger(0);
+        ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "eval-post-submission-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        postSubmissionExecutor = new ThreadPoolExecutor(POST_SUBMISSION_THREADS, POST_SUBMISSION_THREADS,
+                60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(POST_SUBMISSION_QUEUE_SIZE),
+                threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Queue up work to be done after a response is saved, a task is ignored if one with the same key
+     * is already waiting to run, if the workers are not running (or the queue is full or the workers
+     * shut down while queueing) then the task runs right away
+     * 
+     * @param key a unique key for this work
+     * @param task the work to do, failures are logged and otherwise ignored
+     * @return true if the task was queued (or run), false if the same task is already waiting to run
+     */
+    protected boolean queuePostSubmissionTask(final String key, final Runnable task) {
+        if (! queuedPostSubmissionTasks.add(key)) {
+            log.debug("Post submission task already queued: " + key);
+            return false;
+        }
+        Runnable wrapper = new Runnable() {
+            public void run() {
+                queuedPostSubmissionTasks.remove(key);
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.warn("Failure running post submission task (" + key + "): " + e.getMessage(), e);
+                }
+            }
+        };
+        if (postSubmissionExecutor == null || postSubmissionExecutor.isShutdown()) {
+            wrapper.run();
+        } else {
+            try {
+                postSubmissionExecutor.execute(wrapper);
+            } catch (RejectedExecutionException e) {
+                // the wrapper clears the key so the task is never stuck as queued
+                log.debug("Post submission task rejected by the workers, running it now: " + key);
+                wrapper.run();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Run work in the current thread once the current transaction commits,
+     * nothing is run if the transaction rolls back, the work runs right away if there is no transaction
+     * 
+     * @param work the work to do
+     */
+    protected void runAfterCommit(final Runnable work) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    work.run();
+                }
+            });
+        } else {
+            work.run();
+        }
     }
 
     /* (non-Javadoc)
@@ -192,27 +314,37 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
             String completeMessage = ", response is incomplete";
             if (responseComplete) {
                 /* the response is complete (submission of an evaluation) 
-                 * and not just creating the empty response so lock related evaluation
+                 * and not just creating the empty response so lock related evaluation,
+                 * this stays in the submit transaction so a failed submit never locks the evaluation,
+                 * it only happens on the first submission since the evaluation is locked after that
                  */
-                log.info("Locking evaluation (" + response.getEvaluation().getId() + ") and associated entities");
-                EvalEvaluation evaluation = (EvalEvaluation) dao.findById(EvalEvaluation.class, response.getEvaluation().getId());
-                dao.lockEvaluation(evaluation, true);
+                if (! Boolean.TRUE.equals(response.getEvaluation().getLocked())) {
+                    EvalEvaluation evaluation = (EvalEvaluation) dao.findById(EvalEvaluation.class, evaluationId);
+                    if (dao.lockEvaluation(evaluation, true)) {
+                        log.info("Locked evaluation (" + evaluationId + ") and associated entities");
+                    }
+                }
                 completeMessage = ", response is complete";
             }
 
+            /* events stay in this thread because they are recorded against the current session user,
+             * posting an event is only a queue insert anyway
+             */
             if (newResponse) {
                 commonLogic.registerEntityEvent(EVENT_RESPONSE_CREATED, response);
             } else {
                 commonLogic.registerEntityEvent(EVENT_RESPONSE_UPDATED, response);            
             }
             
-            //send an confirmation email to the responder 
-            try {
-            	if(((Boolean) settings.get(EvalSettings.ENABLE_SUBMISSION_CONFIRMATION_EMAIL))) {
-                	  emailsLogic.sendEvalSubmissionConfirmationEmail(userId, response.getEvaluation().getId());
-                  }
-            }catch(Exception e){
-            	log.warn("Unable to send the confirmation email to user: " + userId, e);
+            //send an confirmation email to the responder once the submission is committed,
+            // saving an incomplete response is not a submission so it sends nothing
+            if (responseComplete && ((Boolean) settings.get(EvalSettings.ENABLE_SUBMISSION_CONFIRMATION_EMAIL))) {
+                final String emailKey = "email:" + response.getId() + ":" + response.getLastModified().getTime();
+                runAfterCommit(new Runnable() {
+                    public void run() {
+                        queueConfirmationEmail(emailKey, userId, evaluationId);
+                    }
+                });
             }
             
             int answerCount = response.getAnswers() == null ? 0 : response.getAnswers().size();
@@ -227,6 +359,45 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
                 + "), evalGroupId: " + response.getEvalGroupId());
     }
 
+    /**
+     * Queue the submission confirmation email for the responder and record the email event,
+     * this runs in the submitting thread (after the commit) since the workers have no session user,
+     * nothing is queued or recorded if the responder has no email address or there is no template
+     * 
+     * @param key the unique key for this email
+     * @param userId the internal user id of the responder
+     * @param evaluationId the evaluation which the response was submitted to
+     */
+    private void queueConfirmationEmail(String key, String userId, Long evaluationId) {
+        try {
+            EvalUser user = commonLogic.getEvalUserById(userId);
+            if (user == null || EvalUtils.isBlank(user.email)) {
+                log.debug("No confirmation email for user (" + userId + ") with no email address");
+                return;
+            }
+            // fails if there is no submission template
+            evaluationService.getEmailTemplate(evaluationId, EvalConstants.EMAIL_TEMPLATE_SUBMITTED);
+            if (queuePostSubmissionTask(key, makeConfirmationEmailTask(userId, evaluationId))) {
+                commonLogic.registerEntityEvent(EVENT_EMAIL_SUBMISSION, EvalEvaluation.class, evaluationId.toString());
+            }
+        } catch (Exception e) {
+            log.warn("Unable to send the confirmation email to user: " + userId, e);
+        }
+    }
+
+    /**
+     * @param userId the internal user id of the responder
+     * @param evaluationId the evaluation which the response was submitted to
+     * @return a task which sends the submission confirmation email to the responder (without recording the event)
+     */
+    private Runnable makeConfirmationEmailTask(final String userId, final Long evaluationId) {
+        return new Runnable() {
+            public void run() {
+                emailsLogic.sendEvalSubmissionConfirmationEmail(userId, evaluationId, false);
+            }
+        };
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#getResponseById(java.lang.Long)
      */
@@ -366,6 +537,46 @@ public class EvalDeliveryServiceImpl implements EvalDeliveryService {
         return dao.findBySearch(EvalResponse.class, search);
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalDeliveryService#getResponders(java.lang.Long, java.lang.String, int, int)
+     */
+    public List<EvalResponder> getResponders(Long evaluationId, String evalGroupId, int start, int limit) {
+        log.debug("evaluationId: " + evaluationId + ", evalGroupId: " + evalGroupId + ", start: " + start + ", limit: " + limit);
+
+        EvalEvaluation eval = evaluationService.getEvaluationById(evaluationId);
+        if (eval == null) {
+            throw new IllegalArgumentException("Could not find evaluation with id: " + evaluationId);
+        }
+        // anonymous evals have no group separation so only the users who responded are listed
+        boolean evalAnonymous = EvalConstants.EVALUATION_AUTHCONTROL_NONE.equals(eval.getAuthControl());
+        List<Object[]> rows = dao.getResponderRows(evaluationId, evalGroupId, evalAnonymous, start, limit);
+
+        // resolve all the users on this page in one lookup and each group only once
+        Set<String> userIds = new LinkedHashSet<>();
+        Map<String, EvalGroup> groups = new HashMap<>();
+        for (Object[] row : rows) {
+            String groupId = (String) row[0];
+            userIds.add( (String) row[1] );
+            if (! evalAnonymous && ! groups.containsKey(groupId)) {
+                groups.put(groupId, commonLogic.makeEvalGroupObject(groupId));
+            }
+        }
+        // invalid users are returned in place of the users which cannot be found
+        Map<String, EvalUser> users = new HashMap<>();
+        for (EvalUser user : commonLogic.getEvalUsersByIds( new ArrayList<>(userIds) )) {
+            users.put(user.userId, user);
+        }
+
+        List<EvalResponder> responders = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            String groupId = (String) row[0];
+            String userId = (String) row[1];
+            responders.add( new EvalResponder(groupId, groups.get(groupId), userId, users.get(userId), 
+                    (Long) row[2], (Date) row[3]) );
+        }
+        return responders;
+    }
+
 
 
     /* (non-Javadoc)
@@ -35,6 +35,7 @@ import org.sakaiproject.evaluation.logic.model.EvalReminderStatus;
 import org.sakaiproject.evaluation.logic.model.EvalUser;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
+import org.sakaiproject.evaluation.model.EvalEmailProcessingData;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
@@ -923,7 +924,9 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 		
 		Date startTime = new Date();
 
-		int count = this.evaluationService.selectConsoliatedEmailRecipients(true, null, true, null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+		// the staged recipients are kept between runs so only the changes since the last run are written
+		String stagingJobId = EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE;
+		int count = this.evaluationService.selectConsoliatedEmailRecipients(stagingJobId, true, null, true, null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
 		if(log.isDebugEnabled()) {
 			log.debug("Number of evalAssignUser entities selected for available emails: " + count);
 		}
@@ -932,21 +935,10 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
     	if(count > 0) {
         	if(jobStatusReporter != null) {
         		jobStatusReporter.reportProgress(jobId, "sendingAnnouncements", Integer.toString(count));
-        		jobStatusReporter.reportProgress(jobId, "announcementGroups", Integer.toString(this.evaluationService.countDistinctGroupsInConsolidatedEmailMapping()));
+        		jobStatusReporter.reportProgress(jobId, "announcementGroups", Integer.toString(this.evaluationService.countDistinctGroupsInConsolidatedEmailMapping(stagingJobId)));
         	}
 
-	    	int page = 0;
-	    	List<String> userIds;
-	    	do {
-		    	List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(true, batchSize, page++);
-		    	userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter);
-		    	if(userIds != null) {
-		    		recipients.addAll(userIds);
-		    	}
-	    		takeShortBreak(waitInterval);
-	    	} while(userIds != null && !userIds.isEmpty());
-	    	
-	    	this.evaluationService.resetConsolidatedEmailRecipients();
+	    	recipients.addAll(sendStagedConsolidatedEmails(stagingJobId, true, batchSize, waitInterval, jobStatusReporter, jobId));
 		}
     	
 		if(jobId != null && jobStatusReporter != null) {
@@ -1008,24 +1000,16 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
     	}
 		Date reminderEmailSent = new Date();
 		
-		int count = this.evaluationService.selectConsoliatedEmailRecipients(availableEmailEnabled, availableEmailSent , true, reminderEmailSent , EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+		String stagingJobId = EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER;
+		int count = this.evaluationService.selectConsoliatedEmailRecipients(stagingJobId, availableEmailEnabled, availableEmailSent , true, reminderEmailSent , EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
     	log.debug("Number of evalAssignUser entities selected for reminder emails: " + count);
     	if(count > 0) {
         	if(jobStatusReporter != null) {
         		jobStatusReporter.reportProgress(jobId, "sendingReminders", Integer.toString(count));
-        		jobStatusReporter.reportProgress(jobId, "reminderGroups", Integer.toString(this.evaluationService.countDistinctGroupsInConsolidatedEmailMapping()));
+        		jobStatusReporter.reportProgress(jobId, "reminderGroups", Integer.toString(this.evaluationService.countDistinctGroupsInConsolidatedEmailMapping(stagingJobId)));
         	}
-        	int page = 0;
-        	List<String> userIds;
-	    	do {
-	    		List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(false, batchSize, page++);
-	    		userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter);
-	    		if(userIds != null)
-	    		recipients.addAll(userIds);
-	    		takeShortBreak(waitInterval);
-	    	} while(userIds != null && !userIds.isEmpty());
+        	recipients.addAll(sendStagedConsolidatedEmails(stagingJobId, false, batchSize, waitInterval, jobStatusReporter, jobId));
     	}
-    	this.evaluationService.resetConsolidatedEmailRecipients();
     	
 		if(jobId != null && jobStatusReporter != null) {
 			jobStatusReporter.reportProgress(jobId, "reminders", calculateElapsedTimeMessage(new Date(), reminderEmailSent));
@@ -1066,6 +1050,37 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
 		return msg;
 	}
 
+	/**
+     * INTERNAL METHOD<br/>
+	 * Sends the consolidated emails for the recipients staged for a job one partition at a time,
+	 * this keeps each page query to a slice of the staging table, the whole run happens on the server
+	 * which holds the consolidated email job lock
+	 * @param stagingJobId the job the recipients were staged for
+	 * @param sendingAvailableEmails true for available emails, false for reminders
+	 * @param batchSize the number of mappings to process at a time
+	 * @param waitInterval the seconds to wait between batches
+	 * @param jobStatusReporter 
+	 * @param jobId the id of the running job (for status reporting)
+	 * @return the ids of the users who were sent emails
+	 */
+	protected List<String> sendStagedConsolidatedEmails(String stagingJobId, boolean sendingAvailableEmails,
+			Integer batchSize, Integer waitInterval, JobStatusReporter jobStatusReporter, String jobId) {
+		List<String> recipients = new ArrayList<>();
+		for(int partition = 0; partition < EvalEmailProcessingData.JOB_PARTITIONS; partition++) {
+			int page = 0;
+			List<String> userIds;
+			do {
+				List<Map<String,Object>> userMap = this.evaluationService.getConsolidatedEmailMapping(stagingJobId, partition, sendingAvailableEmails, batchSize, page++);
+				userIds = processConsolidatedEmails(jobId, userMap, jobStatusReporter);
+				if(userIds != null) {
+					recipients.addAll(userIds);
+				}
+				takeShortBreak(waitInterval);
+			} while(userIds != null && !userIds.isEmpty());
+		}
+		return recipients;
+	}
+
 	/**
      * INTERNAL METHOD<br/>
 	 * @param waitInterval
@@ -1288,6 +1303,14 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
      * @see org.sakaiproject.evaluation.logic.EvalEmailsLogic#sendEvalSubmissionConfirmationEmail(java.lang.Long)
      */
     public String sendEvalSubmissionConfirmationEmail(String userId, Long evaluationId) {
+        return sendEvalSubmissionConfirmationEmail(userId, evaluationId, true);
+    }
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEmailsLogic#sendEvalSubmissionConfirmationEmail(java.lang.String, java.lang.Long, boolean)
+     */
+    public String sendEvalSubmissionConfirmationEmail(String userId, Long evaluationId, boolean registerEvent) {
         String to = null;
         Boolean sendConfirmation = (Boolean) settings.get(EvalSettings.ENABLE_SUBMISSION_CONFIRMATION_EMAIL);
 
@@ -1315,6 +1338,8 @@ public class EvalEmailsLogicImpl implements EvalEmailsLogic {
                 String[] emailAddresses = sendUsersEmails(from, new String[]{userId}, em.subject, em.message);
                 if (emailAddresses.length > 0){
                     log.info("Sent Submission Confirmation email to " + userId + ". (attempted to send to "+emailAddresses.length+")");	                
+                }
+                if (emailAddresses.length > 0 && registerEvent){
                     commonLogic.registerEntityEvent(EVENT_EMAIL_SUBMISSION, EvalEvaluation.class, eval.getId().toString());
                 }
             }
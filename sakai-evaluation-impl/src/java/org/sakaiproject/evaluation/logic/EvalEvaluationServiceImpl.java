@@ -18,12 +18,14 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.dao.EvaluationDao;
@@ -36,6 +38,7 @@ import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalResponse;
+import org.sakaiproject.evaluation.model.EvalSearchToken;
 import org.sakaiproject.evaluation.model.EvalTemplate;
 import org.sakaiproject.evaluation.toolaccess.EvaluationAccessAPI;
 import org.sakaiproject.evaluation.toolaccess.ToolApi;
@@ -83,6 +86,11 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
     public void setSettings(EvalSettings settings) {
         this.settings = settings;
     }
+
+    private EvalSearchIndex searchIndex;
+    public void setSearchIndex(EvalSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
     
     private ToolApi toolApi = null;
     public void setToolApi(ToolApi t) {
@@ -103,6 +111,12 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
         toolApi.exportReport(evaluation, groupIds, evaluateeId, outputStream, exportType);
     }
 
+    /**
+     * Ids of evaluations with an out of date stored state,
+     * this is a set so each evaluation is only repaired once no matter how often it is rendered
+     */
+    private final Set<Long> stateRepairQueue = ConcurrentHashMap.newKeySet();
+
     private SiteService siteService;
     public void setSiteService(SiteService siteService) {
         this.siteService = siteService;
@@ -178,6 +192,36 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
         }
         return evals;
     }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getEvaluationIdsByTermId(java.lang.String, boolean)
+     */
+    public List<Long> getEvaluationIdsByTermId(String termId, boolean includeDeleted) {
+        log.debug("termId: " + termId + ", includeDeleted: " + includeDeleted);
+        return dao.getEvaluationIdsByTermId(termId, includeDeleted);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getEvaluationIdsToArchive(java.util.Date, int)
+     */
+    public List<Long> getEvaluationIdsToArchive(Date closedBefore, int maxResults) {
+        log.debug("closedBefore: " + closedBefore + ", maxResults: " + maxResults);
+        return dao.getEvaluationIdsToArchive(closedBefore, maxResults);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#archiveAnswers(java.lang.Long)
+     */
+    public int archiveAnswers(Long evaluationId) {
+        log.debug("evaluationId: " + evaluationId);
+        EvalEvaluation eval = getEvaluationOrFail(evaluationId);
+        // archived answers are read only so they can only be archived once the evaluation can no longer be taken
+        String state = getCurrentEvaluationState(eval);
+        if (EvalUtils.checkStateBefore(state, EvalConstants.EVALUATION_STATE_CLOSED, false)) {
+            throw new IllegalStateException("Evaluation ("+evaluationId+") state ("+state+") is not closed, answers cannot be archived");
+        }
+        return dao.archiveAnswers(evaluationId);
+    }
     
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getEvaluationsByState(java.lang.String)
@@ -263,15 +307,9 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
      * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#returnAndFixEvalState(org.sakaiproject.evaluation.model.EvalEvaluation, boolean)
      */
     public String returnAndFixEvalState(EvalEvaluation evaluation, boolean saveState) {
-        String trueState = EvalUtils.getEvaluationState(evaluation, true);
-        // check state against stored state
-        if (EvalConstants.EVALUATION_STATE_UNKNOWN.equals(trueState)) {
-            log.warn("Evaluation ("+evaluation.getTitle()+") in UNKNOWN state");
-        } else if ( EvalConstants.EVALUATION_STATE_PARTIAL.equals(evaluation.getState()) 
-                || EvalConstants.EVALUATION_STATE_DELETED.equals(evaluation.getState()) ) {
-            // never fix the state if it is currently in a special state
-            trueState = evaluation.getState();
-        } else {
+        String trueState = calculateEvalState(evaluation);
+        if (! EvalConstants.EVALUATION_STATE_UNKNOWN.equals(trueState)
+                && ! isSpecialEvalState(evaluation.getState()) ) {
             // compare state and set if not equal
             if (! trueState.equals(evaluation.getState()) ) {
                 evaluation.setState(trueState);
@@ -293,6 +331,74 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
         return trueState;
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getCurrentEvaluationState(org.sakaiproject.evaluation.model.EvalEvaluation)
+     */
+    public String getCurrentEvaluationState(EvalEvaluation evaluation) {
+        if (evaluation == null) {
+            throw new IllegalArgumentException("evaluation cannot be null");
+        }
+        String trueState = calculateEvalState(evaluation);
+        if (evaluation.getId() != null
+                && ! EvalConstants.EVALUATION_STATE_UNKNOWN.equals(trueState)
+                && ! trueState.equals(evaluation.getState()) ) {
+            // stored state is out of date, leave the fix to the background repair
+            stateRepairQueue.add(evaluation.getId());
+        }
+        return trueState;
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#processQueuedStateRepairs()
+     */
+    public List<Long> processQueuedStateRepairs() {
+        List<Long> repairedEvalIds = new ArrayList<>();
+        // drain the queue, anything queued after this point is handled on the next run
+        Set<Long> evalIds = new HashSet<>();
+        for (Iterator<Long> iterator = stateRepairQueue.iterator(); iterator.hasNext();) {
+            evalIds.add(iterator.next());
+            iterator.remove();
+        }
+        if (! evalIds.isEmpty()) {
+            // load all the queued evals in one storage call
+            List<EvalEvaluation> evals = dao.findBySearch(EvalEvaluation.class, 
+                    new Search("id", evalIds.toArray(new Long[evalIds.size()])) );
+            for (EvalEvaluation evaluation : evals) {
+                String storedState = evaluation.getState();
+                String trueState = returnAndFixEvalState(evaluation, true);
+                if (! trueState.equals(storedState)) {
+                    repairedEvalIds.add(evaluation.getId());
+                }
+            }
+            log.debug("Repaired the state of "+repairedEvalIds.size()+" of "+evalIds.size()+" queued evaluations: " + repairedEvalIds);
+        }
+        return repairedEvalIds;
+    }
+
+    /**
+     * Calculates the true state of an evaluation without modifying it,
+     * special states (partial and deleted) are always left as they are stored
+     * 
+     * @param evaluation the evaluation (cannot be null)
+     * @return the state constant
+     */
+    private String calculateEvalState(EvalEvaluation evaluation) {
+        String trueState = EvalUtils.getEvaluationState(evaluation, true);
+        // check state against stored state
+        if (EvalConstants.EVALUATION_STATE_UNKNOWN.equals(trueState)) {
+            log.warn("Evaluation ("+evaluation.getTitle()+") in UNKNOWN state");
+        } else if ( isSpecialEvalState(evaluation.getState()) ) {
+            // never fix the state if it is currently in a special state
+            trueState = evaluation.getState();
+        }
+        return trueState;
+    }
+
+    private boolean isSpecialEvalState(String state) {
+        return EvalConstants.EVALUATION_STATE_PARTIAL.equals(state) 
+                || EvalConstants.EVALUATION_STATE_DELETED.equals(state);
+    }
+
     // USER ASSIGNMENTS
 
     /**
@@ -1138,20 +1244,20 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
     }
 
 
+	/**
+	 * The search index sources used when searching the evaluations themselves (not the assigned groups)
+	 */
+	private static final String[] EVALUATION_SEARCH_SOURCES = new String[] {EvalSearchToken.SOURCE_ID,
+		EvalSearchToken.SOURCE_TITLE, EvalSearchToken.SOURCE_TERM, EvalSearchToken.SOURCE_OWNER};
+
 	/* (non-Javadoc)
 	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#countEvaluations(java.lang.String)
 	 */
 	public int countEvaluations(String searchString) {
-		if(searchString == null || searchString.equals("")){
-			searchString = "%";
-		} else {
-			searchString = "%" + searchString + "%";
-}
-		Object[] values = new Object[]{searchString};
-		String[] props = new String[]{"title"};
-		int[] comparisons = new int[]{Restriction.LIKE};
-		Search search = new Search(props, values, comparisons);
-		return (int) this.dao.countBySearch(EvalEvaluation.class, search);
+		if (EvalUtils.isBlank(searchString)) {
+			return this.dao.countAll(EvalEvaluation.class);
+		}
+		return searchIndex.countEvaluations(searchString, EVALUATION_SEARCH_SOURCES);
 	}
 
 
@@ -1160,19 +1266,31 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
 	 */
 	public List<EvalEvaluation> getEvaluations(String searchString,
 			String order, int startResult, int maxResults) {
-		if(searchString == null || searchString.equals("")){
-			searchString = "%";
-		} else {
-			searchString = "%" + searchString + "%";
+		if (EvalUtils.isBlank(searchString)) {
+			Search search = new Search();
+			search.addOrder(new Order(order == null ? "title" : order));
+			search.setStart(startResult);
+			search.setLimit(maxResults);
+			return this.dao.findBySearch(EvalEvaluation.class, search );
 		}
-		Object[] values = new Object[]{searchString};
-		String[] props = new String[]{"title"};
-		int[] comparisons = new int[]{Restriction.LIKE};
-		Search search = new Search(props, values, comparisons);
-		search.addOrder(new Order(order));
-		search.setStart(startResult);
-		search.setLimit(maxResults);
-		return this.dao.findBySearch(EvalEvaluation.class, search );
+		return searchIndex.getEvaluations(searchString, EVALUATION_SEARCH_SOURCES, order, startResult, maxResults);
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#countEvaluationsByGroupTitle(java.lang.String)
+	 */
+	public int countEvaluationsByGroupTitle(String searchString) {
+		return searchIndex.countEvaluations(searchString, new String[] {EvalSearchToken.SOURCE_GROUP});
+	}
+
+
+	/* (non-Javadoc)
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getEvaluationsByGroupTitle(java.lang.String, java.lang.String, int, int)
+	 */
+	public List<EvalEvaluation> getEvaluationsByGroupTitle(String searchString,
+			String order, int startResult, int maxResults) {
+		return searchIndex.getEvaluations(searchString, new String[] {EvalSearchToken.SOURCE_GROUP}, order, startResult, maxResults);
 	}
 
 
@@ -1190,28 +1308,28 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
     
     /*
      * (non-Javadoc)
-     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getConsolidatedEmailMapping(java.lang.Boolean, java.lang.String, int, int)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#getConsolidatedEmailMapping(java.lang.String, java.lang.Integer, boolean, int, int)
      */
-	public List<Map<String,Object>> getConsolidatedEmailMapping(boolean sendingAvailableEmails, int pageSize, int page) {
+	public List<Map<String,Object>> getConsolidatedEmailMapping(String jobId, Integer jobPartition, boolean sendingAvailableEmails, int pageSize, int page) {
 		
-		return this.dao.getConsolidatedEmailMapping(sendingAvailableEmails, pageSize, page);
+		return this.dao.getConsolidatedEmailMapping(jobId, jobPartition, sendingAvailableEmails, pageSize, page);
 	}
     
 	/*
 	 * (non-Javadoc)
-	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#selectConsoliatedEmailRecipients(boolean, java.util.Date, boolean, java.util.Date, java.lang.String)
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#selectConsoliatedEmailRecipients(java.lang.String, boolean, java.util.Date, boolean, java.util.Date, java.lang.String)
 	 */
-	public int selectConsoliatedEmailRecipients(boolean useAvailableEmailSent,
+	public int selectConsoliatedEmailRecipients(String jobId, boolean useAvailableEmailSent,
 			Date availableEmailSent, boolean useReminderEmailSent, Date reminderEmailSent, String emailTemplateType) {
-		return this.dao.selectConsolidatedEmailRecipients(useAvailableEmailSent, availableEmailSent, useReminderEmailSent, reminderEmailSent, emailTemplateType);
+		return this.dao.selectConsolidatedEmailRecipients(jobId, useAvailableEmailSent, availableEmailSent, useReminderEmailSent, reminderEmailSent, emailTemplateType);
 	}
 	
 	/*
 	 * (non-Javadoc)
-	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#resetConsolidatedEmailRecipients()
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#resetConsolidatedEmailRecipients(java.lang.String)
 	 */
-	public int resetConsolidatedEmailRecipients() {
-		return this.dao.resetConsolidatedEmailRecipients();
+	public int resetConsolidatedEmailRecipients(String jobId) {
+		return this.dao.resetConsolidatedEmailRecipients(jobId);
 	}
 	
  	public Set<String> getInProgressEvaluationOwners() {
@@ -1226,10 +1344,10 @@ public class EvalEvaluationServiceImpl implements EvalEvaluationService, Evaluat
  	
 	/*
 	 * (non-Javadoc)
-	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#countDistinctGroupsInConsolidatedEmailMapping()
+	 * @see org.sakaiproject.evaluation.logic.EvalEvaluationService#countDistinctGroupsInConsolidatedEmailMapping(java.lang.String)
 	 */
-	public int countDistinctGroupsInConsolidatedEmailMapping() {
-		return this.dao.countDistinctGroupsInConsolidatedEmailMapping();
+	public int countDistinctGroupsInConsolidatedEmailMapping(String jobId) {
+		return this.dao.countDistinctGroupsInConsolidatedEmailMapping(jobId);
 	}
 
 
@@ -17,6 +17,8 @@ package org.sakaiproject.evaluation.logic;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
@@ -24,6 +26,7 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Random;
 import java.util.Set;
 import java.util.Timer;
@@ -48,7 +51,6 @@ import org.sakaiproject.evaluation.model.EvalAssignHierarchy;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
-import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalTemplate;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
 import org.sakaiproject.evaluation.utils.EvalUtils;
@@ -136,6 +138,11 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
        this.evalBeanUtils = evalBeanUtils;
     }
 
+    private EvalSearchIndex searchIndex;
+    public void setSearchIndex(EvalSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
 
     // INIT method
     public void init() {
@@ -163,6 +170,34 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
 
         // run a timer which ensures that evaluation states are kept up to date
         initiateUpdateStateTimer();
+        // run a timer which writes out the states queued up while rendering
+        initiateStateRepairTimer();
+    }
+
+    /**
+     * This will start up a timer which repairs the stored state of the evaluations which were found
+     * to be out of date while rendering (see {@link EvalEvaluationService#getCurrentEvaluationState(EvalEvaluation)}),
+     * this keeps the list pages read only and means each evaluation is written once per run at most
+     */
+    protected void initiateStateRepairTimer() {
+        // timer repeats every 2 minutes
+        final long repeatInterval = 1000 * 60 * 2;
+        TimerTask runStateRepairTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    List<Long> repaired = evaluationService.processQueuedStateRepairs();
+                    if (! repaired.isEmpty()) {
+                        log.info("Repaired the stored state of "+repaired.size()+" evaluations: " + repaired);
+                    }
+                } catch (Exception e) {
+                    // do not let a failure kill the timer, anything not repaired will be found again by the update timer
+                    log.warn("Failure while repairing queued evaluation states: " + e.getMessage(), e);
+                }
+            }
+        };
+        Timer timer = new Timer(true);
+        timer.schedule(runStateRepairTask, repeatInterval, repeatInterval);
     }
 
     /**
@@ -479,6 +514,11 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         
         // save the eval
         dao.save(evaluation);
+        searchIndex.indexEvaluation(evaluation);
+        if (! isNew && EvalUtils.checkStateBefore(evalState, EvalConstants.EVALUATION_STATE_CLOSED, false)) {
+            // the evaluation is open (again) so any archived answers must go back where the responses can see them
+            dao.restoreAnswers(evaluation.getId());
+        }
         log.info("User ("+userId+") saved evaluation ("+evaluation.getId()+"), state="+evaluation.getState()+", title: " + evaluation.getTitle());
 
         // initialize the scheduling for the eval jobs (only if state is not partial)
@@ -570,6 +610,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                 // remove the evaluation and copied template since there are no responses
                 removeTemplate = true;
                 dao.delete(evaluation);
+                searchIndex.removeEvaluation(evaluationId);
             }
 
             // fire the evaluation deleted event
@@ -637,6 +678,116 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         throw new RuntimeException("User ("+userId+") could NOT delete evaluation ("+evaluationId+")");
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationSetupService#deleteEvaluations(java.lang.Long[], boolean, java.lang.String)
+     */
+    public int deleteEvaluations(Long[] evaluationIds, boolean removeResponses, String userId) {
+        log.debug("evalIds: " + ArrayUtils.arrayToString(evaluationIds) + ", removeResponses: " + removeResponses + ", userId: " + userId);
+        if (evaluationIds == null || evaluationIds.length == 0) {
+            return 0;
+        }
+
+        List<EvalEvaluation> evaluations = dao.findBySearch(EvalEvaluation.class, new Search("id", evaluationIds) );
+        if (evaluations.isEmpty()) {
+            return 0;
+        }
+        // check all permissions before anything is changed
+        for (EvalEvaluation evaluation : evaluations) {
+            if (! securityChecks.canUserRemoveEval(userId, evaluation) ) {
+                throw new SecurityException("User ("+userId+") could NOT delete evaluation ("+evaluation.getId()+")");
+            }
+        }
+
+        Long[] ids = new Long[evaluations.size()];
+        for (int i = 0; i < evaluations.size(); i++) {
+            ids[i] = evaluations.get(i).getId();
+        }
+
+        Set<Long> evalsWithResponses;
+        if (removeResponses) {
+            int removed = dao.removeResponsesForEvaluations(ids);
+            log.info("Removed " + removed + " responses while deleting " + ids.length + " evaluations");
+            evalsWithResponses = new HashSet<>();
+        } else {
+            evalsWithResponses = dao.getEvaluationIdsWithResponses(ids);
+        }
+
+        Map<Long, EvalEmailTemplate> emailTemplates = new HashMap<>();
+        Set<EvalEvaluation> keptEvals = new HashSet<>();
+        List<EvalEvaluation> removedEvals = new ArrayList<>();
+        for (EvalEvaluation evaluation : evaluations) {
+            EvalEmailTemplate[] evalEmailTemplates = new EvalEmailTemplate[] {
+                    evaluation.getAvailableEmailTemplate(), evaluation.getReminderEmailTemplate() };
+            for (EvalEmailTemplate emailTemplate : evalEmailTemplates) {
+                // only remove non-default templates
+                if (emailTemplate != null && emailTemplate.getDefaultType() == null) {
+                    emailTemplates.put(emailTemplate.getId(), emailTemplate);
+                }
+            }
+
+            // unlock the evaluation (this will clear the other locks)
+            dao.lockEvaluation(evaluation, false);
+
+            if (evalsWithResponses.contains(evaluation.getId())) {
+                // cannot remove this evaluation or assignments, there are responses, we will just set the state to deleted
+                evaluation.setState(EvalConstants.EVALUATION_STATE_DELETED);
+                evaluation.setAvailableEmailTemplate(null);
+                evaluation.setReminderEmailTemplate(null);
+                keptEvals.add(evaluation);
+            } else {
+                removedEvals.add(evaluation);
+            }
+        }
+        dao.saveSet(keptEvals);
+
+        if (! removedEvals.isEmpty()) {
+            Long[] removedIds = new Long[removedEvals.size()];
+            for (int i = 0; i < removedEvals.size(); i++) {
+                removedIds[i] = removedEvals.get(i).getId();
+            }
+            // no responses so cleanup all the assignments
+            int removed = dao.removeAssignmentsForEvaluations(removedIds);
+            log.info("Removed " + removed + " assignments while deleting " + removedIds.length + " evaluations");
+            dao.deleteSet(new HashSet<>(removedEvals));
+            searchIndex.removeEvaluations(removedIds);
+        }
+
+        for (EvalEvaluation evaluation : evaluations) {
+            // fire the evaluation deleted event
+            commonLogic.registerEntityEvent(EVENT_EVAL_DELETE, evaluation);
+            // remove any remaining scheduled jobs
+            evalJobLogic.processEvaluationStateChange(evaluation.getId(), EvalJobLogic.ACTION_DELETE);
+        }
+
+        // this has to be after the removal of the evaluations, remove associated unused email templates
+        if (! emailTemplates.isEmpty()) {
+            Set<Long> inUse = dao.getEmailTemplateIdsInUse( emailTemplates.keySet().toArray(new Long[emailTemplates.size()]) );
+            emailTemplates.keySet().removeAll(inUse);
+            dao.deleteSet(new HashSet<>(emailTemplates.values()));
+        }
+
+        for (EvalEvaluation evaluation : removedEvals) {
+            // remove template if it is a copy, partials do not have copies made yet
+            if (evaluation.getTemplate() != null
+                    && EvalUtils.checkStateAfter(evaluation.getState(), EvalConstants.EVALUATION_STATE_PARTIAL, false)) {
+                EvalTemplate template = authoringService.getTemplateById(evaluation.getTemplate().getId());
+                if (template != null 
+                        && (template.getCopyOf() != null || template.isHidden() == true)) {
+                    if (securityChecks.checkUserControlTemplate(userId, template)) {
+                        authoringService.deleteTemplate(template.getId(), userId);
+                    } else {
+                        log.warn("Could not remove the template ("+template.getId()+") associated with this "
+                                + "eval ("+evaluation.getId()+") since this user has no permission, continuing to remove evaluation anyway");
+                    }
+                }
+            }
+        }
+
+        log.info("User ("+userId+") removed " + removedEvals.size() + " evaluations and marked " 
+                + keptEvals.size() + " evaluations with responses as deleted");
+        return evaluations.size();
+    }
+
 
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.EvalEvaluationSetupService#closeEvaluation(java.lang.Long, java.lang.String)
@@ -752,28 +903,14 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                     evalIds[j] = evals.get(j).getId();
                 }
 
-                // now get the responses for all the returned evals
-                List<EvalResponse> l = dao.findBySearch(EvalResponse.class, new Search(
-                        new Restriction[] {
-                                new Restriction("owner", userId),
-                                new Restriction("evaluation.id", evalIds)
-                        }) );
+                // get the ids of the evals this user already took in one query
+                Set<Long> takenEvalIds = dao.getResponseEvaluationIds(userId, evalIds, null);
 
-                // Iterate through and remove the evals this user already took
-                for (int i = 0; i < l.size(); i++) {
-                    Long evalIdTaken = l.get(i).getEvaluation().getId();
-                    for (int j = 0; j < evals.size(); j++) {
-                        if (evalIdTaken.equals(evals.get(j).getId())) {
-                            if (untakenOnly) {
-                                // filter out the evaluations this user already took
-                                evals.remove(j);
-                            }
-                        } else {
-                            if (! untakenOnly) {
-                                // filter out the evaluations this user hasn't taken
-                                evals.remove(j);
-                            }
-                        }
+                // keep the untaken (or taken) evals, this preserves the sorted order
+                for (Iterator<EvalEvaluation> iterator = evals.iterator(); iterator.hasNext();) {
+                    boolean taken = takenEvalIds.contains( iterator.next().getId() );
+                    if (taken == untakenOnly) {
+                        iterator.remove();
                     }
                 }
             }
@@ -805,8 +942,8 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
 
         for (Iterator<EvalEvaluation> iterator = evals.iterator(); iterator.hasNext();) {
             EvalEvaluation evaluation = iterator.next();
-            // fix up the states to ensure they are good
-            evaluationService.returnAndFixEvalState(evaluation, true);
+            // check the state without writing, any needed fix is queued up for the background repair
+            String evalState = evaluationService.getCurrentEvaluationState(evaluation);
             // handle filtering
             if (includeRecentlyClosed != null) {
                 // not null so filter (NOTE: if null then just include them all)
@@ -821,7 +958,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                     }
                 } else {
                     // filter out all closed evals
-                    if (EvalUtils.checkStateAfter(evaluation.getState(), EvalConstants.EVALUATION_STATE_CLOSED, true)) {
+                    if (EvalUtils.checkStateAfter(evalState, EvalConstants.EVALUATION_STATE_CLOSED, true)) {
                         if (log.isDebugEnabled()) {
                             log.debug("Dropping Evaluatee eval which is closed: "+evaluation.getId());
                         }
@@ -1039,37 +1176,22 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             }
         }
         ArrayList<Long> changedUserAssignments = new ArrayList<>();
-        // now the syncing logic
-        HashSet<Long> assignUserToRemove = new HashSet<>();
-        HashSet<EvalAssignUser> assignUserToSave = new HashSet<>();
-        // get all user assignments for this evaluation (and possibly limit by group)
-        String[] limitGroupIds = null;
-        if (evalGroupId != null) {
-            limitGroupIds = new String[] {evalGroupId};
-        }
-        // all users assigned to this eval (and group if specified)
-        List<EvalAssignUser> assignedUsers = evaluationService.getParticipantsForEval(evaluationId, null, limitGroupIds, null, EvalEvaluationService.STATUS_ANY, null, null);
-        // keys of all assignments which are unlinked or removed
-        HashSet<String> assignUserUnlinkedRemovedKeys = new HashSet<>();
-        // all assignments which are linked (groupId => assignments)
-        HashMap<String, List<EvalAssignUser>> groupIdLinkedAssignedUsersMap = new HashMap<>();
-        for (EvalAssignUser evalAssignUser : assignedUsers) {
-            if (EvalAssignUser.STATUS_UNLINKED.equals(evalAssignUser.getStatus()) 
-                    || EvalAssignUser.STATUS_REMOVED.equals(evalAssignUser.getStatus())) {
-                String key = makeEvalAssignUserKey(evalAssignUser, false, false);
-                assignUserUnlinkedRemovedKeys.add(key);
-            }
-            String egid = evalAssignUser.getEvalGroupId();
-            if (egid != null) {
-                if (EvalAssignUser.STATUS_LINKED.equals(evalAssignUser.getStatus())) {
-                    List<EvalAssignUser> l = groupIdLinkedAssignedUsersMap.get(egid);
-                    if (l == null) {
-                        l = new ArrayList<>();
-                        groupIdLinkedAssignedUsersMap.put(egid, l);
-                    }
-                    l.add(evalAssignUser);
-                }
+        /* load only the keys of all user assignments for this evaluation (and possibly limited by group),
+         * grouped by eval group and then by user so the diff never builds entities or string keys
+         */
+        Map<String, GroupUserAssignments> existingAssignments = new HashMap<>();
+        List<Object[]> assignUserRows = dao.getEvalAssignUserRows(evaluationId, evalGroupId);
+        for (Object[] row : assignUserRows) {
+            String egid = (String) row[2];
+            if (egid == null) {
+                continue;
             }
+            GroupUserAssignments groupAssignments = existingAssignments.get(egid);
+            if (groupAssignments == null) {
+                groupAssignments = new GroupUserAssignments();
+                existingAssignments.put(egid, groupAssignments);
+            }
+            groupAssignments.add((Long) row[0], (String) row[1], (String) row[3], (String) row[4]);
         }
         List<EvalAssignGroup> assignedGroups;
         if (evalGroupId == null) {
@@ -1084,6 +1206,8 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                 assignedGroups.add(assignGroup);
             }
         }
+        List<Long> assignUserToRemove = new ArrayList<>();
+        List<EvalAssignUser> assignUserToSave = new ArrayList<>();
         // iterate through all assigned groups (may have been limited to one only)
         Set<String> evalGroupIdsFromEvals = new HashSet<>(assignedGroups.size());
         for (EvalAssignGroup evalAssignGroup : assignedGroups) {
@@ -1099,90 +1223,71 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             	currentTakers.addAll(currentAssistants);
             	currentTakers.addAll(currentEvaluated);
             }
-           
-            HashSet<String> currentAll = new HashSet<>();
-            currentAll.addAll(currentEvaluated);
-            currentAll.addAll(currentAssistants);
-            currentAll.addAll(currentTakers);
+            // same order as GroupUserAssignments.TYPES
+            List<Set<String>> currentByType = Arrays.asList(currentEvaluated, currentAssistants, currentTakers);
+
             /* Resolve the current permissions against the existing assignments,
              * this should only change linked records but should respect unlinked and removed records by not
              * adding a record where one already exists for the given user/group combo,
              * any linked records which do not exist anymore should be trashed if the status is right,
              * any missing records should be added if the evaluation is still active or better
              */
-            List<EvalAssignUser> linkedUserAssignsInThisGroup = groupIdLinkedAssignedUsersMap.get(egid);
-            if (linkedUserAssignsInThisGroup == null) {
+            GroupUserAssignments groupAssignments = existingAssignments.get(egid);
+            if (groupAssignments == null) {
                 // this group has not been assigned yet
-                linkedUserAssignsInThisGroup = new ArrayList<>();
-            }
-            // filter out all linked user assignments which match exactly with the existing ones
-            for (Iterator<EvalAssignUser> iterator = linkedUserAssignsInThisGroup.iterator(); iterator.hasNext();) {
-                EvalAssignUser evalAssignUser = iterator.next();
-                String type = evalAssignUser.getType();
-                String userId = evalAssignUser.getUserId();
-                if (EvalAssignUser.TYPE_EVALUATEE.equals(type)) {
-                    if (currentEvaluated.contains(userId)) {
-                        currentEvaluated.remove(userId);
-                        iterator.remove();
-                    }
-                } else if (EvalAssignUser.TYPE_ASSISTANT.equals(type)) {
-                    if (currentAssistants.contains(userId)) {
-                        currentAssistants.remove(userId);
-                        iterator.remove();
+                groupAssignments = new GroupUserAssignments();
+            }
+            for (Entry<String, List<Long>[]> entry : groupAssignments.linked.entrySet()) {
+                String userId = entry.getKey();
+                List<Long>[] linkedIds = entry.getValue();
+                for (int i = 0; i < linkedIds.length; i++) {
+                    if (linkedIds[i] == null) {
+                        continue;
                     }
-                } else if (EvalAssignUser.TYPE_EVALUATOR.equals(type)) {
-                    if (currentTakers.contains(userId)) {
-                        currentTakers.remove(userId);
-                        iterator.remove();
+                    // the first linked assignment is kept if the user still has the permission, duplicates are always extra
+                    int keep = currentByType.get(i).remove(userId) ? 1 : 0;
+                    if (! groupAssignments.unlinkedOrRemoved.contains(userId)) {
+                        // linked assignments which do not exist anymore (or are duplicates) and are not unlinked
+                        assignUserToRemove.addAll(linkedIds[i].subList(keep, linkedIds[i].size()));
                     }
-                } else {
-                    throw new IllegalStateException("Do not recognize this user assignment type: " + type);
                 }
             }
-            // any remaining linked user assignments should be removed if not unlinked
-            for (EvalAssignUser evalAssignUser : linkedUserAssignsInThisGroup) {
-                if (evalAssignUser.getId() != null) {
-                    String key = makeEvalAssignUserKey(evalAssignUser, false, false);
-                    if (! assignUserUnlinkedRemovedKeys.contains(key)) {
-                        assignUserToRemove.add(evalAssignUser.getId());
+            // any remaining current users need to be added if they are not unlinked/removed
+            for (int i = 0; i < GroupUserAssignments.TYPES.length; i++) {
+                for (String userId : currentByType.get(i)) {
+                    if (! groupAssignments.unlinkedOrRemoved.contains(userId)) {
+                        EvalAssignUser evalAssignUser = new EvalAssignUser(userId, egid, null, 
+                                GroupUserAssignments.TYPES[i], EvalAssignUser.STATUS_LINKED);
+                        evalAssignUser.setAssignGroupId(assignGroupId);
+                        assignUserToSave.add(evalAssignUser);
                     }
                 }
             }
-            // any remaining current set items need to be added if they are not unlinked/removed
-            assignUserToSave.addAll( makeUserAssignmentsFromUserIdSet(currentEvaluated, egid, 
-                    EvalAssignUser.TYPE_EVALUATEE, assignGroupId, assignUserUnlinkedRemovedKeys) );
-            assignUserToSave.addAll( makeUserAssignmentsFromUserIdSet(currentAssistants, egid, 
-                    EvalAssignUser.TYPE_ASSISTANT, assignGroupId, assignUserUnlinkedRemovedKeys) );
-            assignUserToSave.addAll( makeUserAssignmentsFromUserIdSet(currentTakers, egid, 
-                    EvalAssignUser.TYPE_EVALUATOR, assignGroupId, assignUserUnlinkedRemovedKeys) );
         }
 
         // now handle the actual persistent updates and log them
         String message = "Synchronized user assignments for eval ("+evaluationId+") with "+assignedGroups.size()+" assigned groups";
         if (assignUserToRemove.isEmpty() && assignUserToSave.isEmpty()) {
-            message += ": no changes to the user assignments ("+assignedUsers.size()+")";
+            message += ": no changes to the user assignments ("+assignUserRows.size()+")";
         } else {
             if (removeAllowed 
                     && ! assignUserToRemove.isEmpty()) {
-                Long[] assignUserToRemoveArray = assignUserToRemove.toArray(new Long[assignUserToRemove.size()]);
                 if (log.isDebugEnabled()) {
                     log.debug("Deleting user eval assignment Ids: "+assignUserToRemove);
                 }
-                dao.deleteSet(EvalAssignUser.class, assignUserToRemoveArray);
-                message += ": removed the following assignments: " + assignUserToRemove;
+                int removed = dao.removeEvalAssignUsers(assignUserToRemove.toArray(new Long[assignUserToRemove.size()]));
+                message += ": removed "+removed+" assignments";
                 changedUserAssignments.addAll( assignUserToRemove );
             }
             if (! assignUserToSave.isEmpty()) {
                 for (EvalAssignUser evalAssignUser : assignUserToSave) {
                     setAssignUserDefaults(evalAssignUser, evaluation, currentUserId);
                 }
-                // this is meant to force the assigned users set to be re-calculated
-                assignUserToSave = new HashSet<>(assignUserToSave);
                 if (log.isDebugEnabled()) {
                     log.debug("Saving user eval assignments: "+assignUserToSave);
                 }
-                dao.saveSet(assignUserToSave);
-                message += ": created the following assignments: " + assignUserToSave;
+                dao.saveEvalAssignUsers(assignUserToSave);
+                message += ": created "+assignUserToSave.size()+" assignments";
                 for (EvalAssignUser evalAssignUser : assignUserToSave) {
                     changedUserAssignments.add( evalAssignUser.getId() );
                 }
@@ -1190,52 +1295,73 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         }
 
         // one more specialty check to cleanup orphaned user assignments - EVALSYS-703
-        Set<String> evalGroupIdsFromUsers = groupIdLinkedAssignedUsersMap.keySet();
-        evalGroupIdsFromUsers.removeAll(evalGroupIdsFromEvals);
-        if ( ! evalGroupIdsFromUsers.isEmpty() ) {
-            // there are users assigned to group ids in this eval which are not part of the assigned groups
-            HashSet<Long> orphanedUserAssignments = new HashSet<>();
-            for (EvalAssignUser evalAssignUser : assignedUsers) {
-                String egid = evalAssignUser.getEvalGroupId();
-                if (egid != null 
-                        && evalGroupIdsFromUsers.contains(egid)) {
-                    if (EvalAssignUser.STATUS_LINKED.equals(evalAssignUser.getStatus())) {
-                        orphanedUserAssignments.add( evalAssignUser.getId() );
+        List<Long> orphanedUserAssignments = new ArrayList<>();
+        for (Entry<String, GroupUserAssignments> entry : existingAssignments.entrySet()) {
+            if (! evalGroupIdsFromEvals.contains(entry.getKey())) {
+                // there are users assigned to group ids in this eval which are not part of the assigned groups
+                for (List<Long>[] linkedIds : entry.getValue().linked.values()) {
+                    for (List<Long> typeLinkedIds : linkedIds) {
+                        if (typeLinkedIds != null) {
+                            orphanedUserAssignments.addAll(typeLinkedIds);
+                        }
                     }
                 }
             }
-            if (! orphanedUserAssignments.isEmpty()) {
-                Long[] orphanedUserAssignmentsArray = orphanedUserAssignments.toArray(new Long[orphanedUserAssignments.size()]);
-                dao.deleteSet(EvalAssignUser.class, orphanedUserAssignmentsArray);
-                message += ": removed the following orphaned user assignments: " + orphanedUserAssignments;
-                changedUserAssignments.addAll( orphanedUserAssignments );
-            }
+        }
+        if (! orphanedUserAssignments.isEmpty()) {
+            dao.removeEvalAssignUsers(orphanedUserAssignments.toArray(new Long[orphanedUserAssignments.size()]));
+            message += ": removed the following orphaned user assignments: " + orphanedUserAssignments;
+            changedUserAssignments.addAll( orphanedUserAssignments );
         }
 
         log.info(message);
         return changedUserAssignments;
     }
 
-
     /**
-     * Creates the EvalAssignUsers based on userIds, evalGroupId, type,
-     * will only create ones which do not have a matching key in matchingUserGroupKeys 
-     * @return the set of newly created EvalAssignUsers
+     * The existing user assignments in a single eval group, keyed by user
+     * so they can be diffed against the current group membership
      */
-    private Set<EvalAssignUser> makeUserAssignmentsFromUserIdSet(Set<String> userIds, String evalGroupId, 
-            String typeConstant, Long assignGroupId, Set<String> matchingUserGroupKeys) {
-        HashSet<EvalAssignUser> eaus = new HashSet<>();
-        for (String userId : userIds) {
-            EvalAssignUser evalAssignUser = new EvalAssignUser(userId, evalGroupId, null, typeConstant, EvalAssignUser.STATUS_LINKED);
-            evalAssignUser.setAssignGroupId(assignGroupId);
-            String key = makeEvalAssignUserKey(evalAssignUser, false, false);
-            if (! matchingUserGroupKeys.contains(key)) {
-                eaus.add(evalAssignUser);
-            }
-        }
-        return eaus;
+    private static class GroupUserAssignments {
+        /**
+         * the assignment types in the order used by the linked arrays
+         */
+        static final String[] TYPES = new String[] {EvalAssignUser.TYPE_EVALUATEE, EvalAssignUser.TYPE_ASSISTANT, EvalAssignUser.TYPE_EVALUATOR};
+        /**
+         * userId -> the ids of the linked assignments for that user (in id order), indexed by type (see {@link #TYPES}),
+         * there is normally only one id per type but duplicate rows are kept so the sync can remove them
+         */
+        final Map<String, List<Long>[]> linked = new HashMap<>();
+        /**
+         * the users who have an unlinked or removed assignment of any type, these are never changed by a sync
+         */
+        final Set<String> unlinkedOrRemoved = new HashSet<>();
+
+        void add(Long id, String userId, String type, String status) {
+            if (EvalAssignUser.STATUS_UNLINKED.equals(status)
+                    || EvalAssignUser.STATUS_REMOVED.equals(status)) {
+                unlinkedOrRemoved.add(userId);
+            } else if (EvalAssignUser.STATUS_LINKED.equals(status)) {
+                int typeIndex = Arrays.asList(TYPES).indexOf(type);
+                if (typeIndex < 0) {
+                    throw new IllegalStateException("Do not recognize this user assignment type: " + type);
+                }
+                List<Long>[] linkedIds = linked.get(userId);
+                if (linkedIds == null) {
+                    @SuppressWarnings("unchecked")
+                    List<Long>[] newLinkedIds = new List[TYPES.length];
+                    linkedIds = newLinkedIds;
+                    linked.put(userId, linkedIds);
+                }
+                if (linkedIds[typeIndex] == null) {
+                    linkedIds[typeIndex] = new ArrayList<>(1);
+                }
+                linkedIds[typeIndex].add(id);
+            }
+        }
     }
 
+
     /**
      * Makes a mapping key which will allow EvalAssignUser to be placed into a map
      * @param evalAssignUser the EAU to make the key from, should not be null
@@ -1376,6 +1502,8 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             // first we have to get all the assigned hierarchy nodes for this eval
             Set<String> nodeIdsSet = new HashSet<>();
             Set<String> currentNodeIds = new HashSet<>();
+            // if any groups are removed then the group search tokens have to be rebuilt
+            boolean groupsRemoved = false;
 
             List<EvalAssignHierarchy> currentAssignHierarchies = evaluationService.getAssignHierarchyByEval(evaluationId);
             for (EvalAssignHierarchy assignHierarchy : currentAssignHierarchies) {
@@ -1399,6 +1527,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                         }
                     }
                     deleteAssignHierarchyNodesById(removeHierarchyIds);
+                    groupsRemoved = true;
                 }            
             }
 
@@ -1451,6 +1580,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                     for (EvalAssignGroup assignGroup : removeAssignGroups) {
                         deleteAssignGroupInternal(assignGroup);
                     }
+                    groupsRemoved = true;
                 }
             }
 
@@ -1511,6 +1641,15 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
 
             // save everything at once
             dao.saveMixedSet(new Set[] {nodeAssignments, groupAssignments});
+            if (groupsRemoved) {
+                searchIndex.reindexEvaluationGroups(eval.getId());
+            } else {
+                Set<String> addedGroupIds = new HashSet<>();
+                for (EvalAssignGroup assignGroup : groupAssignments) {
+                    addedGroupIds.add(assignGroup.getEvalGroupId());
+                }
+                searchIndex.addEvaluationGroups(eval.getId(), addedGroupIds);
+            }
             log.info("User (" + userId + ") added nodes (" + ArrayUtils.arrayToString(nodeIds)
                     + ") and groups (" + ArrayUtils.arrayToString(evalGroupIds) + ") to evaluation ("
                     + evaluationId + ")");
@@ -1571,6 +1710,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
             }
 
             dao.deleteMixedSet(new Set[] {eahs, groups});
+            searchIndex.reindexEvaluationGroups(evaluationId);
             log.info("User (" + userId + ") deleted existing hierarchy assignments ("
                     + ArrayUtils.arrayToString(assignHierarchyIds) + ") and groups ("+groupListing.toString()+")");
 
@@ -1617,6 +1757,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
                 }
 
                 dao.save(assignGroup);
+                searchIndex.addEvaluationGroups(eval.getId(), Collections.singleton(assignGroup.getEvalGroupId()));
 
                 // if a late instructor opt-in, notify students in this group that an evaluation is available
                 if (EvalConstants.INSTRUCTOR_OPT_IN.equals(eval.getInstructorOpt())
@@ -1676,6 +1817,64 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         }
     }
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalEvaluationSetupService#saveAssignGroups(java.lang.Long, java.util.Collection, java.lang.String)
+     */
+    public void saveAssignGroups(Long evaluationId, Collection<EvalAssignGroup> assignGroups, String userId) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        if (assignGroups == null || assignGroups.isEmpty()) {
+            return;
+        }
+        EvalEvaluation eval = getEvaluationOrFail(evaluationId);
+
+        // fetch the existing AGs for this eval in one go to compare them
+        Map<Long, EvalAssignGroup> existingAGs = new HashMap<>();
+        List<EvalAssignGroup> evalAGs = evaluationService.getAssignGroupsForEvals(new Long[] {evaluationId}, true, null).get(evaluationId);
+        if (evalAGs != null) {
+            for (EvalAssignGroup existingAG : evalAGs) {
+                existingAGs.put(existingAG.getId(), existingAG);
+            }
+        }
+
+        Date now = new Date();
+        Set<EvalAssignGroup> saveAGs = new HashSet<>();
+        for (EvalAssignGroup assignGroup : assignGroups) {
+            EvalAssignGroup existingAG = assignGroup.getId() == null ? null : existingAGs.get(assignGroup.getId());
+            if (existingAG == null) {
+                throw new IllegalArgumentException("Can only update existing assignGroups for eval ("+evaluationId+
+                        ") with this method, evalGroupId: " + assignGroup.getEvalGroupId());
+            }
+
+            // check the user control permissions
+            if (! securityChecks.checkControlAssignGroup(userId, assignGroup) ) {
+                throw new SecurityException("User ("+userId+") attempted to update existing assignGroup ("+existingAG.getId()+") without permissions");
+            }
+
+            // cannot change the evalGroupId so fail if it has been changed
+            if (! existingAG.getEvalGroupId().equals(assignGroup.getEvalGroupId())) {
+                throw new IllegalArgumentException("Cannot update evalGroupId ("+assignGroup.getEvalGroupId()+
+                        ") for an existing AC, evalGroupId ("+existingAG.getEvalGroupId()+")");
+            }
+
+            assignGroup.setEvaluation(eval);
+            assignGroup.setLastModified(now);
+            setAssignmentDefaults(eval, assignGroup);
+            saveAGs.add(assignGroup);
+        }
+
+        // allow any other changes
+        dao.saveSet(saveAGs);
+        log.info("User ("+userId+") updated "+saveAGs.size()+" existing assignGroups for eval ("+evaluationId+")");
+
+        Boolean syncUserAssignmentsOnGroupUpdate = (Boolean) this.settings.get(EvalSettings.SYNC_USER_ASSIGNMENTS_ON_GROUP_UPDATE);
+        if (syncUserAssignmentsOnGroupUpdate != null && syncUserAssignmentsOnGroupUpdate) {
+            // sync the user assignments for the whole eval once instead of once per group
+            synchronizeUserAssignmentsForced(eval, null, false);
+        }
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.EvalEvaluationSetupService#deleteAssignGroup(java.lang.Long, java.lang.String)
      */
@@ -1697,6 +1896,7 @@ public class EvalEvaluationSetupServiceImpl implements EvalEvaluationSetupServic
         securityChecks.checkRemoveAssignments(userId, assignGroup, eval);
         // handle the removal
         deleteAssignGroupInternal(assignGroup);
+        searchIndex.reindexEvaluationGroups(eval.getId());
     }
 
 
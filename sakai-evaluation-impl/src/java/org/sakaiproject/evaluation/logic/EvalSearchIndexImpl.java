@@ -0,0 +1,261 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import org.sakaiproject.evaluation.dao.EvaluationDao;
+import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
+import org.sakaiproject.evaluation.model.EvalAssignGroup;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalSearchToken;
+import org.sakaiproject.evaluation.utils.EvalUtils;
+import org.sakaiproject.genericdao.api.search.Search;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps the evaluation search tokens in the EVAL_SEARCH_TOKEN table
+ */
+@Slf4j
+public class EvalSearchIndexImpl implements EvalSearchIndex {
+
+    /**
+     * Only this many words from the search text are used, the rest are ignored
+     */
+    public static final int MAX_SEARCH_WORDS = 6;
+    /**
+     * The number of missing evaluations to add to the index in each batch
+     */
+    public static final int INDEX_BATCH_SIZE = 500;
+    public static String EVAL_SEARCH_INDEX_TIMER = "eval_search_index_timer";
+
+    private EvaluationDao dao;
+    public void setDao(EvaluationDao dao) {
+        this.dao = dao;
+    }
+
+    private EvalCommonLogic commonLogic;
+    public void setCommonLogic(EvalCommonLogic commonLogic) {
+        this.commonLogic = commonLogic;
+    }
+
+    private boolean indexMissingOnStartup = true;
+    /**
+     * @param indexMissingOnStartup if true (default) then a timer adds any evaluations
+     * which are missing from the index in the background
+     */
+    public void setIndexMissingOnStartup(boolean indexMissingOnStartup) {
+        this.indexMissingOnStartup = indexMissingOnStartup;
+    }
+
+    public void init() {
+        log.debug("INIT");
+        if (indexMissingOnStartup) {
+            initiateIndexTimer();
+        }
+    }
+
+    /**
+     * Starts a timer which adds the evaluations that are not in the search index yet,
+     * uses a DB server lock so that only one server does this at a time
+     */
+    protected void initiateIndexTimer() {
+        // timer repeats every 30 minutes
+        final long repeatInterval = 1000 * 60 * 30;
+        // start up a timer after 1 min + random(5 mins)
+        long startDelay = (1000 * 60) + (1000 * 60 * new Random().nextInt(5));
+
+        TimerTask runIndexTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    String serverId = commonLogic.getConfigurationSetting(EvalExternalLogic.SETTING_SERVER_ID, "UNKNOWN_SERVER_ID");
+                    Boolean lockObtained = dao.obtainLock(EVAL_SEARCH_INDEX_TIMER, serverId, repeatInterval);
+                    if (lockObtained != null && lockObtained) {
+                        int total = 0;
+                        int count;
+                        do {
+                            count = indexMissingEvaluations(INDEX_BATCH_SIZE);
+                            total += count;
+                        } while (count == INDEX_BATCH_SIZE);
+                        if (total > 0) {
+                            log.info("Added "+total+" evaluations to the search index");
+                        }
+                    }
+                } catch (Exception e) {
+                    // do not let a failure kill the timer, the evaluations will be picked up on the next run
+                    log.warn("Failure while adding evaluations to the search index: " + e.getMessage(), e);
+                }
+            }
+        };
+        Timer timer = new Timer(true);
+        timer.schedule(runIndexTask, startDelay, repeatInterval);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#indexEvaluation(org.sakaiproject.evaluation.model.EvalEvaluation)
+     */
+    public void indexEvaluation(EvalEvaluation evaluation) {
+        if (evaluation == null || evaluation.getId() == null) {
+            throw new IllegalArgumentException("evaluation must be set and must be saved");
+        }
+        Long evaluationId = evaluation.getId();
+        dao.saveSearchTokens(evaluationId, EvalSearchToken.SOURCE_TITLE, 
+                EvalUtils.makeSearchTokens(evaluation.getTitle()), true);
+        dao.saveSearchTokens(evaluationId, EvalSearchToken.SOURCE_TERM, 
+                EvalUtils.makeSearchTokens(evaluation.getTermId()), true);
+
+        Set<String> ownerTokens = new LinkedHashSet<>();
+        String ownerId = evaluation.getOwner();
+        if (ownerId != null) {
+            ownerTokens.addAll( EvalUtils.makeSearchTokens(ownerId) );
+            EvalUser owner = commonLogic.getEvalUserById(ownerId);
+            if (owner != null) {
+                ownerTokens.addAll( EvalUtils.makeSearchTokens(owner.username) );
+                ownerTokens.addAll( EvalUtils.makeSearchTokens(owner.displayName) );
+            }
+        }
+        dao.saveSearchTokens(evaluationId, EvalSearchToken.SOURCE_OWNER, ownerTokens, true);
+        // the id token goes last, it marks the evaluation as indexed
+        dao.saveSearchTokens(evaluationId, EvalSearchToken.SOURCE_ID, 
+                Collections.singleton(evaluationId.toString()), true);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#addEvaluationGroups(java.lang.Long, java.util.Collection)
+     */
+    public void addEvaluationGroups(Long evaluationId, Collection<String> evalGroupIds) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        if (evalGroupIds == null || evalGroupIds.isEmpty()) {
+            return;
+        }
+        Set<String> tokens = makeGroupTokens(evalGroupIds);
+        tokens.removeAll( dao.getSearchTokens(evaluationId, EvalSearchToken.SOURCE_GROUP) );
+        dao.saveSearchTokens(evaluationId, EvalSearchToken.SOURCE_GROUP, tokens, false);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#reindexEvaluationGroups(java.lang.Long)
+     */
+    public void reindexEvaluationGroups(Long evaluationId) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        List<EvalAssignGroup> assignGroups = dao.findBySearch(EvalAssignGroup.class, 
+                new Search("evaluation.id", evaluationId));
+        Set<String> evalGroupIds = new LinkedHashSet<>();
+        for (EvalAssignGroup assignGroup : assignGroups) {
+            evalGroupIds.add(assignGroup.getEvalGroupId());
+        }
+        dao.saveSearchTokens(evaluationId, EvalSearchToken.SOURCE_GROUP, makeGroupTokens(evalGroupIds), true);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#removeEvaluation(java.lang.Long)
+     */
+    public void removeEvaluation(Long evaluationId) {
+        if (evaluationId == null) {
+            throw new IllegalArgumentException("evaluationId must be set");
+        }
+        dao.removeSearchTokens(new Long[] {evaluationId});
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#removeEvaluations(java.lang.Long[])
+     */
+    public void removeEvaluations(Long[] evaluationIds) {
+        if (evaluationIds == null) {
+            throw new IllegalArgumentException("evaluationIds must be set");
+        }
+        dao.removeSearchTokens(evaluationIds);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#indexMissingEvaluations(int)
+     */
+    public int indexMissingEvaluations(int maxEvaluations) {
+        List<Long> evaluationIds = dao.getEvaluationIdsWithoutSearchTokens(maxEvaluations);
+        if (evaluationIds.isEmpty()) {
+            return 0;
+        }
+        List<EvalEvaluation> evals = dao.findBySearch(EvalEvaluation.class, 
+                new Search("id", evaluationIds.toArray(new Long[evaluationIds.size()])));
+        for (EvalEvaluation evaluation : evals) {
+            reindexEvaluationGroups(evaluation.getId());
+            indexEvaluation(evaluation);
+        }
+        return evals.size();
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#countEvaluations(java.lang.String, java.lang.String[])
+     */
+    public int countEvaluations(String searchText, String[] sources) {
+        String[] prefixes = makeSearchPrefixes(searchText);
+        if (prefixes.length == 0) {
+            return 0;
+        }
+        return dao.countEvaluationsBySearchTokens(prefixes, sources);
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSearchIndex#getEvaluations(java.lang.String, java.lang.String[], java.lang.String, int, int)
+     */
+    public List<EvalEvaluation> getEvaluations(String searchText, String[] sources, String order, int startResult, int maxResults) {
+        String[] prefixes = makeSearchPrefixes(searchText);
+        if (prefixes.length == 0) {
+            return new ArrayList<>();
+        }
+        return dao.getEvaluationsBySearchTokens(prefixes, sources, order, startResult, maxResults);
+    }
+
+    /**
+     * @param evalGroupIds the unique ids of eval groups
+     * @return the tokens from the group ids and the group titles
+     */
+    private Set<String> makeGroupTokens(Collection<String> evalGroupIds) {
+        Set<String> tokens = new LinkedHashSet<>();
+        for (String evalGroupId : evalGroupIds) {
+            tokens.addAll( EvalUtils.makeSearchTokens(evalGroupId) );
+            tokens.addAll( EvalUtils.makeSearchTokens(commonLogic.getDisplayTitle(evalGroupId)) );
+        }
+        return tokens;
+    }
+
+    /**
+     * @param searchText the text to search for
+     * @return the search words (up to {@link #MAX_SEARCH_WORDS}) which must match the start of tokens
+     */
+    private String[] makeSearchPrefixes(String searchText) {
+        List<String> prefixes = new ArrayList<>( EvalUtils.makeSearchTokens(searchText) );
+        if (prefixes.size() > MAX_SEARCH_WORDS) {
+            prefixes = prefixes.subList(0, MAX_SEARCH_WORDS);
+        }
+        return prefixes.toArray(new String[prefixes.size()]);
+    }
+
+}
@@ -14,11 +14,20 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.sakaiproject.evaluation.dao.EvaluationDao;
 import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
@@ -29,13 +38,26 @@ import org.sakaiproject.genericdao.api.search.Search;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Implementation for the settings control
+ * Implementation for the settings control<br/>
+ * All the settings are held in a single immutable snapshot which is loaded with one query
+ * and swapped atomically, reads never go to the database or take a lock<br/>
+ * Every save also updates a version stamp (stored as a special config setting),
+ * each server checks the stamp periodically and reloads the snapshot when another server has changed it
  * 
  * @author Aaron Zeckoski (aaronz@vt.edu)
  */
 @Slf4j
 public class EvalSettingsImpl implements EvalSettings {
 
+    /**
+     * The name of the config setting which holds the version stamp for all the settings
+     */
+    public static final String SETTINGS_VERSION_NAME = "EVAL_SETTINGS_VERSION";
+    /**
+     * Default time between checks of the settings version stamp (in ms)
+     */
+    public static final long DEFAULT_VERSION_CHECK_INTERVAL = 15 * 1000;
+
     private EvaluationDao dao;
     public void setDao(EvaluationDao dao) {
         this.dao = dao;
@@ -46,12 +68,27 @@ public class EvalSettingsImpl implements EvalSettings {
         this.externalLogic = externalLogic;
     }
 
-
-    private ConcurrentHashMap<String, EvalConfig> configCache = new ConcurrentHashMap<>();
-    private HashSet<String> booleanSettings = new HashSet<>();
+    private long versionCheckInterval = DEFAULT_VERSION_CHECK_INTERVAL;
+    /**
+     * @param versionCheckInterval time between checks of the settings version stamp (in ms),
+     * 0 or less disables the checks (the settings are then only reloaded when the cache is reset)
+     */
+    public void setVersionCheckInterval(long versionCheckInterval) {
+        this.versionCheckInterval = versionCheckInterval;
+    }
 
     private static final String NULL_VALUE = "NULL";
 
+    /**
+     * All the setting constants defined in {@link EvalSettings}
+     */
+    private static final List<String> SETTING_CONSTANTS = findSettingConstants();
+    private static final Set<String> booleanSettings = new HashSet<>( Arrays.asList( BOOLEAN_SETTINGS ) );
+
+    private volatile SettingsSnapshot snapshot;
+    private final AtomicLong stampCounter = new AtomicLong();
+    private Timer versionCheckTimer;
+
     /**
      * spring init
      */
@@ -60,23 +97,44 @@ public class EvalSettingsImpl implements EvalSettings {
 
         log.debug("BOOLEAN_SETTINGS " + BOOLEAN_SETTINGS);
 
-        // convert the array into a Set to make it easier to work with
-        booleanSettings.addAll( Arrays.asList( BOOLEAN_SETTINGS ) );
+        // initialize the cache
+        resetCache(null);
 
         // count the current config settings
-        int count = dao.countAll(EvalConfig.class);
-        if (count > 0) {
+        if (! snapshot.rawValues.isEmpty()) {
             log.info("Updating boolean only evaluation system settings to ensure they are not null...");
             // check the existing boolean settings for null values and fix them if they are null
             for (String setting : booleanSettings) {
-                if (get(setting) == null) {
+                String value = snapshot.rawValues.get( SettingsLogicUtils.getName(setting) );
+                if (value == null || NULL_VALUE.equals(value)) {
                     set(setting, false);
                 }
             }
         }
 
-        // initialize the cache
-        resetCache(null);
+        if (versionCheckInterval > 0) {
+            versionCheckTimer = new Timer("EvalSettingsVersionCheck", true);
+            versionCheckTimer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        reloadIfChanged();
+                    } catch (Exception e) {
+                        log.warn("Failed to check the settings version: " + e);
+                    }
+                }
+            }, versionCheckInterval, versionCheckInterval);
+        }
+    }
+
+    /**
+     * spring destroy
+     */
+    public void destroy() {
+        if (versionCheckTimer != null) {
+            versionCheckTimer.cancel();
+            versionCheckTimer = null;
+        }
     }
 
     /* (non-Javadoc)
@@ -85,27 +143,13 @@ public class EvalSettingsImpl implements EvalSettings {
     public Object get(String settingConstant) {
         log.debug("Getting admin setting for: " + settingConstant);
         String name = SettingsLogicUtils.getName(settingConstant);
-        String type = SettingsLogicUtils.getType(settingConstant);
 
-        Object setting = null;
-        EvalConfig c = getConfigByName(name, true);
-        if (c == null) {
-            if (booleanSettings.contains(settingConstant)) {
-                // if this boolean is null then make it false instead
-                setting = Boolean.FALSE;
-            }
-        } else if (! NULL_VALUE.equals(c.getValue())){
-            if (type.equals("java.lang.Boolean")) {
-            	setting = Boolean.valueOf( c.getValue() );
-            } else if (type.equals("java.lang.Integer")) {
-                setting = new Integer( c.getValue() );
-            } else if (type.equals("java.lang.Float")) {
-                setting = new Float( c.getValue() );
-            } else {
-                setting = c.getValue();
-            }
+        SettingsSnapshot current = getSnapshot();
+        if (current.typedValues.containsKey(settingConstant)) {
+            return current.typedValues.get(settingConstant);
         }
-        return setting;
+        // not one of the known constants so convert it now
+        return convertValue(settingConstant, current.rawValues.get(name));
     }
 
     /* (non-Javadoc)
@@ -116,9 +160,6 @@ public class EvalSettingsImpl implements EvalSettings {
         String name = SettingsLogicUtils.getName(settingConstant);
         String type = SettingsLogicUtils.getType(settingConstant);
 
-        // retrieve the current setting if it exists
-        EvalConfig c = getConfigByName(name, false);
-
         // make sure the type is the one set
         Class<?> typeClass;
         try {
@@ -139,18 +180,13 @@ public class EvalSettingsImpl implements EvalSettings {
         }else{
         	value = settingValue.toString();
         }
-        
-        if (c == null) {
-            c = new EvalConfig(name, value);
-        } else {
-            c.setLastModified(new Date());
-            c.setValue(value);
-        }
 
         try {
-            dao.save(c); // now save in the database
+            saveConfig(name, value); // now save in the database
+            String version = makeVersionStamp();
+            saveConfig(SETTINGS_VERSION_NAME, version); // tell the other servers
+            updateSnapshot(name, value, version); // update the cache (before the event so this server ignores it)
             externalLogic.registerEntityEvent(EVENT_SET_ONE_CONFIG, EvalConfig.class, settingConstant); // register event
-            configCache.put(name, c); // update the cache
         } catch (Exception e) {
             log.error("Could not save system setting:" + name + ":" + value, e);
             return false;
@@ -159,77 +195,193 @@ public class EvalSettingsImpl implements EvalSettings {
     }
 
     /**
+     * Create or update the persistent config setting
      * @param name the name value of the Config item
-     * @param useCache if true then use cached values and return no persistent objects,
-     * else always get the persistent object if exists
-     * @return a Config object or null if none found
+     * @param value the value to store
      */
-    protected EvalConfig getConfigByName(String name, boolean useCache) {
-        EvalConfig config = null;
-        boolean found = false;
-        if (useCache) {
-            // get the cached version if it exists
-            if (configCache.containsKey(name)) {
-                found = true;
-                config = configCache.get(name);
-                if (config instanceof Null) {
-                    config = null;
-                }
-            }
+    private void saveConfig(String name, String value) {
+        EvalConfig c = getConfigByName(name);
+        if (c == null) {
+            c = new EvalConfig(name, value);
+        } else {
+            c.setLastModified(new Date());
+            c.setValue(value);
         }
-        if (! found) {
-            List<EvalConfig> l = dao.findBySearch(EvalConfig.class, 
-                    new Search("name", name) );
-            if (l.size() > 0) {
-                config = (EvalConfig) l.get(0);
-            } else {
-                log.debug("No admin setting for this constant:" + name);
-            }
-            if (useCache) {
-                if (config == null) {
-                    // we want to store the fact that this is actually a null
-                    configCache.put(name, new Null());
-                } else {
-                    // make the object non-persistent by copying it
-                    config = new EvalConfig(name, config.getValue());
-                    configCache.put(name, config); // update the cache
-                }
-            }
+        dao.save(c);
+    }
+
+    /**
+     * @param name the name value of the Config item
+     * @return the persistent Config object or null if none found
+     */
+    protected EvalConfig getConfigByName(String name) {
+        EvalConfig config = null;
+        List<EvalConfig> l = dao.findBySearch(EvalConfig.class, 
+                new Search("name", name) );
+        if (l.size() > 0) {
+            config = (EvalConfig) l.get(0);
+        } else {
+            log.debug("No admin setting for this constant:" + name);
         }
         return config;
     }
 
     /**
-     * clear out the cache and reload all config settings if the settingConstant is null,
-     * if not null then clean out a single item from the cache,
-     * it will be reloaded from the DB the next time someone attempts to fetch it
+     * clear out the cache and reload all config settings,
+     * the snapshot is always reloaded as a whole (in a single query) so the
+     * settingConstant is only used for logging
      * @param settingConstant (OPTIONAL) a setting constant from {@link EvalSettings}
      */
     public void resetCache(String settingConstant) {
+        SettingsSnapshot loaded = loadSnapshot();
         if (settingConstant == null) {
-            // clear out cache
-            configCache.clear();
-            // reload all cache items
-            List<EvalConfig> l = dao.findAll(EvalConfig.class);
-            for (EvalConfig config : l) {
-                // copy the values to avoid putting persistent objects in the cache
-                config = new EvalConfig(config.getName(), config.getValue());
-                configCache.put(config.getName(), config);
-            }
-            log.info("Resetting config settings cache: cleared and reloaded all "+l.size()+" values");
+            log.info("Resetting config settings cache: reloaded all "+loaded.rawValues.size()+" values");
         } else {
-            String name = SettingsLogicUtils.getName(settingConstant);
-            if (configCache.containsKey(name)) {
-                log.info("Resetting config settings cache: cleared single value: " + name);
-                configCache.remove(name);
+            log.info("Resetting config settings cache: reloaded all values for change to: " + settingConstant);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.EvalSettings#reloadIfChanged()
+     */
+    public boolean reloadIfChanged() {
+        SettingsSnapshot current = snapshot;
+        EvalConfig versionConfig = getConfigByName(SETTINGS_VERSION_NAME);
+        String version = versionConfig == null ? null : versionConfig.getValue();
+        boolean changed = current == null 
+                || (version == null ? current.version != null : ! version.equals(current.version));
+        if (changed) {
+            log.info("Settings version changed (" + (current == null ? null : current.version) + " -> " + version + "), reloading all settings");
+            loadSnapshot();
+        }
+        return changed;
+    }
+
+    /**
+     * @return the current snapshot, loaded if there is not one yet
+     */
+    private SettingsSnapshot getSnapshot() {
+        SettingsSnapshot current = snapshot;
+        if (current == null) {
+            current = loadSnapshot();
+        }
+        return current;
+    }
+
+    /**
+     * Loads all the settings in a single query and swaps in the new snapshot
+     * @return the new snapshot
+     */
+    private synchronized SettingsSnapshot loadSnapshot() {
+        List<EvalConfig> l = dao.findAll(EvalConfig.class);
+        Map<String, String> rawValues = new HashMap<>(l.size());
+        String version = null;
+        for (EvalConfig config : l) {
+            if (SETTINGS_VERSION_NAME.equals(config.getName())) {
+                version = config.getValue();
+            } else {
+                rawValues.put(config.getName(), config.getValue());
+            }
+        }
+        SettingsSnapshot loaded = new SettingsSnapshot(version, rawValues);
+        snapshot = loaded;
+        return loaded;
+    }
+
+    /**
+     * Replaces the snapshot with a copy that includes a changed value
+     */
+    private synchronized void updateSnapshot(String name, String value, String version) {
+        SettingsSnapshot current = getSnapshot();
+        Map<String, String> rawValues = new HashMap<>(current.rawValues);
+        rawValues.put(name, value);
+        snapshot = new SettingsSnapshot(version, rawValues);
+    }
+
+    /**
+     * @return a version stamp which is unique across the servers in the cluster
+     */
+    private String makeVersionStamp() {
+        return externalLogic.getServerId() + ":" + System.currentTimeMillis() + ":" + stampCounter.incrementAndGet();
+    }
+
+    /**
+     * Convert the stored value into the type of the setting
+     * @param settingConstant a setting constant (name:type)
+     * @param value the stored value (may be null)
+     * @return the typed value or null if there is no value
+     */
+    private static Object convertValue(String settingConstant, String value) {
+        String type = SettingsLogicUtils.getType(settingConstant);
+        Object setting = null;
+        if (value == null) {
+            if (booleanSettings.contains(settingConstant)) {
+                // if this boolean is null then make it false instead
+                setting = Boolean.FALSE;
+            }
+        } else if (! NULL_VALUE.equals(value)){
+            if (type.equals("java.lang.Boolean")) {
+            	setting = Boolean.valueOf( value );
+            } else if (type.equals("java.lang.Integer")) {
+                setting = Integer.valueOf( value );
+            } else if (type.equals("java.lang.Float")) {
+                setting = Float.valueOf( value );
+            } else {
+                setting = value;
+            }
+        }
+        return setting;
+    }
+
+    /**
+     * @return all the setting constants (name:type) defined in {@link EvalSettings}
+     */
+    private static List<String> findSettingConstants() {
+        List<String> constants = new ArrayList<>();
+        for (Field field : EvalSettings.class.getFields()) {
+            if (field.getType() == String.class && Modifier.isStatic(field.getModifiers())) {
+                try {
+                    String value = (String) field.get(null);
+                    if (value != null && value.indexOf(':') > 0) {
+                        constants.add(value);
+                    }
+                } catch (IllegalAccessException e) {
+                    // skip this one
+                }
             }
         }
+        return Collections.unmodifiableList(constants);
     }
 
     /**
-     * Marker class to indicate a null since CHM cannot store null
-     * @author Aaron Zeckoski (aaron@caret.cam.ac.uk)
+     * An immutable snapshot of all the settings,
+     * the known constants are converted to their types when the snapshot is made
      */
-    private class Null extends EvalConfig { }
+    private static class SettingsSnapshot {
+        final String version;
+        /**
+         * setting name -> stored value
+         */
+        final Map<String, String> rawValues;
+        /**
+         * setting constant -> typed value (may be null)
+         */
+        final Map<String, Object> typedValues;
+
+        SettingsSnapshot(String version, Map<String, String> rawValues) {
+            this.version = version;
+            this.rawValues = Collections.unmodifiableMap(rawValues);
+            Map<String, Object> typed = new HashMap<>(SETTING_CONSTANTS.size());
+            for (String constant : SETTING_CONSTANTS) {
+                try {
+                    typed.put(constant, convertValue(constant, rawValues.get(SettingsLogicUtils.getName(constant))));
+                } catch (NumberFormatException e) {
+                    // leave it out so the error happens when the setting is used
+                    log.warn("Invalid value for setting " + constant + ": " + e);
+                }
+            }
+            this.typedValues = Collections.unmodifiableMap(typed);
+        }
+    }
 
 }
@@ -14,12 +14,17 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sakaiproject.evaluation.beans.EvalBeanUtils;
 import org.sakaiproject.evaluation.constant.EvalConstants;
@@ -83,6 +88,26 @@ public class ReportingPermissionsImpl implements ReportingPermissions {
         this.evalBeanUtils = evalBeanUtils;
     }
 
+    /**
+     * The default time (in ms) to keep the viewable groups for a user and evaluation cached
+     */
+    public static final long DEFAULT_VIEWABLE_GROUPS_CACHE_TTL = 1000 * 60 * 10;
+    /**
+     * The cache is cleared when it holds more entries than this
+     */
+    private static final int MAX_CACHED_VIEWABLE_GROUPS = 20000;
+
+    private long viewableGroupsCacheTTL = DEFAULT_VIEWABLE_GROUPS_CACHE_TTL;
+    /**
+     * @param viewableGroupsCacheTTL the time (in ms) that the viewable groups for a user and evaluation
+     * are cached, 0 disables the cache
+     */
+    public void setViewableGroupsCacheTTL(long viewableGroupsCacheTTL) {
+        this.viewableGroupsCacheTTL = viewableGroupsCacheTTL;
+    }
+
+    private final ConcurrentHashMap<String, CachedViewableGroups> viewableGroupsCache = new ConcurrentHashMap<>();
+
 
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.ReportingPermissions#chooseGroupsPartialCheck(java.lang.Long)
@@ -96,62 +121,127 @@ public class ReportingPermissionsImpl implements ReportingPermissions {
      */
     public Set<String> getResultsViewableEvalGroupIdsForCurrentUser(EvalEvaluation evaluation) {
         String currentUserId = commonLogic.getCurrentUserId();
-        Set<String> groupIdsTogo = new HashSet<>();
+        Map<Long, Set<String>> viewable = getResultsViewableEvalGroupIdsForUser(Collections.singletonList(evaluation), currentUserId);
+        return viewable.get(evaluation.getId());
+    }
 
-        boolean canViewResponses; // is user able to view any results/responses at all
-        boolean checkBasedOnRole = false; // get the groups based on the current user role
-        
-        // 1) Is this user an admin or evaluation owner
-        // 2) Is this user the evaluation owner?
-        if (evalBeanUtils.checkUserPermission(currentUserId, evaluation.getOwner())) {
-            canViewResponses = true;
-            checkBasedOnRole = false;
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.ReportingPermissions#getResultsViewableEvalGroupIdsForUser(java.util.Collection, java.lang.String)
+     */
+    public Map<Long, Set<String>> getResultsViewableEvalGroupIdsForUser(Collection<EvalEvaluation> evaluations, String userId) {
+        if (evaluations == null || userId == null || "".equals(userId)) {
+            throw new IllegalArgumentException("evaluations and userId must be set");
         }
-        // if view date is set and it is in the future then no groups
-        else if ( evaluation.getViewDate() != null 
-                && evaluation.getViewDate().after( new Date() ) ) {
-            canViewResponses = false;
+        Map<Long, Set<String>> viewable = new HashMap<>();
+        if (evaluations.isEmpty()) {
+            return viewable;
         }
-        // 3
-        else if (EvalConstants.SHARING_PUBLIC.equals(evaluation.getResultsSharing())) {
-            canViewResponses = true;
-            checkBasedOnRole = false;
+        ViewingRules rules = new ViewingRules(userId);
+        Map<Long, EvalEvaluation> evaluationsById = new LinkedHashMap<>();
+        for (EvalEvaluation evaluation : evaluations) {
+            evaluationsById.put(evaluation.getId(), evaluation);
         }
-        else if (EvalConstants.SHARING_PRIVATE.equals(evaluation.getResultsSharing())) {
-            canViewResponses = false;
+
+        // use the cached groups when nothing which affects them has changed
+        Map<Long, String> stamps = new HashMap<>();
+        List<EvalEvaluation> toResolve = new ArrayList<>();
+        if (viewableGroupsCacheTTL > 0) {
+            Long[] evaluationIds = evaluationsById.keySet().toArray(new Long[evaluationsById.size()]);
+            Map<Long, String> assignmentStamps = dao.getAssignmentStamps(evaluationIds, userId);
+            for (EvalEvaluation evaluation : evaluationsById.values()) {
+                String stamp = makeViewableGroupsStamp(evaluation, rules, assignmentStamps.get(evaluation.getId()));
+                stamps.put(evaluation.getId(), stamp);
+                CachedViewableGroups cached = viewableGroupsCache.get(userId + ":" + evaluation.getId());
+                if (cached != null && cached.stamp.equals(stamp) && rules.now.getTime() < cached.expires) {
+                    viewable.put(evaluation.getId(), new HashSet<>(cached.evalGroupIds));
+                } else {
+                    toResolve.add(evaluation);
+                }
+            }
+        } else {
+            toResolve.addAll(evaluationsById.values());
         }
-        else if (commonLogic.isUserReadonlyAdmin(currentUserId)) {
-        	//same settings for admin
-        	canViewResponses = true;
-        	checkBasedOnRole = false;
+
+        /*
+         * 1) Is this user an admin or evaluation owner (all groups)
+         * 1.5) if view date is set and it is in the future then no groups
+         * 3) public sharing allows all groups, private sharing allows none
+         * readonly admins have the same settings as admins, otherwise check the groups by role
+         * 6 TODO Infrastructure isn't available for hierarchical admins yet.
+         */
+        List<Long> allGroupsEvalIds = new ArrayList<>();
+        List<Long> byRoleEvalIds = new ArrayList<>();
+        for (EvalEvaluation evaluation : toResolve) {
+            Long evaluationId = evaluation.getId();
+            viewable.put(evaluationId, new HashSet<>());
+            if (rules.isAdmin || userId.equals(evaluation.getOwner())) {
+                allGroupsEvalIds.add(evaluationId);
+            } else if (evaluation.getViewDate() != null
+                    && evaluation.getViewDate().after(rules.now)) {
+                // no groups
+            } else if (EvalConstants.SHARING_PUBLIC.equals(evaluation.getResultsSharing())) {
+                allGroupsEvalIds.add(evaluationId);
+            } else if (EvalConstants.SHARING_PRIVATE.equals(evaluation.getResultsSharing())) {
+                // no groups
+            } else if (rules.isReadonlyAdmin()) {
+                allGroupsEvalIds.add(evaluationId);
+            } else {
+                byRoleEvalIds.add(evaluationId);
+            }
         }
-        else {
-            canViewResponses = true;
-            checkBasedOnRole = true;
+
+        if (! allGroupsEvalIds.isEmpty()) {
+            // user can view all groups
+            // Should the includeUnapproved be true or false for this use case?? (swg) - false -AZ
+            Map<Long, List<EvalAssignGroup>> evalAssignGroupMap = evaluationService.getAssignGroupsForEvals(
+                    allGroupsEvalIds.toArray(new Long[allGroupsEvalIds.size()]), false, null);
+            for (Long evaluationId : allGroupsEvalIds) {
+                List<EvalAssignGroup> assignGroups = evalAssignGroupMap.get(evaluationId);
+                if (assignGroups != null) {
+                    for (EvalAssignGroup evalAssignGroup : assignGroups) {
+                        viewable.get(evaluationId).add(evalAssignGroup.getEvalGroupId());
+                    }
+                }
+            }
         }
-        // 6 TODO Infrastructure isn't available for this yet.
-
-        if (canViewResponses) {
-            /*
-             * If we can view the responses, based on the preliminary checks above,
-             * we will create a Set of the groups we are allowed to view based on the
-             * possibility of us having the instructor and student oriented permission
-             * locks.
-             */
-            if (checkBasedOnRole) {
-                groupIdsTogo = getViewableGroupsForEvalAndUserByRole(evaluation, currentUserId, null);
-            } else {
-                // user can view all groups
-                // Should the includeUnapproved be true or false for this use case?? (swg) - false -AZ
-                Map<Long, List<EvalAssignGroup>> evalAssignGroupMap = 
-                    evaluationService.getAssignGroupsForEvals(new Long[] {evaluation.getId()}, false, null);
-                for (EvalAssignGroup evalAssignGroup: evalAssignGroupMap.get(evaluation.getId())) {
-                    groupIdsTogo.add(evalAssignGroup.getEvalGroupId());
+
+        if (! byRoleEvalIds.isEmpty()) {
+            // 4/5) the user groups for all the evaluations come back in one query along with the group view flags
+            Map<Long, Boolean> allowedInstructor = new HashMap<>();
+            Map<Long, Boolean> allowedStudent = new HashMap<>();
+            for (Long evaluationId : byRoleEvalIds) {
+                EvalEvaluation evaluation = evaluationsById.get(evaluationId);
+                allowedInstructor.put(evaluationId, rules.isInstructorAllowed(evaluation));
+                allowedStudent.put(evaluationId, rules.isStudentAllowed(evaluation));
+            }
+            List<Object[]> rows = dao.getUserAssignGroupRows(byRoleEvalIds.toArray(new Long[byRoleEvalIds.size()]), userId);
+            for (Object[] row : rows) {
+                Long evaluationId = (Long) row[0];
+                String evalGroupId = (String) row[1];
+                String type = (String) row[2];
+                if (EvalAssignUser.TYPE_EVALUATEE.equals(type)) {
+                    if (allowedInstructor.get(evaluationId) && Boolean.TRUE.equals(row[3])) {
+                        viewable.get(evaluationId).add(evalGroupId);
+                    }
+                } else if (EvalAssignUser.TYPE_EVALUATOR.equals(type)) {
+                    if (allowedStudent.get(evaluationId) && Boolean.TRUE.equals(row[4])) {
+                        viewable.get(evaluationId).add(evalGroupId);
+                    }
                 }
             }
         }
 
-        return new HashSet<>(groupIdsTogo);
+        if (viewableGroupsCacheTTL > 0) {
+            if (viewableGroupsCache.size() > MAX_CACHED_VIEWABLE_GROUPS) {
+                viewableGroupsCache.clear();
+            }
+            for (EvalEvaluation evaluation : toResolve) {
+                Long evaluationId = evaluation.getId();
+                viewableGroupsCache.put(userId + ":" + evaluationId, new CachedViewableGroups(stamps.get(evaluationId),
+                        getCacheExpiry(evaluation, rules.now), new HashSet<>(viewable.get(evaluationId))));
+            }
+        }
+        return viewable;
     }
 
     /* (non-Javadoc)
@@ -245,7 +335,7 @@ public class ReportingPermissionsImpl implements ReportingPermissions {
         if (eval == null || userId == null || "".equals(userId)) {
             throw new IllegalArgumentException("eval and userId must be set");
         }
-        boolean isUserAdmin = commonLogic.isUserAdmin(userId);
+        ViewingRules rules = new ViewingRules(userId);
         Long evaluationId = eval.getId();
         // use one central method which returns the groups accessible by the user, then compare the size to the
         // total size of all groups for this case (if it is smaller then return false)
@@ -264,54 +354,20 @@ public class ReportingPermissionsImpl implements ReportingPermissions {
             typeToEvalGroupId.get(type).add(eau.getEvalGroupId());
         }
 
-        Boolean viewSurveyResultsIgnoreDates = (Boolean) evalSettings.get(EvalSettings.VIEW_SURVEY_RESULTS_IGNORE_DATES);
-        
-        boolean allowedInstructor = false;
-        if ( typeToEvalGroupId.containsKey(EvalAssignUser.TYPE_EVALUATEE) ) {
-            Boolean instructorAllowedViewResults = (Boolean) evalSettings.get(EvalSettings.INSTRUCTOR_ALLOWED_VIEW_RESULTS);
-            if (instructorAllowedViewResults == null || instructorAllowedViewResults) {
-                boolean instructorViewResults = eval.getInstructorViewResults();
-                boolean instructorViewAllResults = eval.getInstructorViewAllResults();
-                if ((instructorViewResults && (userId.equals(eval.getOwner()) || isUserAdmin)) || instructorViewAllResults) {
-                    Date checkDate = eval.getInstructorsDate();
-                    if ( (checkDate == null && EvalUtils.checkStateAfter(eval.getState(), EvalConstants.EVALUATION_STATE_VIEWABLE, true))
-                            || (checkDate != null && (new Date()).after(checkDate)) 
-                            || (viewSurveyResultsIgnoreDates != null && viewSurveyResultsIgnoreDates)) {
-                        // user is allowed to view based on state and settings so check the groups below
-                        allowedInstructor = true;
-                    }
-                }
-            }
-
-            if (allowedInstructor) {
-                // only do this part if the user is allowed to view some groups at all
-                Set<String> gidSet = typeToEvalGroupId.get(EvalAssignUser.TYPE_EVALUATEE);
-                String[] gids = gidSet.toArray(new String[gidSet.size()]);
-                viewableGroupIds.addAll( getEvalGroupIdsForUserRole(evaluationId, userId, gids, true) );
-            }
+        if ( typeToEvalGroupId.containsKey(EvalAssignUser.TYPE_EVALUATEE) 
+                && rules.isInstructorAllowed(eval) ) {
+            // only do this part if the user is allowed to view some groups at all
+            Set<String> gidSet = typeToEvalGroupId.get(EvalAssignUser.TYPE_EVALUATEE);
+            String[] gids = gidSet.toArray(new String[gidSet.size()]);
+            viewableGroupIds.addAll( getEvalGroupIdsForUserRole(evaluationId, userId, gids, true) );
         }
 
-        boolean allowedStudent = false;
-        if ( typeToEvalGroupId.containsKey(EvalAssignUser.TYPE_EVALUATOR) ) {
-            Boolean studentAllowedViewResults = (Boolean) evalSettings.get(EvalSettings.STUDENT_ALLOWED_VIEW_RESULTS);
-            if (studentAllowedViewResults == null || studentAllowedViewResults) {
-                if (eval.getStudentViewResults()) {
-                    Date checkDate = eval.getStudentsDate();
-                    if ( (checkDate == null && EvalUtils.checkStateAfter(eval.getState(), EvalConstants.EVALUATION_STATE_VIEWABLE, true))
-                            || (checkDate != null && (new Date()).after(checkDate)) 
-                            || (viewSurveyResultsIgnoreDates != null && viewSurveyResultsIgnoreDates)) {
-                        // user is allowed to view based on state and settings so check the groups below
-                        allowedStudent = true;
-                    }
-                }
-            }
-
-            if (allowedStudent) {
-                // only do this part if the user is allowed to view some groups at all
-                Set<String> gidSet = typeToEvalGroupId.get(EvalAssignUser.TYPE_EVALUATOR);
-                String[] gids = gidSet.toArray(new String[gidSet.size()]);
-                viewableGroupIds.addAll( getEvalGroupIdsForUserRole(evaluationId, userId, gids, false) );
-            }
+        if ( typeToEvalGroupId.containsKey(EvalAssignUser.TYPE_EVALUATOR) 
+                && rules.isStudentAllowed(eval) ) {
+            // only do this part if the user is allowed to view some groups at all
+            Set<String> gidSet = typeToEvalGroupId.get(EvalAssignUser.TYPE_EVALUATOR);
+            String[] gids = gidSet.toArray(new String[gidSet.size()]);
+            viewableGroupIds.addAll( getEvalGroupIdsForUserRole(evaluationId, userId, gids, false) );
         }
 
         if (groupIds == null 
@@ -349,6 +405,142 @@ public class ReportingPermissionsImpl implements ReportingPermissions {
         return viewableGroupIds;
     }
 
+    /**
+     * Makes the stamp for the cached viewable groups of a user in an evaluation,
+     * this includes everything the viewable groups are worked out from other than the current time
+     * 
+     * @param evaluation the evaluation
+     * @param rules the viewing rules for the user
+     * @param assignmentStamp the stamp for the assigned groups and user assignments (can be null)
+     * @return the stamp
+     */
+    private String makeViewableGroupsStamp(EvalEvaluation evaluation, ViewingRules rules, String assignmentStamp) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(rules.getSignature());
+        sb.append('|').append(evaluation.getLastModified() == null ? 0l : evaluation.getLastModified().getTime());
+        sb.append('|').append(evaluation.getState());
+        sb.append('|').append(evaluation.getOwner());
+        sb.append('|').append(evaluation.getResultsSharing());
+        sb.append('|').append(evaluation.getInstructorViewResults());
+        sb.append('|').append(evaluation.getInstructorViewAllResults());
+        sb.append('|').append(evaluation.getStudentViewResults());
+        sb.append('|').append(evaluation.getViewDate() == null ? 0l : evaluation.getViewDate().getTime());
+        sb.append('|').append(evaluation.getInstructorsDate() == null ? 0l : evaluation.getInstructorsDate().getTime());
+        sb.append('|').append(evaluation.getStudentsDate() == null ? 0l : evaluation.getStudentsDate().getTime());
+        sb.append('|').append(assignmentStamp);
+        return sb.toString();
+    }
+
+    /**
+     * The viewable groups change when the view dates pass so the cached groups
+     * must expire at the next one of those dates (or the cache TTL if that is sooner)
+     */
+    private long getCacheExpiry(EvalEvaluation evaluation, Date now) {
+        long expires = now.getTime() + viewableGroupsCacheTTL;
+        Date[] dates = {evaluation.getViewDate(), evaluation.getInstructorsDate(), evaluation.getStudentsDate()};
+        for (Date date : dates) {
+            if (date != null && date.after(now) && date.getTime() < expires) {
+                expires = date.getTime();
+            }
+        }
+        return expires;
+    }
+
+    /**
+     * The settings and user level decisions needed to work out which groups a user can view,
+     * these are looked up once and then reused for every evaluation being checked
+     */
+    private class ViewingRules {
+        final String userId;
+        final Date now = new Date();
+        final boolean isAdmin;
+        final boolean instructorAllowedViewResults;
+        final boolean studentAllowedViewResults;
+        final boolean viewSurveyResultsIgnoreDates;
+        private Boolean isReadonlyAdmin;
+
+        ViewingRules(String userId) {
+            this.userId = userId;
+            // the same admin check as evalBeanUtils.checkUserPermission
+            isAdmin = commonLogic.isUserAdmin(userId);
+            Boolean instructorAllowed = (Boolean) evalSettings.get(EvalSettings.INSTRUCTOR_ALLOWED_VIEW_RESULTS);
+            instructorAllowedViewResults = instructorAllowed == null || instructorAllowed;
+            Boolean studentAllowed = (Boolean) evalSettings.get(EvalSettings.STUDENT_ALLOWED_VIEW_RESULTS);
+            studentAllowedViewResults = studentAllowed == null || studentAllowed;
+            Boolean ignoreDates = (Boolean) evalSettings.get(EvalSettings.VIEW_SURVEY_RESULTS_IGNORE_DATES);
+            viewSurveyResultsIgnoreDates = ignoreDates != null && ignoreDates;
+        }
+
+        boolean isReadonlyAdmin() {
+            if (isReadonlyAdmin == null) {
+                isReadonlyAdmin = commonLogic.isUserReadonlyAdmin(userId);
+            }
+            return isReadonlyAdmin;
+        }
+
+        /**
+         * 4) Do the system settings allow instructors to view the evaluation?<br/>
+         * 4b) DateRule
+         */
+        boolean isInstructorAllowed(EvalEvaluation eval) {
+            boolean allowed = false;
+            if (instructorAllowedViewResults) {
+                boolean instructorViewResults = eval.getInstructorViewResults();
+                boolean instructorViewAllResults = eval.getInstructorViewAllResults();
+                if ((instructorViewResults && (userId.equals(eval.getOwner()) || isAdmin)) || instructorViewAllResults) {
+                    allowed = checkViewDate(eval, eval.getInstructorsDate());
+                }
+            }
+            return allowed;
+        }
+
+        /**
+         * 5) Do the system settings allow students to view the evaluation?<br/>
+         * 5b) DateRule
+         */
+        boolean isStudentAllowed(EvalEvaluation eval) {
+            boolean allowed = false;
+            if (studentAllowedViewResults && eval.getStudentViewResults()) {
+                allowed = checkViewDate(eval, eval.getStudentsDate());
+            }
+            return allowed;
+        }
+
+        /**
+         * DateRule) if the date is null then the eval just has to be viewable,
+         * if not null then it has to be after now
+         */
+        private boolean checkViewDate(EvalEvaluation eval, Date checkDate) {
+            return (checkDate == null && EvalUtils.checkStateAfter(eval.getState(), EvalConstants.EVALUATION_STATE_VIEWABLE, true))
+                    || (checkDate != null && now.after(checkDate))
+                    || viewSurveyResultsIgnoreDates;
+        }
+
+        /**
+         * @return the user level decisions and settings as a string,
+         * the readonly admin check is included so it is always looked up
+         */
+        String getSignature() {
+            return isAdmin + "," + isReadonlyAdmin() + "," + instructorAllowedViewResults + ","
+                    + studentAllowedViewResults + "," + viewSurveyResultsIgnoreDates;
+        }
+    }
+
+    /**
+     * The viewable groups for a user in an evaluation and the stamp they were worked out with
+     */
+    private static class CachedViewableGroups {
+        final String stamp;
+        final long expires;
+        final Set<String> evalGroupIds;
+
+        CachedViewableGroups(String stamp, long expires, Set<String> evalGroupIds) {
+            this.stamp = stamp;
+            this.expires = expires;
+            this.evalGroupIds = evalGroupIds;
+        }
+    }
+
     protected class FlagHashSet<E> extends HashSet<E> {
         /**
          * Used to track a counter value 
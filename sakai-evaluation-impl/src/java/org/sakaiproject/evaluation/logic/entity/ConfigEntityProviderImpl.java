@@ -63,10 +63,11 @@ public class ConfigEntityProviderImpl implements ConfigEntityProvider, CoreEntit
             id = new EntityReference(id).getId();
         }  
         if (EvalSettings.EVENT_SET_ONE_CONFIG.equals(eventName)) {
+            // events raised by this server are already in the settings cache so only reload for changes from other servers
+            boolean reloaded = settings.reloadIfChanged();
             if (log.isDebugEnabled()) {
-                log.debug("eventName (" + eventName + ") settings.resetCache(" + id + ")");
+                log.debug("eventName (" + eventName + ") for " + id + " settings.reloadIfChanged(): " + reloaded);
             }
-            settings.resetCache(id);
         } else if (EvalSettings.EVENT_SET_MANY_CONFIG.equals(eventName)) {
             if (log.isDebugEnabled()) {
                 log.debug("eventName (" + eventName + ") settings.resetCache(null)");
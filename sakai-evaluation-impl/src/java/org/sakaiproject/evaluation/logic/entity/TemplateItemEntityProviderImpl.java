@@ -143,10 +143,12 @@ public class TemplateItemEntityProviderImpl implements TemplateItemEntityProvide
             if (!"".equals(orderedChildIds)) {
                 String currentUserId = commonLogic.getCurrentUserId();
                 Map<Long, Integer> orderedMap = new HashMap<>();
-                List<String> orderedChildIdList = Arrays.asList(orderedChildIds.split(","));
-                for (String itemId : orderedChildIdList) {
-                    int itemPosition = orderedChildIdList.indexOf(itemId) + 1;
-                    orderedMap.put(Long.parseLong(itemId), itemPosition);
+                int itemPosition = 1;
+                for (String itemId : orderedChildIds.split(",")) {
+                    Long templateItemId = Long.parseLong(itemId.trim());
+                    if (! orderedMap.containsKey(templateItemId)) {
+                        orderedMap.put(templateItemId, itemPosition++);
+                    }
                 }
                 authoringService.saveTemplateItemOrder(orderedMap, currentUserId);
             } else {
@@ -169,13 +171,14 @@ public class TemplateItemEntityProviderImpl implements TemplateItemEntityProvide
 		List<EvalTemplateItem> children = authoringService.getBlockChildTemplateItemsForBlockParent(blockId, false);
 		List<EvalTemplateItem> orderedChildren = TemplateItemUtils.getChildItems(children, blockId);
 		
-		//update children order value to reflect the display order
+		//update children order value to reflect the display order (in one batch)
+		Map<Long, Integer> childOrderMap = new HashMap<>();
 		int orderCurrentChildren = 1;
 		for ( EvalTemplateItem child : orderedChildren){
-			child.setDisplayOrder(orderCurrentChildren);
-            authoringService.saveTemplateItem(child, currentUserId);
+			childOrderMap.put(child.getId(), orderCurrentChildren);
             orderCurrentChildren ++;
 		}
+		authoringService.saveTemplateItemOrder(childOrderMap, currentUserId);
 		int orderNewChildren = 1;
 		for ( String itemIdstring : itemsToAdd){
 			Long itemId = Long.parseLong(itemIdstring);
@@ -20,6 +20,7 @@ import java.lang.reflect.Method;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -29,6 +30,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Observable;
+import java.util.Observer;
 import java.util.Set;
 import java.util.UUID;
 
@@ -55,6 +58,7 @@ import org.sakaiproject.api.app.scheduler.ScheduledInvocationManager;
 import org.sakaiproject.api.app.scheduler.SchedulerManager;
 import org.sakaiproject.authz.api.AuthzGroupService;
 import org.sakaiproject.authz.api.FunctionManager;
+import org.sakaiproject.authz.api.GroupNotDefinedException;
 import org.sakaiproject.authz.api.Role;
 import org.sakaiproject.authz.api.SecurityService;
 import org.sakaiproject.cluster.api.ClusterService;
@@ -67,6 +71,7 @@ import org.sakaiproject.coursemanagement.api.Section;
 import org.sakaiproject.coursemanagement.api.exception.IdNotFoundException;
 import org.sakaiproject.coursemanagement.impl.provider.SectionRoleResolver;
 import org.sakaiproject.email.api.EmailService;
+import org.sakaiproject.entity.api.Entity;
 import org.sakaiproject.entity.api.EntityManager;
 import org.sakaiproject.entity.api.EntityPropertyNotDefinedException;
 import org.sakaiproject.entity.api.EntityPropertyTypeException;
@@ -96,6 +101,8 @@ import org.sakaiproject.evaluation.model.EvalTemplate;
 import org.sakaiproject.evaluation.model.EvalTemplateItem;
 import org.sakaiproject.evaluation.providers.EvalGroupsProvider;
 import org.sakaiproject.evaluation.utils.ArrayUtils;
+import org.sakaiproject.event.api.Event;
+import org.sakaiproject.event.api.EventTrackingService;
 import org.sakaiproject.exception.IdUnusedException;
 import org.sakaiproject.exception.PermissionException;
 import org.sakaiproject.exception.ServerOverloadException;
@@ -141,6 +148,24 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
     private static final String ADMIN_USER_ID = "admin";
     private static final String SITE_TERM = "term";
 
+    /**
+     * Sakai events which can change which sites and groups users have permissions in,
+     * these clear the cached user groups of the users in the changed realm
+     */
+    private static final Set<String> MEMBERSHIP_EVENTS = new HashSet<>(Arrays.asList(
+            "realm.add", "realm.upd", "realm.upd.own", "realm.del",
+            "site.add", "site.upd.site.mbrshp", "site.upd.grp.mbrshp"));
+    /**
+     * Sakai events which change the details (title, type, term) of a site or its groups,
+     * these clear the cached user groups which include the site
+     */
+    private static final Set<String> SITE_EVENTS = new HashSet<>(Arrays.asList(
+            "site.upd", "site.del", "site.del.softly", "site.restore"));
+    /**
+     * Only look up all the user sites at once when there are more sites than this to look up
+     */
+    private static final int BULK_SITE_LOOKUP_MIN = 10;
+
     /**
      * Add presedence:bulk to mark emails as a type of bulk mail
      * This allows some email systems to deal with it correctly,
@@ -239,6 +264,27 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
         this.evalHierarchyRuleLogic = evalHierarchyRuleLogic;
     }
 
+    private EventTrackingService eventTrackingService;
+    public void setEventTrackingService(EventTrackingService eventTrackingService) {
+        this.eventTrackingService = eventTrackingService;
+    }
+
+    /**
+     * @param groupsCacheTTL the time (in ms) that the groups for a user and permission are cached,
+     * 0 disables the cache (default {@link EvalUserGroupsCache#DEFAULT_TTL})
+     */
+    public void setGroupsCacheTTL(long groupsCacheTTL) {
+        groupsCache.setTtl(groupsCacheTTL);
+    }
+
+    /**
+     * @param groupsCacheMaxEntries the maximum number of user and permission entries cached
+     * (default {@link EvalUserGroupsCache#DEFAULT_MAX_ENTRIES})
+     */
+    public void setGroupsCacheMaxEntries(int groupsCacheMaxEntries) {
+        groupsCache.setMaxEntries(groupsCacheMaxEntries);
+    }
+
     public void init() {
         log.debug("init, register security perms");
 
@@ -248,6 +294,18 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
         // email bulk headers - http://bugs.sakaiproject.org/jira/browse/EVALSYS-620
         emailHeaders = new ArrayList<>();
         emailHeaders.add(EMAIL_BULK_FLAG);
+
+        // clear out the cached user groups when sites or memberships change
+        if (eventTrackingService != null) {
+            eventTrackingService.addObserver(groupsCacheObserver);
+        }
+    }
+
+    public void destroy() {
+        if (eventTrackingService != null) {
+            eventTrackingService.deleteObserver(groupsCacheObserver);
+        }
+        groupsCache.clear();
     }
 
 
@@ -682,9 +740,8 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
     private List<EvalGroup>getEvalGroups(String userId, String permission, boolean filterSites, String currentSiteId) {
         List<EvalGroup> l = new ArrayList<>();
 
-        // get the groups from Sakai
-        Set<String> authzGroupIds = 
-            authzGroupService.getAuthzGroupsIsAllowed(userId, permission, null);
+        // get the groups from the cache (or Sakai)
+        UserGroupsIndex index = getUserGroupsIndex(userId, permission);
 
         Site currentSite = null;
         if ( filterSites && currentSiteId != null ){
@@ -695,82 +752,241 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
                 throw new RuntimeException("Could not get site from siteId:" + currentSiteId);
             }
         }
-        long currentSiteTerm = 0l;
-        boolean isCurrentSiteTermDefined = true;
-        if ( currentSite != null && currentSite.getProperties() != null ){
+        Long currentSiteTerm = null;
+        if ( currentSite != null ){
+            currentSiteTerm = getSiteTerm(currentSite);
+        }
+        for (CachedGroup cachedGroup : index.groups) {
+            boolean addGroup = true;
+            if (cachedGroup.site && filterSites && currentSite != null && currentSite.getType() != null) {
+                // only process sites that have the same type as the current one, if
+                // type is not stipulated simply add all sites
+                addGroup = currentSite.getType().equals(cachedGroup.siteType);
+                // We only check terms if current site has term defined,
+                // otherwise just add this site to the list
+                if (addGroup && currentSiteTerm != null) {
+                    long siteTerm = cachedGroup.term == null ? 0l : cachedGroup.term;
+                    // add this site to list only if it has the same term as the current site
+                    addGroup = currentSiteTerm == siteTerm;
+                }
+            }
+            if (addGroup) {
+                // the cached groups are shared so hand out copies
+                l.add(new EvalGroup(cachedGroup.evalGroupId, cachedGroup.title, cachedGroup.type));
+            }
+        }
+
+        if (l.isEmpty()) {
+            log.debug("Empty list of groups for user:" + userId + ", permission: " + permission);
+        }
+        return l;
+    }
+
+    /**
+     * Get the cached sites and groups which a user has a permission in,
+     * builds the index if it is not cached or is older than the cache TTL
+     * 
+     * @param userId the internal user id (not username)
+     * @param permission a permission string constant
+     * @return the index of sites and groups (not including softly deleted sites)
+     */
+    private UserGroupsIndex getUserGroupsIndex(String userId, String permission) {
+        UserGroupsIndex index = groupsCache.get(userId, permission);
+        if (index == null) {
+            index = makeUserGroupsIndex(userId, permission);
+            groupsCache.put(userId, permission, index.siteIds, index);
+        }
+        return index;
+    }
+
+    /**
+     * Look up the sites and groups which a user has a permission in, when there are many sites
+     * they are fetched in one lookup of all the user sites rather than one site at a time
+     * 
+     * @param userId the internal user id (not username)
+     * @param permission a permission string constant
+     * @return the index of sites and groups (not including softly deleted sites)
+     */
+    private UserGroupsIndex makeUserGroupsIndex(String userId, String permission) {
+        Set<String> authzGroupIds = 
+            authzGroupService.getAuthzGroupsIsAllowed(userId, permission, null);
+
+        List<Reference> siteRefs = new ArrayList<>();
+        List<Reference> groupRefs = new ArrayList<>();
+        for (String authzGroupId : authzGroupIds) {
+            Reference r = entityManager.newReference(authzGroupId);
+            // check if this is a Sakai Site or Group
+            if (r.isKnownType() && r.getType().equals(SiteService.APPLICATION_ID)) {
+                if (SAKAI_SITE_TYPE.equals(r.getSubType())) {
+                    siteRefs.add(r);
+                } else if (SAKAI_GROUP_TYPE.equals(r.getSubType())) {
+                    groupRefs.add(r);
+                }
+            }
+        }
+
+        Map<String, Site> sites = new HashMap<>();
+        if (siteRefs.size() + groupRefs.size() > BULK_SITE_LOOKUP_MIN) {
+            for (Site site : siteService.getUserSites(false, userId)) {
+                sites.put(site.getId(), site);
+            }
+        }
+
+        List<CachedGroup> groups = new ArrayList<>();
+        Set<String> siteIds = new HashSet<>();
+        for (Reference r : siteRefs) {
+            // this is a Site
+            String siteId = r.getId();
+            Site site = sites.get(siteId);
+            if (site == null) {
+                try {
+                    site = siteService.getSite(siteId);
+                } catch (IdUnusedException e) {
+                    // invalid site Id returned
+                    throw new RuntimeException("Could not get site from siteId:" + siteId);
+                }
+            }
+            siteIds.add(siteId);
+            if (! site.isSoftlyDeleted()) {
+                groups.add(new CachedGroup(r.getReference(), site.getTitle(), getContextType(r.getType()),
+                        true, site.getType(), getSiteTerm(site)));
+            }
+        }
+        for (Reference r : groupRefs) {
+            // this is a Group in a Site
+            String groupId = r.getId();
+            Site site = sites.get(r.getContainer());
+            Group group = site == null ? siteService.findGroup(groupId) : site.getGroup(groupId);
+            if (group == null) {
+                log.info("Could not get Sakai group from group id:" + groupId);
+            } else {
+                siteIds.add(group.getContainingSite().getId());
+                groups.add(new CachedGroup(r.getReference(), group.getTitle(), getContextType(r.getType()),
+                        false, null, null));
+            }
+        }
+        return new UserGroupsIndex(groups, siteIds);
+    }
+
+    /**
+     * @param site a Sakai site
+     * @return the term of the site or null if it is not set
+     */
+    private Long getSiteTerm(Site site) {
+        Long term = null;
+        if (site.getProperties() != null) {
             try {
-                currentSiteTerm = currentSite.getProperties().getLongProperty(SITE_TERM);
+                term = site.getProperties().getLongProperty(SITE_TERM);
             } catch (EntityPropertyNotDefinedException | EntityPropertyTypeException e) {
-                isCurrentSiteTermDefined = false;
+                // IGNORE
             }
-        }else{
-            isCurrentSiteTermDefined = false;
         }
-        Iterator<String> it = authzGroupIds.iterator();
-        while (it.hasNext()) {
-            String authzGroupId = it.next();
-            Reference r = entityManager.newReference(authzGroupId);
-            if (r.isKnownType()) {
-                // check if this is a Sakai Site or Group
-                if (r.getType().equals(SiteService.APPLICATION_ID)) {
-                    String type = r.getSubType();
-                    if (SAKAI_SITE_TYPE.equals(type)) {
-                        // this is a Site
-                        String siteId = r.getId();
-                        try {
-                            Site site = siteService.getSite(siteId);
-                            boolean addSite = false;
-                            if (filterSites && currentSite != null && currentSite.getType() != null) {
-                                // only process sites that have the same type as the current one, if
-                                // type is not stipulated simply add all sites
-                                if (currentSite.getType().equals(site.getType())) {
-                                    // We only check terms if current site has term defined,
-                                    // otherwise just add this site to the list
-                                    if (isCurrentSiteTermDefined && site.getProperties() != null) {
-                                        long siteTerm = 0l;
-                                        try {
-                                            siteTerm = site.getProperties().getLongProperty(SITE_TERM);
-                                        } catch (EntityPropertyNotDefinedException | EntityPropertyTypeException e) {
-                                            // IGNORE
-                                        }
-                                        // add this site to list only if it has the same term as the current site
-                                        if (currentSiteTerm == siteTerm) {
-                                            addSite = true;
-                                        }
-                                    } else {
-                                        addSite = true;
-                                    }
-                                }
-                            } else {
-                                addSite = true;
-                            }
-                            if (addSite && !site.isSoftlyDeleted()) {
-                                l.add(new EvalGroup(r.getReference(), site.getTitle(), getContextType(r.getType())));
-                            }
-                        } catch (IdUnusedException e) {
-                            // invalid site Id returned
-                            throw new RuntimeException("Could not get site from siteId:" + siteId);
-                        }
+        return term;
+    }
 
-                    } else if (SAKAI_GROUP_TYPE.equals(type)) {
-                        // this is a Group in a Site
-                        String groupId = r.getId();
-                        Group group = siteService.findGroup(groupId);
-                        if (group == null) {
-                            log.info("Could not get Sakai group from group id:" + groupId);
-                        }
-                        else {
-                            l.add(new EvalGroup(r.getReference(), group.getTitle(), getContextType(r.getType())));
-                        }
+    /**
+     * Clears the cached user groups which can be affected by a change to a realm,
+     * these are the groups of the current realm members and the groups which include the realm site
+     * 
+     * @param realmId the id of the changed realm (e.g. /site/siteId or /site/siteId/group/groupId)
+     */
+    private void clearCachedGroupsForRealm(String realmId) {
+        if (realmId == null || realmId.startsWith("!")) {
+            // unknown realm or a template realm which can change permissions in every site
+            groupsCache.clear();
+            return;
+        }
+        Reference r = entityManager.newReference(realmId);
+        if (! r.isKnownType() || ! SiteService.APPLICATION_ID.equals(r.getType()) || r.getId() == null) {
+            // only site and group realms are cached
+            return;
+        }
+        String siteId = SAKAI_SITE_TYPE.equals(r.getSubType()) ? r.getId() : r.getContainer();
+        Set<String> userIds;
+        try {
+            userIds = authzGroupService.getAuthzGroup(realmId).getUsers();
+        } catch (GroupNotDefinedException e) {
+            // the realm was removed so only the users who had the site cached are affected
+            userIds = null;
+        }
+        int removed = groupsCache.evictRealm(siteId, userIds);
+        if (log.isDebugEnabled()) {
+            log.debug("Cleared " + removed + " cached user groups for realm: " + realmId);
+        }
+    }
+
+    /**
+     * @param eventResource the resource of a realm or site membership event
+     * (e.g. /realm//site/siteId or /site/siteId/group/groupId)
+     * @return the id of the realm the event changed
+     */
+    protected static String getRealmIdFromEventResource(String eventResource) {
+        String realmId = eventResource;
+        String realmPrefix = AuthzGroupService.REFERENCE_ROOT + Entity.SEPARATOR;
+        if (eventResource != null && eventResource.startsWith(realmPrefix)) {
+            realmId = eventResource.substring(realmPrefix.length());
+        }
+        return realmId;
+    }
+
+    /**
+     * userId and permission -> the sites and groups the user has the permission in
+     */
+    private final EvalUserGroupsCache<UserGroupsIndex> groupsCache = new EvalUserGroupsCache<>();
+
+    /**
+     * Clears the cached user groups when sites or memberships are changed (on any server)
+     */
+    private final Observer groupsCacheObserver = new Observer() {
+        public void update(Observable o, Object arg) {
+            if (arg instanceof Event && groupsCache.size() > 0) {
+                Event event = (Event) arg;
+                if (MEMBERSHIP_EVENTS.contains(event.getEvent())) {
+                    clearCachedGroupsForRealm(getRealmIdFromEventResource(event.getResource()));
+                } else if (SITE_EVENTS.contains(event.getEvent())) {
+                    Reference r = entityManager.newReference(event.getResource());
+                    if (r.isKnownType() && SiteService.APPLICATION_ID.equals(r.getType()) && r.getId() != null) {
+                        groupsCache.evictSite(SAKAI_SITE_TYPE.equals(r.getSubType()) ? r.getId() : r.getContainer());
+                    } else {
+                        groupsCache.clear();
                     }
                 }
             }
         }
+    };
 
-        if (l.isEmpty()) {
-            log.debug("Empty list of groups for user:" + userId + ", permission: " + permission);
+    /**
+     * The sites and groups a user has a permission in, never changed once created
+     */
+    private static class UserGroupsIndex {
+        final List<CachedGroup> groups;
+        final Set<String> siteIds;
+
+        UserGroupsIndex(List<CachedGroup> groups, Set<String> siteIds) {
+            this.groups = groups;
+            this.siteIds = siteIds;
+        }
+    }
+
+    /**
+     * A cached site or group with the site details needed for filtering
+     */
+    private static class CachedGroup {
+        final String evalGroupId;
+        final String title;
+        final String type;
+        final boolean site;
+        final String siteType;
+        final Long term;
+
+        CachedGroup(String evalGroupId, String title, String type, boolean site, String siteType, Long term) {
+            this.evalGroupId = evalGroupId;
+            this.title = title;
+            this.type = type;
+            this.site = site;
+            this.siteType = siteType;
+            this.term = term;
         }
-        return l;
     }
 
     /* (non-Javadoc)
@@ -1308,7 +1524,9 @@ public class EvalExternalLogicImpl implements EvalExternalLogic {
 	public List<String> searchForEvalGroupIds(String searchString, String order, int startResult, int maxResults) {
 		//for now support sakai sites only TODO:// support hierarchy and adhoc groups. Ordering?
 		List<String> sakaiSites = new ArrayList<String>(); //keep site ref 
-		List<Site> searchResults = siteService.getSites(SiteService.SelectionType.ANY, null, searchString, null, SiteService.SortType.TITLE_ASC, new PagingPosition(1, maxResults));
+		// paging position is 1 based and inclusive
+		PagingPosition paging = new PagingPosition(startResult + 1, startResult + maxResults);
+		List<Site> searchResults = siteService.getSites(SiteService.SelectionType.ANY, null, searchString, null, SiteService.SortType.TITLE_ASC, paging);
 		for ( Object rawSite : searchResults){
 			Site site = (Site) rawSite;
 			sakaiSites.add(site.getReference());
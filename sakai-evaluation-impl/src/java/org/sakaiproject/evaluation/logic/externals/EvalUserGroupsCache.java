@@ -0,0 +1,194 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.externals;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded, short lived cache of the sites and groups a user has a permission in
+ * (keyed by user and permission), each entry records the sites it includes so a change to
+ * a single site or realm only evicts the entries of the users it can affect<br/>
+ * When the cache is full the expired entries are dropped, if it is still full then it is cleared
+ *
+ * @param <V> the type of the cached values
+ */
+public class EvalUserGroupsCache<V> {
+
+    /**
+     * The default time (in ms) to keep the groups for a user and permission cached
+     */
+    public static final long DEFAULT_TTL = 1000 * 60 * 5;
+    /**
+     * The default maximum number of (user, permission) entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    private final ConcurrentHashMap<String, CacheEntry<V>> entries = new ConcurrentHashMap<>();
+
+    private volatile long ttl = DEFAULT_TTL;
+    public long getTtl() {
+        return ttl;
+    }
+    /**
+     * @param ttl the time (in ms) that entries are kept, 0 disables the cache
+     */
+    public void setTtl(long ttl) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("ttl must be 0 or more: " + ttl);
+        }
+        this.ttl = ttl;
+        if (ttl == 0) {
+            entries.clear();
+        }
+    }
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+    /**
+     * @param maxEntries the maximum number of entries held at once, must be 1 or more
+     */
+    public void setMaxEntries(int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be 1 or more: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param userId the internal user id
+     * @param permission a permission string constant
+     * @return the cached value or null if there is none or it has expired
+     */
+    public V get(String userId, String permission) {
+        CacheEntry<V> entry = entries.get(makeKey(userId, permission));
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis(), ttl)) {
+            entries.remove(makeKey(userId, permission), entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Cache a value, does nothing if the cache is disabled (ttl is 0)
+     *
+     * @param userId the internal user id
+     * @param permission a permission string constant
+     * @param siteIds the ids of all the sites included in the value (including the sites of groups)
+     * @param value the value to cache
+     */
+    public void put(String userId, String permission, Set<String> siteIds, V value) {
+        if (ttl <= 0) {
+            return;
+        }
+        String key = makeKey(userId, permission);
+        if (entries.size() >= maxEntries && ! entries.containsKey(key)) {
+            removeExpired();
+            if (entries.size() >= maxEntries) {
+                entries.clear();
+            }
+        }
+        entries.put(key, new CacheEntry<>(userId, siteIds, value));
+    }
+
+    /**
+     * Evict the entries affected by a change to a site or group realm,
+     * these are the entries which include the site (members who may have been removed or changed)
+     * and the entries for the current members of the realm (members who may have been added)
+     *
+     * @param siteId the id of the site the realm belongs to
+     * @param userIds the internal ids of the current members of the realm
+     * @return the number of entries removed
+     */
+    public int evictRealm(String siteId, Collection<String> userIds) {
+        int removed = 0;
+        Iterator<CacheEntry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry<V> entry = it.next();
+            if (entry.siteIds.contains(siteId) || (userIds != null && userIds.contains(entry.userId))) {
+                it.remove();
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Evict the entries which include a site
+     *
+     * @param siteId the id of a site
+     * @return the number of entries removed
+     */
+    public int evictSite(String siteId) {
+        return evictRealm(siteId, null);
+    }
+
+    /**
+     * Remove all the entries
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries (including expired entries which have not been removed yet)
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<CacheEntry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now, ttl)) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String makeKey(String userId, String permission) {
+        return userId + "/" + permission;
+    }
+
+    /**
+     * A cached value with the user and sites it belongs to
+     */
+    private static class CacheEntry<V> {
+        final long createdTime = System.currentTimeMillis();
+        final String userId;
+        final Set<String> siteIds;
+        final V value;
+
+        CacheEntry(String userId, Set<String> siteIds, V value) {
+            this.userId = userId;
+            this.siteIds = siteIds == null ? Collections.<String>emptySet() : siteIds;
+            this.value = value;
+        }
+
+        boolean isExpired(long now, long ttl) {
+            return now - createdTime > ttl;
+        }
+    }
+
+}
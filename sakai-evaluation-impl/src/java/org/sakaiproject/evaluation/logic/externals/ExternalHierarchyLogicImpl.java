@@ -21,7 +21,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang.StringUtils;
 import org.sakaiproject.authz.api.AuthzGroupService;
@@ -31,6 +35,7 @@ import org.sakaiproject.coursemanagement.api.exception.IdNotFoundException;
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.dao.EvaluationDao;
 import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyTree;
 import org.sakaiproject.evaluation.logic.model.HierarchyNodeRule;
 import org.sakaiproject.evaluation.model.EvalGroupNodes;
 import org.sakaiproject.evaluation.model.EvalTemplateItem;
@@ -108,6 +113,38 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
 	}
     private final String CACHE_NAME = "org.sakaiproject.hierarchy.nodes";
 
+    /**
+     * The hierarchy tree snapshot is rebuilt after this many ms even if nothing changed on this server,
+     * this limits how stale it can get when the hierarchy is changed on another server in the cluster
+     */
+    protected static final long HIERARCHY_TREE_TTL = 60 * 1000L;
+    /**
+     * Incremented whenever this server changes the hierarchy (nodes, groups, perms, rules)
+     */
+    private final AtomicLong hierarchyVersion = new AtomicLong(0);
+    private volatile EvalHierarchyTree hierarchyTree;
+
+    /**
+     * The groups matched by the hierarchy rules are refreshed this often (ms) to pick up
+     * new, renamed and removed sites and sections, changes to the rules are applied straight away
+     */
+    protected static final long RULE_GROUPS_REFRESH_INTERVAL = 10 * 60 * 1000L;
+    public static String EVAL_RULE_GROUPS_TIMER = "eval_rule_groups_timer";
+
+    private boolean refreshRuleGroups = true;
+    /**
+     * @param refreshRuleGroups if true (default) then a timer refreshes the groups
+     * matched by the hierarchy rules in the background
+     */
+    public void setRefreshRuleGroups(boolean refreshRuleGroups) {
+        this.refreshRuleGroups = refreshRuleGroups;
+    }
+
+    /**
+     * true once the rules without any stored rule groups have been resolved on this server
+     */
+    private volatile boolean ruleGroupsChecked = false;
+
 
     /**
      * Place any code that should run when this class is initialized by spring here
@@ -132,6 +169,138 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         }
         
         cache = memoryService.getCache(CACHE_NAME);
+
+        if (refreshRuleGroups) {
+            initiateRuleGroupsTimer();
+        }
+    }
+
+    /**
+     * Starts a timer which refreshes the groups matched by all the hierarchy rules,
+     * uses a DB server lock so that only one server does this at a time
+     */
+    protected void initiateRuleGroupsTimer() {
+        // start up a timer after 1 min + random(5 mins)
+        long startDelay = (1000 * 60) + (1000 * 60 * new Random().nextInt(5));
+
+        TimerTask runRefreshTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    String serverId = externalLogic.getConfigurationSetting(EvalExternalLogic.SETTING_SERVER_ID, "UNKNOWN_SERVER_ID");
+                    Boolean lockObtained = dao.obtainLock(EVAL_RULE_GROUPS_TIMER, serverId, RULE_GROUPS_REFRESH_INTERVAL);
+                    if (lockObtained != null && lockObtained) {
+                        refreshAllRuleGroups();
+                    }
+                } catch (Exception e) {
+                    // do not let a failure kill the timer, the groups will be refreshed on the next run
+                    log.warn("Failure while refreshing the hierarchy rule groups: " + e.getMessage(), e);
+                }
+            }
+        };
+        Timer timer = new Timer(true);
+        timer.schedule(runRefreshTask, startDelay, RULE_GROUPS_REFRESH_INTERVAL);
+    }
+
+    /**
+     * Resolve every hierarchy rule against the current sites and sections and store the matching
+     * groups, identical rules are only resolved once and the groups of removed rules are cleaned up
+     */
+    public void refreshAllRuleGroups() {
+        long start = System.currentTimeMillis();
+        Map<String, Set<String>> ruleSiteIds = new HashMap<>();
+        Set<Long> ruleIds = new HashSet<>();
+        boolean changed = false;
+        List<HierarchyNodeRule> rules = getAllRules();
+        for (HierarchyNodeRule rule : rules) {
+            ruleIds.add(rule.getId());
+            changed |= refreshRuleGroups(rule, ruleSiteIds);
+        }
+        Set<Long> removedRuleIds = dao.getRuleGroupRuleIds();
+        removedRuleIds.removeAll(ruleIds);
+        if (! removedRuleIds.isEmpty()) {
+            dao.removeRuleGroups( removedRuleIds.toArray(new Long[removedRuleIds.size()]) );
+            changed = true;
+        }
+        ruleGroupsChecked = true;
+        if (changed) {
+            hierarchyChanged();
+        }
+        log.debug("Refreshed the groups for "+rules.size()+" hierarchy rules in "+(System.currentTimeMillis() - start)+" ms");
+    }
+
+    /**
+     * Resolve a single hierarchy rule and store the matching groups
+     * 
+     * @param rule the hierarchy rule
+     * @param ruleSiteIds (OPTIONAL) the groups for rules which were already resolved, keyed by option and rule text
+     * @return true if the stored groups for this rule changed
+     */
+    private boolean refreshRuleGroups(HierarchyNodeRule rule, Map<String, Set<String>> ruleSiteIds) {
+        if (rule == null || rule.getId() == null || rule.getNodeID() == null) {
+            return false;
+        }
+        boolean sectionRule = EvalConstants.HIERARCHY_RULE_SECTION.equals( rule.getOption() );
+        String ruleKey = (sectionRule ? "section:" : "site:") + rule.getRule();
+        Set<String> siteIds = ruleSiteIds == null ? null : ruleSiteIds.get(ruleKey);
+        if (siteIds == null) {
+            siteIds = sectionRule ? dao.getAllSiteIDsMatchingSectionTitle( rule.getRule() )
+                    : dao.getAllSiteIDsMatchingSiteTitle( rule.getRule() );
+            if (ruleSiteIds != null) {
+                ruleSiteIds.put(ruleKey, siteIds);
+            }
+        }
+        return dao.replaceRuleGroups(rule.getId(), rule.getNodeID().toString(), siteIds);
+    }
+
+    /**
+     * Resolve all the rules for a node and store the matching groups, call this when rules are added or changed
+     * 
+     * @param nodeID the node the rules are assigned to
+     */
+    private void refreshRuleGroupsForNode(Long nodeID) {
+        Map<String, Set<String>> ruleSiteIds = new HashMap<>();
+        for (HierarchyNodeRule rule : externalLogic.getRulesByNodeID( nodeID )) {
+            refreshRuleGroups(rule, ruleSiteIds);
+        }
+    }
+
+    /**
+     * Remove the stored groups for all the rules assigned to a node, call this before the rules are removed
+     * 
+     * @param nodeID the node the rules are assigned to
+     */
+    private void removeRuleGroupsForNode(Long nodeID) {
+        List<HierarchyNodeRule> rules = externalLogic.getRulesByNodeID( nodeID );
+        if (! rules.isEmpty()) {
+            Long[] ruleIds = new Long[rules.size()];
+            for (int i = 0; i < ruleIds.length; i++) {
+                ruleIds[i] = rules.get(i).getId();
+            }
+            dao.removeRuleGroups(ruleIds);
+        }
+    }
+
+    /**
+     * Makes sure rules which have never been resolved (e.g. right after an upgrade) have their groups stored,
+     * this only runs once per server since the timer and the rule changes keep the groups up to date after that
+     */
+    private void checkRuleGroups() {
+        if (ruleGroupsChecked) {
+            return;
+        }
+        synchronized (this) {
+            if (! ruleGroupsChecked) {
+                Set<Long> storedRuleIds = dao.getRuleGroupRuleIds();
+                Map<String, Set<String>> ruleSiteIds = new HashMap<>();
+                for (HierarchyNodeRule rule : getAllRules()) {
+                    if (! storedRuleIds.contains(rule.getId())) {
+                        refreshRuleGroups(rule, ruleSiteIds);
+                    }
+                }
+                ruleGroupsChecked = true;
+            }
+        }
     }
 
     /*
@@ -252,6 +421,8 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         checkNodeExists( nodeID );
 
         externalLogic.assignNodeRule( ruleText, qualifier, option, nodeID );
+        refreshRuleGroupsForNode( nodeID );
+        hierarchyChanged();
     }
 
     /*
@@ -261,6 +432,8 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
     public void removeNodeRule( Long ruleID )
     {
         externalLogic.removeNodeRule( ruleID );
+        dao.removeRuleGroups( new Long[] { ruleID } );
+        hierarchyChanged();
     }
 
     /*
@@ -272,7 +445,9 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         // Check that the node exists first
         checkNodeExists( nodeID );
 
+        removeRuleGroupsForNode( nodeID );
         externalLogic.removeAllRulesForNode( nodeID );
+        hierarchyChanged();
     }
 
     /*
@@ -285,6 +460,8 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         checkNodeExists( nodeID );
 
         externalLogic.updateNodeRule( ruleID, ruleText, qualifier, option, nodeID );
+        refreshRuleGroups( externalLogic.getRuleByID( ruleID ), null );
+        hierarchyChanged();
     }
 
     /*
@@ -382,6 +559,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
      */
     public EvalHierarchyNode addNode(String parentNodeId) {
         HierarchyNode node = hierarchyService.addNode(HIERARCHY_ID, parentNodeId);
+        hierarchyChanged();
         return makeEvalNode(node);
     }
 
@@ -400,6 +578,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
         HierarchyNode node = hierarchyService.removeNode(nodeId);
 
         // Remove all hierarchy rules associated with this node
+        removeRuleGroupsForNode( Long.parseLong( nodeId ) );
         externalLogic.removeAllRulesForNode( Long.parseLong( nodeId ) );
 
         // cleanup related data
@@ -409,6 +588,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
             templateItem.setHierarchyNodeId(EvalConstants.HIERARCHY_NODE_ID_NONE);
         }
         dao.saveSet( new HashSet<EvalTemplateItem>(l) );
+        hierarchyChanged();
         // return the parent node
         return makeEvalNode(node);
     }
@@ -420,6 +600,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
      */
     public EvalHierarchyNode updateNodeData(String nodeId, String title, String description) {
         HierarchyNode node = hierarchyService.saveNodeMetaData(nodeId, title, description, null);
+        hierarchyChanged();
         return makeEvalNode(node);
     }
 
@@ -494,6 +675,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
             egn.setEvalGroups(new ArrayList<String>(evalGroupIds));
             dao.save(egn);         
         }
+        hierarchyChanged();
     }
 
     public Set<String> getEvalGroupsForNode(String nodeId) {
@@ -507,7 +689,10 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
 
         // Support for resolving eval groups based on hierarchy node rules.
         // Hierarchy rules should be obeyed regardless of if an external provider is present or not (supplemental)
-        s.addAll( getEvalGroupsForNodeSectionAware( nodeId ) );
+        Set<String> groups = getEvalGroupsForNodesSectionAware( new String[] {nodeId} ).get( nodeId );
+        if (groups != null) {
+            s.addAll( groups );
+        }
 
         return s;
     }
@@ -524,49 +709,32 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
 
             // Support for resolving eval groups based on hierarchy node rules.
             // Hierarchy rules should be obeyed regardless of if an external provider is present or not (supplemental)
-            for( String nodeID : nodeIds )
-            {
-                Set<String> evalGroupsForNodeSectionAware = getEvalGroupsForNodeSectionAware(nodeID);
-                if (!evalGroupsForNodeSectionAware.isEmpty()) {
-                    m.put(nodeID, evalGroupsForNodeSectionAware);
-                }
+            Map<String, Set<String>> sectionAwareGroups = getEvalGroupsForNodesSectionAware(nodeIds);
+            for (Map.Entry<String, Set<String>> entry : sectionAwareGroups.entrySet()) {
+                m.put(entry.getKey(), entry.getValue());
             }
         }
         return m;
     }
 
     /**
-     * Utility method to extract common (section aware) behaviour.
+     * Utility method to extract common (section aware) behaviour,
+     * gets the assigned groups and the stored groups matched by the rules for all the nodes in two queries
      * 
-     * @param nodeID
-     * @return 
+     * @param nodeIds the ids of the nodes
+     * @return a map of nodeId -> set of evalGroupIds, nodes without any groups are not included
      */
-    private Set<String> getEvalGroupsForNodeSectionAware( String nodeID )
+    private Map<String, Set<String>> getEvalGroupsForNodesSectionAware( String[] nodeIds )
     {
-        Set<String> groups = new HashSet<>();
-        try
-        {
-            EvalGroupNodes egn = getEvalGroupNodeByNodeId(nodeID);
-            if (egn != null) {
-                groups = new HashSet<>(egn.getEvalGroups());
-            }
-
-            List<HierarchyNodeRule> rules = getRulesByNodeID( Long.parseLong( nodeID ) );
-            for( HierarchyNodeRule rule : rules )
-            {
-                if( EvalConstants.HIERARCHY_RULE_SECTION.equals( rule.getOption() ) )
-                {
-                    groups.addAll( dao.getAllSiteIDsMatchingSectionTitle( rule.getRule() ) );
-                }
-                else
-                {
-                    groups.addAll( dao.getAllSiteIDsMatchingSiteTitle( rule.getRule() ) );
-                }
-            }
+        checkRuleGroups();
+        Map<String, Set<String>> nodeGroups = new HashMap<>();
+        for (EvalGroupNodes egn : getEvalGroupNodesByNodeId(nodeIds)) {
+            addNodeGroups(nodeGroups, egn.getNodeId(), egn.getEvalGroups());
         }
-        catch( NumberFormatException ex ) { log.warn(ex.getLocalizedMessage(), ex ); }
-
-        return groups;
+        for (Map.Entry<String, Set<String>> entry : dao.getRuleGroupsForNodes(nodeIds).entrySet()) {
+            addNodeGroups(nodeGroups, entry.getKey(), entry.getValue());
+        }
+        return nodeGroups;
     }
 
     public Map<String, Integer> countEvalGroupsForNodes(String[] nodeIds) {
@@ -716,11 +884,109 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
     }
 
 
+    /* (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic#getHierarchyTree()
+     */
+    public EvalHierarchyTree getHierarchyTree() {
+        long version = hierarchyVersion.get();
+        EvalHierarchyTree tree = hierarchyTree;
+        if (tree == null || tree.getVersion() != version
+                || System.currentTimeMillis() - tree.getCreatedTime() > HIERARCHY_TREE_TTL) {
+            tree = buildHierarchyTree(version);
+            hierarchyTree = tree;
+        }
+        return tree;
+    }
+
+    /**
+     * Load the entire hierarchy in bulk: one lookup for all nodes, one for all assigned groups,
+     * one for all rules, one for all the groups matched by the rules and one for all user perms
+     * 
+     * @param version the hierarchy version this tree is built from
+     * @return the hierarchy tree snapshot
+     */
+    private EvalHierarchyTree buildHierarchyTree(long version) {
+        long start = System.currentTimeMillis();
+        EvalHierarchyNode root = getRootLevelNode();
+        Set<EvalHierarchyNode> nodes = new HashSet<>(getChildNodes(root.id, false));
+        nodes.add(root);
+        Set<String> nodeIdSet = new HashSet<>();
+        for (EvalHierarchyNode node : nodes) {
+            nodeIdSet.add(node.id);
+        }
+        String[] nodeIds = nodeIdSet.toArray(new String[nodeIdSet.size()]);
+
+        // assigned groups from the provider and from the stored group nodes
+        Map<String, Set<String>> nodeGroups = new HashMap<>();
+        if (evalHierarchyProvider != null) {
+            Map<String, Set<String>> providerGroups = evalHierarchyProvider.getEvalGroupsForNodes(nodeIds);
+            if (providerGroups != null) {
+                for (Map.Entry<String, Set<String>> entry : providerGroups.entrySet()) {
+                    addNodeGroups(nodeGroups, entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (EvalGroupNodes egn : getEvalGroupNodesByNodeId(nodeIds)) {
+            addNodeGroups(nodeGroups, egn.getNodeId(), egn.getEvalGroups());
+        }
+
+        // groups matched by the hierarchy rules
+        checkRuleGroups();
+        for (Map.Entry<String, Set<String>> entry : dao.getRuleGroupsForNodes(nodeIds).entrySet()) {
+            addNodeGroups(nodeGroups, entry.getKey(), entry.getValue());
+        }
+        Map<String, Integer> ruleCounts = new HashMap<>();
+        for (HierarchyNodeRule rule : getAllRules()) {
+            if (rule.getNodeID() == null) {
+                continue;
+            }
+            String nodeId = rule.getNodeID().toString();
+            if (! nodeIdSet.contains(nodeId)) {
+                continue;
+            }
+            Integer count = ruleCounts.get(nodeId);
+            ruleCounts.put(nodeId, count == null ? 1 : count + 1);
+        }
+
+        // number of users with perms in each node
+        Map<String, Integer> userCounts = new HashMap<>();
+        Map<String, Map<String, Set<String>>> usersAndPerms = getUsersAndPermsForNodes(nodeIds);
+        if (usersAndPerms != null) {
+            for (Map.Entry<String, Map<String, Set<String>>> entry : usersAndPerms.entrySet()) {
+                userCounts.put(entry.getKey(), entry.getValue() == null ? 0 : entry.getValue().size());
+            }
+        }
+
+        EvalHierarchyTree tree = new EvalHierarchyTree(version, root, nodes, nodeGroups, ruleCounts, userCounts);
+        log.debug("Built hierarchy tree ("+tree+") in "+(System.currentTimeMillis() - start)+" ms");
+        return tree;
+    }
+
+    private void addNodeGroups(Map<String, Set<String>> nodeGroups, String nodeId, Collection<String> evalGroupIds) {
+        if (nodeId == null || evalGroupIds == null || evalGroupIds.isEmpty()) {
+            return;
+        }
+        Set<String> groups = nodeGroups.get(nodeId);
+        if (groups == null) {
+            groups = new HashSet<>();
+            nodeGroups.put(nodeId, groups);
+        }
+        groups.addAll(evalGroupIds);
+    }
+
+    /**
+     * Marks the cached hierarchy tree as out of date, call this whenever the hierarchy is changed
+     */
+    private void hierarchyChanged() {
+        hierarchyVersion.incrementAndGet();
+    }
+
     /* (non-Javadoc)
      * @see org.sakaiproject.evaluation.logic.externals.ExternalHierarchyPermissions#assignUserNodePerm(java.lang.String, java.lang.String, java.lang.String, boolean)
      */
     public void assignUserNodePerm(String userId, String nodeId, String hierarchyPermConstant, boolean cascade) {
         hierarchyService.assignUserNodePerm(userId, nodeId, hierarchyPermConstant, cascade);
+        hierarchyChanged();
     }
 
     /* (non-Javadoc)
@@ -728,6 +994,7 @@ public class ExternalHierarchyLogicImpl implements ExternalHierarchyLogic {
      */
     public void removeUserNodePerm(String userId, String nodeId, String hierarchyPermConstant, boolean cascade) {
         hierarchyService.removeUserNodePerm(userId, nodeId, hierarchyPermConstant, cascade);
+        hierarchyChanged();
     }
 
     /* (non-Javadoc)
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.impl.interceptors;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
+import org.sakaiproject.evaluation.utils.EvalQueryStatistics;
+import org.sakaiproject.genericdao.api.search.Restriction;
+import org.sakaiproject.genericdao.api.search.Search;
+
+
+/**
+ * This interceptor wraps the DAO and records every call (query count, rows returned and time taken)
+ * against the current logical operation in {@link EvalQueryStatistics},
+ * the collected totals are exposed via JMX using the {@link #OBJECT_NAME}<br/>
+ * Recording is controlled by the evaluation.query.stats.enabled sakai property (default false)
+ * and can be switched on and off at runtime via JMX
+ */
+@Slf4j
+public class EvalDaoQueryInterceptor implements MethodInterceptor, EvalDaoQueryInterceptorMBean {
+
+    public static final String OBJECT_NAME = "org.sakaiproject.evaluation:type=QueryStatistics";
+    public static final String ENABLED_PROPERTY = "evaluation.query.stats.enabled";
+
+    private EvalExternalLogic externalLogic;
+    public void setExternalLogic(EvalExternalLogic externalLogic) {
+        this.externalLogic = externalLogic;
+    }
+
+    private ObjectName objectName;
+
+    public void init() {
+        Boolean enabled = externalLogic.getConfigurationSetting(ENABLED_PROPERTY, Boolean.FALSE);
+        EvalQueryStatistics.setEnabled(enabled != null && enabled);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (! server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (Exception e) {
+            log.warn("Unable to register the query statistics MBean (" + OBJECT_NAME + "): " + e);
+        }
+        log.info("Init: DAO query statistics enabled=" + EvalQueryStatistics.isEnabled());
+    }
+
+    public void destroy() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("Unable to unregister the query statistics MBean (" + OBJECT_NAME + "): " + e);
+            }
+            objectName = null;
+        }
+    }
+
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (! EvalQueryStatistics.isEnabled()) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        Object result = null;
+        try {
+            result = invocation.proceed();
+            return result;
+        } finally {
+            EvalQueryStatistics.recordQuery(makeQueryShape(invocation), System.nanoTime() - start, countRows(result));
+        }
+    }
+
+    /**
+     * Creates the shape of the query from the method and the arguments without including
+     * any of the argument values (other than the persistent class, search properties and hql)
+     * 
+     * @param invocation the dao method invocation
+     * @return the query shape (e.g. findBySearch(EvalEvaluation,[owner=0,state=0]))
+     */
+    protected String makeQueryShape(MethodInvocation invocation) {
+        String method = invocation.getMethod().getName();
+        StringBuilder sb = new StringBuilder(method);
+        sb.append('(');
+        Object[] args = invocation.getArguments();
+        if (args != null) {
+            boolean first = true;
+            for (Object arg : args) {
+                String part = null;
+                if (arg instanceof Class<?>) {
+                    part = ((Class<?>) arg).getSimpleName();
+                } else if (arg instanceof Search) {
+                    part = makeSearchShape((Search) arg);
+                } else if (arg instanceof String && method.startsWith("executeHql")) {
+                    part = (String) arg;
+                }
+                if (part != null) {
+                    if (! first) {
+                        sb.append(',');
+                    }
+                    sb.append(part);
+                    first = false;
+                }
+            }
+        }
+        sb.append(')');
+        return sb.toString();
+    }
+
+    private String makeSearchShape(Search search) {
+        StringBuilder sb = new StringBuilder("[");
+        Restriction[] restrictions = search.getRestrictions();
+        for (int i = 0; i < restrictions.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(restrictions[i].getProperty()).append('=').append(restrictions[i].getComparison());
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    private int countRows(Object result) {
+        int rows = 0;
+        if (result instanceof Collection<?>) {
+            rows = ((Collection<?>) result).size();
+        } else if (result instanceof Map<?, ?>) {
+            rows = ((Map<?, ?>) result).size();
+        } else if (result != null && result.getClass().isArray()) {
+            rows = java.lang.reflect.Array.getLength(result);
+        } else if (result != null) {
+            rows = 1;
+        }
+        return rows;
+    }
+
+    // MBEAN
+
+    public boolean isEnabled() {
+        return EvalQueryStatistics.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        EvalQueryStatistics.setEnabled(enabled);
+    }
+
+    public int getRepeatThreshold() {
+        return EvalQueryStatistics.getRepeatThreshold();
+    }
+
+    public void setRepeatThreshold(int repeatThreshold) {
+        EvalQueryStatistics.setRepeatThreshold(repeatThreshold);
+    }
+
+    public long getTotalOperations() {
+        return EvalQueryStatistics.getTotalOperations();
+    }
+
+    public long getTotalQueries() {
+        return EvalQueryStatistics.getTotalQueries();
+    }
+
+    public long getTotalRows() {
+        return EvalQueryStatistics.getTotalRows();
+    }
+
+    public long getTotalQueryTimeMS() {
+        return EvalQueryStatistics.getTotalQueryTimeMS();
+    }
+
+    public long getTotalRepeatedShapes() {
+        return EvalQueryStatistics.getTotalRepeatedShapes();
+    }
+
+    public long getUnscopedQueries() {
+        return EvalQueryStatistics.getUnscopedQueries();
+    }
+
+    public String getDaoCallsByOperation() {
+        return EvalQueryStatistics.getDaoCallsByOperation().toString();
+    }
+
+    public String getRepeatedShapes() {
+        return EvalQueryStatistics.getRepeatedShapes().toString();
+    }
+
+    public String getSummary() {
+        return EvalQueryStatistics.getSummary();
+    }
+
+    public void reset() {
+        EvalQueryStatistics.reset();
+    }
+
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.impl.interceptors;
+
+/**
+ * The JMX management interface for the DAO query statistics,
+ * see {@link org.sakaiproject.evaluation.utils.EvalQueryStatistics}
+ */
+public interface EvalDaoQueryInterceptorMBean {
+
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    public int getRepeatThreshold();
+
+    public void setRepeatThreshold(int repeatThreshold);
+
+    public long getTotalOperations();
+
+    public long getTotalQueries();
+
+    public long getTotalRows();
+
+    public long getTotalQueryTimeMS();
+
+    public long getTotalRepeatedShapes();
+
+    public long getUnscopedQueries();
+
+    /**
+     * @return the operations and the number of DAO calls they have made
+     */
+    public String getDaoCallsByOperation();
+
+    /**
+     * @return the query shapes which were N+1 candidates and the number of operations they were found in
+     */
+    public String getRepeatedShapes();
+
+    public String getSummary();
+
+    /**
+     * Clear all the collected totals
+     */
+    public void reset();
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.impl.interceptors;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.sakaiproject.evaluation.utils.EvalQueryStatistics;
+
+
+/**
+ * This interceptor wraps the logic services and opens a logical operation for the query statistics
+ * when a service is called outside of any request or job (e.g. from an entity provider or another tool),
+ * calls made inside an existing operation are simply counted against that operation
+ */
+public class EvalOperationInterceptor implements MethodInterceptor {
+
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (! EvalQueryStatistics.isEnabled() || EvalQueryStatistics.isOperationActive()) {
+            return invocation.proceed();
+        }
+        EvalQueryStatistics.beginOperation("service:" + invocation.getMethod().getDeclaringClass().getSimpleName()
+                + "." + invocation.getMethod().getName());
+        try {
+            return invocation.proceed();
+        } finally {
+            EvalQueryStatistics.endOperation();
+        }
+    }
+
+}
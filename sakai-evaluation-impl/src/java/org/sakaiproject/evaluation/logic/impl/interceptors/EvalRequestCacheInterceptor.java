@@ -0,0 +1,259 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.impl.interceptors;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
+import org.sakaiproject.evaluation.utils.EvalRequestCache;
+
+
+/**
+ * This interceptor wraps the logic services and memoizes the configured lookup methods
+ * in the {@link EvalRequestCache} for the current request or job, any call to a method
+ * which is not a read (does not start with one of the {@link #READ_PREFIXES}) drops the
+ * cached values for the scope<br/>
+ * Calls are only cached when all the arguments are simple values (strings, numbers, booleans),
+ * persistent model objects are never cached since callers may change them (e.g. form binding) and each caller
+ * must get its own copy, the hit/miss totals are exposed via JMX using the {@link #OBJECT_NAME}<br/>
+ * Caching is controlled by the evaluation.request.cache.enabled sakai property (default false)
+ * and can be switched on and off at runtime via JMX
+ */
+@Slf4j
+public class EvalRequestCacheInterceptor implements MethodInterceptor, EvalRequestCacheInterceptorMBean {
+
+    public static final String OBJECT_NAME = "org.sakaiproject.evaluation:type=RequestCache";
+    public static final String ENABLED_PROPERTY = "evaluation.request.cache.enabled";
+
+    /**
+     * Methods starting with these never change anything so they do not invalidate the cache
+     */
+    public static final String[] READ_PREFIXES = {"get", "is", "can", "check", "count", "find", "search"};
+
+    /**
+     * Return values from this package (the persistent entities) are never cached
+     */
+    protected static final String MODEL_PACKAGE = "org.sakaiproject.evaluation.model.";
+
+    private EvalExternalLogic externalLogic;
+    public void setExternalLogic(EvalExternalLogic externalLogic) {
+        this.externalLogic = externalLogic;
+    }
+
+    private List<String> cachedMethods;
+    /**
+     * @param cachedMethods the methods to cache, each one is the fully qualified name
+     * of the service interface followed by the method name
+     * (e.g. org.sakaiproject.evaluation.logic.EvalCommonLogic.isUserAdmin),
+     * all overloads of the method are cached
+     */
+    public void setCachedMethods(List<String> cachedMethods) {
+        this.cachedMethods = cachedMethods;
+    }
+
+    private Map<Class<?>, Set<String>> cachedMethodsByService = new LinkedHashMap<>();
+    private ObjectName objectName;
+
+    public void init() {
+        if (cachedMethods != null) {
+            for (String cachedMethod : cachedMethods) {
+                int split = cachedMethod.lastIndexOf('.');
+                if (split <= 0) {
+                    throw new IllegalArgumentException("Invalid cached method (must be service.method): " + cachedMethod);
+                }
+                Class<?> service;
+                try {
+                    service = Class.forName(cachedMethod.substring(0, split));
+                } catch (ClassNotFoundException e) {
+                    throw new IllegalArgumentException("Invalid cached method, unknown service: " + cachedMethod, e);
+                }
+                Set<String> methods = cachedMethodsByService.get(service);
+                if (methods == null) {
+                    methods = new TreeSet<>();
+                    cachedMethodsByService.put(service, methods);
+                }
+                methods.add(cachedMethod.substring(split + 1));
+            }
+        }
+        Boolean enabled = externalLogic.getConfigurationSetting(ENABLED_PROPERTY, Boolean.FALSE);
+        EvalRequestCache.setEnabled(enabled != null && enabled);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (! server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                objectName = name;
+            }
+        } catch (Exception e) {
+            log.warn("Unable to register the request cache MBean (" + OBJECT_NAME + "): " + e);
+        }
+        log.info("Init: request cache enabled=" + EvalRequestCache.isEnabled() + ", cached methods=" + getCachedMethods());
+    }
+
+    public void destroy() {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (Exception e) {
+                log.warn("Unable to unregister the request cache MBean (" + OBJECT_NAME + "): " + e);
+            }
+            objectName = null;
+        }
+    }
+
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (! EvalRequestCache.isEnabled() || ! EvalRequestCache.isScopeActive()) {
+            return invocation.proceed();
+        }
+        String method = invocation.getMethod().getName();
+        if (! isRead(method)) {
+            try {
+                return invocation.proceed();
+            } finally {
+                EvalRequestCache.invalidate();
+            }
+        }
+        List<Object> key = makeCacheKey(invocation);
+        if (key == null) {
+            return invocation.proceed();
+        }
+        Object value = EvalRequestCache.get(key);
+        if (value == EvalRequestCache.NOT_CACHED) {
+            value = invocation.proceed();
+            if (isCacheableValue(value)) {
+                EvalRequestCache.put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param value the value returned by a cached method
+     * @return true if the value can be shared by every caller in the scope, false if it is a
+     * persistent entity (or a proxy for one)
+     */
+    protected boolean isCacheableValue(Object value) {
+        return value == null || ! value.getClass().getName().startsWith(MODEL_PACKAGE);
+    }
+
+    /**
+     * Creates the cache key from the service, method and the argument values
+     *
+     * @param invocation the service method invocation
+     * @return the key OR null if this method is not cached or the arguments are not simple values
+     */
+    protected List<Object> makeCacheKey(MethodInvocation invocation) {
+        String method = invocation.getMethod().getName();
+        Class<?> service = null;
+        for (Map.Entry<Class<?>, Set<String>> entry : cachedMethodsByService.entrySet()) {
+            if (entry.getValue().contains(method) && entry.getKey().isInstance(invocation.getThis())) {
+                service = entry.getKey();
+                break;
+            }
+        }
+        if (service == null) {
+            return null;
+        }
+        Object[] args = invocation.getArguments();
+        List<Object> key = new ArrayList<>(2 + (args == null ? 0 : args.length));
+        key.add(service.getName());
+        key.add(method);
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg != null && ! (arg instanceof String || arg instanceof Number
+                        || arg instanceof Boolean || arg instanceof Enum<?>)) {
+                    return null;
+                }
+                key.add(arg);
+            }
+        }
+        return key;
+    }
+
+    private boolean isRead(String method) {
+        for (String prefix : READ_PREFIXES) {
+            if (method.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // MBEAN
+
+    public boolean isEnabled() {
+        return EvalRequestCache.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled) {
+        EvalRequestCache.setEnabled(enabled);
+    }
+
+    public int getMaxEntries() {
+        return EvalRequestCache.getMaxEntries();
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        EvalRequestCache.setMaxEntries(maxEntries);
+    }
+
+    public long getTotalScopes() {
+        return EvalRequestCache.getTotalScopes();
+    }
+
+    public long getTotalHits() {
+        return EvalRequestCache.getTotalHits();
+    }
+
+    public long getTotalMisses() {
+        return EvalRequestCache.getTotalMisses();
+    }
+
+    public long getTotalInvalidations() {
+        return EvalRequestCache.getTotalInvalidations();
+    }
+
+    public String getCachedMethods() {
+        List<String> methods = new ArrayList<>();
+        for (Map.Entry<Class<?>, Set<String>> entry : cachedMethodsByService.entrySet()) {
+            for (String method : entry.getValue()) {
+                methods.add(entry.getKey().getSimpleName() + "." + method);
+            }
+        }
+        return methods.toString();
+    }
+
+    public String getSummary() {
+        return EvalRequestCache.getSummary();
+    }
+
+    public void reset() {
+        EvalRequestCache.reset();
+    }
+
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.impl.interceptors;
+
+/**
+ * The JMX management interface for the request scoped lookup cache,
+ * see {@link org.sakaiproject.evaluation.utils.EvalRequestCache}
+ */
+public interface EvalRequestCacheInterceptorMBean {
+
+    public boolean isEnabled();
+
+    public void setEnabled(boolean enabled);
+
+    public int getMaxEntries();
+
+    public void setMaxEntries(int maxEntries);
+
+    public long getTotalScopes();
+
+    public long getTotalHits();
+
+    public long getTotalMisses();
+
+    /**
+     * @return the number of times the cached values in a scope were dropped because of a write
+     */
+    public long getTotalInvalidations();
+
+    /**
+     * @return the service methods which are cached
+     */
+    public String getCachedMethods();
+
+    public String getSummary();
+
+    /**
+     * Clear all the collected totals
+     */
+    public void reset();
+
+}
@@ -0,0 +1,53 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.scheduling;
+
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.sakaiproject.evaluation.utils.EvalQueryStatistics;
+import org.sakaiproject.evaluation.utils.EvalRequestCache;
+
+/**
+ * Base for the evaluation quartz jobs, each run of a job is one operation for the
+ * DAO call statistics ({@link EvalQueryStatistics}) and one scope for the request cache
+ * ({@link EvalRequestCache}), the jobs implement {@link #executeJob(JobExecutionContext)}
+ */
+public abstract class AbstractEvalJob implements Job {
+
+    /* (non-Javadoc)
+     * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
+     */
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        String operation = "job:" + getClass().getSimpleName();
+        EvalQueryStatistics.beginOperation(operation);
+        EvalRequestCache.beginScope(operation);
+        try {
+            executeJob(context);
+        } finally {
+            EvalRequestCache.endScope();
+            EvalQueryStatistics.endOperation();
+        }
+    }
+
+    /**
+     * Do the actual work of the job
+     *
+     * @param context the quartz job context
+     * @throws JobExecutionException if the job fails
+     */
+    protected abstract void executeJob(JobExecutionContext context) throws JobExecutionException;
+
+}
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.scheduling;
+
+import java.util.Calendar;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.sakaiproject.evaluation.logic.EvalEvaluationService;
+import org.sakaiproject.evaluation.logic.EvalLockManager;
+import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Job to move the answers of evaluations which closed a long time ago into the compressed
+ * answer archive, each evaluation is archived in its own transaction so the job can simply
+ * be run again if it is interrupted
+ *
+ */
+@Slf4j
+public class ArchiveAnswersImpl extends AbstractEvalJob implements ArchiveAnswers {
+
+    private EvalEvaluationService evaluationService;
+    public void setEvaluationService(EvalEvaluationService evaluationService) {
+        this.evaluationService = evaluationService;
+    }
+
+    private EvalExternalLogic externalLogic;
+    public void setExternalLogic(EvalExternalLogic externalLogic) {
+        this.externalLogic = externalLogic;
+    }
+
+	protected EvalLockManager lockManager;
+	public void setEvalLockManager(EvalLockManager lockManager) {
+		this.lockManager = lockManager;
+	}
+
+    /**
+     * The number of evaluation ids fetched at a time
+     */
+    protected static final int ARCHIVE_BATCH_SIZE = 50;
+
+    /**
+     * Only one server should archive answers at a time
+     */
+    public static final String LOCK_ARCHIVE_ANSWERS_JOB = "LOCK_ARCHIVE_ANSWERS_JOB";
+    private static final long TWO_HOURS = 2L * 60L * 60L * 1000L;
+
+    /*
+     * (non-Javadoc)
+     * @see org.sakaiproject.evaluation.logic.scheduling.AbstractEvalJob#executeJob(org.quartz.JobExecutionContext)
+     */
+	protected void executeJob(JobExecutionContext context) throws JobExecutionException {
+		log.debug("ArchiveAnswers.execute()");
+		int archiveDays = getArchiveDays(context.getMergedJobDataMap().getString("archive.days"));
+		Calendar cal = Calendar.getInstance();
+		cal.add(Calendar.DATE, -archiveDays);
+
+        String serverId = externalLogic.getServerId();
+        Boolean gotLock = lockManager.obtainLock(LOCK_ARCHIVE_ANSWERS_JOB, serverId, TWO_HOURS);
+        if (gotLock == null || ! gotLock) {
+        	log.info("Could not get the lock to archive answers, another server is already running this job");
+        	return;
+        }
+        try {
+        	int evaluations = 0;
+        	int answers = 0;
+        	int failed = 0;
+        	List<Long> evaluationIds;
+        	do {
+        		// archived evaluations are not found again, failed ones are skipped by the offset
+        		evaluationIds = evaluationService.getEvaluationIdsToArchive(cal.getTime(), failed + ARCHIVE_BATCH_SIZE);
+        		evaluationIds = evaluationIds.subList(Math.min(failed, evaluationIds.size()), evaluationIds.size());
+        		for (Long evaluationId : evaluationIds) {
+        			try {
+        				answers += evaluationService.archiveAnswers(evaluationId);
+        				evaluations++;
+        			} catch (RuntimeException e) {
+        				failed++;
+        				log.error("Could not archive the answers for evaluation id " + evaluationId + ": " + e.getMessage(), e);
+        			}
+        		}
+        	} while (evaluationIds.size() == ARCHIVE_BATCH_SIZE);
+        	log.info("Archived " + answers + " answers for " + evaluations + " evaluations due before " + cal.getTime());
+        	if (failed > 0) {
+        		log.warn("Could not archive the answers for " + failed + " evaluations, run the job again after fixing them");
+        	}
+        } finally {
+        	lockManager.releaseLock(LOCK_ARCHIVE_ANSWERS_JOB, serverId);
+        }
+	}
+
+	/**
+	 * @param value the archive.days value from the job (may be blank)
+	 * @return the number of days after the due date before answers are archived
+	 */
+	protected int getArchiveDays(String value) {
+		int archiveDays;
+		if (StringUtils.isBlank(value)) {
+			archiveDays = externalLogic.getConfigurationSetting(ARCHIVE_DAYS_PROPERTY, DEFAULT_ARCHIVE_DAYS);
+		} else {
+			try {
+				archiveDays = Integer.parseInt(value.trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid archive.days (must be a number of days): " + value, e);
+			}
+		}
+		if (archiveDays < 1) {
+			throw new IllegalArgumentException("archive.days must be 1 or more: " + archiveDays);
+		}
+		return archiveDays;
+	}
+
+	public void init() {
+		log.debug("init()");
+	}
+
+}
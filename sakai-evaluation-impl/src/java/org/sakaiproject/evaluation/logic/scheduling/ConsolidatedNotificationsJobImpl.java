@@ -37,7 +37,7 @@ import lombok.extern.slf4j.Slf4j;
  * through the admin's "Control Email Settings" page in sakai.
  */
 @Slf4j
-public class ConsolidatedNotificationsJobImpl implements ConsolidatedNotificationsJob {
+public class ConsolidatedNotificationsJobImpl extends AbstractEvalJob implements ConsolidatedNotificationsJob {
 	
 	public static final String LOCK_CONSOLIDATED_EMAIL_JOB = "LOCK_CONSOLIDATED_EMAIL_JOB";
 	private static final long TWO_HOURS = 2L * 60L * 60L * 1000L;
@@ -91,9 +91,9 @@ public class ConsolidatedNotificationsJobImpl implements ConsolidatedNotificatio
 
 	/*
 	 * (non-Javadoc)
-	 * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
+	 * @see org.sakaiproject.evaluation.logic.scheduling.AbstractEvalJob#executeJob(org.quartz.JobExecutionContext)
 	 */
-	public void execute(JobExecutionContext context)
+	protected void executeJob(JobExecutionContext context)
 			throws JobExecutionException {
 		log.info("execute()");
 		
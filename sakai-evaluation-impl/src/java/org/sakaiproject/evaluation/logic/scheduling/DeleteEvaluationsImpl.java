@@ -23,16 +23,16 @@ import org.sakaiproject.evaluation.logic.EvalEvaluationSetupService;
 import org.sakaiproject.evaluation.logic.EvalLockManager;
 import org.sakaiproject.evaluation.logic.EvalSettings;
 import org.sakaiproject.evaluation.logic.externals.EvalExternalLogic;
-import org.sakaiproject.evaluation.model.EvalEvaluation;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Job to delete evaluations for a term
+ * Job to delete evaluations for a term, the evaluations are removed in small batches
+ * (each in its own transaction) so the job can simply be run again if it is interrupted
  *
  */
 @Slf4j
-public class DeleteEvaluationsImpl implements DeleteEvaluations {
+public class DeleteEvaluationsImpl extends AbstractEvalJob implements DeleteEvaluations {
 
 	
     private EvalEvaluationService evaluationService;
@@ -59,21 +59,83 @@ public class DeleteEvaluationsImpl implements DeleteEvaluations {
 		this.lockManager = lockManager;
 	}
 
+    /**
+     * The number of evaluations removed in each transaction, keeps the transactions
+     * short so a large term does not hold locks on the response tables for the whole run
+     */
+    protected static final int DELETE_BATCH_SIZE = 50;
+
+    /**
+     * Only one server should purge evaluations at a time
+     */
+    public static final String LOCK_DELETE_EVALUATIONS_JOB = "LOCK_DELETE_EVALUATIONS_JOB";
+    private static final long TWO_HOURS = 2L * 60L * 60L * 1000L;
+
+    //Set admin as the id, I don't think there's any way to get this from the job scheduler
+    private static final String ADMIN_USER_ID = "admin";
+
     /*
      * (non-Javadoc)
-     * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
+     * @see org.sakaiproject.evaluation.logic.scheduling.AbstractEvalJob#executeJob(org.quartz.JobExecutionContext)
      */
-	public void execute(JobExecutionContext context) throws JobExecutionException {
+	protected void executeJob(JobExecutionContext context) throws JobExecutionException {
 		log.debug("DeleteEvaluations.execute()");
         String termId = context.getMergedJobDataMap().getString("term.id");
-        List<EvalEvaluation> evaluations = evaluationService.getEvaluationsByTermId(termId);
-        log.info("Found "+ evaluations.size() + " evaluations to delete matching " + termId);
-        for (EvalEvaluation evaluation: evaluations) {
-        	//Set admin as the id, I don't think there's any way to get this from the job scheduler
-        	log.info("Deleting evaluation id " + evaluation.getId());
-        	evaluationSetupService.deleteEvaluation(evaluation.getId(), "admin");
+        boolean removeResponses = Boolean.parseBoolean(context.getMergedJobDataMap().getString("remove.responses"));
+
+        String serverId = externalLogic.getServerId();
+        Boolean gotLock = lockManager.obtainLock(LOCK_DELETE_EVALUATIONS_JOB, serverId, TWO_HOURS);
+        if (gotLock == null || ! gotLock) {
+        	log.info("Could not get the lock to delete evaluations for term " + termId + ", another server is already running this job");
+        	return;
+        }
+        try {
+        	// evaluations which were already removed (or marked deleted) by an interrupted run are not found again
+        	List<Long> evaluationIds = evaluationService.getEvaluationIdsByTermId(termId, removeResponses);
+        	log.info("Found "+ evaluationIds.size() + " evaluations to delete matching " + termId 
+        			+ (removeResponses ? " (removing responses)" : ""));
+        	int processed = 0;
+        	int failed = 0;
+        	for (int i = 0; i < evaluationIds.size(); i += DELETE_BATCH_SIZE) {
+        		List<Long> batch = evaluationIds.subList(i, Math.min(evaluationIds.size(), i + DELETE_BATCH_SIZE));
+        		failed += deleteBatch(batch.toArray(new Long[batch.size()]), removeResponses);
+        		processed += batch.size();
+        		log.info("Processed " + processed + " of " + evaluationIds.size() + " evaluations for term " + termId);
+        	}
+        	if (failed > 0) {
+        		log.warn("Could not delete " + failed + " evaluations for term " + termId + ", run the job again after fixing them");
+        	}
+        } finally {
+        	lockManager.releaseLock(LOCK_DELETE_EVALUATIONS_JOB, serverId);
         }
 	}
+
+	/**
+	 * Delete a batch of evaluations in one transaction, if the batch fails then the
+	 * evaluations are retried one at a time so a single bad evaluation does not block the rest
+	 * 
+	 * @param evaluationIds the ids of the evaluations in this batch
+	 * @param removeResponses true if responses should be removed as well
+	 * @return the number of evaluations which could not be deleted
+	 */
+	protected int deleteBatch(Long[] evaluationIds, boolean removeResponses) {
+		try {
+			evaluationSetupService.deleteEvaluations(evaluationIds, removeResponses, ADMIN_USER_ID);
+			return 0;
+		} catch (RuntimeException e) {
+			log.warn("Failed to delete a batch of " + evaluationIds.length + " evaluations, retrying them one at a time: " + e.getMessage());
+		}
+		int failed = 0;
+		for (Long evaluationId : evaluationIds) {
+			try {
+				evaluationSetupService.deleteEvaluations(new Long[] {evaluationId}, removeResponses, ADMIN_USER_ID);
+			} catch (RuntimeException e) {
+				failed++;
+				log.error("Could not delete evaluation id " + evaluationId + ": " + e.getMessage(), e);
+			}
+		}
+		return failed;
+	}
 	
 	public void init() {
 		log.debug("init()");
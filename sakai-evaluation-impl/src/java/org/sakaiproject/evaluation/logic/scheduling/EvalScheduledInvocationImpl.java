@@ -18,6 +18,8 @@ import org.sakaiproject.evaluation.logic.externals.EvalJobLogic;
 import org.sakaiproject.evaluation.logic.externals.EvalScheduledInvocation;
 import org.sakaiproject.evaluation.logic.model.EvalScheduledJob;
 import org.sakaiproject.evaluation.logic.model.EvalScheduledJob.EvalIdType;
+import org.sakaiproject.evaluation.utils.EvalQueryStatistics;
+import org.sakaiproject.evaluation.utils.EvalRequestCache;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -61,7 +63,14 @@ public class EvalScheduledInvocationImpl implements EvalScheduledInvocation {
         }
 
         // call method to fix state, send email and/or schedule a job
-        evalJobLogic.jobAction(evalId, jobType);
+        EvalQueryStatistics.beginOperation("job:" + jobType);
+        EvalRequestCache.beginScope("job:" + jobType);
+        try {
+            evalJobLogic.jobAction(evalId, jobType);
+        } finally {
+            EvalRequestCache.endScope();
+            EvalQueryStatistics.endOperation();
+        }
     }
 }
 
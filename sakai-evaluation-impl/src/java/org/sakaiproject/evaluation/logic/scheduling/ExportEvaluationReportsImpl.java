@@ -25,6 +25,8 @@ import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.quartz.JobExecutionContext;
 import org.quartz.JobExecutionException;
@@ -45,7 +47,7 @@ import lombok.extern.slf4j.Slf4j;
  *
  */
 @Slf4j
-public class ExportEvaluationReportsImpl implements ExportEvaluationReports {
+public class ExportEvaluationReportsImpl extends AbstractEvalJob implements ExportEvaluationReports {
 
 
     private EvalEvaluationService evaluationService;
@@ -82,9 +84,9 @@ public class ExportEvaluationReportsImpl implements ExportEvaluationReports {
 
 	/*
      * (non-Javadoc)
-     * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
+     * @see org.sakaiproject.evaluation.logic.scheduling.AbstractEvalJob#executeJob(org.quartz.JobExecutionContext)
      */
-	public void execute(JobExecutionContext context) throws JobExecutionException {
+	protected void executeJob(JobExecutionContext context) throws JobExecutionException {
 
 		Session session = sessionManager.getCurrentSession();
 		try {
@@ -107,13 +109,15 @@ public class ExportEvaluationReportsImpl implements ExportEvaluationReports {
 			
 			log.info("Evaluation query returned" + evaluations.size() + " results to export for " + termId);
 			
+			// work out the viewable groups for all the evaluations at once
+			Map<Long, Set<String>> viewableGroupIds = reportingPermissions.getResultsViewableEvalGroupIdsForUser(evaluations, session.getUserId());
 
 			//Maybe make a termId folder for these to go in?
 			for (EvalEvaluation evaluation: evaluations) {
 				OutputStream outputStream = null;
 				try {
 					String [] evalGroupIds;
-					evalGroupIds = reportingPermissions.getResultsViewableEvalGroupIdsForCurrentUser(evaluation).toArray(new String[] {});
+					evalGroupIds = viewableGroupIds.get(evaluation.getId()).toArray(new String[] {});
 					
 					//Make the term directories structure
 					String dirName = reportPath + "/" + evaluation.getTermId();
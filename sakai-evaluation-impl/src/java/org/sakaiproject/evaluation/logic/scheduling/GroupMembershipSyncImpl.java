@@ -30,7 +30,7 @@ import org.sakaiproject.evaluation.model.EvalEvaluation;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
-public class GroupMembershipSyncImpl implements GroupMembershipSync {
+public class GroupMembershipSyncImpl extends AbstractEvalJob implements GroupMembershipSync {
 	
     private EvalEvaluationService evaluationService;
     public void setEvaluationService(EvalEvaluationService evaluationService) {
@@ -54,9 +54,9 @@ public class GroupMembershipSyncImpl implements GroupMembershipSync {
 
     /*
      * (non-Javadoc)
-     * @see org.quartz.Job#execute(org.quartz.JobExecutionContext)
+     * @see org.sakaiproject.evaluation.logic.scheduling.AbstractEvalJob#executeJob(org.quartz.JobExecutionContext)
      */
-	public void execute(JobExecutionContext context) throws JobExecutionException {
+	protected void executeJob(JobExecutionContext context) throws JobExecutionException {
 		log.debug("GroupMembershipSync.execute()");
 		String syncServerId = (String) this.evalSettings.get(EvalSettings.SYNC_SERVER);
 		String thisServerId = this.externalLogic.getServerId();
@@ -347,7 +347,7 @@ public class EvalAdhocSupportImplTest extends BaseTestEvalLogic {
    public void testIsUserAllowedInAdhocGroup() {
       boolean allowed;
 
-      allowed = adhocSupportLogic.isUserAllowedInAdhocGroup(EvalTestDataLoad.USER_ID, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId());
+      allowed = adhocSupportLogic.isUserAllowedInAdhocGroup(EvalTestDataLoad.STUDENT_USER_ID, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId());
       Assert.assertTrue(allowed);
 
       allowed = adhocSupportLogic.isUserAllowedInAdhocGroup(EvalTestDataLoad.USER_ID, EvalConstants.PERM_BE_EVALUATED, etdl.group2.getEvalGroupId());
@@ -364,6 +364,73 @@ public class EvalAdhocSupportImplTest extends BaseTestEvalLogic {
 
       allowed = adhocSupportLogic.isUserAllowedInAdhocGroup(etdl.user2.getUserId(), EvalConstants.PERM_BE_EVALUATED, etdl.group1.getEvalGroupId());
       Assert.assertFalse(allowed);
+
+      // unsupported perms are never allowed
+      allowed = adhocSupportLogic.isUserAllowedInAdhocGroup(EvalTestDataLoad.USER_ID, EvalConstants.PERM_ASSIGN_EVALUATION, etdl.group2.getEvalGroupId());
+      Assert.assertFalse(allowed);
+
+      try {
+         adhocSupportLogic.isUserAllowedInAdhocGroup(null, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId());
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
+   @Test
+   public void testMembershipIndexMaintained() {
+      String userId = etdl.user2.getUserId();
+      // load the index entries for this user before changing anything
+      Assert.assertEquals(0, adhocSupportLogic.getAdhocGroupsByUserAndPerm(userId, EvalConstants.PERM_TAKE_EVALUATION).size());
+      Assert.assertEquals(0, adhocSupportLogic.getAdhocGroupsByUserAndPerm(userId, EvalConstants.PERM_BE_EVALUATED).size());
+
+      // adding the user to a new group is picked up
+      EvalAdhocGroup group = new EvalAdhocGroup(EvalTestDataLoad.MAINT_USER_ID, "index group",
+            new ArrayList<String>( Arrays.asList( userId ) ), null);
+      adhocSupportLogic.saveAdhocGroup(group);
+      Assert.assertTrue( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_TAKE_EVALUATION, group.getEvalGroupId()) );
+      Assert.assertFalse( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_BE_EVALUATED, group.getEvalGroupId()) );
+      List<EvalAdhocGroup> l = adhocSupportLogic.getAdhocGroupsByUserAndPerm(userId, EvalConstants.PERM_TAKE_EVALUATION);
+      Assert.assertEquals(1, l.size());
+      Assert.assertEquals(group.getId(), l.get(0).getId());
+
+      // moving the user from participant to evaluatee is picked up
+      group.setParticipantIds(new ArrayList<String>());
+      group.setEvaluateeIds(new ArrayList<String>( Arrays.asList( userId ) ));
+      adhocSupportLogic.saveAdhocGroup(group);
+      Assert.assertFalse( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_TAKE_EVALUATION, group.getEvalGroupId()) );
+      Assert.assertTrue( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_BE_EVALUATED, group.getEvalGroupId()) );
+
+      // removing the group is picked up
+      adhocSupportLogic.deleteAdhocGroup(group.getId());
+      Assert.assertFalse( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_BE_EVALUATED, group.getEvalGroupId()) );
+      Assert.assertEquals(0, adhocSupportLogic.getAdhocGroupsByUserAndPerm(userId, EvalConstants.PERM_BE_EVALUATED).size());
+   }
+
+   @Test
+   public void testMembershipIndexBounded() {
+      adhocSupportLogic.setMembershipIndexMaxEntries(2);
+      String userId = etdl.user1.getUserId();
+      Assert.assertFalse( adhocSupportLogic.isUserAllowedInAdhocGroup(EvalTestDataLoad.STUDENT_USER_ID, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId()) );
+      Assert.assertTrue( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId()) );
+      Assert.assertEquals(2, adhocSupportLogic.getMembershipIndexSize());
+
+      // looking up the same keys again does not add entries
+      Assert.assertTrue( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId()) );
+      Assert.assertEquals(2, adhocSupportLogic.getMembershipIndexSize());
+
+      // a new key when full (and nothing has expired) starts the index over, lookups still work
+      Assert.assertFalse( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_BE_EVALUATED, etdl.group2.getEvalGroupId()) );
+      Assert.assertEquals(1, adhocSupportLogic.getMembershipIndexSize());
+      Assert.assertTrue( adhocSupportLogic.isUserAllowedInAdhocGroup(userId, EvalConstants.PERM_TAKE_EVALUATION, etdl.group2.getEvalGroupId()) );
+      Assert.assertEquals(2, adhocSupportLogic.getMembershipIndexSize());
+
+      try {
+         adhocSupportLogic.setMembershipIndexMaxEntries(0);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
    }
 
 }
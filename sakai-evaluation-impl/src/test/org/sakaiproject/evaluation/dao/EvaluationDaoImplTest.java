@@ -16,6 +16,7 @@ package org.sakaiproject.evaluation.dao;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
@@ -33,6 +34,7 @@ import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEmailProcessingData;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalHierarchyRuleGroup;
 import org.sakaiproject.evaluation.model.EvalItem;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalScale;
@@ -922,6 +924,67 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         Assert.assertEquals(0, l.size());
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.dao.EvaluationDaoImpl#archiveAnswers(java.lang.Long)}.
+     */
+    @Test
+    public void testArchiveAnswers() {
+        List<EvalAnswer> l;
+        List<Long> ids;
+        Date tomorrow = new Date(System.currentTimeMillis() + (24L * 60L * 60L * 1000L));
+
+        ids = evaluationDao.getEvaluationIdsToArchive(tomorrow, 0);
+        Assert.assertNotNull(ids);
+        Assert.assertTrue(ids.contains( etdl.evaluationClosed.getId() ));
+        Assert.assertFalse(ids.contains( etdl.evaluationActive.getId() ));
+        Assert.assertFalse(evaluationDao.getEvaluationIdsToArchive(etdl.threeDaysAgo, 0).contains( etdl.evaluationClosed.getId() ));
+
+        int archived = evaluationDao.archiveAnswers(etdl.evaluationClosed.getId());
+        Assert.assertEquals(3, archived);
+        Assert.assertFalse(evaluationDao.getEvaluationIdsToArchive(tomorrow, 0).contains( etdl.evaluationClosed.getId() ));
+        Assert.assertEquals(0, evaluationDao.countBySearch(EvalAnswer.class, 
+                new Search("id", new Long[] {etdl.answer2_2A.getId(), etdl.answer2_5A.getId(), etdl.answer3_2A.getId()})));
+
+        // archived answers are still read through with the same ids and values
+        l = evaluationDao.getAnswers(etdl.evaluationClosed.getId(), null, null);
+        Assert.assertEquals(3, l.size());
+        ids = EvalTestDataLoad.makeIdList(l);
+        Assert.assertTrue(ids.contains( etdl.answer2_2A.getId() ));
+        Assert.assertTrue(ids.contains( etdl.answer2_5A.getId() ));
+        Assert.assertTrue(ids.contains( etdl.answer3_2A.getId() ));
+        for (EvalAnswer answer : l) {
+            if (answer.getId().equals(etdl.answer2_5A.getId())) {
+                Assert.assertEquals(EvalTestDataLoad.ANSWER_TEXT, answer.getText());
+                Assert.assertEquals(etdl.templateItem5A.getId(), answer.getTemplateItem().getId());
+                Assert.assertEquals(etdl.response2.getId(), answer.getResponse().getId());
+            }
+        }
+
+        // filters still apply to the archived answers
+        l = evaluationDao.getAnswers(etdl.evaluationClosed.getId(), new String[] {EvalTestDataLoad.SITE1_REF}, new Long[] {etdl.templateItem2A.getId()});
+        Assert.assertEquals(1, l.size());
+        Assert.assertEquals(etdl.answer2_2A.getId(), l.get(0).getId());
+
+        // archiving again does nothing
+        Assert.assertEquals(0, evaluationDao.archiveAnswers(etdl.evaluationClosed.getId()));
+
+        // restoring puts the answers back in the answers table (with new ids)
+        Assert.assertEquals(3, evaluationDao.restoreAnswers(etdl.evaluationClosed.getId()));
+        Assert.assertEquals(0, evaluationDao.restoreAnswers(etdl.evaluationClosed.getId()));
+        Assert.assertEquals(3, evaluationDao.countBySearch(EvalAnswer.class, 
+                new Search("response.id", new Long[] {etdl.response2.getId(), etdl.response3.getId(), etdl.response6.getId()})));
+        l = evaluationDao.getAnswers(etdl.evaluationClosed.getId(), null, null);
+        Assert.assertEquals(3, l.size());
+        Assert.assertTrue(evaluationDao.getEvaluationIdsToArchive(tomorrow, 0).contains( etdl.evaluationClosed.getId() ));
+
+        try {
+            evaluationDao.archiveAnswers(null);
+            Assert.fail("Should have thrown an exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     /**
      * Test method for {@link org.sakaiproject.evaluation.dao.EvaluationDaoImpl#removeTemplateItems(org.sakaiproject.evaluation.model.EvalTemplateItem[])}.
      */
@@ -1125,6 +1188,97 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
 
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.dao.EvaluationDaoImpl#getResponderRows(Long, String, boolean, int, int)}
+     */
+    @Test
+    public void testGetResponderRows() {
+        Long evalId = etdl.evaluationClosed.getId();
+
+        // only responders
+        List<Object[]> rows = evaluationDao.getResponderRows(evalId, null, true, 0, 0);
+        Assert.assertEquals(3, rows.size());
+        for (Object[] row : rows) {
+            Assert.assertNotNull(row[2]);
+        }
+        rows = evaluationDao.getResponderRows(evalId, EvalTestDataLoad.SITE1_REF, true, 0, 0);
+        Assert.assertEquals(1, rows.size());
+        Assert.assertEquals(EvalTestDataLoad.USER_ID, rows.get(0)[1]);
+        Assert.assertEquals(etdl.response2.getId(), rows.get(0)[2]);
+
+        // all evaluators joined to their responses
+        Search search = new Search("evaluation.id", evalId);
+        search.addRestriction( new Restriction("type", EvalAssignUser.TYPE_EVALUATOR) );
+        search.addRestriction( new Restriction("status", EvalAssignUser.STATUS_REMOVED, Restriction.NOT_EQUALS) );
+        long evaluators = evaluationDao.countBySearch(EvalAssignUser.class, search);
+        rows = evaluationDao.getResponderRows(evalId, null, false, 0, 0);
+        Assert.assertEquals(evaluators, rows.size());
+        for (Object[] row : rows) {
+            if (row[2] != null) {
+                EvalResponse response = evaluationDao.findById(EvalResponse.class, (Long) row[2]);
+                Assert.assertEquals(row[0], response.getEvalGroupId());
+                Assert.assertEquals(row[1], response.getOwner());
+            }
+        }
+
+        // paging
+        if (evaluators > 1) {
+            rows = evaluationDao.getResponderRows(evalId, null, false, 0, 1);
+            Assert.assertEquals(1, rows.size());
+            rows = evaluationDao.getResponderRows(evalId, null, false, 1, 0);
+            Assert.assertEquals(evaluators - 1, rows.size());
+        }
+        rows = evaluationDao.getResponderRows(evalId, null, false, (int) evaluators, 10);
+        Assert.assertEquals(0, rows.size());
+    }
+
+    /**
+     * Test method for the bulk term purge methods in {@link org.sakaiproject.evaluation.dao.EvaluationDaoImpl}
+     */
+    @Test
+    public void testPurgeEvaluations() {
+        String termId = "term-purge";
+        etdl.evaluationClosed.setTermId(termId);
+        evaluationDao.save(etdl.evaluationClosed);
+        etdl.evaluationNewAdmin.setTermId(termId);
+        evaluationDao.save(etdl.evaluationNewAdmin);
+
+        List<Long> evalIds = evaluationDao.getEvaluationIdsByTermId(termId, false);
+        Assert.assertEquals(2, evalIds.size());
+        Assert.assertTrue( evalIds.contains(etdl.evaluationClosed.getId()) );
+        Assert.assertTrue( evalIds.contains(etdl.evaluationNewAdmin.getId()) );
+        Assert.assertEquals(0, evaluationDao.getEvaluationIdsByTermId("term-invalid", true).size());
+
+        // deleted evals are only included when asked for
+        etdl.evaluationNewAdmin.setState(EvalConstants.EVALUATION_STATE_DELETED);
+        evaluationDao.save(etdl.evaluationNewAdmin);
+        Assert.assertEquals(1, evaluationDao.getEvaluationIdsByTermId(termId, false).size());
+        Assert.assertEquals(2, evaluationDao.getEvaluationIdsByTermId(termId, true).size());
+
+        Long[] ids = evalIds.toArray(new Long[evalIds.size()]);
+        Set<Long> withResponses = evaluationDao.getEvaluationIdsWithResponses(ids);
+        Assert.assertEquals(1, withResponses.size());
+        Assert.assertTrue( withResponses.contains(etdl.evaluationClosed.getId()) );
+
+        int removed = evaluationDao.removeResponsesForEvaluations(ids);
+        Assert.assertTrue(removed > 0);
+        Assert.assertEquals(0, evaluationDao.getEvaluationIdsWithResponses(ids).size());
+
+        removed = evaluationDao.removeAssignmentsForEvaluations(new Long[] {etdl.evaluationNewAdmin.getId()});
+        Assert.assertTrue(removed > 0);
+        Assert.assertEquals(0, evaluationDao.countBySearch(EvalAssignGroup.class, 
+                new Search("evaluation.id", etdl.evaluationNewAdmin.getId()) ) );
+
+        // email templates in use
+        Long availableId = etdl.evaluationNew.getAvailableEmailTemplate().getId();
+        Set<Long> inUse = evaluationDao.getEmailTemplateIdsInUse(new Long[] {availableId, EvalTestDataLoad.INVALID_LONG_ID});
+        Assert.assertEquals(1, inUse.size());
+        Assert.assertTrue( inUse.contains(availableId) );
+
+        Assert.assertEquals(0, evaluationDao.removeResponsesForEvaluations(new Long[] {}));
+        Assert.assertEquals(0, evaluationDao.getEvaluationIdsWithResponses(null).size());
+    }
+
 
     /**
      * Test method for {@link org.sakaiproject.evaluation.dao.EvaluationDaoImpl#getEvalCategories(String)}
@@ -1251,6 +1405,227 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
 
     }
 
+    /**
+     * Benchmarks the bulk user assignment methods used by the assignment synchronization
+     * ({@link EvaluationDao#getEvalAssignUserRows(Long, String)}, {@link EvaluationDao#saveEvalAssignUsers(java.util.Collection)}
+     * and {@link EvaluationDao#removeEvalAssignUsers(Long[])}) with many groups and users
+     */
+    @Test
+    public void testEvalAssignUserBulkMethods() {
+        int groupCount = 50;
+        int usersPerGroup = 100;
+        Long evaluationId = etdl.evaluationNew.getId();
+        Assert.assertEquals(0, evaluationDao.getEvalAssignUserRows(evaluationId, null).size());
+
+        List<EvalAssignUser> assignUsers = new ArrayList<>();
+        for (int g = 0; g < groupCount; g++) {
+            for (int u = 0; u < usersPerGroup; u++) {
+                assignUsers.add( new EvalAssignUser("bulk-user-" + u, "/site/bulk-" + g, EvalTestDataLoad.MAINT_USER_ID,
+                        EvalAssignUser.TYPE_EVALUATOR, EvalAssignUser.STATUS_LINKED, etdl.evaluationNew, null) );
+            }
+        }
+        long start = System.currentTimeMillis();
+        evaluationDao.saveEvalAssignUsers(assignUsers);
+        long insertTime = System.currentTimeMillis() - start;
+        Long[] ids = new Long[assignUsers.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = assignUsers.get(i).getId();
+            Assert.assertNotNull(ids[i]);
+        }
+
+        start = System.currentTimeMillis();
+        List<Object[]> rows = evaluationDao.getEvalAssignUserRows(evaluationId, null);
+        long loadTime = System.currentTimeMillis() - start;
+        Assert.assertEquals(groupCount * usersPerGroup, rows.size());
+        Object[] row = rows.get(0);
+        Assert.assertEquals(5, row.length);
+        Assert.assertEquals(ids[0], row[0]);
+        Assert.assertEquals("bulk-user-0", row[1]);
+        Assert.assertEquals("/site/bulk-0", row[2]);
+        Assert.assertEquals(EvalAssignUser.TYPE_EVALUATOR, row[3]);
+        Assert.assertEquals(EvalAssignUser.STATUS_LINKED, row[4]);
+        Assert.assertEquals(usersPerGroup, evaluationDao.getEvalAssignUserRows(evaluationId, "/site/bulk-1").size());
+
+        // remove half of them
+        start = System.currentTimeMillis();
+        int removed = evaluationDao.removeEvalAssignUsers( Arrays.copyOfRange(ids, 0, ids.length / 2) );
+        long removeTime = System.currentTimeMillis() - start;
+        Assert.assertEquals(ids.length / 2, removed);
+        Assert.assertEquals(ids.length - removed, evaluationDao.getEvalAssignUserRows(evaluationId, null).size());
+        Assert.assertEquals(0, evaluationDao.removeEvalAssignUsers(new Long[] {}));
+
+        log.info("Bulk user assignments ("+ids.length+"): insert="+insertTime+"ms, load="+loadTime+"ms, remove("+removed+")="+removeTime+"ms");
+
+        try {
+            evaluationDao.saveEvalAssignUsers(assignUsers.subList(0, 1));
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+        try {
+            evaluationDao.getEvalAssignUserRows(null, null);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    @Test
+    public void testGetResponseEvaluationIds() {
+        Set<Long> evalIds;
+
+        evalIds = evaluationDao.getResponseEvaluationIds(EvalTestDataLoad.USER_ID, null, null);
+        Assert.assertTrue(evalIds.contains( etdl.evaluationActive.getId() ));
+        Assert.assertTrue(evalIds.contains( etdl.evaluationClosed.getId() ));
+        Assert.assertFalse(evalIds.contains( etdl.evaluationActiveUntaken.getId() ));
+
+        // limit to some evals
+        evalIds = evaluationDao.getResponseEvaluationIds(EvalTestDataLoad.USER_ID,
+                new Long[] {etdl.evaluationClosed.getId(), etdl.evaluationActiveUntaken.getId()}, true);
+        Assert.assertEquals(1, evalIds.size());
+        Assert.assertTrue(evalIds.contains( etdl.evaluationClosed.getId() ));
+
+        evalIds = evaluationDao.getResponseEvaluationIds(EvalTestDataLoad.USER_ID, new Long[] {}, null);
+        Assert.assertEquals(0, evalIds.size());
+
+        evalIds = evaluationDao.getResponseEvaluationIds(EvalTestDataLoad.INVALID_USER_ID, null, null);
+        Assert.assertEquals(0, evalIds.size());
+
+        try {
+            evaluationDao.getResponseEvaluationIds(null, null, null);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    @Test
+    public void testPadAndChunkInClauseValues() {
+        Object[] padded = EvaluationDaoImpl.padInClauseValues(new String[] {"a", "b", "c"});
+        Assert.assertEquals(4, padded.length);
+        Assert.assertTrue(padded instanceof String[]);
+        Assert.assertEquals("c", padded[3]);
+
+        Object[] exact = new Long[] {1L, 2L, 3L, 4L};
+        Assert.assertSame(exact, EvaluationDaoImpl.padInClauseValues(exact));
+        Assert.assertNull(EvaluationDaoImpl.padInClauseValues(null));
+
+        List<Object[]> chunks = EvaluationDaoImpl.makeInClauseChunks( makeFakeGroupIds(10000) );
+        Assert.assertEquals(20, chunks.size());
+        for (Object[] chunk : chunks) {
+            Assert.assertEquals(EvaluationDaoImpl.MAX_IN_CLAUSE_SIZE, chunk.length);
+        }
+        Assert.assertEquals(0, EvaluationDaoImpl.makeInClauseChunks(null).size());
+    }
+
+    @Test
+    public void testLargeIdArrays() {
+        // 10k group ids with the real ones at the start, middle, and end so they land in different chunks
+        String[] groupIds = makeFakeGroupIds(10000);
+        groupIds[0] = EvalTestDataLoad.SITE1_REF;
+        groupIds[5000] = EvalTestDataLoad.SITE2_REF;
+        groupIds[9999] = EvalTestDataLoad.SITE1_REF;
+        String[] realGroupIds = new String[] {EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.SITE2_REF};
+
+        List<EvalEvaluation> evals = evaluationDao.getEvaluationsByEvalGroups(groupIds, null, null, null, 0, 0);
+        Assert.assertEquals(EvalTestDataLoad.makeIdList( evaluationDao.getEvaluationsByEvalGroups(realGroupIds, null, null, null, 0, 0) ),
+                EvalTestDataLoad.makeIdList(evals));
+        for (EvalEvaluation eval : evals) {
+            Assert.assertNotNull(eval.getEvalAssignGroups());
+        }
+        // paging still works across the merged results
+        List<Long> allIds = EvalTestDataLoad.makeIdList(evals);
+        evals = evaluationDao.getEvaluationsByEvalGroups(groupIds, null, null, null, 1, 2);
+        Assert.assertEquals(allIds.subList(1, 3), EvalTestDataLoad.makeIdList(evals));
+
+        List<EvalAnswer> answers = evaluationDao.getAnswers(etdl.evaluationClosed.getId(), groupIds, null);
+        Assert.assertEquals(3, answers.size());
+        Assert.assertEquals(EvalTestDataLoad.makeIdList( evaluationDao.getAnswers(etdl.evaluationClosed.getId(), realGroupIds, null) ),
+                EvalTestDataLoad.makeIdList(answers));
+
+        // large arrays in 2 params at once
+        Long[] templateItemIds = new Long[10000];
+        for (int i = 0; i < templateItemIds.length; i++) {
+            templateItemIds[i] = EvalTestDataLoad.INVALID_LONG_ID - i;
+        }
+        templateItemIds[7777] = etdl.templateItem2A.getId();
+        answers = evaluationDao.getAnswers(etdl.evaluationClosed.getId(), groupIds, templateItemIds);
+        Assert.assertEquals(2, answers.size());
+        List<Long> ids = EvalTestDataLoad.makeIdList(answers);
+        Assert.assertTrue(ids.contains( etdl.answer2_2A.getId() ));
+        Assert.assertTrue(ids.contains( etdl.answer3_2A.getId() ));
+
+        Set<String> userIds = evaluationDao.getResponseUserIds(etdl.evaluationClosed.getId(), groupIds, true);
+        Assert.assertEquals(2, userIds.size());
+        Assert.assertTrue(userIds.contains(EvalTestDataLoad.USER_ID));
+        Assert.assertTrue(userIds.contains(EvalTestDataLoad.STUDENT_USER_ID));
+
+        List<EvalAssignUser> participants = evaluationDao.getParticipantsForEval(etdl.evaluationActive.getId(), null, groupIds,
+                null, null, null, null);
+        Assert.assertEquals(2, participants.size());
+        Assert.assertTrue(participants.get(0).getId() < participants.get(1).getId());
+
+        String[] instructorIds = makeFakeGroupIds(10000);
+        instructorIds[4321] = EvalTestDataLoad.MAINT_USER_ID;
+        List<EvalTemplateItem> templateItems = evaluationDao.getTemplateItemsByTemplate(etdl.templateAdminComplex.getId(),
+                null, instructorIds, null);
+        Assert.assertEquals(1, templateItems.size());
+        Assert.assertEquals(etdl.templateItem10AC1.getId(), templateItems.get(0).getId());
+    }
+
+    private String[] makeFakeGroupIds(int size) {
+        String[] ids = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = "/site/fake-" + i;
+        }
+        return ids;
+    }
+
+    @Test
+    public void testGetUserAssignGroupRows() {
+        Long[] evaluationIds = {etdl.evaluationClosed.getId(), etdl.evaluationNew.getId()};
+
+        // the rows match the single evaluation viewable groups checks
+        String[] userIds = {EvalTestDataLoad.MAINT_USER_ID, EvalTestDataLoad.USER_ID, EvalTestDataLoad.STUDENT_USER_ID};
+        for (String userId : userIds) {
+            List<Object[]> rows = evaluationDao.getUserAssignGroupRows(evaluationIds, userId);
+            Assert.assertNotNull(rows);
+            for (Object[] row : rows) {
+                Assert.assertEquals(5, row.length);
+                Assert.assertEquals(etdl.evaluationClosed.getId(), row[0]);
+                String type = (String) row[2];
+                boolean viewable = EvalAssignUser.TYPE_EVALUATEE.equals(type) ? Boolean.TRUE.equals(row[3]) : Boolean.TRUE.equals(row[4]);
+                if (! EvalAssignUser.TYPE_ASSISTANT.equals(type)) {
+                    Set<String> evalGroupIds = evaluationDao.getViewableEvalGroupIds(etdl.evaluationClosed.getId(), type, new String[] {(String) row[1]});
+                    Assert.assertEquals(viewable, evalGroupIds.contains(row[1]));
+                }
+            }
+        }
+        Assert.assertFalse(evaluationDao.getUserAssignGroupRows(evaluationIds, EvalTestDataLoad.MAINT_USER_ID).isEmpty());
+        Assert.assertTrue(evaluationDao.getUserAssignGroupRows(evaluationIds, EvalTestDataLoad.INVALID_USER_ID).isEmpty());
+        Assert.assertTrue(evaluationDao.getUserAssignGroupRows(new Long[] {}, EvalTestDataLoad.MAINT_USER_ID).isEmpty());
+    }
+
+    @Test
+    public void testGetAssignmentStamps() {
+        Long[] evaluationIds = {etdl.evaluationClosed.getId(), etdl.evaluationNew.getId()};
+        Map<Long, String> stamps = evaluationDao.getAssignmentStamps(evaluationIds, EvalTestDataLoad.MAINT_USER_ID);
+        Assert.assertNotNull(stamps);
+        Assert.assertNotNull(stamps.get(etdl.evaluationClosed.getId()));
+        // no groups or assignments
+        Assert.assertNull(stamps.get(etdl.evaluationNew.getId()));
+
+        // the stamp is the same until something changes
+        Assert.assertEquals(stamps, evaluationDao.getAssignmentStamps(evaluationIds, EvalTestDataLoad.MAINT_USER_ID));
+        EvalAssignGroup assignGroup = evaluationDao.findById(EvalAssignGroup.class, etdl.assign3.getId());
+        assignGroup.setLastModified(new Date(assignGroup.getLastModified().getTime() + 60000));
+        evaluationDao.save(assignGroup);
+        Assert.assertFalse(stamps.get(etdl.evaluationClosed.getId()).equals(
+                evaluationDao.getAssignmentStamps(evaluationIds, EvalTestDataLoad.MAINT_USER_ID).get(etdl.evaluationClosed.getId())));
+
+        Assert.assertTrue(evaluationDao.getAssignmentStamps(new Long[] {}, EvalTestDataLoad.MAINT_USER_ID).isEmpty());
+    }
+
     @Test
     public void testGetViewableEvalGroupIds() {
         Set<String> evalGroupIds;
@@ -1734,87 +2109,87 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
     public void testGetConsolidatedEmailMapping() {
 
         // when no emails have been sent, selecting email recipients in any of several ways should return 1 
-        int count = this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        int count = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
         Assert.assertEquals(1, count);
-        int deletions = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(1, deletions);
-        count = this.evaluationDao.selectConsolidatedEmailRecipients(true, new Date(), false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        count = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, true, new Date(), false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
         Assert.assertEquals(1, count);
-        deletions = this.evaluationDao.resetConsolidatedEmailRecipients();
+        deletions = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(1, deletions);
 
         // there should be two new evals ready to send announcements to, selected because the value of availableEmailSent is null
-        int count1 = this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        int count1 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
         Assert.assertEquals(1,count1);
-        List<Map<String,Object>> mapping1 = this.evaluationDao.getConsolidatedEmailMapping(true, 100, 0);
+        List<Map<String,Object>> mapping1 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, null, true, 100, 0);
         Assert.assertNotNull(mapping1);
         Assert.assertEquals(1, mapping1.size());
-        int deletions1 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions1 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(1, deletions1);
 
         // Since those announcements have been sent, there should be none yet to be sent
-        int count2 = this.evaluationDao.selectConsolidatedEmailRecipients(true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        int count2 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
         Assert.assertEquals(0,count2);
-        List<Map<String,Object>> mapping2 = this.evaluationDao.getConsolidatedEmailMapping(true, 100, 0);
+        List<Map<String,Object>> mapping2 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, null, true, 100, 0);
         Assert.assertNotNull(mapping2);
         Assert.assertEquals(0, mapping2.size());
-        int deletions2 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions2 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(0, deletions2);
 
         // if we search for notices to be sent and ignore the date, we should find them again
-        int count3 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        int count3 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, false, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
         Assert.assertEquals(1,count3);
-        List<Map<String,Object>> mapping3 = this.evaluationDao.getConsolidatedEmailMapping(true, 100, 0);
+        List<Map<String,Object>> mapping3 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE, null, true, 100, 0);
         Assert.assertNotNull(mapping3);
         Assert.assertEquals(1, mapping3.size());
-        int deletions3 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions3 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(1, deletions3);
 
         // if we search for evals needing reminders based on whether an announcement or reminder has been sent in the past day, we should find none 
-        int count4 = this.evaluationDao.selectConsolidatedEmailRecipients(true, new Date(), true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        int count4 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, true, new Date(), true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(0,count4);
-        List<Map<String,Object>> mapping4 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
+        List<Map<String,Object>> mapping4 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, null, false, 100, 0);
         Assert.assertNotNull(mapping4);
         Assert.assertEquals(0, mapping4.size());
-        int deletions4 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions4 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(0, deletions4);
 
         // if we search for evals needing reminders based on whether a reminder has been sent in the past day (ignoring when announcements were sent) we find 2
-        int count5 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        int count5 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, false, (Date) null, true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(1,count5);
-        List<Map<String,Object>> mapping5 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
+        List<Map<String,Object>> mapping5 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, null, false, 100, 0);
         Assert.assertNotNull(mapping5);
         Assert.assertEquals(1, mapping5.size());
-        int deletions5 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions5 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(1, deletions5);
 
         // if we do the same search again, we find 0 because they have just been sent 
-        int count6 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        int count6 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, false, (Date) null, true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(0,count6);
-        List<Map<String,Object>> mapping6 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
+        List<Map<String,Object>> mapping6 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, null, false, 100, 0);
         Assert.assertNotNull(mapping6);
         Assert.assertEquals(0, mapping6.size());
-        int deletions6 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions6 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(0, deletions6);
 
         // if we search for evals needing reminders as if it were tomorrow, we should find 1
-        int count7 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        int count7 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(1,count7);
-        List<Map<String,Object>> mapping7 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
+        List<Map<String,Object>> mapping7 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, null, false, 100, 0);
         Assert.assertNotNull(mapping7);
         Assert.assertEquals(1, mapping7.size());
-        int deletions7 = this.evaluationDao.resetConsolidatedEmailRecipients();
+        int deletions7 = this.evaluationDao.resetConsolidatedEmailRecipients(null);
         Assert.assertEquals(1, deletions7);
 
         // if we search for evals needing reminders as if it were tomorrow, we should find 1
-        int count8 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        int count8 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(1,count8);
         List<EvalEmailProcessingData> list = evaluationDao.findBySearch(EvalEmailProcessingData.class, new Search());
         Assert.assertNotNull(list);
         Assert.assertEquals(1,list.size());
 
         // now if we reset the queue and update "completedDate" for the EvalAssignUser associated with that user and eval, we should find no evals needing notifications
-        this.evaluationDao.resetConsolidatedEmailRecipients();
+        this.evaluationDao.resetConsolidatedEmailRecipients(null);
         EvalEmailProcessingData eepd = list.get(0);
         // update EvalAssignUser with completed time
         EvalEvaluation evaluation = evaluationDao.findById(EvalEvaluation.class, eepd.getEvalId());
@@ -1831,13 +2206,63 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         EvalAssignUser eau0 = evaluationDao.findById(EvalAssignUser.class, eau.getId());
         Assert.assertNotNull(eau0);
         Assert.assertNotNull(eau0.getCompletedDate());
-        int count9 = this.evaluationDao.selectConsolidatedEmailRecipients(false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        int count9 = this.evaluationDao.selectConsolidatedEmailRecipients(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, false, (Date) null, true, new Date(System.currentTimeMillis() + MILLISECONDS_PER_DAY), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
         Assert.assertEquals(0,count9);
-        List<Map<String,Object>> mapping9 = this.evaluationDao.getConsolidatedEmailMapping(false, 100, 0);
+        List<Map<String,Object>> mapping9 = this.evaluationDao.getConsolidatedEmailMapping(EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER, null, false, 100, 0);
         Assert.assertNotNull(mapping9);
         Assert.assertEquals(0, mapping9.size());
     }
 
+    @Test
+    public void testSelectConsolidatedEmailRecipientsIncremental() {
+        String availableJob = EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE;
+        String reminderJob = EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER;
+
+        int count = this.evaluationDao.selectConsolidatedEmailRecipients(availableJob, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        Assert.assertEquals(1, count);
+        List<EvalEmailProcessingData> staged = evaluationDao.findBySearch(EvalEmailProcessingData.class, new Search("jobId", availableJob));
+        Assert.assertEquals(1, staged.size());
+        EvalEmailProcessingData data = staged.get(0);
+        Assert.assertEquals(availableJob, data.getJobId());
+        Assert.assertEquals(EvalEmailProcessingData.makeJobPartition(data.getUserId()), data.getJobPartition().intValue());
+
+        // staging again without changes keeps the same record
+        count = this.evaluationDao.selectConsolidatedEmailRecipients(availableJob, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        Assert.assertEquals(1, count);
+        staged = evaluationDao.findBySearch(EvalEmailProcessingData.class, new Search("jobId", availableJob));
+        Assert.assertEquals(1, staged.size());
+        Assert.assertEquals(data.getId(), staged.get(0).getId());
+
+        // another job stages its own records without touching the first job
+        count = this.evaluationDao.selectConsolidatedEmailRecipients(reminderJob, false, (Date) null, true, new Date(), EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_REMINDER);
+        Assert.assertEquals(1, count);
+        Assert.assertEquals(2, evaluationDao.countAll(EvalEmailProcessingData.class));
+        Assert.assertEquals(1, this.evaluationDao.countDistinctGroupsInConsolidatedEmailMapping(availableJob));
+
+        // only the partition holding the user has any mappings
+        int partition = data.getJobPartition();
+        int otherPartition = (partition + 1) % EvalEmailProcessingData.JOB_PARTITIONS;
+        List<Map<String,Object>> mapping = this.evaluationDao.getConsolidatedEmailMapping(availableJob, otherPartition, true, 100, 0);
+        Assert.assertEquals(0, mapping.size());
+        mapping = this.evaluationDao.getConsolidatedEmailMapping(availableJob, partition, true, 100, 0);
+        Assert.assertEquals(1, mapping.size());
+
+        // the announcement was sent so the next run removes the record and leaves the reminder job alone
+        count = this.evaluationDao.selectConsolidatedEmailRecipients(availableJob, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+        Assert.assertEquals(0, count);
+        Assert.assertEquals(1, evaluationDao.countAll(EvalEmailProcessingData.class));
+
+        Assert.assertEquals(1, this.evaluationDao.resetConsolidatedEmailRecipients(reminderJob));
+        Assert.assertEquals(0, evaluationDao.countAll(EvalEmailProcessingData.class));
+
+        try {
+            this.evaluationDao.selectConsolidatedEmailRecipients(null, true, (Date) null, false, (Date) null, EvalConstants.EMAIL_TEMPLATE_CONSOLIDATED_AVAILABLE);
+            Assert.fail("Should have thrown an exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     /**
      * testResponsesSavedInProgress checks to see how many responses have been saved but not submitted
      * for both active and inactive evaluations.  This depends on evaluations being open or closed and 
@@ -1870,6 +2295,75 @@ public class EvaluationDaoImplTest extends AbstractTransactionalJUnit4SpringCont
         Assert.assertEquals(evalClosedResponses.get(0).getId(), responseInactive.getId());
     }
 
+    /**
+     * Test method for the hierarchy rule groups ({@link EvaluationDaoImpl#replaceRuleGroups(Long, String, Set)},
+     * {@link EvaluationDaoImpl#getRuleGroupsForNodes(String[])}, {@link EvaluationDaoImpl#getRuleGroupRuleIds()}
+     * and {@link EvaluationDaoImpl#removeRuleGroups(Long[])})
+     */
+    @Test
+    public void testRuleGroups() {
+        String site3Ref = "/sites/ref-333333";
+        Set<String> groups = new HashSet<>();
+        groups.add(EvalTestDataLoad.SITE1_REF);
+        groups.add(EvalTestDataLoad.SITE2_REF);
+
+        // nothing stored yet
+        Assert.assertEquals(0, evaluationDao.getRuleGroupsForNodes( new String[] {"node1", "node2"} ).size());
+        Assert.assertEquals(0, evaluationDao.getRuleGroupsForNodes( new String[] {} ).size());
+        Assert.assertEquals(0, evaluationDao.getRuleGroupRuleIds().size());
+
+        Assert.assertTrue( evaluationDao.replaceRuleGroups(1L, "node1", groups) );
+        Assert.assertTrue( evaluationDao.replaceRuleGroups(2L, "node1", Collections.singleton(site3Ref)) );
+        Assert.assertTrue( evaluationDao.replaceRuleGroups(3L, "node2", Collections.singleton(EvalTestDataLoad.SITE1_REF)) );
+        Assert.assertEquals(4, evaluationDao.countAll(EvalHierarchyRuleGroup.class));
+
+        Map<String, Set<String>> nodeGroups = evaluationDao.getRuleGroupsForNodes( new String[] {"node1", "node2", "node3"} );
+        Assert.assertEquals(2, nodeGroups.size());
+        Assert.assertEquals(3, nodeGroups.get("node1").size());
+        Assert.assertTrue(nodeGroups.get("node1").contains(site3Ref));
+        Assert.assertEquals(1, nodeGroups.get("node2").size());
+        Assert.assertFalse(nodeGroups.containsKey("node3"));
+
+        Set<Long> ruleIds = evaluationDao.getRuleGroupRuleIds();
+        Assert.assertEquals(3, ruleIds.size());
+        Assert.assertTrue(ruleIds.contains(2L));
+
+        // unchanged groups do not touch the rows
+        Assert.assertFalse( evaluationDao.replaceRuleGroups(1L, "node1", groups) );
+        Assert.assertEquals(4, evaluationDao.countAll(EvalHierarchyRuleGroup.class));
+
+        // changed groups only swap the rows which differ
+        groups.remove(EvalTestDataLoad.SITE2_REF);
+        groups.add(site3Ref);
+        Assert.assertTrue( evaluationDao.replaceRuleGroups(1L, "node1", groups) );
+        Assert.assertEquals(4, evaluationDao.countAll(EvalHierarchyRuleGroup.class));
+        nodeGroups = evaluationDao.getRuleGroupsForNodes( new String[] {"node1"} );
+        Assert.assertEquals(2, nodeGroups.get("node1").size());
+        Assert.assertFalse(nodeGroups.get("node1").contains(EvalTestDataLoad.SITE2_REF));
+
+        // moving the rule to another node moves the groups
+        Assert.assertTrue( evaluationDao.replaceRuleGroups(2L, "node2", Collections.singleton(site3Ref)) );
+        nodeGroups = evaluationDao.getRuleGroupsForNodes( new String[] {"node1", "node2"} );
+        Assert.assertEquals(2, nodeGroups.get("node2").size());
+        Assert.assertTrue(nodeGroups.get("node2").contains(site3Ref));
+
+        // a rule which matches nothing has no rows
+        Assert.assertTrue( evaluationDao.replaceRuleGroups(3L, "node2", new HashSet<String>()) );
+        Assert.assertEquals(1, evaluationDao.getRuleGroupsForNodes( new String[] {"node2"} ).get("node2").size());
+        Assert.assertFalse(evaluationDao.getRuleGroupRuleIds().contains(3L));
+
+        Assert.assertEquals(2, evaluationDao.removeRuleGroups( new Long[] {1L, 4L} ));
+        Assert.assertEquals(0, evaluationDao.removeRuleGroups( new Long[] {} ));
+        Assert.assertEquals(1, evaluationDao.countAll(EvalHierarchyRuleGroup.class));
+
+        try {
+            evaluationDao.replaceRuleGroups(null, "node1", groups);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     /**
      * Add anything that supports the unit tests below here
      */
@@ -16,7 +16,10 @@ package org.sakaiproject.evaluation.logic;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Assert;
@@ -1419,6 +1422,65 @@ public class EvalAuthoringServiceImplTest extends BaseTestEvalLogic {
 
    }
 
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.EvalAuthoringServiceImpl#saveTemplateItemOrder(java.util.Map, java.lang.String)}.
+    */
+   @Test
+   public void testSaveTemplateItemOrder() {
+      // reverse the order of the items in the unused template
+      Map<Long, Integer> orderingMap = new HashMap<>();
+      orderingMap.put(etdl.templateItem1U.getId(), 3);
+      orderingMap.put(etdl.templateItem3U.getId(), 2);
+      orderingMap.put(etdl.templateItem5U.getId(), 1);
+      authoringService.saveTemplateItemOrder(orderingMap, EvalTestDataLoad.MAINT_USER_ID);
+      Assert.assertEquals(3, authoringService.getTemplateItemById(etdl.templateItem1U.getId()).getDisplayOrder().intValue());
+      Assert.assertEquals(2, authoringService.getTemplateItemById(etdl.templateItem3U.getId()).getDisplayOrder().intValue());
+      Assert.assertEquals(1, authoringService.getTemplateItemById(etdl.templateItem5U.getId()).getDisplayOrder().intValue());
+
+      // empty map is ok
+      authoringService.saveTemplateItemOrder(new HashMap<Long, Integer>(), EvalTestDataLoad.MAINT_USER_ID);
+
+      // items from different templates cannot be reordered together
+      orderingMap.put(etdl.templateItem2A.getId(), 4);
+      try {
+         authoringService.saveTemplateItemOrder(orderingMap, EvalTestDataLoad.ADMIN_USER_ID);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+
+      // invalid ids cause failure
+      orderingMap.clear();
+      orderingMap.put(etdl.templateItem1U.getId(), 1);
+      orderingMap.put(EvalTestDataLoad.INVALID_LONG_ID, 2);
+      try {
+         authoringService.saveTemplateItemOrder(orderingMap, EvalTestDataLoad.MAINT_USER_ID);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+
+      // locked templates cannot be reordered
+      orderingMap.clear();
+      orderingMap.put(etdl.templateItem1User.getId(), 2);
+      try {
+         authoringService.saveTemplateItemOrder(orderingMap, EvalTestDataLoad.USER_ID);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalStateException e) {
+         Assert.assertNotNull(e);
+      }
+
+      // users without permissions cannot reorder
+      orderingMap.clear();
+      orderingMap.put(etdl.templateItem1U.getId(), 1);
+      try {
+         authoringService.saveTemplateItemOrder(orderingMap, EvalTestDataLoad.USER_ID);
+         Assert.fail("Should have thrown exception");
+      } catch (SecurityException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
    /**
     * Test method for {@link org.sakaiproject.evaluation.logic.impl.EvalItemsLogicImpl#deleteTemplateItem(java.lang.Long, java.lang.String)}.
     */
@@ -3001,6 +3063,90 @@ public class EvalAuthoringServiceImplTest extends BaseTestEvalLogic {
       }
    }
 
+   /**
+    * Benchmark style test for {@link org.sakaiproject.evaluation.logic.EvalAuthoringServiceImpl#copyTemplate(java.lang.Long, java.lang.String, java.lang.String, boolean, boolean)}
+    * which copies a large (200 template items) template with blocks and checks the block structure is preserved
+    */
+   @Test
+   public void testCopyTemplateLarge() {
+      int blocks = 20;
+      int childrenPerBlock = 5;
+      int standalone = 80;
+      EvalTemplate template = new EvalTemplate(EvalTestDataLoad.ADMIN_USER_ID, EvalConstants.TEMPLATE_TYPE_STANDARD, 
+            "large template", "description", EvalConstants.SHARING_PRIVATE, false, null, null, false, false);
+      evaluationDao.save(template);
+
+      int displayOrder = 1;
+      for (int b = 0; b < blocks; b++) {
+         EvalItem parentItem = new EvalItem(EvalTestDataLoad.ADMIN_USER_ID, "block " + b, EvalConstants.SHARING_PRIVATE, 
+               EvalConstants.ITEM_TYPE_BLOCK_PARENT, false);
+         parentItem.setScale(etdl.scale1);
+         parentItem.setScaleDisplaySetting( EvalConstants.ITEM_SCALE_DISPLAY_STEPPED );
+         evaluationDao.save(parentItem);
+         EvalTemplateItem parent = new EvalTemplateItem(EvalTestDataLoad.ADMIN_USER_ID, template, 
+               parentItem, displayOrder++, EvalConstants.ITEM_CATEGORY_COURSE, EvalConstants.HIERARCHY_LEVEL_TOP,
+               EvalConstants.HIERARCHY_NODE_ID_NONE, null,
+               EvalConstants.ITEM_SCALE_DISPLAY_STEPPED, Boolean.FALSE, false, false, Boolean.TRUE, null, null);
+         evaluationDao.save(parent);
+         for (int c = 0; c < childrenPerBlock; c++) {
+            EvalItem childItem = new EvalItem(EvalTestDataLoad.ADMIN_USER_ID, "block " + b + " child " + c, 
+                  EvalConstants.SHARING_PRIVATE, EvalConstants.ITEM_TYPE_SCALED, false);
+            childItem.setScale(etdl.scale1);
+            childItem.setScaleDisplaySetting( EvalConstants.ITEM_SCALE_DISPLAY_STEPPED );
+            evaluationDao.save(childItem);
+            evaluationDao.save( new EvalTemplateItem(EvalTestDataLoad.ADMIN_USER_ID, template, 
+                  childItem, c + 1, EvalConstants.ITEM_CATEGORY_COURSE, EvalConstants.HIERARCHY_LEVEL_TOP,
+                  EvalConstants.HIERARCHY_NODE_ID_NONE, null,
+                  EvalConstants.ITEM_SCALE_DISPLAY_STEPPED, Boolean.FALSE, false, false, Boolean.FALSE, parent.getId(), null) );
+         }
+      }
+      for (int i = 0; i < standalone; i++) {
+         EvalItem item = new EvalItem(EvalTestDataLoad.ADMIN_USER_ID, "item " + i, 
+               EvalConstants.SHARING_PRIVATE, EvalConstants.ITEM_TYPE_SCALED, false);
+         item.setScale(etdl.scale1);
+         item.setScaleDisplaySetting( EvalConstants.ITEM_SCALE_DISPLAY_FULL );
+         evaluationDao.save(item);
+         evaluationDao.save( new EvalTemplateItem(EvalTestDataLoad.ADMIN_USER_ID, template, 
+               item, displayOrder++, EvalConstants.ITEM_CATEGORY_COURSE, EvalConstants.HIERARCHY_LEVEL_TOP,
+               EvalConstants.HIERARCHY_NODE_ID_NONE, null,
+               EvalConstants.ITEM_SCALE_DISPLAY_FULL, Boolean.FALSE, false, false, null, null, null) );
+      }
+      int total = blocks + (blocks * childrenPerBlock) + standalone;
+
+      long start = System.currentTimeMillis();
+      Long copiedId = authoringService.copyTemplate(template.getId(), null, EvalTestDataLoad.MAINT_USER_ID, false, true);
+      long copyTime = System.currentTimeMillis() - start;
+      log.info("Copied template with " + total + " template items (" + blocks + " blocks) in " + copyTime + " ms");
+      Assert.assertNotNull(copiedId);
+
+      List<EvalTemplateItem> copies = evaluationDao.findBySearch(EvalTemplateItem.class, new Search("template.id", copiedId));
+      Assert.assertEquals(total, copies.size());
+      Set<Long> parentIds = new HashSet<>();
+      Set<Long> scaleIds = new HashSet<>();
+      for (EvalTemplateItem copy : copies) {
+         Assert.assertNotNull(copy.getItem().getCopyOf());
+         Assert.assertEquals(EvalTestDataLoad.MAINT_USER_ID, copy.getItem().getOwner());
+         if (copy.getItem().getScale() != null) {
+            scaleIds.add(copy.getItem().getScale().getId());
+         }
+         if (TemplateItemUtils.isBlockParent(copy)) {
+            parentIds.add(copy.getId());
+         }
+      }
+      Assert.assertEquals(blocks, parentIds.size());
+      // the shared scale is only copied once
+      Assert.assertEquals(1, scaleIds.size());
+      Assert.assertFalse(scaleIds.contains(etdl.scale1.getId()));
+      int children = 0;
+      for (EvalTemplateItem copy : copies) {
+         if (TemplateItemUtils.isBlockChild(copy)) {
+            Assert.assertTrue(parentIds.contains(copy.getBlockId()));
+            children++;
+         }
+      }
+      Assert.assertEquals(blocks * childrenPerBlock, children);
+   }
+
 
    @Test
    public void testGetItemsUsingScale() {
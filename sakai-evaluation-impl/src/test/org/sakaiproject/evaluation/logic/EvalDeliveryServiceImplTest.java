@@ -17,6 +17,9 @@ package org.sakaiproject.evaluation.logic;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -25,14 +28,18 @@ import org.junit.Test;
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.exceptions.ResponseSaveException;
 import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
+import org.sakaiproject.evaluation.logic.model.EvalResponder;
 import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
+import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.test.EvalTestDataLoad;
 import org.sakaiproject.evaluation.test.mocks.MockEvalJobLogic;
 import org.sakaiproject.evaluation.test.mocks.MockExternalHierarchyLogic;
 import org.sakaiproject.evaluation.utils.TemplateItemUtils;
+import org.sakaiproject.genericdao.api.search.Restriction;
+import org.sakaiproject.genericdao.api.search.Search;
 
 
 /**
@@ -98,6 +105,7 @@ public class EvalDeliveryServiceImplTest extends BaseTestEvalLogic {
         evaluationSetupService.setHierarchyLogic(hierarchyLogic);
         evaluationSetupService.setSecurityChecks(securityChecks);
         evaluationSetupService.setSettings(settings);
+        evaluationSetupService.setSearchIndex( (EvalSearchIndex) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSearchIndex") );
 
         // create and setup the object to be tested
         deliveryService = new EvalDeliveryServiceImpl();
@@ -294,6 +302,51 @@ public class EvalDeliveryServiceImplTest extends BaseTestEvalLogic {
 
     }
 
+    /**
+     * Test method for {@link EvalDeliveryServiceImpl#getResponders(Long, String, int, int)}
+     */
+    @Test
+    public void testGetResponders() {
+        List<EvalResponder> l;
+
+        // the roster for an eval includes every evaluator with their response state
+        Search search = new Search("evaluation.id", etdl.evaluationClosed.getId());
+        search.addRestriction( new Restriction("type", EvalAssignUser.TYPE_EVALUATOR) );
+        search.addRestriction( new Restriction("status", EvalAssignUser.STATUS_REMOVED, Restriction.NOT_EQUALS) );
+        int participants = (int) evaluationDao.countBySearch(EvalAssignUser.class, search);
+        l = deliveryService.getResponders(etdl.evaluationClosed.getId(), null, 0, 0);
+        Assert.assertNotNull(l);
+        Assert.assertEquals(participants, l.size());
+        int responded = 0;
+        for (EvalResponder responder : l) {
+            Assert.assertNotNull(responder.user);
+            Assert.assertNotNull(responder.group);
+            Assert.assertEquals(responder.evalGroupId, responder.group.evalGroupId);
+            Assert.assertEquals(responder.userId, responder.user.userId);
+            if (responder.isResponded()) {
+                responded++;
+            }
+        }
+        Assert.assertTrue(responded <= deliveryService.countResponses(etdl.evaluationClosed.getId(), null, null));
+
+        // only one group
+        l = deliveryService.getResponders(etdl.evaluationClosed.getId(), EvalTestDataLoad.SITE1_REF, 0, 0);
+        for (EvalResponder responder : l) {
+            Assert.assertEquals(EvalTestDataLoad.SITE1_REF, responder.evalGroupId);
+        }
+
+        // paging
+        l = deliveryService.getResponders(etdl.evaluationClosed.getId(), null, 0, 1);
+        Assert.assertEquals(Math.min(1, participants), l.size());
+
+        try {
+            deliveryService.getResponders(EvalTestDataLoad.INVALID_LONG_ID, null, 0, 0);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
 
     /**
      * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#countResponses(Long, String)}.
@@ -505,6 +558,62 @@ public class EvalDeliveryServiceImplTest extends BaseTestEvalLogic {
 
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#queuePostSubmissionTask(String, Runnable)}.
+     */
+    @Test
+    public void testQueuePostSubmissionTask() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger(0);
+        Runnable task = new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+
+        // no workers are running so tasks run right away
+        deliveryService.queuePostSubmissionTask("test:1", task);
+        Assert.assertEquals(1, runs.get());
+        deliveryService.queuePostSubmissionTask("test:1", task);
+        Assert.assertEquals(2, runs.get());
+
+        // failures are logged and not thrown
+        deliveryService.queuePostSubmissionTask("test:fail", new Runnable() {
+            public void run() {
+                throw new IllegalStateException("task failed");
+            }
+        });
+
+        // tasks are run by the workers and the same task is only queued once while waiting
+        deliveryService.initiatePostSubmissionExecutor();
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < EvalDeliveryServiceImpl.POST_SUBMISSION_THREADS; i++) {
+            deliveryService.queuePostSubmissionTask("test:block:" + i, new Runnable() {
+                public void run() {
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        Assert.assertTrue( deliveryService.queuePostSubmissionTask("test:2", task) );
+        Assert.assertFalse( deliveryService.queuePostSubmissionTask("test:2", task) );
+        deliveryService.queuePostSubmissionTask("test:3", task);
+        release.countDown();
+        deliveryService.destroy();
+        Assert.assertEquals(4, runs.get());
+
+        // once the workers are shut down tasks run right away and are never left queued
+        deliveryService.queuePostSubmissionTask("test:4", task);
+        deliveryService.queuePostSubmissionTask("test:4", task);
+        Assert.assertEquals(6, runs.get());
+
+        // inside a transaction the work waits for the commit (the test transaction is never committed)
+        deliveryService.runAfterCommit(task);
+        Assert.assertEquals(6, runs.get());
+    }
+
     /**
      * Test method for {@link org.sakaiproject.evaluation.logic.EvalDeliveryServiceImpl#saveResponse(org.sakaiproject.evaluation.model.EvalResponse, String)}.
      */
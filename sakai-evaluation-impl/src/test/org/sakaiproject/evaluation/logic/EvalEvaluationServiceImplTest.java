@@ -15,6 +15,7 @@
 package org.sakaiproject.evaluation.logic;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +27,7 @@ import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.constant.EvalEmailConstants;
 import org.sakaiproject.evaluation.logic.externals.EvalSecurityChecksImpl;
 import org.sakaiproject.evaluation.logic.model.EvalGroup;
+import org.sakaiproject.evaluation.model.EvalAnswer;
 import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalAssignHierarchy;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
@@ -33,6 +35,7 @@ import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
 import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+import org.sakaiproject.genericdao.api.search.Search;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -47,6 +50,7 @@ public class EvalEvaluationServiceImplTest extends BaseTestEvalLogic {
 
     protected EvalEvaluationServiceImpl evaluationService;
     protected EvalSettings settings;
+    protected EvalSearchIndex searchIndex;
 
     // run this before each test starts
     @Before
@@ -73,6 +77,10 @@ public class EvalEvaluationServiceImplTest extends BaseTestEvalLogic {
         evaluationService.setCommonLogic(commonLogic);
         evaluationService.setSecurityChecks(securityChecks);
         evaluationService.setSettings(settings);
+        searchIndex = (EvalSearchIndex) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSearchIndex");
+        evaluationService.setSearchIndex(searchIndex);
+        // the test data is saved directly so it has to be added to the search index
+        searchIndex.indexMissingEvaluations(1000);
 
     }
 
@@ -258,7 +266,87 @@ public class EvalEvaluationServiceImplTest extends BaseTestEvalLogic {
         }
 
         // TODO - add tests for changing state when checked
-    }    
+    }
+
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationServiceImpl#archiveAnswers(java.lang.Long)}.
+     */
+    @Test
+    public void testArchiveAnswers() {
+        Assert.assertEquals(3, evaluationService.archiveAnswers( etdl.evaluationClosed.getId() ) );
+        Assert.assertEquals(0, evaluationService.archiveAnswers( etdl.evaluationClosed.getId() ) );
+        Assert.assertEquals(0, evaluationService.archiveAnswers( etdl.evaluationViewable.getId() ) );
+
+        // evaluations which can still be taken cannot be archived
+        try {
+            evaluationService.archiveAnswers( etdl.evaluationActive.getId() );
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalStateException e) {
+            Assert.assertNotNull(e);
+        }
+        Assert.assertTrue( evaluationDao.countBySearch(EvalAnswer.class, 
+                new Search("response.evaluation.id", etdl.evaluationActive.getId())) > 0 );
+
+        try {
+            evaluationService.archiveAnswers( etdl.evaluationNew.getId() );
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalStateException e) {
+            Assert.assertNotNull(e);
+        }
+
+        try {
+            evaluationService.archiveAnswers( EvalTestDataLoad.INVALID_LONG_ID );
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationServiceImpl#getCurrentEvaluationState(EvalEvaluation)}
+     * and {@link org.sakaiproject.evaluation.logic.EvalEvaluationServiceImpl#processQueuedStateRepairs()}
+     */
+    @Test
+    public void testGetCurrentEvaluationState() {
+        // states which are already correct are not queued
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_ACTIVE,
+                evaluationService.getCurrentEvaluationState( evaluationService.getEvaluationById(etdl.evaluationActive.getId()) ) );
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_VIEWABLE,
+                evaluationService.getCurrentEvaluationState( evaluationService.getEvaluationById(etdl.evaluationViewable.getId()) ) );
+        Assert.assertTrue( evaluationService.processQueuedStateRepairs().isEmpty() );
+
+        // make the stored state wrong
+        EvalEvaluation eval = evaluationService.getEvaluationById(etdl.evaluationActive.getId());
+        eval.setState(EvalConstants.EVALUATION_STATE_INQUEUE);
+        evaluationDao.update(eval);
+
+        // reading the state does not change the evaluation
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_ACTIVE, evaluationService.getCurrentEvaluationState(eval) );
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_INQUEUE, eval.getState() );
+        // queueing more than once still only repairs it once
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_ACTIVE, evaluationService.getCurrentEvaluationState(eval) );
+
+        List<Long> repaired = evaluationService.processQueuedStateRepairs();
+        Assert.assertEquals(1, repaired.size());
+        Assert.assertEquals(etdl.evaluationActive.getId(), repaired.get(0));
+        eval = evaluationService.getEvaluationById(etdl.evaluationActive.getId());
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_ACTIVE, eval.getState() );
+
+        // queue is empty now
+        Assert.assertTrue( evaluationService.processQueuedStateRepairs().isEmpty() );
+
+        // special states are never changed
+        EvalEvaluation deleted = evaluationService.getEvaluationById(etdl.evaluationDeleted.getId());
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_DELETED, evaluationService.getCurrentEvaluationState(deleted) );
+        Assert.assertTrue( evaluationService.processQueuedStateRepairs().isEmpty() );
+
+        try {
+            evaluationService.getCurrentEvaluationState(null);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
 
     @SuppressWarnings("deprecation")
     @Test
@@ -1444,9 +1532,10 @@ public class EvalEvaluationServiceImplTest extends BaseTestEvalLogic {
     @Test
 	public void testCountEvaluations()
 	{
+		// matches the start of words so this also finds the evaluation_* titles
 		String searchString01 = "Eval";
 		int count01 = this.evaluationService.countEvaluations(searchString01);
-		Assert.assertEquals(11,count01);
+		Assert.assertEquals(21,count01);
 		
 		String searchString02 = "active";
 		int count02 = this.evaluationService.countEvaluations(searchString02);
@@ -1455,8 +1544,59 @@ public class EvalEvaluationServiceImplTest extends BaseTestEvalLogic {
 		String searchString03 = "No evaluation found";
 		int count03 = this.evaluationService.countEvaluations(searchString03);
 		Assert.assertEquals(0,count03);
-		
-		
+
+		// all the words have to match
+		Assert.assertEquals(1, this.evaluationService.countEvaluations("eval ACTIVE not"));
+		Assert.assertEquals(1, this.evaluationService.countEvaluations("closed untaken"));
+
+		// owner display names and ids are also searched
+		Assert.assertEquals(5, this.evaluationService.countEvaluations("Administrator"));
+		List<EvalEvaluation> byId = this.evaluationService.getEvaluations(etdl.evaluationActive.getId().toString(), "title", 0, 0);
+		Set<Long> byIdIds = new HashSet<>();
+		for (EvalEvaluation eval : byId) {
+			byIdIds.add(eval.getId());
+		}
+		Assert.assertTrue(byIdIds.contains(etdl.evaluationActive.getId()));
+
+		// changes are indexed when the evaluation is indexed again
+		etdl.evaluationViewable.setTitle("Renamed viewable");
+		evaluationDao.save(etdl.evaluationViewable);
+		searchIndex.indexEvaluation(etdl.evaluationViewable);
+		Assert.assertEquals(20, this.evaluationService.countEvaluations("eval"));
+		Assert.assertEquals(1, this.evaluationService.countEvaluations("renam"));
+
+		// and removed with the evaluation
+		searchIndex.removeEvaluation(etdl.evaluationViewable.getId());
+		Assert.assertEquals(0, this.evaluationService.countEvaluations("renamed"));
+
+		// blank searches count everything
+		Assert.assertEquals(evaluationDao.countAll(EvalEvaluation.class), this.evaluationService.countEvaluations(""));
+	}
+
+    @Test
+	public void testCountEvaluationsByGroupTitle() {
+		List<EvalAssignGroup> assignGroups = evaluationDao.findBySearch(EvalAssignGroup.class, 
+				new Search("evalGroupId", EvalTestDataLoad.SITE1_REF));
+		Set<Long> evalIds = new HashSet<>();
+		for (EvalAssignGroup assignGroup : assignGroups) {
+			evalIds.add(assignGroup.getEvaluation().getId());
+		}
+		Assert.assertTrue(evalIds.size() > 0);
+
+		// group ids and titles are searched
+		Assert.assertEquals(evalIds.size(), this.evaluationService.countEvaluationsByGroupTitle("111111"));
+		Assert.assertEquals(evalIds.size(), this.evaluationService.countEvaluationsByGroupTitle("site1 tit"));
+		List<EvalEvaluation> evals = this.evaluationService.getEvaluationsByGroupTitle("site1", "title", 0, 0);
+		Assert.assertEquals(evalIds.size(), evals.size());
+		for (EvalEvaluation eval : evals) {
+			Assert.assertTrue(evalIds.contains(eval.getId()));
+		}
+		// paging is applied in the query
+		Assert.assertEquals(1, this.evaluationService.getEvaluationsByGroupTitle("site1", "title", 0, 1).size());
+
+		// titles are not group tokens
+		Assert.assertEquals(0, this.evaluationService.countEvaluationsByGroupTitle("eval"));
+		Assert.assertEquals(0, this.evaluationService.countEvaluationsByGroupTitle(""));
 	}
 	
 	public void testGetEvaluationsForEvalGroups(){
@@ -1485,14 +1625,17 @@ public class EvalEvaluationServiceImplTest extends BaseTestEvalLogic {
 		List<EvalEvaluation> list02 = this.evaluationService.getEvaluations(searchString, order, 4, 5);
 		Assert.assertEquals(5, list02.size());
 		
-		List<EvalEvaluation> list03 = this.evaluationService.getEvaluations(searchString, order, 8, 5);
+		List<EvalEvaluation> list03 = this.evaluationService.getEvaluations(searchString, order, 18, 5);
 		Assert.assertEquals(3, list03.size());
 		
 		List<EvalEvaluation> list04 = this.evaluationService.getEvaluations(searchString, order, 0, 25);
-		Assert.assertEquals(11, list04.size());
+		Assert.assertEquals(21, list04.size());
 
 		List<EvalEvaluation> list05 = this.evaluationService.getEvaluations(searchString, order, 4, 25);
-		Assert.assertEquals(7, list05.size());
+		Assert.assertEquals(17, list05.size());
+		// pages do not overlap and are in title order
+		Assert.assertEquals(list04.get(4).getId(), list02.get(0).getId());
+		Assert.assertEquals(list04.get(18).getId(), list03.get(0).getId());
 	}
 
 }
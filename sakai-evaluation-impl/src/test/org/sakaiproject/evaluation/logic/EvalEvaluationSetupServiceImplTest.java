@@ -14,8 +14,12 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -30,6 +34,7 @@ import org.sakaiproject.evaluation.model.EvalAssignGroup;
 import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEmailTemplate;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.model.EvalTemplate;
 import org.sakaiproject.evaluation.test.EvalTestDataLoad;
 import org.sakaiproject.evaluation.test.mocks.MockEvalJobLogic;
@@ -102,6 +107,7 @@ public class EvalEvaluationSetupServiceImplTest extends BaseTestEvalLogic {
         evaluationSetupService.setEmails(emailsLogicImpl);
         evaluationSetupService.setAuthoringService(authoringServiceImpl);
         evaluationSetupService.setEvalBeanUtils(evalBeanUtils);
+        evaluationSetupService.setSearchIndex( (EvalSearchIndex) applicationContext.getBean("org.sakaiproject.evaluation.logic.EvalSearchIndex") );
 
     }
 
@@ -417,6 +423,51 @@ public class EvalEvaluationSetupServiceImplTest extends BaseTestEvalLogic {
 
     }
 
+    /**
+     * Test method for {@link EvalEvaluationSetupServiceImpl#deleteEvaluations(Long[], boolean, String)}
+     */
+    @Test
+    public void testDeleteEvaluations() {
+        Long[] evalIds = new Long[] {etdl.evaluationNewAdmin.getId(), etdl.evaluationClosedUntaken.getId(), 
+                etdl.evaluationClosed.getId(), EvalTestDataLoad.INVALID_LONG_ID};
+
+        // cannot remove evaluations which are not owned
+        try {
+            evaluationSetupService.deleteEvaluations(evalIds, false, EvalTestDataLoad.MAINT_USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (SecurityException e) {
+            Assert.assertNotNull(e);
+        }
+
+        // remove the batch, the eval with responses is only marked as deleted
+        long countResponses = evaluationDao.countBySearch(EvalResponse.class, 
+                new Search("evaluation.id", etdl.evaluationClosed.getId()) );
+        Assert.assertTrue(countResponses > 0);
+        int deleted = evaluationSetupService.deleteEvaluations(evalIds, false, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals(3, deleted);
+        Assert.assertNull( evaluationService.getEvaluationById(etdl.evaluationNewAdmin.getId()) );
+        Assert.assertNull( evaluationService.getEvaluationById(etdl.evaluationClosedUntaken.getId()) );
+        Assert.assertEquals(0, evaluationDao.countBySearch(EvalAssignGroup.class, 
+                new Search("evaluation.id", etdl.evaluationNewAdmin.getId()) ) );
+        EvalEvaluation deletedEval = evaluationService.getEvaluationById(etdl.evaluationClosed.getId());
+        Assert.assertNotNull( deletedEval );
+        Assert.assertEquals(EvalConstants.EVALUATION_STATE_DELETED, deletedEval.getState());
+        Assert.assertEquals(countResponses, evaluationDao.countBySearch(EvalResponse.class, 
+                new Search("evaluation.id", etdl.evaluationClosed.getId()) ) );
+
+        // removing the responses removes the deleted eval completely
+        deleted = evaluationSetupService.deleteEvaluations(new Long[] {etdl.evaluationClosed.getId()}, true, EvalTestDataLoad.ADMIN_USER_ID);
+        Assert.assertEquals(1, deleted);
+        Assert.assertNull( evaluationDao.findById(EvalEvaluation.class, etdl.evaluationClosed.getId()) );
+        Assert.assertEquals(0, evaluationDao.countBySearch(EvalResponse.class, 
+                new Search("evaluation.id", etdl.evaluationClosed.getId()) ) );
+
+        // nothing to remove
+        Assert.assertEquals(0, evaluationSetupService.deleteEvaluations(new Long[] {}, true, EvalTestDataLoad.ADMIN_USER_ID));
+        Assert.assertEquals(0, evaluationSetupService.deleteEvaluations(
+                new Long[] {EvalTestDataLoad.INVALID_LONG_ID}, false, EvalTestDataLoad.ADMIN_USER_ID));
+    }
+
     @Test
     public void testCloseEvaluation() {
         EvalEvaluation eval;
@@ -538,7 +589,59 @@ public class EvalEvaluationSetupServiceImplTest extends BaseTestEvalLogic {
         Assert.assertTrue(ids.contains( etdl.evaluationActiveUntaken.getId() ));
         Assert.assertTrue(ids.contains( etdl.evaluationGracePeriod.getId() ));
     }
-    
+
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationSetupServiceImpl#getEvaluationsForUser(String, Boolean, Boolean, Boolean)}
+     * when the user can see hundreds of evaluations
+     */
+    @Test
+    public void testGetEvaluationsForUserManyEvals() {
+        int untakenBefore = evaluationSetupService.getEvaluationsForUser(EvalTestDataLoad.USER_ID, true, true, null).size();
+        int takenBefore = evaluationSetupService.getEvaluationsForUser(EvalTestDataLoad.USER_ID, true, false, null).size();
+
+        // 300 active evals in a group the user is in, the user has responded to every third one
+        Set<Long> takenIds = new HashSet<>();
+        Set<Long> untakenIds = new HashSet<>();
+        for (int i = 0; i < 300; i++) {
+            EvalEvaluation eval = new EvalEvaluation(EvalConstants.EVALUATION_TYPE_EVALUATION, EvalTestDataLoad.MAINT_USER_ID, "Many evals " + i, null,
+                    etdl.yesterday, etdl.tomorrow, null, null, false, null, false, null,
+                    EvalConstants.EVALUATION_STATE_ACTIVE, EvalConstants.SHARING_VISIBLE, EvalConstants.INSTRUCTOR_REQUIRED, 1, null, null, null, null,
+                    etdl.templatePublic, null, Boolean.TRUE, Boolean.FALSE, Boolean.FALSE,
+                    EvalTestDataLoad.UNLOCKED, EvalConstants.EVALUATION_AUTHCONTROL_AUTH_REQ, null, null);
+            evaluationDao.save(eval);
+            evaluationDao.save( new EvalAssignGroup( EvalTestDataLoad.MAINT_USER_ID, EvalTestDataLoad.SITE1_REF, EvalConstants.GROUP_TYPE_SITE,
+                    eval, Boolean.TRUE, Boolean.TRUE, Boolean.FALSE) );
+            if (i % 3 == 0) {
+                // one saved and one submitted response, both count as taken
+                evaluationDao.save( new EvalResponse(EvalTestDataLoad.USER_ID, EvalTestDataLoad.SITE1_REF, eval,
+                        new Date(), (i % 2 == 0 ? new Date() : null), null) );
+                takenIds.add(eval.getId());
+            } else {
+                untakenIds.add(eval.getId());
+            }
+        }
+
+        List<EvalEvaluation> evals = evaluationSetupService.getEvaluationsForUser(EvalTestDataLoad.USER_ID, true, true, null);
+        Assert.assertEquals(untakenBefore + 200, evals.size());
+        List<Long> ids = EvalTestDataLoad.makeIdList(evals);
+        Assert.assertTrue(ids.containsAll(untakenIds));
+        for (Long takenId : takenIds) {
+            Assert.assertFalse(ids.contains(takenId));
+        }
+
+        evals = evaluationSetupService.getEvaluationsForUser(EvalTestDataLoad.USER_ID, true, false, null);
+        Assert.assertEquals(takenBefore + 100, evals.size());
+        ids = EvalTestDataLoad.makeIdList(evals);
+        Assert.assertTrue(ids.containsAll(takenIds));
+        for (Long untakenId : untakenIds) {
+            Assert.assertFalse(ids.contains(untakenId));
+        }
+
+        // taken and untaken together are everything
+        evals = evaluationSetupService.getEvaluationsForUser(EvalTestDataLoad.USER_ID, true, null, null);
+        Assert.assertEquals(untakenBefore + takenBefore + 300, evals.size());
+    }
+
     /**
      * Test method for getEvaluationsForEvaluatee
      */
@@ -936,6 +1039,64 @@ public class EvalEvaluationSetupServiceImplTest extends BaseTestEvalLogic {
 
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationSetupServiceImpl#saveAssignGroups(java.lang.Long, java.util.Collection, java.lang.String)}.
+     */
+    @Test
+    public void testSaveAssignGroups() {
+        Long evaluationId = etdl.evaluationClosed.getId();
+
+        // test modify selection settings for several groups at once
+        EvalAssignGroup testEac3 = (EvalAssignGroup) evaluationDao.findById( EvalAssignGroup.class, etdl.assign3.getId() );
+        EvalAssignGroup testEac4 = (EvalAssignGroup) evaluationDao.findById( EvalAssignGroup.class, etdl.assign4.getId() );
+        testEac3.setSelectionOption(EvalAssignGroup.SELECTION_TYPE_INSTRUCTOR, EvalAssignGroup.SELECTION_OPTION_ONE);
+        testEac4.setSelectionOption(EvalAssignGroup.SELECTION_TYPE_ASSISTANT, EvalAssignGroup.SELECTION_OPTION_MULTIPLE);
+        evaluationSetupService.saveAssignGroups(evaluationId, Arrays.asList(testEac3, testEac4), EvalTestDataLoad.MAINT_USER_ID);
+
+        EvalAssignGroup check = (EvalAssignGroup) evaluationDao.findById( EvalAssignGroup.class, etdl.assign3.getId() );
+        Assert.assertEquals(EvalAssignGroup.SELECTION_OPTION_ONE, check.getSelectionOptions().get(EvalAssignGroup.SELECTION_TYPE_INSTRUCTOR));
+        check = (EvalAssignGroup) evaluationDao.findById( EvalAssignGroup.class, etdl.assign4.getId() );
+        Assert.assertEquals(EvalAssignGroup.SELECTION_OPTION_MULTIPLE, check.getSelectionOptions().get(EvalAssignGroup.SELECTION_TYPE_ASSISTANT));
+
+        // nothing to save is ok
+        evaluationSetupService.saveAssignGroups(evaluationId, new ArrayList<EvalAssignGroup>(), EvalTestDataLoad.MAINT_USER_ID);
+
+        // test cannot create new groups with this
+        try {
+            evaluationSetupService.saveAssignGroups(evaluationId, Arrays.asList( new EvalAssignGroup(
+                    EvalTestDataLoad.MAINT_USER_ID, EvalTestDataLoad.SITE1_REF, 
+                    EvalConstants.GROUP_TYPE_SITE, etdl.evaluationClosed, Boolean.FALSE, Boolean.TRUE, 
+                    Boolean.FALSE) ), EvalTestDataLoad.MAINT_USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+
+        // test cannot update groups from another eval
+        EvalAssignGroup testEac1 = (EvalAssignGroup) evaluationDao.findById( EvalAssignGroup.class, etdl.assign1.getId() );
+        try {
+            evaluationSetupService.saveAssignGroups(evaluationId, Arrays.asList(testEac1), EvalTestDataLoad.MAINT_USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+
+        // test user without perm cannot update groups
+        try {
+            evaluationSetupService.saveAssignGroups(evaluationId, Arrays.asList(testEac3), EvalTestDataLoad.USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (SecurityException e) {
+            Assert.assertNotNull(e);
+        }
+
+        try {
+            evaluationSetupService.saveAssignGroups(null, Arrays.asList(testEac3), EvalTestDataLoad.MAINT_USER_ID);
+            Assert.fail("Should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            Assert.assertNotNull(e);
+        }
+    }
+
     /**
      * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationSetupServiceImpl#deleteAssignGroup(java.lang.Long, java.lang.String)}.
      */
@@ -1140,6 +1301,72 @@ public class EvalEvaluationSetupServiceImplTest extends BaseTestEvalLogic {
         Assert.assertTrue(currentAssign.size() == 2);
     }
 
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationSetupServiceImpl#synchronizeUserAssignmentsForced(EvalEvaluation, String, boolean)}.
+     */
+    @Test
+    public void testSynchronizeUserAssignmentsForced() {
+        EvalEvaluation evaluation = etdl.evaluationNewAdmin;
+        Long evaluationId = evaluation.getId();
+        List<Long> changed;
+
+        // bring the assignments in line with the group membership first
+        evaluationSetupService.synchronizeUserAssignmentsForced(evaluation, null, true);
+        List<Object[]> rows = evaluationDao.getEvalAssignUserRows(evaluationId, null);
+        int synced = rows.size();
+        Assert.assertTrue(synced > 0);
+        Long keptId = null;
+        for (Object[] row : rows) {
+            if (EvalTestDataLoad.USER_ID.equals(row[1]) && EvalTestDataLoad.SITE1_REF.equals(row[2])
+                    && EvalAssignUser.TYPE_EVALUATOR.equals(row[3])) {
+                keptId = (Long) row[0];
+            }
+        }
+        Assert.assertNotNull(keptId);
+
+        // nothing changes when the assignments already match
+        changed = evaluationSetupService.synchronizeUserAssignmentsForced(evaluation, null, true);
+        Assert.assertEquals(0, changed.size());
+        Assert.assertEquals(synced, evaluationDao.getEvalAssignUserRows(evaluationId, null).size());
+
+        // a duplicate linked row, a user who lost the permission and a user in a group which is not assigned
+        EvalAssignUser duplicate = new EvalAssignUser(EvalTestDataLoad.USER_ID, EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.ADMIN_USER_ID,
+                EvalAssignUser.TYPE_EVALUATOR, EvalAssignUser.STATUS_LINKED, evaluation, null);
+        EvalAssignUser stale = new EvalAssignUser("sync-stale-user", EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.ADMIN_USER_ID,
+                EvalAssignUser.TYPE_EVALUATOR, EvalAssignUser.STATUS_LINKED, evaluation, null);
+        EvalAssignUser orphan = new EvalAssignUser("sync-orphan-user", "/site/sync-orphan", EvalTestDataLoad.ADMIN_USER_ID,
+                EvalAssignUser.TYPE_EVALUATOR, EvalAssignUser.STATUS_LINKED, evaluation, null);
+        evaluationDao.saveEvalAssignUsers(Arrays.asList(duplicate, stale, orphan));
+        Assert.assertEquals(synced + 3, evaluationDao.getEvalAssignUserRows(evaluationId, null).size());
+
+        // without remove only the orphaned assignment goes
+        changed = evaluationSetupService.synchronizeUserAssignmentsForced(evaluation, null, false);
+        Assert.assertEquals(1, changed.size());
+        Assert.assertTrue(changed.contains(orphan.getId()));
+        Assert.assertEquals(synced + 2, evaluationDao.getEvalAssignUserRows(evaluationId, null).size());
+
+        // with remove the duplicate and the stale assignment go as well but the original stays
+        changed = evaluationSetupService.synchronizeUserAssignmentsForced(evaluation, null, true);
+        Assert.assertEquals(2, changed.size());
+        Assert.assertTrue(changed.contains(duplicate.getId()));
+        Assert.assertTrue(changed.contains(stale.getId()));
+        rows = evaluationDao.getEvalAssignUserRows(evaluationId, null);
+        Assert.assertEquals(synced, rows.size());
+        Set<Long> remainingIds = new HashSet<>();
+        for (Object[] row : rows) {
+            remainingIds.add((Long) row[0]);
+        }
+        Assert.assertTrue(remainingIds.contains(keptId));
+
+        // a user with an unlinked assignment is left alone
+        EvalAssignUser unlinked = new EvalAssignUser("sync-unlinked-user", EvalTestDataLoad.SITE1_REF, EvalTestDataLoad.ADMIN_USER_ID,
+                EvalAssignUser.TYPE_EVALUATOR, EvalAssignUser.STATUS_UNLINKED, evaluation, null);
+        evaluationDao.saveEvalAssignUsers(Arrays.asList(unlinked));
+        changed = evaluationSetupService.synchronizeUserAssignmentsForced(evaluation, null, true);
+        Assert.assertEquals(0, changed.size());
+        Assert.assertEquals(synced + 1, evaluationDao.getEvalAssignUserRows(evaluationId, null).size());
+    }
+
     /**
      * Test method for {@link org.sakaiproject.evaluation.logic.EvalEvaluationSetupServiceImpl#synchronizeUserAssignments(java.lang.Long, java.lang.String)}.
      */
@@ -178,4 +178,30 @@ public class EvalSettingsImplTest extends BaseTestEvalLogic {
 
 	}
 
+	/**
+	 * Test method for {@link org.sakaiproject.evaluation.logic.EvalSettingsImpl#reloadIfChanged()}.
+	 */
+	@Test
+	public void testReloadIfChanged() {
+		// load the snapshot on a second instance (like another server)
+		EvalSettingsImpl otherSettings = new EvalSettingsImpl();
+		otherSettings.setDao(evaluationDao);
+		otherSettings.setExternalLogic(externalLogic);
+		Assert.assertEquals(TEST_VALUE1, otherSettings.get(TEST_CONSTANT1));
+
+		// nothing changed so no reload
+		Assert.assertFalse(otherSettings.reloadIfChanged());
+
+		// change the setting here, the other one still has the old snapshot
+		Assert.assertEquals(true, evalSettings.set(TEST_CONSTANT1, TEST_VALUE2));
+		Assert.assertEquals(TEST_VALUE2, evalSettings.get(TEST_CONSTANT1));
+		Assert.assertEquals(TEST_VALUE1, otherSettings.get(TEST_CONSTANT1));
+
+		// the version changed so the other one reloads
+		Assert.assertTrue(otherSettings.reloadIfChanged());
+		Assert.assertEquals(TEST_VALUE2, otherSettings.get(TEST_CONSTANT1));
+		Assert.assertFalse(otherSettings.reloadIfChanged());
+		Assert.assertFalse(evalSettings.reloadIfChanged());
+	}
+
 }
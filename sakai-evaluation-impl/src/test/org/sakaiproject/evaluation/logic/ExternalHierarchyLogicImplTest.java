@@ -14,9 +14,20 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogicImpl;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyTree;
+import org.sakaiproject.evaluation.test.EvalTestDataLoad;
+import org.sakaiproject.evaluation.test.mocks.MockExternalHierarchyLogic;
 
 
 /**
@@ -172,4 +183,59 @@ public class ExternalHierarchyLogicImplTest extends BaseTestEvalLogic {
 //      Assert.fail("Not yet implemented");
    }
 
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.model.EvalHierarchyTree}
+    */
+   @Test
+   public void testGetHierarchyTree() {
+      MockExternalHierarchyLogic mockHierarchy = new MockExternalHierarchyLogic();
+      Map<String, Integer> ruleCounts = new HashMap<>();
+      ruleCounts.put(mockHierarchy.child.id, 2);
+      Map<String, Integer> userCounts = new HashMap<>();
+      userCounts.put(mockHierarchy.root.id, 3);
+      Set<String> childGroups = new HashSet<>();
+      childGroups.add(EvalTestDataLoad.SITE1_REF);
+      Map<String, Set<String>> nodeGroups = new HashMap<>();
+      nodeGroups.put(mockHierarchy.child.id, childGroups);
+
+      EvalHierarchyTree tree = new EvalHierarchyTree(5, mockHierarchy.root, mockHierarchy.getChildNodes(mockHierarchy.root.id, false), 
+            nodeGroups, ruleCounts, userCounts);
+      Assert.assertEquals(5, tree.getVersion());
+      Assert.assertEquals(mockHierarchy.root.id, tree.getRootNode().id);
+      Assert.assertEquals(2, tree.getNodeIds().size());
+
+      List<EvalHierarchyNode> children = tree.getChildNodes(mockHierarchy.root.id);
+      Assert.assertEquals(1, children.size());
+      Assert.assertEquals(mockHierarchy.child.id, children.get(0).id);
+      Assert.assertEquals(0, tree.getChildNodes("invalid-node").size());
+
+      Assert.assertEquals(1, tree.countEvalGroupsForNode(mockHierarchy.child.id));
+      Assert.assertTrue(tree.getEvalGroupsForNode(mockHierarchy.child.id).contains(EvalTestDataLoad.SITE1_REF));
+      Assert.assertEquals(0, tree.countEvalGroupsForNode(mockHierarchy.root.id));
+      Assert.assertEquals(2, tree.countRulesForNode(mockHierarchy.child.id));
+      Assert.assertEquals(0, tree.countRulesForNode(mockHierarchy.root.id));
+      Assert.assertEquals(3, tree.countUsersForNode(mockHierarchy.root.id));
+      Assert.assertEquals(0, tree.countUsersForNode(mockHierarchy.child.id));
+
+      // the snapshot is not affected by later changes to the inputs
+      childGroups.add(EvalTestDataLoad.SITE2_REF);
+      mockHierarchy.root.title = "changed";
+      Assert.assertEquals(1, tree.countEvalGroupsForNode(mockHierarchy.child.id));
+      Assert.assertEquals("root", tree.getRootNode().title);
+
+      // and the snapshot cannot be changed
+      try {
+         tree.getRootNode().parentNodeIds.add("1234");
+         Assert.fail("Should have thrown exception");
+      } catch (UnsupportedOperationException e) {
+         Assert.assertNotNull(e);
+      }
+      try {
+         tree.getEvalGroupsForNode(mockHierarchy.child.id).clear();
+         Assert.fail("Should have thrown exception");
+      } catch (UnsupportedOperationException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
 }
@@ -14,6 +14,10 @@
  */
 package org.sakaiproject.evaluation.logic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.After;
@@ -380,6 +384,54 @@ public class ReportingPermissionsImplTest extends BaseTestEvalLogic {
 
    }
 
+   @Test
+   public void testGetResultsViewableEvalGroupIdsForUser() {
+      List<EvalEvaluation> evaluations = Arrays.asList(etdl.evaluationActive, etdl.evaluationClosed, etdl.evaluationViewable);
+      String[] userIds = {EvalTestDataLoad.ADMIN_USER_ID, EvalTestDataLoad.MAINT_USER_ID, EvalTestDataLoad.USER_ID};
+
+      // a second copy which does not cache to compare against
+      ReportingPermissionsImpl uncached = new ReportingPermissionsImpl();
+      uncached.setDao(evaluationDao);
+      uncached.setEvalBeanUtils((EvalBeanUtils) applicationContext.getBean("org.sakaiproject.evaluation.beans.EvalBeanUtils"));
+      uncached.setEvalSettings(settings);
+      uncached.setEvaluationService(evaluationService);
+      uncached.setCommonLogic(commonLogic);
+      uncached.setViewableGroupsCacheTTL(0);
+
+      settings.set(EvalSettings.INSTRUCTOR_ALLOWED_VIEW_RESULTS, null);
+      settings.set(EvalSettings.STUDENT_ALLOWED_VIEW_RESULTS, null);
+
+      // the batch results match the single evaluation checks
+      for (String userId : userIds) {
+         externalLogicMock.setCurrentUserId(userId);
+         Map<Long, Set<String>> viewable = reportingPermissions.getResultsViewableEvalGroupIdsForUser(evaluations, userId);
+         Assert.assertEquals(3, viewable.size());
+         for (EvalEvaluation evaluation : evaluations) {
+            Assert.assertEquals(uncached.getResultsViewableEvalGroupIdsForCurrentUser(evaluation), viewable.get(evaluation.getId()));
+         }
+         // cached results are the same
+         Assert.assertEquals(viewable, reportingPermissions.getResultsViewableEvalGroupIdsForUser(evaluations, userId));
+      }
+
+      // changing the settings invalidates the cached results
+      settings.set(EvalSettings.INSTRUCTOR_ALLOWED_VIEW_RESULTS, false);
+      settings.set(EvalSettings.STUDENT_ALLOWED_VIEW_RESULTS, false);
+      for (String userId : userIds) {
+         Assert.assertEquals(uncached.getResultsViewableEvalGroupIdsForUser(evaluations, userId),
+               reportingPermissions.getResultsViewableEvalGroupIdsForUser(evaluations, userId));
+      }
+
+      // nothing to check
+      Assert.assertTrue(reportingPermissions.getResultsViewableEvalGroupIdsForUser(new ArrayList<EvalEvaluation>(), EvalTestDataLoad.USER_ID).isEmpty());
+
+      try {
+         reportingPermissions.getResultsViewableEvalGroupIdsForUser(evaluations, null);
+         Assert.fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         Assert.assertNotNull(e);
+      }
+   }
+
    @Test
    public void testChooseGroupsPartialCheckLong() {
       // NOTE: this is a passthrough to the other method so just test that it works
@@ -0,0 +1,196 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.externals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing out the cache of the groups for a user and its invalidation
+ */
+public class EvalUserGroupsCacheTest extends TestCase {
+
+   private static final String PERM = "eval.take.evaluation";
+   private static final String OTHER_PERM = "eval.be.evaluated";
+
+   private EvalUserGroupsCache<String> cache;
+
+   @Override
+   protected void setUp() throws Exception {
+      cache = new EvalUserGroupsCache<>();
+   }
+
+   private static Set<String> sites(String... siteIds) {
+      return new HashSet<>(Arrays.asList(siteIds));
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.externals.EvalUserGroupsCache#get(String, String)}.
+    */
+   public void testGetPut() {
+      assertNull(cache.get("user1", PERM));
+      cache.put("user1", PERM, sites("site1", "site2"), "user1-take");
+      cache.put("user1", OTHER_PERM, sites("site1"), "user1-be");
+      cache.put("user2", PERM, null, "user2-take");
+      assertEquals(3, cache.size());
+      assertEquals("user1-take", cache.get("user1", PERM));
+      assertEquals("user1-be", cache.get("user1", OTHER_PERM));
+      assertEquals("user2-take", cache.get("user2", PERM));
+      assertNull(cache.get("user2", OTHER_PERM));
+
+      // replacing an entry does not add one
+      cache.put("user1", PERM, sites("site1"), "user1-take2");
+      assertEquals(3, cache.size());
+      assertEquals("user1-take2", cache.get("user1", PERM));
+
+      cache.clear();
+      assertEquals(0, cache.size());
+      assertNull(cache.get("user1", PERM));
+   }
+
+   /**
+    * Test the ttl and disabling the cache
+    */
+   public void testTtl() throws InterruptedException {
+      assertEquals(EvalUserGroupsCache.DEFAULT_TTL, cache.getTtl());
+      cache.setTtl(1);
+      cache.put("user1", PERM, sites("site1"), "user1-take");
+      Thread.sleep(20);
+      assertNull(cache.get("user1", PERM));
+      assertEquals(0, cache.size());
+
+      // 0 turns off the cache
+      cache.setTtl(EvalUserGroupsCache.DEFAULT_TTL);
+      cache.put("user1", PERM, sites("site1"), "user1-take");
+      assertEquals(1, cache.size());
+      cache.setTtl(0);
+      assertEquals(0, cache.size());
+      cache.put("user1", PERM, sites("site1"), "user1-take");
+      assertEquals(0, cache.size());
+      assertNull(cache.get("user1", PERM));
+
+      try {
+         cache.setTtl(-1);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Test the limit on the number of entries
+    */
+   public void testMaxEntries() throws InterruptedException {
+      assertEquals(EvalUserGroupsCache.DEFAULT_MAX_ENTRIES, cache.getMaxEntries());
+      cache.setMaxEntries(3);
+      cache.put("user1", PERM, sites("site1"), "1");
+      cache.put("user2", PERM, sites("site1"), "2");
+      cache.put("user3", PERM, sites("site1"), "3");
+      assertEquals(3, cache.size());
+
+      // updating a cached entry when full keeps the others
+      cache.put("user3", PERM, sites("site1"), "3b");
+      assertEquals(3, cache.size());
+      assertEquals("1", cache.get("user1", PERM));
+
+      // a new entry when full (and nothing has expired) starts over
+      cache.put("user4", PERM, sites("site1"), "4");
+      assertEquals(1, cache.size());
+      assertEquals("4", cache.get("user4", PERM));
+      assertNull(cache.get("user1", PERM));
+
+      // expired entries are dropped first
+      cache.setTtl(50);
+      cache.put("user5", PERM, sites("site1"), "5");
+      Thread.sleep(100);
+      cache.put("user6", PERM, sites("site1"), "6");
+      assertEquals(3, cache.size());
+      // full so user4 and user5 (both expired) are dropped to make room
+      cache.put("user7", PERM, sites("site1"), "7");
+      assertEquals(2, cache.size());
+      assertEquals("6", cache.get("user6", PERM));
+      assertEquals("7", cache.get("user7", PERM));
+
+      try {
+         cache.setMaxEntries(0);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.externals.EvalUserGroupsCache#evictRealm(String, java.util.Collection)}.
+    */
+   public void testEvictRealm() {
+      cache.put("user1", PERM, sites("site1", "site2"), "1");
+      cache.put("user1", OTHER_PERM, sites("site2"), "1b");
+      cache.put("user2", PERM, sites("site2"), "2");
+      cache.put("user3", PERM, sites("site3"), "3");
+      cache.put("user4", PERM, sites(), "4");
+
+      // user1 has site1 cached, user4 was just added to the site1 realm
+      assertEquals(2, cache.evictRealm("site1", Arrays.asList("user4")));
+      assertNull(cache.get("user1", PERM));
+      assertNull(cache.get("user4", PERM));
+      assertEquals("1b", cache.get("user1", OTHER_PERM));
+      assertEquals("2", cache.get("user2", PERM));
+      assertEquals("3", cache.get("user3", PERM));
+
+      // all permissions of a realm member are cleared
+      assertEquals(1, cache.evictRealm("site9", Collections.singleton("user1")));
+      assertNull(cache.get("user1", OTHER_PERM));
+
+      // a removed realm has no members
+      assertEquals(1, cache.evictRealm("site3", null));
+      assertNull(cache.get("user3", PERM));
+      assertEquals("2", cache.get("user2", PERM));
+
+      assertEquals(0, cache.evictRealm("site1", Collections.<String>emptySet()));
+      assertEquals(1, cache.size());
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.externals.EvalUserGroupsCache#evictSite(String)}.
+    */
+   public void testEvictSite() {
+      cache.put("user1", PERM, sites("site1", "site2"), "1");
+      cache.put("user2", PERM, sites("site2"), "2");
+      cache.put("user3", PERM, sites("site3"), "3");
+
+      assertEquals(2, cache.evictSite("site2"));
+      assertNull(cache.get("user1", PERM));
+      assertNull(cache.get("user2", PERM));
+      assertEquals("3", cache.get("user3", PERM));
+      assertEquals(0, cache.evictSite("site2"));
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.logic.externals.EvalExternalLogicImpl#getRealmIdFromEventResource(String)}.
+    */
+   public void testGetRealmIdFromEventResource() {
+      assertEquals("/site/site1", EvalExternalLogicImpl.getRealmIdFromEventResource("/realm//site/site1"));
+      assertEquals("/site/site1/group/group1", EvalExternalLogicImpl.getRealmIdFromEventResource("/realm//site/site1/group/group1"));
+      assertEquals("!site.template", EvalExternalLogicImpl.getRealmIdFromEventResource("/realm/!site.template"));
+      assertEquals("/site/site1", EvalExternalLogicImpl.getRealmIdFromEventResource("/site/site1"));
+      assertEquals("/site/site1/group/group1", EvalExternalLogicImpl.getRealmIdFromEventResource("/site/site1/group/group1"));
+      assertNull(EvalExternalLogicImpl.getRealmIdFromEventResource(null));
+   }
+
+}
@@ -0,0 +1,264 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.logic.impl.interceptors;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+import org.sakaiproject.evaluation.test.mocks.MockEvalExternalLogic;
+import org.sakaiproject.evaluation.utils.EvalRequestCache;
+
+/**
+ * Testing the interceptor which caches service lookups in the request cache
+ */
+public class EvalRequestCacheInterceptorTest extends TestCase {
+
+   public interface LookupService {
+      public String getName(String id);
+      public String getNames(List<String> ids);
+      public EvalEvaluation getEvaluation(Long id);
+      public void saveName(String id, String name);
+   }
+
+   public static class LookupServiceImpl implements LookupService {
+      int calls = 0;
+      public String getName(String id) {
+         calls++;
+         return "name-" + id;
+      }
+      public String getNames(List<String> ids) {
+         calls++;
+         return ids.toString();
+      }
+      public EvalEvaluation getEvaluation(Long id) {
+         calls++;
+         EvalEvaluation evaluation = new EvalEvaluation();
+         evaluation.setId(id);
+         return evaluation;
+      }
+      public void saveName(String id, String name) {
+         calls++;
+      }
+   }
+
+   /**
+    * Has the same method names as the lookup service but does not implement it
+    */
+   public static class OtherService {
+      int calls = 0;
+      public String getName(String id) {
+         calls++;
+         return "other-" + id;
+      }
+   }
+
+   private EvalRequestCacheInterceptor interceptor;
+   private LookupServiceImpl service;
+
+   @Override
+   protected void setUp() throws Exception {
+      interceptor = new EvalRequestCacheInterceptor();
+      interceptor.setExternalLogic(new MockEvalExternalLogic());
+      interceptor.setCachedMethods(Arrays.asList(
+            LookupService.class.getName() + ".getName",
+            LookupService.class.getName() + ".getNames",
+            LookupService.class.getName() + ".getEvaluation"));
+      interceptor.init();
+      EvalRequestCache.setEnabled(true);
+      EvalRequestCache.reset();
+      service = new LookupServiceImpl();
+   }
+
+   @Override
+   protected void tearDown() throws Exception {
+      EvalRequestCache.setEnabled(false);
+      EvalRequestCache.reset();
+      interceptor.destroy();
+   }
+
+   private Object invoke(Object target, String methodName, Object... args) throws Throwable {
+      Method method = null;
+      for (Method m : target.getClass().getMethods()) {
+         if (m.getName().equals(methodName)) {
+            method = m;
+            break;
+         }
+      }
+      assertNotNull("No method " + methodName, method);
+      return interceptor.invoke(new TestInvocation(target, method, args));
+   }
+
+   /**
+    * Test method for {@link EvalRequestCacheInterceptor#invoke(MethodInvocation)}.
+    */
+   public void testInvokeCaching() throws Throwable {
+      // nothing is cached outside a scope
+      assertEquals("name-a", invoke(service, "getName", "a"));
+      assertEquals("name-a", invoke(service, "getName", "a"));
+      assertEquals(2, service.calls);
+
+      EvalRequestCache.beginScope("request:/test");
+      try {
+         assertEquals("name-a", invoke(service, "getName", "a"));
+         assertEquals("name-a", invoke(service, "getName", "a"));
+         assertEquals(3, service.calls);
+
+         // the arguments are part of the key
+         assertEquals("name-b", invoke(service, "getName", "b"));
+         assertEquals(4, service.calls);
+         assertEquals("name-b", invoke(service, "getName", "b"));
+         assertEquals(4, service.calls);
+      } finally {
+         EvalRequestCache.endScope();
+      }
+      assertEquals(2, EvalRequestCache.getTotalHits());
+   }
+
+   /**
+    * Test method for {@link EvalRequestCacheInterceptor#invoke(MethodInvocation)}.
+    */
+   public void testInvokeWriteInvalidates() throws Throwable {
+      EvalRequestCache.beginScope("request:/test");
+      try {
+         invoke(service, "getName", "a");
+         invoke(service, "getName", "a");
+         assertEquals(1, service.calls);
+
+         // any call which is not a read drops the cached values
+         invoke(service, "saveName", "a", "new");
+         assertEquals(2, service.calls);
+         invoke(service, "getName", "a");
+         assertEquals(3, service.calls);
+         invoke(service, "getName", "a");
+         assertEquals(3, service.calls);
+      } finally {
+         EvalRequestCache.endScope();
+      }
+      assertEquals(1, EvalRequestCache.getTotalInvalidations());
+   }
+
+   /**
+    * Test method for {@link EvalRequestCacheInterceptor#makeCacheKey(MethodInvocation)}.
+    */
+   public void testMakeCacheKey() throws Throwable {
+      Method getName = LookupServiceImpl.class.getMethod("getName", String.class);
+      List<Object> key = interceptor.makeCacheKey(new TestInvocation(service, getName, new Object[] {"a"}));
+      assertEquals(Arrays.asList(LookupService.class.getName(), "getName", "a"), key);
+
+      // null is a simple value
+      key = interceptor.makeCacheKey(new TestInvocation(service, getName, new Object[] {null}));
+      assertEquals(Arrays.asList(LookupService.class.getName(), "getName", null), key);
+
+      // non-simple arguments are not cached
+      Method getNames = LookupServiceImpl.class.getMethod("getNames", List.class);
+      assertNull(interceptor.makeCacheKey(new TestInvocation(service, getNames, new Object[] {Arrays.asList("a")})));
+
+      // methods which are not configured are not cached
+      Method saveName = LookupServiceImpl.class.getMethod("saveName", String.class, String.class);
+      assertNull(interceptor.makeCacheKey(new TestInvocation(service, saveName, new Object[] {"a", "b"})));
+
+      // the target must implement the configured service, matching the method name is not enough
+      OtherService other = new OtherService();
+      Method otherGetName = OtherService.class.getMethod("getName", String.class);
+      assertNull(interceptor.makeCacheKey(new TestInvocation(other, otherGetName, new Object[] {"a"})));
+   }
+
+   /**
+    * Test method for {@link EvalRequestCacheInterceptor#invoke(MethodInvocation)}.
+    */
+   public void testInvokeNotCached() throws Throwable {
+      EvalRequestCache.beginScope("request:/test");
+      try {
+         // non-simple arguments bypass the cache
+         invoke(service, "getNames", Arrays.asList("a", "b"));
+         invoke(service, "getNames", Arrays.asList("a", "b"));
+         assertEquals(2, service.calls);
+
+         // persistent entities are never shared between callers
+         EvalEvaluation eval1 = (EvalEvaluation) invoke(service, "getEvaluation", 1L);
+         EvalEvaluation eval2 = (EvalEvaluation) invoke(service, "getEvaluation", 1L);
+         assertEquals(4, service.calls);
+         assertNotSame(eval1, eval2);
+
+         // services which only share the method names are not cached
+         OtherService other = new OtherService();
+         assertEquals("other-a", invoke(other, "getName", "a"));
+         assertEquals("other-a", invoke(other, "getName", "a"));
+         assertEquals(2, other.calls);
+      } finally {
+         EvalRequestCache.endScope();
+      }
+   }
+
+   /**
+    * Test method for {@link EvalRequestCacheInterceptor#init()}.
+    */
+   public void testInitInvalid() {
+      EvalRequestCacheInterceptor invalid = new EvalRequestCacheInterceptor();
+      invalid.setExternalLogic(new MockEvalExternalLogic());
+      invalid.setCachedMethods(Arrays.asList("getName"));
+      try {
+         invalid.init();
+         fail("Should have thrown an exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+
+      invalid.setCachedMethods(Arrays.asList("org.sakaiproject.evaluation.logic.InvalidService.getName"));
+      try {
+         invalid.init();
+         fail("Should have thrown an exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Invokes a method on the target directly
+    */
+   private static class TestInvocation implements MethodInvocation {
+      private final Object target;
+      private final Method method;
+      private final Object[] args;
+
+      TestInvocation(Object target, Method method, Object[] args) {
+         this.target = target;
+         this.method = method;
+         this.args = args;
+      }
+      public Method getMethod() {
+         return method;
+      }
+      public Object[] getArguments() {
+         return args;
+      }
+      public Object proceed() throws Throwable {
+         return method.invoke(target, args);
+      }
+      public Object getThis() {
+         return target;
+      }
+      public AccessibleObject getStaticPart() {
+         return method;
+      }
+   }
+
+}
@@ -25,6 +25,7 @@ import java.util.Set;
 import org.sakaiproject.coursemanagement.api.Section;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic;
 import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyTree;
 import org.sakaiproject.evaluation.logic.model.HierarchyNodeRule;
 import org.sakaiproject.evaluation.utils.EvalUtils;
 
@@ -353,4 +354,12 @@ public class MockExternalHierarchyLogic implements ExternalHierarchyLogic {
     public void removeNodeRule( Long ruleID )
     {
     }
+
+    @Override
+    public EvalHierarchyTree getHierarchyTree()
+    {
+        List<EvalHierarchyNode> nodes = new ArrayList<>();
+        nodes.add(child);
+        return new EvalHierarchyTree(0, root, nodes, evalGroupNodes, null, null);
+    }
 }
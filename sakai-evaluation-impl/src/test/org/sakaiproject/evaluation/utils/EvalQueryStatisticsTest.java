@@ -0,0 +1,153 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing out the query statistics
+ */
+public class EvalQueryStatisticsTest extends TestCase {
+
+   @Override
+   protected void setUp() throws Exception {
+      EvalQueryStatistics.setEnabled(true);
+      EvalQueryStatistics.setRepeatThreshold(EvalQueryStatistics.DEFAULT_REPEAT_THRESHOLD);
+      EvalQueryStatistics.reset();
+   }
+
+   @Override
+   protected void tearDown() throws Exception {
+      EvalQueryStatistics.setEnabled(false);
+      EvalQueryStatistics.reset();
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.utils.EvalQueryStatistics#recordQuery(String, long, int)}.
+    */
+   public void testRecordQuery() {
+      EvalQueryStatistics.beginOperation("request:/test");
+      assertTrue(EvalQueryStatistics.isOperationActive());
+      EvalQueryStatistics.recordQuery("findById(EvalEvaluation)", 1000000, 1);
+      EvalQueryStatistics.recordQuery("findBySearch(EvalAnswer,[response.id=0])", 2000000, 25);
+
+      // nested operations are counted against the outer one
+      EvalQueryStatistics.beginOperation("service:EvalEvaluationService.getEvaluationById");
+      EvalQueryStatistics.recordQuery("findById(EvalEvaluation)", 1000000, 1);
+      EvalQueryStatistics.endOperation();
+      assertTrue(EvalQueryStatistics.isOperationActive());
+      assertEquals(0, EvalQueryStatistics.getTotalOperations());
+
+      EvalQueryStatistics.endOperation();
+      assertFalse(EvalQueryStatistics.isOperationActive());
+      assertEquals(1, EvalQueryStatistics.getTotalOperations());
+      assertEquals(3, EvalQueryStatistics.getTotalQueries());
+      assertEquals(27, EvalQueryStatistics.getTotalRows());
+      assertEquals(4, EvalQueryStatistics.getTotalQueryTimeMS());
+      assertEquals(0, EvalQueryStatistics.getTotalRepeatedShapes());
+      Map<String, Long> byOp = EvalQueryStatistics.getDaoCallsByOperation();
+      assertEquals(1, byOp.size());
+      assertEquals(Long.valueOf(3), byOp.get("request:/test"));
+
+      // queries outside an operation only go into the totals
+      EvalQueryStatistics.recordQuery("findById(EvalEvaluation)", 1000000, 1);
+      assertEquals(1, EvalQueryStatistics.getUnscopedQueries());
+      assertEquals(4, EvalQueryStatistics.getTotalQueries());
+      assertEquals(1, EvalQueryStatistics.getTotalOperations());
+
+      // ending without an operation does nothing
+      EvalQueryStatistics.endOperation();
+      assertEquals(1, EvalQueryStatistics.getTotalOperations());
+
+      EvalQueryStatistics.reset();
+      assertEquals(0, EvalQueryStatistics.getTotalQueries());
+      assertTrue(EvalQueryStatistics.getDaoCallsByOperation().isEmpty());
+   }
+
+   /**
+    * Test the limit on the operation names in {@link org.sakaiproject.evaluation.utils.EvalQueryStatistics#getDaoCallsByOperation()}.
+    */
+   public void testDaoCallsByOperationLimit() {
+      for (int i = 0; i < EvalQueryStatistics.MAX_OPERATION_NAMES + 5; i++) {
+         EvalQueryStatistics.beginOperation("request:/test" + i);
+         EvalQueryStatistics.recordQuery("findById(EvalEvaluation)", 100, 1);
+         EvalQueryStatistics.endOperation();
+      }
+      // names already counted are still counted under their own name
+      EvalQueryStatistics.beginOperation("request:/test0");
+      EvalQueryStatistics.recordQuery("findById(EvalEvaluation)", 100, 1);
+      EvalQueryStatistics.endOperation();
+
+      Map<String, Long> byOp = EvalQueryStatistics.getDaoCallsByOperation();
+      assertEquals(EvalQueryStatistics.MAX_OPERATION_NAMES + 1, byOp.size());
+      assertEquals(Long.valueOf(5), byOp.get(EvalQueryStatistics.OTHER_OPERATIONS));
+      assertEquals(Long.valueOf(2), byOp.get("request:/test0"));
+      assertEquals(EvalQueryStatistics.MAX_OPERATION_NAMES + 6, EvalQueryStatistics.getTotalQueries());
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.utils.EvalQueryStatistics#makeViewOperationName(String)}.
+    */
+   public void testMakeViewOperationName() {
+      assertEquals("view:take_eval", EvalQueryStatistics.makeViewOperationName("/take_eval/12"));
+      assertEquals("view:take_eval", EvalQueryStatistics.makeViewOperationName("/take_eval"));
+      assertEquals("view:summary", EvalQueryStatistics.makeViewOperationName("summary"));
+      assertEquals("view:", EvalQueryStatistics.makeViewOperationName("/"));
+      assertEquals("view:", EvalQueryStatistics.makeViewOperationName(null));
+   }
+
+   /**
+    * Test the N+1 detection
+    */
+   public void testRepeatedShapes() {
+      EvalQueryStatistics.setRepeatThreshold(5);
+      EvalQueryStatistics.beginOperation("job:test");
+      for (int i = 0; i < 5; i++) {
+         EvalQueryStatistics.recordQuery("findBySearch(EvalResponse,[evaluation.id=0])", 100, 1);
+      }
+      for (int i = 0; i < 4; i++) {
+         EvalQueryStatistics.recordQuery("findById(EvalTemplate)", 100, 1);
+      }
+      EvalQueryStatistics.endOperation();
+
+      assertEquals(1, EvalQueryStatistics.getTotalRepeatedShapes());
+      Map<String, Long> repeated = EvalQueryStatistics.getRepeatedShapes();
+      assertEquals(1, repeated.size());
+      assertEquals(Long.valueOf(1), repeated.get("findBySearch(EvalResponse,[evaluation.id=0])"));
+
+      try {
+         EvalQueryStatistics.setRepeatThreshold(1);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Test that nothing is recorded when disabled
+    */
+   public void testDisabled() {
+      EvalQueryStatistics.setEnabled(false);
+      EvalQueryStatistics.beginOperation("request:/test");
+      assertFalse(EvalQueryStatistics.isOperationActive());
+      EvalQueryStatistics.recordQuery("findById(EvalEvaluation)", 100, 1);
+      EvalQueryStatistics.endOperation();
+      assertEquals(0, EvalQueryStatistics.getTotalQueries());
+      assertEquals(0, EvalQueryStatistics.getTotalOperations());
+   }
+
+}
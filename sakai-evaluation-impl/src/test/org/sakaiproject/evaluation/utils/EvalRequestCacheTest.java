@@ -0,0 +1,133 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.utils;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Testing out the request scoped cache
+ */
+public class EvalRequestCacheTest extends TestCase {
+
+   @Override
+   protected void setUp() throws Exception {
+      EvalRequestCache.setEnabled(true);
+      EvalRequestCache.setMaxEntries(EvalRequestCache.DEFAULT_MAX_ENTRIES);
+      EvalRequestCache.reset();
+   }
+
+   @Override
+   protected void tearDown() throws Exception {
+      EvalRequestCache.setEnabled(false);
+      EvalRequestCache.setMaxEntries(EvalRequestCache.DEFAULT_MAX_ENTRIES);
+      EvalRequestCache.reset();
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.utils.EvalRequestCache#get(Object)}.
+    */
+   public void testGetPut() {
+      Object key = Arrays.asList("EvalCommonLogic", "isUserAdmin", "aaronz");
+
+      // nothing is cached outside a scope
+      EvalRequestCache.put(key, Boolean.TRUE);
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get(key));
+
+      EvalRequestCache.beginScope("request:/test");
+      assertTrue(EvalRequestCache.isScopeActive());
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get(key));
+      EvalRequestCache.put(key, Boolean.TRUE);
+      assertEquals(Boolean.TRUE, EvalRequestCache.get(Arrays.asList("EvalCommonLogic", "isUserAdmin", "aaronz")));
+
+      // null is a valid cached value
+      Object nullKey = Arrays.asList("EvalEvaluationService", "getEvaluationById", 99L);
+      EvalRequestCache.put(nullKey, null);
+      assertNull(EvalRequestCache.get(nullKey));
+
+      // nested scopes share the outer cache
+      EvalRequestCache.beginScope("job:test");
+      assertEquals(Boolean.TRUE, EvalRequestCache.get(key));
+      EvalRequestCache.endScope();
+      assertTrue(EvalRequestCache.isScopeActive());
+      assertEquals(0, EvalRequestCache.getTotalScopes());
+
+      EvalRequestCache.endScope();
+      assertFalse(EvalRequestCache.isScopeActive());
+      assertEquals(1, EvalRequestCache.getTotalScopes());
+      assertEquals(3, EvalRequestCache.getTotalHits());
+      assertEquals(1, EvalRequestCache.getTotalMisses());
+
+      // values do not survive the scope
+      EvalRequestCache.beginScope("request:/test");
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get(key));
+      EvalRequestCache.endScope();
+
+      // ending without a scope does nothing
+      EvalRequestCache.endScope();
+      assertEquals(2, EvalRequestCache.getTotalScopes());
+
+      EvalRequestCache.reset();
+      assertEquals(0, EvalRequestCache.getTotalHits());
+      assertEquals(0, EvalRequestCache.getTotalScopes());
+   }
+
+   /**
+    * Test method for {@link org.sakaiproject.evaluation.utils.EvalRequestCache#invalidate()}.
+    */
+   public void testInvalidate() {
+      EvalRequestCache.beginScope("request:/test");
+      EvalRequestCache.invalidate(); // nothing cached so not counted
+      EvalRequestCache.put("key1", "value1");
+      EvalRequestCache.put("key2", "value2");
+      EvalRequestCache.invalidate();
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get("key1"));
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get("key2"));
+      EvalRequestCache.endScope();
+      assertEquals(1, EvalRequestCache.getTotalInvalidations());
+
+      // the scope is cleared when it gets too big
+      EvalRequestCache.setMaxEntries(2);
+      EvalRequestCache.beginScope("request:/test");
+      EvalRequestCache.put("key1", "value1");
+      EvalRequestCache.put("key2", "value2");
+      EvalRequestCache.put("key3", "value3");
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get("key1"));
+      assertEquals("value3", EvalRequestCache.get("key3"));
+      EvalRequestCache.endScope();
+
+      try {
+         EvalRequestCache.setMaxEntries(0);
+         fail("Should have thrown exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
+   /**
+    * Test that nothing is cached when disabled
+    */
+   public void testDisabled() {
+      EvalRequestCache.setEnabled(false);
+      EvalRequestCache.beginScope("request:/test");
+      assertFalse(EvalRequestCache.isScopeActive());
+      EvalRequestCache.put("key1", "value1");
+      assertSame(EvalRequestCache.NOT_CACHED, EvalRequestCache.get("key1"));
+      EvalRequestCache.endScope();
+      assertEquals(0, EvalRequestCache.getTotalScopes());
+   }
+
+}
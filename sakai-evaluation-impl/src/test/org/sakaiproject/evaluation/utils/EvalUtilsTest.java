@@ -20,6 +20,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import junit.framework.TestCase;
 
@@ -725,4 +726,59 @@ public class EvalUtilsTest extends TestCase {
       assertEquals(original, cleanup);
    }
 
+   /**
+    * Test method for {@link EvalUtils#makeSearchTokens(String)}
+    */
+   public void testMakeSearchTokens() {
+      Set<String> tokens = EvalUtils.makeSearchTokens("Fall 2010: Math-101 (fall)");
+      assertNotNull(tokens);
+      assertEquals(4, tokens.size());
+      assertEquals("[fall, 2010, math, 101]", tokens.toString());
+
+      tokens = EvalUtils.makeSearchTokens("  \u00c9valuation  du cours ");
+      assertEquals(3, tokens.size());
+      assertTrue(tokens.contains("\u00e9valuation"));
+
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 100; i++) {
+         sb.append('a');
+      }
+      tokens = EvalUtils.makeSearchTokens(sb.toString());
+      assertEquals(1, tokens.size());
+      assertEquals(EvalUtils.SEARCH_TOKEN_MAX_LENGTH, tokens.iterator().next().length());
+
+      // check null and empty are ok
+      assertTrue(EvalUtils.makeSearchTokens(null).isEmpty());
+      assertTrue(EvalUtils.makeSearchTokens("").isEmpty());
+      assertTrue(EvalUtils.makeSearchTokens(" - ").isEmpty());
+   }
+
+   /**
+    * Test method for {@link EvalUtils#compressText(String)} and {@link EvalUtils#decompressText(byte[])}
+    */
+   public void testCompressText() {
+      String text = "Great course, the \u00e9valuations were useful. ";
+      StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 50; i++) {
+         sb.append(text);
+      }
+      byte[] data = EvalUtils.compressText(sb.toString());
+      assertNotNull(data);
+      assertTrue(data.length < sb.length());
+      assertEquals(sb.toString(), EvalUtils.decompressText(data));
+
+      assertEquals("", EvalUtils.decompressText(EvalUtils.compressText("")));
+
+      // check null is ok
+      assertNull(EvalUtils.compressText(null));
+      assertNull(EvalUtils.decompressText(null));
+
+      try {
+         EvalUtils.decompressText(new byte[] {1, 2, 3});
+         fail("Should have thrown an exception");
+      } catch (IllegalArgumentException e) {
+         assertNotNull(e);
+      }
+   }
+
 }
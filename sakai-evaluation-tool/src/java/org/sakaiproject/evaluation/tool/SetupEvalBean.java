@@ -504,43 +504,14 @@ public class SetupEvalBean {
 			return "fail";
 		}
 				
-		//TODO xxxselectedHierarchyNodeIDs
+		// no anonymous users can be assigned through the selected groups
 		if(!EvalConstants.EVALUATION_AUTHCONTROL_NONE.equals(eval.getAuthControl())) {
-			String [] evalGroupIDs = 
-				new String[selectedHierarchyNodeIDs.length + selectedGroupIDs.length];
-		 
-			int i;
-			for(i =0;i<selectedHierarchyNodeIDs.length;i++) {
-				evalGroupIDs[i] = selectedHierarchyNodeIDs[i]; 
-			}
-		
-			for(;i<selectedHierarchyNodeIDs.length+selectedGroupIDs.length;i++) {
-				evalGroupIDs[i] = selectedGroupIDs[i - selectedHierarchyNodeIDs.length];
-			}
-
-			Set<String> userIdsForEvalGroup = null;
-			for(i = 0;i<evalGroupIDs.length;i++) {
-				userIdsForEvalGroup = commonLogic.getUserIdsForEvalGroup(evalGroupIDs[i], EvalConstants.PERM_BE_EVALUATED, eval.getSectionAwareness());
-				userIdsForEvalGroup.addAll(commonLogic.getUserIdsForEvalGroup(evalGroupIDs[i], EvalConstants.PERM_ASSISTANT_ROLE, eval.getSectionAwareness()));
-				userIdsForEvalGroup.addAll(commonLogic.getUserIdsForEvalGroup(evalGroupIDs[i], EvalConstants.PERM_TAKE_EVALUATION, eval.getSectionAwareness()));
-			}
-
-			if (userIdsForEvalGroup != null) {
-    			for (String userId : userIdsForEvalGroup) {
-    	
-    				//ignore invalid users
-                    if(EvalUser.USER_TYPE_INVALID.equals(commonLogic.getEvalUsersByIds(new ArrayList<String> (Arrays.asList(userId))).get(0).type)) {
-                        continue;
-                    }
-    				
-    				if(commonLogic.isUserAnonymous(userId)) {
-    					EvalUser user = commonLogic.getEvalUsersByIds(new ArrayList<String> (Arrays.asList(userId))).get(0);
-    					messages.addMessage(new TargettedMessage(
-    							"assigneval.invalid.user", new Object[] {user.username},
-    							TargettedMessage.SEVERITY_ERROR));
-    					return "fail";
-    				}
-    			}
+			EvalUser anonymousUser = findAnonymousUser(selectedGroupIDs, eval.getSectionAwareness());
+			if (anonymousUser != null) {
+				messages.addMessage(new TargettedMessage(
+						"assigneval.invalid.user", new Object[] {anonymousUser.username},
+						TargettedMessage.SEVERITY_ERROR));
+				return "fail";
 			}
 		}		
 
@@ -599,9 +570,21 @@ public class SetupEvalBean {
 			Map<Long, List<EvalAssignGroup>> evalAssignGroupMap = evaluationService.getAssignGroupsForEvals(new Long[] {evaluationId}, true, false);
 			List<EvalAssignGroup> evalAssignGroups = evalAssignGroupMap.get(evaluationId);
 			
-			// Query DB only once to get all EvalAssignUsers
+			// Query DB only once to get all EvalAssignUsers and index them by group and type
 			List<EvalAssignUser> evalUsers = evaluationService
 				.getParticipantsForEval(evaluationId, null, null, null, EvalEvaluationService.STATUS_ANY, null, null);
+			Map<String, List<EvalAssignUser>> groupTypeEvalUsers = new HashMap<>();
+			for (EvalAssignUser evalUser : evalUsers) {
+				String key = evalUser.getEvalGroupId() + "/" + evalUser.getType();
+				List<EvalAssignUser> groupTypeUsers = groupTypeEvalUsers.get(key);
+				if (groupTypeUsers == null) {
+					groupTypeUsers = new ArrayList<>();
+					groupTypeEvalUsers.put(key, groupTypeUsers);
+				}
+				groupTypeUsers.add(evalUser);
+			}
+			List<EvalAssignUser> changedEvalUsers = new ArrayList<>();
+			List<EvalAssignUser> noEvalUsers = new ArrayList<>();
 
                         //find out is this evaluation will contain any Instructor/TA questions based in it's template
                         List<String> validItemCategories = renderingUtils.extractCategoriesInTemplate(eval.getTemplate().getId());
@@ -615,15 +598,17 @@ public class SetupEvalBean {
 				String[] deselectedAssistants = selectedEvaluationUsersLocator.getDeselectedAssistants(currentGroupId);
 				String[] orderingInstructors = selectedEvaluationUsersLocator.getOrderingForInstructors(currentGroupId);
 				String[] orderingAssistants = selectedEvaluationUsersLocator.getOrderingForAssistants(currentGroupId);
+				List<EvalAssignUser> instructors = groupTypeEvalUsers.get(currentGroupId + "/" + EvalAssignUser.TYPE_EVALUATEE);
+				List<EvalAssignUser> assistants = groupTypeEvalUsers.get(currentGroupId + "/" + EvalAssignUser.TYPE_ASSISTANT);
 				if(hasInstructorQuestions){
-					updateEvalAssignUsers(deselectedInstructors, orderingInstructors, EvalAssignUser.TYPE_EVALUATEE, currentGroupId, evalUsers, Boolean.TRUE);
+					updateEvalAssignUsers(deselectedInstructors, orderingInstructors, instructors == null ? noEvalUsers : instructors, Boolean.TRUE, changedEvalUsers);
 				}else{
-					updateEvalAssignUsers(new String[]{}, new String[]{}, EvalAssignUser.TYPE_EVALUATEE, currentGroupId, evalUsers, Boolean.FALSE);
+					updateEvalAssignUsers(new String[]{}, new String[]{}, instructors == null ? noEvalUsers : instructors, Boolean.FALSE, changedEvalUsers);
 				}
 				if(hasAssistantQuestions){
-					updateEvalAssignUsers(deselectedAssistants, orderingAssistants, EvalAssignUser.TYPE_ASSISTANT, currentGroupId, evalUsers, Boolean.TRUE);
+					updateEvalAssignUsers(deselectedAssistants, orderingAssistants, assistants == null ? noEvalUsers : assistants, Boolean.TRUE, changedEvalUsers);
 				}else{
-					updateEvalAssignUsers(new String[]{}, new String[]{}, EvalAssignUser.TYPE_ASSISTANT, currentGroupId, evalUsers, Boolean.FALSE);
+					updateEvalAssignUsers(new String[]{}, new String[]{}, assistants == null ? noEvalUsers : assistants, Boolean.FALSE, changedEvalUsers);
 				}
 				// set selection settings for assign group
 				String settingInstructor = assignGroupSelectionSettings.getInstructorSetting(currentGroupId);
@@ -638,9 +623,12 @@ public class SetupEvalBean {
 				}else if (hasAssistantQuestions) {
 					assignGroup.setSelectionOption(EvalAssignGroup.SELECTION_TYPE_ASSISTANT, settingAssistant );
 				}
-				//Save selection settings
-				evaluationSetupService.saveAssignGroup(assignGroup, commonLogic.getCurrentUserId());
 			}
+			// Save the user selections and the selection settings for all the groups together
+			if (! changedEvalUsers.isEmpty()) {
+				evaluationSetupService.saveUserAssignments(evaluationId, changedEvalUsers.toArray(new EvalAssignUser[changedEvalUsers.size()]));
+			}
+			evaluationSetupService.saveAssignGroups(evaluationId, evalAssignGroups, commonLogic.getCurrentUserId());
 		}
 		
 		return "controlEvals";
@@ -688,36 +676,70 @@ public class SetupEvalBean {
 	 * 
 	 * @param deselected
 	 * @param ordering 
-	 * @param type either {@link EvalAssignUser.TYPE_EVALUATEE} or {@link EvalAssignUser.TYPE_ASSISTANT}
-	 * @param currentGroupId 
-	 * @param evalUsers 
+	 * @param evalUsers the assigned users of one type (e.g. {@link EvalAssignUser#TYPE_EVALUATEE}) in the current group
 	 * @param addAll (Optional) If deselected array is empty and addAll is false, the evalUsers will be unlinked.
+	 * @param changedEvalUsers the users whose status or order changed are added to this list so they can be saved together
 	 */
-	private void updateEvalAssignUsers(String[] deselected, String[] ordering, String type, String currentGroupId, List<EvalAssignUser> evalUsers, Boolean addAll) {
+	private void updateEvalAssignUsers(String[] deselected, String[] ordering, List<EvalAssignUser> evalUsers, Boolean addAll, List<EvalAssignUser> changedEvalUsers) {
 		if (deselected != null){
-			List<String> deselectedList = Arrays.asList(deselected);
-			List<String> orderingList = Arrays.asList(ordering);
+			Set<String> deselectedSet = new HashSet<>(Arrays.asList(deselected));
+			Map<String, Integer> orderingMap = new HashMap<>();
+			for (int i = ordering.length - 1; i >= 0; i--) {
+				orderingMap.put(ordering[i], i + 1);
+			}
 			for (EvalAssignUser user : evalUsers) {
-				// only update users for this group with this permission type
 				String userId = user.getUserId();
-				if(currentGroupId.equals(user.getEvalGroupId() ) && type.equals( user.getType()) ){
-					if(deselectedList.isEmpty() && Boolean.FALSE.equals(addAll)){
-						//lets unlink every evalUser passed to us
+				String status = user.getStatus();
+				int listOrder = user.getListOrder();
+				if(deselectedSet.isEmpty() && Boolean.FALSE.equals(addAll)){
+					//lets unlink every evalUser passed to us
+					user.setStatus(EvalAssignUser.STATUS_REMOVED);
+				}else{
+					if (deselectedSet.contains( userId )) {
 						user.setStatus(EvalAssignUser.STATUS_REMOVED);
-					}else{
-                                                if (deselectedList.contains( userId )) {
-                                                    user.setStatus(EvalAssignUser.STATUS_REMOVED);
-                                                } else {
-                                                     user.setStatus(EvalAssignUser.STATUS_LINKED);
-                                                }
-                                                // set users' selection order
-                                                if (orderingList.contains( userId )){
-                                                    int listOrder = orderingList.indexOf(userId) + 1;
-                                                    user.setListOrder( listOrder );
-                                                }
+					} else {
+						user.setStatus(EvalAssignUser.STATUS_LINKED);
 					}
+					// set users' selection order
+					if (orderingMap.containsKey( userId )){
+						user.setListOrder( orderingMap.get( userId ) );
+					}
+				}
+				if (! user.getStatus().equals(status) || user.getListOrder() != listOrder) {
+					changedEvalUsers.add(user);
 				}
 			}
 		}
 	}	
+
+	/**
+	 * Find the first anonymous user who would be assigned to the evaluation through the given groups,
+	 * the memberships are fetched per group and all the users are resolved together,
+	 * the resolved user types never include anonymous so each valid user is checked with
+	 * {@link EvalCommonLogic#isUserAnonymous(String)}
+	 * 
+	 * @param evalGroupIds the selected eval group ids
+	 * @param sectionAware the section awareness of the evaluation
+	 * @return the anonymous user OR null if there are none
+	 */
+	private EvalUser findAnonymousUser(String[] evalGroupIds, Boolean sectionAware) {
+		Set<String> userIds = new HashSet<>();
+		for (String evalGroupId : new HashSet<>(Arrays.asList(evalGroupIds))) {
+			userIds.addAll(commonLogic.getUserIdsForEvalGroup(evalGroupId, EvalConstants.PERM_BE_EVALUATED, sectionAware));
+			userIds.addAll(commonLogic.getUserIdsForEvalGroup(evalGroupId, EvalConstants.PERM_ASSISTANT_ROLE, sectionAware));
+			userIds.addAll(commonLogic.getUserIdsForEvalGroup(evalGroupId, EvalConstants.PERM_TAKE_EVALUATION, sectionAware));
+		}
+		if (! userIds.isEmpty()) {
+			for (EvalUser user : commonLogic.getEvalUsersByIds(new ArrayList<>(userIds))) {
+				//ignore invalid users
+				if (EvalUser.USER_TYPE_INVALID.equals(user.type)) {
+					continue;
+				}
+				if (commonLogic.isUserAnonymous(user.userId)) {
+					return user;
+				}
+			}
+		}
+		return null;
+	}
 }
@@ -55,7 +55,6 @@ import uk.org.ponder.rsf.viewstate.ViewParamsReporter;
  */
 public class AdministrateSearchProducer extends EvalCommonProducer implements ViewParamsReporter {
 	public static int PAGE_SIZE = 20;
-	public static int MAX_GROUP_SIZE = 200;
 
 	/**
 	 * This is used for navigation within the system.
@@ -163,53 +162,48 @@ public class AdministrateSearchProducer extends EvalCommonProducer implements Vi
 			int count = 0;
 
 			if (searchForGroups){
-				// do the search for groups and get the results
-				List<String> assignGroups = commonLogic.searchForEvalGroupIds(searchString, order, startResult, MAX_GROUP_SIZE);
-				evals = evaluationService.getEvaluationsForEvalGroups(assignGroups.toArray(new String[assignGroups.size()]), 0, 0); //get all evaluations
-				
-				if (assignGroups.size() >= MAX_GROUP_SIZE){
-					//show 'too many results' messages
-					UIMessage.make(tofill, "results-max", "administrate.search.results.max", new String[]{String.valueOf(assignGroups.size())});
-				}
-				count = evals.size();
+				count = evaluationService.countEvaluationsByGroupTitle(searchString);
 			}else{
 				count = evaluationService.countEvaluations(searchString);
 			}
 						
 			if(count > 0)
 			{
-				if (!searchForGroups){
+				if (searchForGroups){
+					// do the search for assigned group titles and get the results
+					evals = this.evaluationService.getEvaluationsByGroupTitle(searchString, order, startResult, maxResults);
+				}else{
 					// do the search for evaluation titles and get the results
 					evals = this.evaluationService.getEvaluations(searchString, order, startResult, maxResults);
+				}
 
-					int actualStart = startResult + 1;
-					int actualEnd = startResult + evals.size();
-					if(count > PAGE_SIZE)
+				int actualStart = startResult + 1;
+				int actualEnd = startResult + evals.size();
+				if(count > PAGE_SIZE)
+				{
+					// show count and pager
+					// show x - y of z message
+					UIMessage.make(tofill, "pager-count-message", "administrate.search.pager.label", new String[]{ nf.format(actualStart), nf.format(actualEnd), nf.format(count) });
+					// show pager
+					if(page > 0)
 					{
-						// show count and pager
-						// show x - y of z message
-						UIMessage.make(tofill, "pager-count-message", "administrate.search.pager.label", new String[]{ nf.format(actualStart), nf.format(actualEnd), nf.format(count) });
-						// show pager
-						if(page > 0)
-						{
-							// show "previous" pager
-							UIInternalLink.make(tofill, "previous", new AdminSearchViewParameters(VIEW_ID, searchString, page - 1, searchForGroups));
-						}
-						else
-						{
-							// show disabled "previous" pager
-							UIOutput.make(tofill, "no-previous");
-						}
-						if(count > startResult + maxResults)
-						{
-							// show "next" pager
-							UIInternalLink.make(tofill, "next", new AdminSearchViewParameters(VIEW_ID, searchString, page + 1, searchForGroups));
-						}
-						else
-						{
-							//show disabled "next" pager
-							UIOutput.make(tofill, "no-next");
-						}
+						// show "previous" pager
+						UIInternalLink.make(tofill, "previous", new AdminSearchViewParameters(VIEW_ID, searchString, page - 1, searchForGroups));
+					}
+					else
+					{
+						// show disabled "previous" pager
+						UIOutput.make(tofill, "no-previous");
+					}
+					if(count > startResult + maxResults)
+					{
+						// show "next" pager
+						UIInternalLink.make(tofill, "next", new AdminSearchViewParameters(VIEW_ID, searchString, page + 1, searchForGroups));
+					}
+					else
+					{
+						//show disabled "next" pager
+						UIOutput.make(tofill, "no-next");
 					}
 				}
 
@@ -145,7 +145,7 @@ public class ControlEvaluationsProducer extends EvalCommonProducer implements Vi
          // get queued, active, closed evaluations by date
          // check the state of the eval to determine display data
          EvalEvaluation eval = (EvalEvaluation) evals.get(j);
-         String evalStatus = evaluationService.updateEvaluationState(eval.getId());
+         String evalStatus = evaluationService.getCurrentEvaluationState(eval);
 
          if (EvalConstants.EVALUATION_STATE_PARTIAL.equals(evalStatus) ) {
              partialEvals.add(eval);
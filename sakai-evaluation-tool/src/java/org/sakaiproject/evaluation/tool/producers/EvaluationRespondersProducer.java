@@ -15,14 +15,14 @@
 package org.sakaiproject.evaluation.tool.producers;
 
 import java.text.DateFormat;
+import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
@@ -30,10 +30,9 @@ import org.sakaiproject.evaluation.logic.EvalDeliveryService;
 import org.sakaiproject.evaluation.logic.EvalEvaluationService;
 import org.sakaiproject.evaluation.logic.EvalSettings;
 import org.sakaiproject.evaluation.logic.model.EvalGroup;
+import org.sakaiproject.evaluation.logic.model.EvalResponder;
 import org.sakaiproject.evaluation.logic.model.EvalUser;
-import org.sakaiproject.evaluation.model.EvalAssignUser;
 import org.sakaiproject.evaluation.model.EvalEvaluation;
-import org.sakaiproject.evaluation.model.EvalResponse;
 import org.sakaiproject.evaluation.tool.renderers.NavBarRenderer;
 import org.sakaiproject.evaluation.tool.viewparams.EvalViewParameters;
 
@@ -61,6 +60,11 @@ public class EvaluationRespondersProducer extends EvalCommonProducer implements
         return VIEW_ID;
     }
 
+    /**
+     * The number of roster entries shown on each page
+     */
+    public static final int PAGE_SIZE = 200;
+
     private EvalCommonLogic commonLogic;
     public void setCommonLogic(EvalCommonLogic commonLogic) {
         this.commonLogic = commonLogic;
@@ -118,62 +122,41 @@ public class EvaluationRespondersProducer extends EvalCommonProducer implements
             throw new SecurityException("User ("+currentUserId+") not allowed to access this view for evaluation: " + evaluationId);
         }
         boolean allowEmailStudents = (Boolean) settings.get(EvalSettings.INSTRUCTOR_ALLOWED_EMAIL_STUDENTS);
-        List<EvalGroup> allowedGroups = commonLogic.getEvalGroupsForUser(currentUserId, EvalConstants.PERM_VIEW_RESPONDERS);
-        List<String> allowedGroupIds = new ArrayList<>();
-        for (EvalGroup allowedGroup : allowedGroups) {
-            allowedGroupIds.add(allowedGroup.evalGroupId);
-        }
         int responsesRequired = ((Integer) settings.get(EvalSettings.RESPONSES_REQUIRED_TO_VIEW_RESULTS));
         boolean currentUserViewResponses = controlEval;
 
-        // get the lists of participants and responses
+        // get the counts of participants and responses
         String[] evalGroupIds = null;
         if (evalGroupId != null) {
             evalGroupIds = new String[] {evalGroupId};
         }
-
-        HashMap<String, List<EvalUser>> usersByGroupId = new HashMap<>();
-        List<EvalResponse> responses = deliveryService.getEvaluationResponses(evaluationId, 
-                evalGroupIds, null);
-        HashMap<String, Map<String, EvalResponse>> groupToUserResponses = new HashMap<>();
-        for (EvalResponse response : responses) {
-            String groupId = response.getEvalGroupId();
-            if (! groupToUserResponses.containsKey(groupId)) {
-                HashMap<String, EvalResponse> userResponses = new HashMap<>();
-                groupToUserResponses.put(groupId, userResponses);
-            }
-            String userId = response.getOwner();
-            groupToUserResponses.get(groupId).put(userId, response);
-        }
-        boolean showStatus = ((responses.size() >= responsesRequired) || currentUserViewResponses);
+        int responsesCount = deliveryService.countResponses(evaluationId, evalGroupId, null);
+        boolean showStatus = ((responsesCount >= responsesRequired) || currentUserViewResponses);
 
         String statsAssigned;
+        int rosterCount;
         if (evalAnonymous) {
             // SPECIAL CASE: no group separation for anonymous evals so we list the users who have responded only
             statsAssigned = "--";
-            ArrayList<EvalUser> users = new ArrayList<>();
-            for (EvalResponse response : responses) {
-                String userId = response.getOwner();
-                EvalUser user = commonLogic.getEvalUserById(userId);
-                users.add(user);
-            }
-            usersByGroupId.put(EvalConstants.EVALUATION_AUTHCONTROL_NONE, users);
+            rosterCount = responsesCount;
         } else {
-            List<EvalAssignUser> assignedUsers = evaluationService.getParticipantsForEval(evaluationId, 
-                    null, evalGroupIds, EvalAssignUser.TYPE_EVALUATOR, null, null, null);
-            statsAssigned = String.valueOf(assignedUsers.size());
-            for (EvalAssignUser assignUser : assignedUsers) {
-                String userId = assignUser.getUserId();
-                String groupId = assignUser.getEvalGroupId();
-                if (! usersByGroupId.containsKey(groupId)) {
-                    ArrayList<EvalUser> users = new ArrayList<>();
-                    usersByGroupId.put(groupId, users);
-                }
-                EvalUser user = commonLogic.getEvalUserById(userId);
-                usersByGroupId.get(groupId).add(user);
+            rosterCount = evaluationService.countParticipantsForEval(evaluationId, evalGroupIds);
+            statsAssigned = String.valueOf(rosterCount);
+        }
+
+        // get only the current page of the roster (users and groups are resolved for this page only)
+        int page = Math.max(0, evalViewParameters.respondersPage);
+        int startResult = page * PAGE_SIZE;
+        List<EvalResponder> responders = deliveryService.getResponders(evaluationId, evalGroupId, startResult, PAGE_SIZE);
+        LinkedHashMap<String, List<EvalResponder>> respondersByGroupId = new LinkedHashMap<>();
+        for (EvalResponder responder : responders) {
+            String groupId = evalAnonymous ? EvalConstants.EVALUATION_AUTHCONTROL_NONE : responder.evalGroupId;
+            if (! respondersByGroupId.containsKey(groupId)) {
+                respondersByGroupId.put(groupId, new ArrayList<EvalResponder>());
             }
+            respondersByGroupId.get(groupId).add(responder);
         }
-        
+
         // begin page render
         UIInternalLink.make(tofill, "evalSettingsLink", UIMessage.make("evalsettings.page.title"),
                 new EvalViewParameters(EvaluationSettingsProducer.VIEW_ID, evaluationId) );
@@ -183,7 +166,7 @@ public class EvaluationRespondersProducer extends EvalCommonProducer implements
                 dateFormat.format(eval.getStartDate()), 
                 dateFormat.format(eval.getSafeDueDate())} );
         UIMessage.make(tofill, "responseStats", "evalresponders.stats", 
-                new Object[] {responses.size(), statsAssigned} );
+                new Object[] {responsesCount, statsAssigned} );
 
         if (allowEmailStudents || userAdmin) {
             UIInternalLink.make(tofill, "responseEmailLink", 
@@ -194,24 +177,39 @@ public class EvaluationRespondersProducer extends EvalCommonProducer implements
         UIInternalLink.make(tofill, "evalRespondersLink", UIMessage.make("evalresponders.page.title"),
                 new EvalViewParameters(EvaluationSettingsProducer.VIEW_ID, evaluationId, evalGroupId) );
 
-        for (Entry<String, List<EvalUser>> entry : usersByGroupId.entrySet()) {
+        if (rosterCount > PAGE_SIZE) {
+            // show x - y of z message and the pager
+            NumberFormat nf = NumberFormat.getInstance(locale);
+            UIMessage.make(tofill, "pager-count-message", "evalresponders.pager.label", 
+                    new String[] { nf.format(startResult + 1), nf.format(startResult + responders.size()), nf.format(rosterCount) });
+            if (page > 0) {
+                UIInternalLink.make(tofill, "previous", makeRespondersViewParameters(evaluationId, evalGroupId, page - 1));
+            } else {
+                UIOutput.make(tofill, "no-previous");
+            }
+            if (rosterCount > startResult + PAGE_SIZE) {
+                UIInternalLink.make(tofill, "next", makeRespondersViewParameters(evaluationId, evalGroupId, page + 1));
+            } else {
+                UIOutput.make(tofill, "no-next");
+            }
+        }
+
+        for (Entry<String, List<EvalResponder>> entry : respondersByGroupId.entrySet()) {
             UIBranchContainer groupBranch = UIBranchContainer.make(tofill, "responseGroups:");
             String groupId = entry.getKey();
+            List<EvalResponder> groupResponders = entry.getValue();
+            // only the groups on this page are checked
             boolean showEntryStatus = false;
-            if (!allowedGroupIds.isEmpty() && allowedGroupIds.contains(groupId)) {
-                showEntryStatus = true;    
-            }
-            Map<String, EvalResponse> userResponses = groupToUserResponses.get(groupId);
-            if (userResponses == null) {
-                userResponses = new HashMap<>(0);
-            }
-            List<EvalUser> users = entry.getValue();
+            int groupResponsesCount = responsesCount;
             if (! evalAnonymous) {
-                EvalGroup group = commonLogic.makeEvalGroupObject(groupId);
+                showEntryStatus = commonLogic.isUserAllowedInEvalGroup(currentUserId, EvalConstants.PERM_VIEW_RESPONDERS, groupId);
+                groupResponsesCount = deliveryService.countResponses(evaluationId, groupId, null);
+                EvalGroup group = groupResponders.get(0).group;
                 UIMessage.make(groupBranch, "responseGroupTitle", "evalresponders.group.title", 
                         new Object[] {group.title});
                 UIMessage.make(groupBranch, "responseGroupStats", "evalresponders.stats", 
-                        new Object[] {userResponses.size(), users.size()});
+                        new Object[] {groupResponsesCount, 
+                        evaluationService.countParticipantsForEval(evaluationId, new String[] {groupId})});
                 if (allowEmailStudents || userAdmin) {
                     UIInternalLink.make(groupBranch, "responseGroupEmailLink", 
                             UIMessage.make("evalresponders.notifications.link", new Object[] {group.title}),
@@ -219,24 +217,29 @@ public class EvaluationRespondersProducer extends EvalCommonProducer implements
                 }
             }
             // display the list of respondents
-            // sort the list of users
-            Collections.sort(users, new EvalUser.SortNameComparator());
+            // sort the users on this page
+            Collections.sort(groupResponders, new Comparator<EvalResponder>() {
+                private final EvalUser.SortNameComparator comparator = new EvalUser.SortNameComparator();
+                public int compare(EvalResponder r0, EvalResponder r1) {
+                    return comparator.compare(r0.user, r1.user);
+                }
+            });
             UIBranchContainer showResponsesBranch = UIBranchContainer.make(groupBranch, "showGroupResponses:");
-            for (EvalUser evalUser : users) {
+            for (EvalResponder responder : groupResponders) {
+                EvalUser evalUser = responder.user;
                 UIBranchContainer userResponseBranch = UIBranchContainer.make(showResponsesBranch, "responses:");
                 UIOutput.make(userResponseBranch, "responseUser", evalUser.displayName + "(" + evalUser.username + ")");
                 if ((showStatus && showEntryStatus) || userAdmin) {
                     String messagekey = "evalresponders.status.untaken"; // untaken (no response)
-                    EvalResponse response = userResponses.get(evalUser.userId);
-                    if (response != null) {
-                        if (response.complete) {
+                    if (responder.isResponded()) {
+                        if (responder.isComplete()) {
                             messagekey = "evalresponders.status.complete";
                         } else {
                             messagekey = "evalresponders.status.incomplete";
                         }
                     }
                     UIMessage.make(userResponseBranch, "responseStatus", messagekey);
-                } else if (showEntryStatus && currentUserViewResponses && (userResponses != null && userResponses.size() < responsesRequired)) {
+                } else if (showEntryStatus && currentUserViewResponses && groupResponsesCount < responsesRequired) {
                     // user can view but not enough responses yet
                     UIMessage.make(userResponseBranch, "responseStatus", "controlevaluations.eval.report.after.responses", 
                             new Object[] {responsesRequired});
@@ -248,6 +251,15 @@ public class EvaluationRespondersProducer extends EvalCommonProducer implements
         }
     }
 
+    /**
+     * @return the view params for a page of the responders roster
+     */
+    private EvalViewParameters makeRespondersViewParameters(Long evaluationId, String evalGroupId, int page) {
+        EvalViewParameters vp = new EvalViewParameters(VIEW_ID, evaluationId, evalGroupId);
+        vp.respondersPage = page;
+        return vp;
+    }
+
     /* (non-Javadoc)
      * @see uk.org.ponder.rsf.flow.ActionResultInterceptor#interceptActionResult(uk.org.ponder.rsf.flow.ARIResult, uk.org.ponder.rsf.viewstate.ViewParameters, java.lang.Object)
      */
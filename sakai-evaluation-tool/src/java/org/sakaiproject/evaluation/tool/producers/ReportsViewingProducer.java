@@ -624,6 +624,13 @@ public class ReportsViewingProducer extends EvalCommonProducer implements ViewPa
                   listedEvaluatees.add(evaluatee.getUserId());
                 }
 			}
+
+            if (listedEvaluatees.size() > 1) {
+                // all the individual reports in one zip (built in a single pass)
+                UIBranchContainer allBranch = UIBranchContainer.make(tofill, "pdfResultsReportIndividual:", "all");
+                UIInternalLink.make(allBranch, "pdfResultsReportIndividualLink", UIMessage.make("viewreport.view.pdf.individual.all"), new DownloadReportViewParams(
+                        EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL, templateId, reportViewParams.evaluationId, reportViewParams.groupIds, evaltitle+"Individual.zip", null, false));
+            }
 			
         }
 
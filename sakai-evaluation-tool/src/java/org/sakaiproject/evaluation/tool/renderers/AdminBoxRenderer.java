@@ -193,7 +193,7 @@ public class AdminBoxRenderer {
 
             for( EvalEvaluation eval : evals )
             {
-                String evalState = evaluationService.returnAndFixEvalState(eval, true);
+                String evalState = evaluationService.getCurrentEvaluationState(eval);
                 evalState = commonLogic.calculateViewability(evalState);
                 if (log.isDebugEnabled()) {
                     log.debug("eval=" + eval.getId() + ", state=" + evalState + ", title=" + eval.getTitle());
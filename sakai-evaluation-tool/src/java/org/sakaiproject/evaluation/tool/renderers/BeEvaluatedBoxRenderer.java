@@ -107,13 +107,11 @@ public class BeEvaluatedBoxRenderer {
             // evals found; show the widget
             UIBranchContainer evalResponsesBC = UIBranchContainer.make(tofill, "evalResponsesBox:");
 
-            // re-sort the evals so closed ones are at the end
-            evalsForInstructor = EvalUtils.sortClosedEvalsToEnd(evalsForInstructor);
-            // split into "in progress" and "closed"
+            // split into "in progress" and "closed" (this also sorts the closed ones to the end)
             List<EvalEvaluation> evalsInProgress = new ArrayList<>();
             List<EvalEvaluation> evalsClosed = new ArrayList<>();
             for (EvalEvaluation eval : evalsForInstructor) {
-                if (EvalUtils.checkStateAfter(eval.getState(), EvalConstants.EVALUATION_STATE_CLOSED, true)) {
+                if (EvalUtils.checkStateAfter(evaluationService.getCurrentEvaluationState(eval), EvalConstants.EVALUATION_STATE_CLOSED, true)) {
                     evalsClosed.add(eval);
                 } else {
                     evalsInProgress.add(eval);
@@ -150,7 +148,7 @@ public class BeEvaluatedBoxRenderer {
         UIBranchContainer evalResponseTable = UIBranchContainer.make(container, "evalResponseTable:");
         for (EvalEvaluation eval : evals) {
             // set display values for this eval
-            String evalState = commonLogic.calculateViewability(eval.getState());
+            String evalState = commonLogic.calculateViewability(evaluationService.getCurrentEvaluationState(eval));
             boolean instViewResultsEval = evalBeanUtils.checkInstructorViewResultsForEval(eval, evalState);
             Date instViewDate = evalBeanUtils.getInstructorViewDateForEval(eval);
 
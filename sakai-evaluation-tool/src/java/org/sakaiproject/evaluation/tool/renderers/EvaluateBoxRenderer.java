@@ -127,7 +127,7 @@ public class EvaluateBoxRenderer {
             for( EvalEvaluation eval : evalsToTake )
             {
                 // make sure state is up to date http://jira.sakaiproject.org/browse/EVALSYS-1013
-                String evalState = evaluationService.returnAndFixEvalState(eval, true); 
+                String evalState = evaluationService.getCurrentEvaluationState(eval);
                 // skip evaluations that are in a non-active state
                 if(! EvalConstants.EVALUATION_STATE_ACTIVE.equals(evalState)){
                     continue;
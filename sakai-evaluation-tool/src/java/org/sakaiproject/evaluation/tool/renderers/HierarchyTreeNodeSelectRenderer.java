@@ -29,6 +29,7 @@ import org.sakaiproject.evaluation.logic.EvalCommonLogic;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic;
 import org.sakaiproject.evaluation.logic.model.EvalGroup;
 import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyTree;
 import org.sakaiproject.evaluation.tool.viewparams.EvalViewParameters;
 
 import uk.org.ponder.arrayutil.MapUtil;
@@ -72,6 +73,7 @@ public class HierarchyTreeNodeSelectRenderer {
     List<String> hierNodeLabels; 
     List<String> hierNodeValues;
     private Boolean sectionAware;
+    private EvalHierarchyTree hierarchyTree;
 
    /**
     * This is the main entry point for rendering the hierarchy with selectable
@@ -115,7 +117,9 @@ public class HierarchyTreeNodeSelectRenderer {
        UIMessage.make(joint, "node-select-header", "controlhierarchy.table.selectnode.header");
        UIMessage.make(joint, "hierarchy-header", "controlhierarchy.table.hierarchy.header");
 
-       EvalHierarchyNode root = hierarchyLogic.getRootLevelNode();
+       // load the whole hierarchy once and traverse it in memory
+       hierarchyTree = hierarchyLogic.getHierarchyTree();
+       EvalHierarchyNode root = hierarchyTree.getRootNode();
        
        if(evalViewParams.nodeClicked != null){
     	   try{
@@ -234,11 +238,12 @@ public class HierarchyTreeNodeSelectRenderer {
             boolean expanded = renderRow(tofill, "hierarchy-level-row:", level, node, evalViewParams, accessNodeIds, null, false);
             selectedNodes.remove(""+node.id);
             if(expanded){
-                Set<String> groupIDs = hierarchyLogic.getEvalGroupsForNode(node.id);
+                Set<String> groupIDs = hierarchyTree.getEvalGroupsForNode(node.id);
+                // the tree nodes are shared so copy the parents rather than changing them
+                Set<String> currentNodeParents = new HashSet<>(node.parentNodeIds);
+                currentNodeParents.add( node.id );
                 for( String groupID : groupIDs )
                 {
-                    Set<String> currentNodeParents = node.parentNodeIds;
-                    currentNodeParents.add( node.id );
                     selectedGroups.remove( groupID );
 
                     if( BooleanUtils.isFalse(sectionAware) )
@@ -257,7 +262,7 @@ public class HierarchyTreeNodeSelectRenderer {
                     }
                 }
 
-                for (EvalHierarchyNode childHierNode: hierarchyLogic.getChildNodes(node.id, true)) {
+                for (EvalHierarchyNode childHierNode: hierarchyTree.getChildNodes(node.id)) {
                     renderSelectHierarchyNode(tofill, childHierNode, level+1, evalViewParams, accessNodeIds, parentNodeIds, selectedNodes, selectedGroups);
                 }
             }
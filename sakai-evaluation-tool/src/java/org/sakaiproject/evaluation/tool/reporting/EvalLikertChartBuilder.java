@@ -17,6 +17,9 @@ package org.sakaiproject.evaluation.tool.reporting;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Font;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
@@ -36,6 +39,29 @@ import org.jfree.data.category.DefaultCategoryDataset;
  */
 public class EvalLikertChartBuilder {
 
+    /**
+     * The maximum number of charts which will be kept in the shared chart cache
+     */
+    public static final int CHART_CACHE_SIZE = 500;
+
+    private static final Color BAR_PAINT = new Color(244, 252, 212);
+    private static final Color BAR_OUTLINE_PAINT = new Color(34, 35, 237);
+    private static final BasicStroke BAR_OUTLINE_STROKE = new BasicStroke(0.5f);
+    private static final Font LABEL_FONT = new Font("Serif", Font.PLAIN, 6);
+
+    /**
+     * Charts which have already been built (key from {@link #makeChartKey()} -> chart),
+     * these are shared by all reports so drawing a cached chart must be synchronized on the chart
+     */
+    private static final Map<String, JFreeChart> chartCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, JFreeChart>(CHART_CACHE_SIZE, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, JFreeChart> eldest) {
+                    return size() > CHART_CACHE_SIZE;
+                }
+            });
+
     private String[] responses = new String[] {};
     private int[] values = new int[] {};
     private boolean showPercentages = false;
@@ -67,10 +93,10 @@ public class EvalLikertChartBuilder {
 
         // Configure the bar colors and display
         BarRenderer renderer = (BarRenderer) plot.getRenderer();
-        renderer.setSeriesPaint(0, new Color(244, 252, 212));
+        renderer.setSeriesPaint(0, BAR_PAINT);
         renderer.setDrawBarOutline(true);
-        renderer.setOutlinePaint(new Color(34, 35, 237));
-        renderer.setOutlineStroke(new BasicStroke(0.5f));
+        renderer.setOutlinePaint(BAR_OUTLINE_PAINT);
+        renderer.setOutlineStroke(BAR_OUTLINE_STROKE);
         renderer.setBaseItemLabelsVisible(true);
         if (showPercentages) {
             renderer.setBaseItemLabelGenerator(new LikertPercentageItemLabelGenerator(this.responseCount));
@@ -88,21 +114,52 @@ public class EvalLikertChartBuilder {
         domainAxis.setMaximumCategoryLabelLines(2);
 
         // Set the font for the labels
-        Font labelFont = new Font("Serif", Font.PLAIN, 6);
-
         CategoryItemRenderer itemRenderer = plot.getRenderer();
-        itemRenderer.setBaseItemLabelFont(labelFont);
+        itemRenderer.setBaseItemLabelFont(LABEL_FONT);
 
         plot.setOutlinePaint(null);
 
-        domainAxis.setLabelFont(labelFont);
-        domainAxis.setTickLabelFont(labelFont);
-        rangeAxis.setLabelFont(labelFont);
-        rangeAxis.setTickLabelFont(labelFont);
+        domainAxis.setLabelFont(LABEL_FONT);
+        domainAxis.setTickLabelFont(LABEL_FONT);
+        rangeAxis.setLabelFont(LABEL_FONT);
+        rangeAxis.setTickLabelFont(LABEL_FONT);
+
+        return chart;
+    }
 
+    /**
+     * Get the chart for the current settings from the shared cache or build it
+     * (and cache it) if there is not one yet, charts with the same key look identical<br/>
+     * <b>NOTE:</b> the returned chart is shared so drawing it must be synchronized on the chart
+     * 
+     * @return the likert chart for the current settings
+     */
+    public JFreeChart getLikertChart() {
+        String key = makeChartKey();
+        JFreeChart chart = chartCache.get(key);
+        if (chart == null) {
+            chart = makeLikertChart();
+            chartCache.put(key, chart);
+        }
         return chart;
     }
 
+    /**
+     * @return a key which is the same for all charts which look the same
+     * (same responses, values and percentage settings)
+     */
+    public String makeChartKey() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(showPercentages ? "p" + responseCount : "c");
+        for (int i = 0; i < responses.length; i++) {
+            sb.append('|');
+            sb.append(i < values.length ? values[i] : 0);
+            sb.append('=');
+            sb.append(responses[i]);
+        }
+        return sb.toString();
+    }
+
     public void setResponses(String[] responses) {
         this.responses = responses;
     }
@@ -19,7 +19,9 @@ import java.awt.geom.Rectangle2D;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jfree.chart.JFreeChart;
 
@@ -77,6 +79,17 @@ public class EvalPDFReportBuilder {
     
     float pagefooter = 16.0f;
 
+    private static final int LIKERT_CHART_WIDTH = 200;
+    /**
+     * Font mapper shared by all the charts in all the reports
+     */
+    private static final DefaultFontMapper LIKERT_FONT_MAPPER = new DefaultFontMapper();
+    /**
+     * Charts already drawn into this document (chart key -> template),
+     * identical charts reuse the same template so it is only written once
+     */
+    private final Map<String, PdfTemplate> likertTemplates = new HashMap<>();
+
     public EvalPDFReportBuilder(OutputStream outputStream) {
         document = new Document();
         try {
@@ -345,17 +358,25 @@ public class EvalPDFReportBuilder {
 			chartBuilder.setResponses(choices);
 			chartBuilder.setShowPercentages(showPercentages);
 			chartBuilder.setResponseCount(responseCount);
-			JFreeChart chart = chartBuilder.makeLikertChart();
 
 			/* The height is going to be based off the number of choices */
 			int height = 15 * choices.length;
 
-			PdfContentByte cb = pdfWriter.getDirectContent();
-			PdfTemplate tp = cb.createTemplate(200, height);
-			Graphics2D g2d = tp.createGraphics(200, height, new DefaultFontMapper());
-			Rectangle2D r2d = new Rectangle2D.Double(0, 0, 200, height);
-			chart.draw(g2d, r2d);
-			g2d.dispose();
+			String chartKey = LIKERT_CHART_WIDTH + "x" + height + ":" + chartBuilder.makeChartKey();
+			PdfTemplate tp = likertTemplates.get(chartKey);
+			if (tp == null) {
+				JFreeChart chart = chartBuilder.getLikertChart();
+				PdfContentByte cb = pdfWriter.getDirectContent();
+				tp = cb.createTemplate(LIKERT_CHART_WIDTH, height);
+				Graphics2D g2d = tp.createGraphics(LIKERT_CHART_WIDTH, height, LIKERT_FONT_MAPPER);
+				Rectangle2D r2d = new Rectangle2D.Double(0, 0, LIKERT_CHART_WIDTH, height);
+				// cached charts are shared between reports
+				synchronized (chart) {
+					chart.draw(g2d, r2d);
+				}
+				g2d.dispose();
+				likertTemplates.put(chartKey, tp);
+			}
 			Image image = Image.getInstance(tp);
 
 			// put image in the document
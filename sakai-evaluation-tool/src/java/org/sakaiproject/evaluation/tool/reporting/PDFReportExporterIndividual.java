@@ -14,13 +14,23 @@
  */
 package org.sakaiproject.evaluation.tool.reporting;
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.text.DateFormat;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.sakaiproject.evaluation.constant.EvalConstants;
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
@@ -43,6 +53,7 @@ import org.sakaiproject.evaluation.utils.TemplateItemUtils;
 
 import lombok.extern.slf4j.Slf4j;
 import uk.org.ponder.messageutil.MessageLocator;
+import uk.org.ponder.util.UniversalRuntimeException;
 
 /**
  * 
@@ -106,45 +117,137 @@ public class PDFReportExporterIndividual implements ReportExporter {
      * .model.EvalEvaluation, java.lang.String[], java.lang.String, java.io.OutputStream)
      */
     public void buildReport(EvalEvaluation evaluation, String[] groupIds, String evaluateeId, OutputStream outputStream, boolean useNewReportStyle) {
-		
-    	//Make sure responseAggregator is using this messageLocator
-        responseAggregator.setMessageLocator(messageLocator);
-		EvalPDFReportBuilder evalPDFReportBuilder = new EvalPDFReportBuilder(outputStream);
-        Boolean instructorViewAllResults = (boolean) evaluation.getInstructorViewAllResults();
-        String currentUserId = commonLogic.getCurrentUserId();
-        String evalOwner = evaluation.getOwner();
+        if (evaluateeId == null) {
+            // no evaluatee so produce the reports for all the evaluatees
+            buildReports(evaluation, groupIds, null, outputStream);
+        } else {
+            IndividualReportData data = loadReportData(evaluation, groupIds);
+            renderReport(data, evaluateeId, outputStream);
+        }
+    }
+
+    /**
+     * Generates the individual reports for a set of evaluatees in one pass, the evaluation data
+     * (response counts, template items and answers, users) is only loaded once and the
+     * reports are written to the output as a zip file containing one PDF per evaluatee
+     * 
+     * @param evaluation the {@link EvalEvaluation} object to build the reports for
+     * @param groupIds the set of groups to include results data from
+     * @param evaluateeIds the ids of the evaluatees (instructors or assistants) to make reports for,
+     * if null or empty then reports are made for all the evaluatees the current user can view
+     * @param outputStream the zip file containing the reports will be placed into this
+     */
+    public void buildReports(EvalEvaluation evaluation, String[] groupIds, Collection<String> evaluateeIds, OutputStream outputStream) {
+        IndividualReportData data = loadReportData(evaluation, groupIds);
+        Collection<String> reportEvaluateeIds = evaluateeIds;
+        if (reportEvaluateeIds == null || reportEvaluateeIds.isEmpty()) {
+            reportEvaluateeIds = data.getViewableEvaluateeIds();
+        }
+        String evalTitle = evaluation.getTitle().replaceAll( " ", "_" );
+        try( ZipOutputStream zout = new ZipOutputStream( outputStream ) )
+        {
+            // the PDF writer closes the stream when the document closes so this keeps the zip open
+            OutputStream entryStream = new FilterOutputStream(zout) {
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                }
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+            Set<String> entryNames = new HashSet<>();
+            for (String evaluateeId : reportEvaluateeIds) {
+                EvalUser user = data.getUser(evaluateeId);
+                String username = user.username == null ? evaluateeId : user.username;
+                String entryName = evalTitle + "-" + username.replaceAll( "[^A-Za-z0-9_.@-]", "_" );
+                if (! entryNames.add(entryName)) {
+                    entryName = entryName + "-" + evaluateeId;
+                }
+                zout.putNextEntry( new ZipEntry( entryName + ".pdf" ) );
+                renderReport(data, evaluateeId, entryStream);
+                zout.closeEntry();
+            }
+        }
+        catch( IOException ex ) { throw UniversalRuntimeException.accumulate( ex, "Could not write the individual reports zip" ); }
+    }
+
+    /**
+     * Loads all the data needed to render the individual reports for this evaluation,
+     * this is the same for every evaluatee so it can be shared by all their reports
+     * 
+     * @param evaluation the evaluation
+     * @param groupIds the set of groups to include results data from
+     * @return the report data
+     */
+    private IndividualReportData loadReportData(EvalEvaluation evaluation, String[] groupIds) {
+        IndividualReportData data = new IndividualReportData();
+        data.evaluation = evaluation;
+        data.currentUserId = commonLogic.getCurrentUserId();
+        data.viewAllResults = evaluation.getInstructorViewAllResults() 
+                || commonLogic.isUserAdmin(data.currentUserId)
+                || data.currentUserId.equals(evaluation.getOwner());
 
         Boolean useBannerImage = (Boolean) evalSettings.get(EvalSettings.ENABLE_PDF_REPORT_BANNER);
-        byte[] bannerImageBytes = null;
         if (useBannerImage != null && useBannerImage == true) {
             String bannerImageLocation = (String) evalSettings
                     .get(EvalSettings.PDF_BANNER_IMAGE_LOCATION);
             if (bannerImageLocation != null) {
-                bannerImageBytes = commonLogic.getFileContent(bannerImageLocation);
+                data.bannerImageBytes = commonLogic.getFileContent(bannerImageLocation);
             }
         }
-
-        //EvalUser user = commonLogic.getEvalUserById(commonLogic.getCurrentUserId());
-
-        DateFormat df = DateFormat.getDateInstance(DateFormat.LONG);
+        Boolean showHierSectionTitle = (Boolean) evalSettings.get(EvalSettings.DISPLAY_HIERARCHY_HEADERS);
+        data.showHierarchyHeaders = showHierSectionTitle != null && showHierSectionTitle;
 
         // calculate the response rate
-        // int responsesCount = deliveryService.countResponses(evaluation.getId(), null, true);
-        int responsesCount = evaluationService.countResponses(null, new Long[] {evaluation.getId()}, groupIds, null);
-        int enrollmentsCount = evaluationService.countParticipantsForEval(evaluation.getId(), groupIds);
+        data.responsesCount = evaluationService.countResponses(null, new Long[] {evaluation.getId()}, groupIds, null);
+        data.enrollmentsCount = evaluationService.countParticipantsForEval(evaluation.getId(), groupIds);
+        data.groupNames = responseAggregator.getCommaSeparatedGroupNames(groupIds);
+        data.instructions = htmlContentParser(commonLogic.makePlainTextFromHTML(evaluation.getInstructions()));
+
+        data.tidl = responseAggregator.prepareTemplateItemDataStructure(evaluation.getId(), groupIds);
+
+        // resolve all the evaluatees in one lookup
+        Set<String> associateIds = new LinkedHashSet<>();
+        for (TemplateItemGroup tig : data.tidl.getTemplateItemGroups()) {
+            if (! EvalConstants.ITEM_CATEGORY_COURSE.equals(tig.associateType) && tig.associateId != null) {
+                associateIds.add(tig.associateId);
+            }
+        }
+        List<String> userIds = new ArrayList<>(associateIds);
+        List<EvalUser> users = commonLogic.getEvalUsersByIds(userIds);
+        for (int i = 0; i < userIds.size(); i++) {
+            data.users.put(userIds.get(i), users.get(i));
+        }
+        return data;
+    }
 
-        String groupNames = responseAggregator.getCommaSeparatedGroupNames(groupIds);
+    /**
+     * Renders the report for a single evaluatee using the preloaded data
+     * 
+     * @param data the preloaded report data
+     * @param evaluateeId restrict this report to only the results for this evaluatee
+     * @param outputStream the resulting PDF will be placed into this
+     */
+    private void renderReport(IndividualReportData data, String evaluateeId, OutputStream outputStream) {
+    	//Make sure responseAggregator is using this messageLocator
+        responseAggregator.setMessageLocator(messageLocator);
+		EvalPDFReportBuilder evalPDFReportBuilder = new EvalPDFReportBuilder(outputStream);
+        EvalEvaluation evaluation = data.evaluation;
+
+        DateFormat df = DateFormat.getDateInstance(DateFormat.LONG);
 
         // TODO this is so hard to read it makes me cry, it should not be written as a giant single line like this -AZ
         evalPDFReportBuilder.addTitlePage(
                 evaluation.getTitle(), 
-                groupNames, 
+                data.groupNames, 
                 messageLocator.getMessage("reporting.pdf.startdatetime", df.format(evaluation.getStartDate())),
                 messageLocator.getMessage("reporting.pdf.enddatetime", df.format(evaluation.getDueDate())), 
                 messageLocator.getMessage("reporting.pdf.replyrate", new String[] { 
-                        EvalUtils.makeResponseRateStringFromCounts(responsesCount, enrollmentsCount) 
+                        EvalUtils.makeResponseRateStringFromCounts(data.responsesCount, data.enrollmentsCount) 
                 }), 
-                bannerImageBytes, 
+                data.bannerImageBytes, 
                 messageLocator.getMessage("reporting.pdf.defaultsystemname"),
                 messageLocator.getMessage("reporting.pdf.informationTitle")
                 );
@@ -156,45 +259,30 @@ public class PDFReportExporterIndividual implements ReportExporter {
          * commonLogic.makePlainTextFromHTML removes html tags
          * but it also leaves the text
          */
-        evalPDFReportBuilder.addIntroduction(evaluation.getTitle(), 
-                htmlContentParser(
-                        commonLogic.makePlainTextFromHTML(
-                                evaluation.getInstructions())));
+        evalPDFReportBuilder.addIntroduction(evaluation.getTitle(), data.instructions);
 
         // Reset question numbering
         displayNumber = 0;
 
-        // 1 Make TIDL
-        TemplateItemDataList tidl = responseAggregator.prepareTemplateItemDataStructure(evaluation.getId(), groupIds);
-
         // Loop through the major group types: Course Questions, Instructor Questions, etc.
-        for (TemplateItemGroup tig : tidl.getTemplateItemGroups()) {
+        for (TemplateItemGroup tig : data.tidl.getTemplateItemGroups()) {
             
-            if (!instructorViewAllResults   // If the eval is so configured,
-              && !commonLogic.isUserAdmin(currentUserId) // and currentUser is not an admin
-              && !currentUserId.equals(evalOwner) // and currentUser is not the eval creator
-              && !EvalConstants.ITEM_CATEGORY_COURSE.equals(tig.associateType) 
-              && !currentUserId.equals(commonLogic.getEvalUserById(tig.associateId).userId) ) {
-                // skip items that aren't for the current user
+            if (! data.isIncluded(tig.associateType, tig.associateId, evaluateeId)) {
+                // skip items that aren't for the current user or this evaluatee
                 continue;
             }
-			
-			if (!EvalConstants.ITEM_CATEGORY_COURSE.equals(tig.associateType) 
-			  && !evaluateeId.equals(commonLogic.getEvalUserById(tig.associateId).userId) ) {
-				continue;
-			}
             
             // Print the type of the next group we're doing
             if (EvalConstants.ITEM_CATEGORY_COURSE.equals(tig.associateType)) {
                 evalPDFReportBuilder.addSectionHeader(messageLocator
                         .getMessage("viewreport.itemlist.course"), false);
             } else if (EvalConstants.ITEM_CATEGORY_INSTRUCTOR.equals(tig.associateType)) {
-                EvalUser user = commonLogic.getEvalUserById( tig.associateId );
+                EvalUser user = data.getUser( tig.associateId );
                 String instructorMsg = messageLocator.getMessage("reporting.spreadsheet.instructor", 
                         new Object[] {user.displayName});
                 evalPDFReportBuilder.addSectionHeader( instructorMsg, false);
             } else if (EvalConstants.ITEM_CATEGORY_ASSISTANT.equals(tig.associateType)) {
-                EvalUser user = commonLogic.getEvalUserById( tig.associateId );
+                EvalUser user = data.getUser( tig.associateId );
                 String assistantMsg = messageLocator.getMessage("reporting.spreadsheet.ta", 
                         new Object[] {user.displayName});
                 evalPDFReportBuilder.addSectionHeader( assistantMsg, false);
@@ -206,8 +294,7 @@ public class PDFReportExporterIndividual implements ReportExporter {
                 // Render the Node title if it's enabled in the admin settings.
                 if (hng.node != null) {
                     // Showing the section title is system configurable via the administrate view
-                    Boolean showHierSectionTitle = (Boolean) evalSettings.get(EvalSettings.DISPLAY_HIERARCHY_HEADERS);
-                    if (showHierSectionTitle) {
+                    if (data.showHierarchyHeaders) {
                         evalPDFReportBuilder.addSectionHeader(hng.node.title, true, 0);
                     }
                 }
@@ -220,19 +307,10 @@ public class PDFReportExporterIndividual implements ReportExporter {
                     DataTemplateItem dti = dtis.get(i);
                     log.debug("Item text: "+dti.templateItem.getItem().getItemText());
                     
-                    if (!instructorViewAllResults // If the eval is so configured,
-                      && !commonLogic.isUserAdmin(currentUserId)  // and currentUser is not an admin
-                      && !currentUserId.equals(evalOwner) // and currentUser is not the eval creator
-                      && !EvalConstants.ITEM_CATEGORY_COURSE.equals(dti.associateType) 
-                      && !currentUserId.equals(commonLogic.getEvalUserById(dti.associateId).userId) ) {
-                        //skip instructor items that aren't for the current user
+                    if (! data.isIncluded(dti.associateType, dti.associateId, evaluateeId)) {
+                        //skip instructor items that aren't for the current user or this evaluatee
                         continue;
                     }
-					
-					if (!EvalConstants.ITEM_CATEGORY_COURSE.equals(dti.associateType) 
-					   && !evaluateeId.equals(commonLogic.getEvalUserById(dti.associateId).userId) ) {
-						continue;
-					}
                     
                     renderDataTemplateItem(evalPDFReportBuilder, dti);
                 }
@@ -243,6 +321,65 @@ public class PDFReportExporterIndividual implements ReportExporter {
 
         evalPDFReportBuilder.close();
     }
+
+    /**
+     * The data which is shared by all the individual reports for an evaluation
+     */
+    private class IndividualReportData {
+        EvalEvaluation evaluation;
+        String currentUserId;
+        /**
+         * true if the current user can view the results for all evaluatees
+         */
+        boolean viewAllResults;
+        boolean showHierarchyHeaders;
+        byte[] bannerImageBytes;
+        int responsesCount;
+        int enrollmentsCount;
+        String groupNames;
+        String instructions;
+        TemplateItemDataList tidl;
+        /**
+         * the evaluatees (associateId -> user)
+         */
+        Map<String, EvalUser> users = new HashMap<>();
+
+        EvalUser getUser(String associateId) {
+            EvalUser user = users.get(associateId);
+            if (user == null) {
+                user = commonLogic.getEvalUserById(associateId);
+                users.put(associateId, user);
+            }
+            return user;
+        }
+
+        /**
+         * @return true if the items for this associate should be in the report for this evaluatee
+         */
+        boolean isIncluded(String associateType, String associateId, String evaluateeId) {
+            if (EvalConstants.ITEM_CATEGORY_COURSE.equals(associateType)) {
+                return true;
+            }
+            String userId = getUser(associateId).userId;
+            if (! viewAllResults && ! currentUserId.equals(userId)) {
+                return false;
+            }
+            return evaluateeId.equals(userId);
+        }
+
+        /**
+         * @return the ids of all the evaluatees the current user can see the results for
+         */
+        Set<String> getViewableEvaluateeIds() {
+            Set<String> evaluateeIds = new LinkedHashSet<>();
+            for (EvalUser user : users.values()) {
+                if (viewAllResults || currentUserId.equals(user.userId)) {
+                    evaluateeIds.add(user.userId);
+                }
+            }
+            return evaluateeIds;
+        }
+    }
     
     /**
      * Remove tags & inclusive content
@@ -197,6 +197,12 @@ public class ReportExporterBean implements ToolApi {
             drvp.filename = drvp.filename.replace( ".csv", ".zip" );
         }
 
+        // If it's an individual PDF export without an evaluatee then it will contain all the evaluatee reports in a zip
+        if( isPDFIndividual( drvp.viewID ) && drvp.evaluateeId == null )
+        {
+            drvp.filename = drvp.filename.replace( ".pdf", ".zip" );
+        }
+
         // If it's a .csv or .pdf download, force the browser to download the file instead of displaying it inside the iframe
         if( isCSVTakers( drvp.viewID ) || isCSV( drvp.viewID ) || isPDF( drvp.viewID ) )
         {
@@ -226,6 +232,7 @@ public class ReportExporterBean implements ToolApi {
     private boolean isCSV       ( String viewID ) { return viewID.equals( EvalEvaluationService.CSV_RESULTS_REPORT ); }
     private boolean isPDF       ( String viewID ) { return (viewID.equals( EvalEvaluationService.PDF_RESULTS_REPORT ) || 
                                                            (viewID.equals( EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL ))); }
+    private boolean isPDFIndividual ( String viewID ) { return viewID.equals( EvalEvaluationService.PDF_RESULTS_REPORT_INDIVIDUAL ); }
 
     private OutputStream getOutputStream(HttpServletResponse response){
     	try {
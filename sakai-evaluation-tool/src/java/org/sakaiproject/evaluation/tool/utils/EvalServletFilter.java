@@ -23,8 +23,12 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.sakaiproject.evaluation.utils.EvalQueryStatistics;
+import org.sakaiproject.evaluation.utils.EvalRequestCache;
+
 public class EvalServletFilter implements Filter {
 
 	public void destroy() {
@@ -40,7 +44,17 @@ public class EvalServletFilter implements Filter {
 		httpServletResponse.setHeader("Cache-Control","private, max-age=0");
 		httpServletResponse.setDateHeader ("Expires", 0);
 		
-        chain.doFilter(request, httpServletResponse);
+		// all the DAO calls made by this request are counted against its view
+		String operation = EvalQueryStatistics.makeViewOperationName(((HttpServletRequest) request).getPathInfo());
+		EvalQueryStatistics.beginOperation(operation);
+		// repeated lookups (current user, admin checks, evaluations, settings) are cached for this request
+		EvalRequestCache.beginScope(operation);
+		try {
+			chain.doFilter(request, httpServletResponse);
+		} finally {
+			EvalRequestCache.endScope();
+			EvalQueryStatistics.endOperation();
+		}
 	}
 
 	public void init(FilterConfig filterConfig) throws ServletException {
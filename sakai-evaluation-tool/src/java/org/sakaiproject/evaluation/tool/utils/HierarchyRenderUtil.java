@@ -15,15 +15,14 @@
 package org.sakaiproject.evaluation.tool.utils;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
 
 import org.sakaiproject.evaluation.logic.EvalCommonLogic;
 import org.sakaiproject.evaluation.logic.externals.ExternalHierarchyLogic;
 import org.sakaiproject.evaluation.logic.model.EvalGroup;
 import org.sakaiproject.evaluation.logic.model.EvalHierarchyNode;
+import org.sakaiproject.evaluation.logic.model.EvalHierarchyTree;
 import org.sakaiproject.evaluation.providers.EvalGroupsProvider;
 import org.sakaiproject.evaluation.tool.producers.ControlHierarchyProducer;
 import org.sakaiproject.evaluation.tool.producers.ModifyHierarchyNodeGroupsProducer;
@@ -99,11 +98,12 @@ public class HierarchyRenderUtil {
         //Hidden header for column with metadata information.
         UIOutput.make(parent, "node-metadata-header");
 
-        // get the root node and the counts of all assigned groups for all nodes
-        EvalHierarchyNode root = hierarchyLogic.getRootLevelNode();
+        // get the whole hierarchy (nodes, groups, users and rules) at once for use in rendering
+        EvalHierarchyTree tree = hierarchyLogic.getHierarchyTree();
+        EvalHierarchyNode root = tree.getRootNode();
         
         //showGroups = true;
-        renderHierarchyNode(joint, root, 0, new HashMap<>(), new HashMap<>(), showGroups, showUsers, expanded);
+        renderHierarchyNode(joint, root, 0, tree, showGroups, showUsers, expanded);
     }
 
     //   private void renderSelectHierarchyGroup(UIContainer tofill, String groupID, int level, Set<String> evalGroupIDs, String clientID) {
@@ -125,24 +125,14 @@ public class HierarchyRenderUtil {
      * @param tofill
      * @param node
      * @param level
-     * @param groupsNodesMap this is simply passed along to avoid redoing the same query over and over
-     * @param nodeIdToNode this is passed along to avoid pummeling the database when rendering the hierarchy
+     * @param tree the snapshot of the hierarchy, this is passed along to avoid pummeling the database when rendering the hierarchy
      * @param showGroups if true then show the groups, otherwise only show counts
      * @param showUsers if true then show the users, otherwise just show the link
      */
     private void renderHierarchyNode(UIContainer tofill, EvalHierarchyNode node, int level, 
-            Map<String, Set<String>> groupsNodesMap, Map<String, EvalHierarchyNode> nodeIdToNode, 
-            boolean showGroups, boolean showUsers, String[] expandedNodes) {
+            EvalHierarchyTree tree, boolean showGroups, boolean showUsers, String[] expandedNodes) {
     	
-    	String[] allChildrenNodeIds = node.directChildNodeIds.toArray(new String[node.directChildNodeIds.size()]);
-        Map<String, Set<String>> groupsNodesMapAdd = hierarchyLogic.getEvalGroupsForNodes(allChildrenNodeIds);
-        groupsNodesMap.putAll(groupsNodesMapAdd);
-        // get all nodes at once for use in rendering the hierarchy
-        Set<EvalHierarchyNode> allChildren = hierarchyLogic.getChildNodes(node.id, true);
-        nodeIdToNode.put(node.id, node);
-        for (EvalHierarchyNode nodeItr : allChildren) {
-            nodeIdToNode.put(nodeItr.id, nodeItr);
-        }
+        List<EvalHierarchyNode> childNodes = tree.getChildNodes(node.id);
     	
         String title = node.title != null ? node.title : "Null Title?";
         UIBranchContainer tableRow = UIBranchContainer.make(tofill, "hierarchy-level-row:");
@@ -208,7 +198,7 @@ public class HierarchyRenderUtil {
         UIOutput.make( tableRow, "rules-cell" );
 
         // If this node has groups assigned to it, we should not be able to add sub-nodes.
-        int numberOfAssignedGroups = groupsNodesMap.get(node.id) != null ? groupsNodesMap.get(node.id).size() : 0;
+        int numberOfAssignedGroups = tree.countEvalGroupsForNode(node.id);
         if (numberOfAssignedGroups <= 0) {
             UIInternalLink.make(tableRow, "add-child-link", UIMessage.make("controlhierarchy.add"),
                     new ModifyHierarchyNodeParameters(ModifyHierarchyNodeProducer.VIEW_ID, node.id, true, expandedNodes));
@@ -216,12 +206,7 @@ public class HierarchyRenderUtil {
         UIInternalLink.make(tableRow, "modify-node-link", UIMessage.make("controlhierarchy.modify"),
                 new ModifyHierarchyNodeParameters(ModifyHierarchyNodeProducer.VIEW_ID, node.id, false, expandedNodes));
         // If the node has children, render the number of children, but no remove button.
-        int childrenNodesSize = 0;
-        for (String childId : node.directChildNodeIds) {
-            if (nodeIdToNode.containsKey(childId)) {
-            	childrenNodesSize++;
-            }
-        }
+        int childrenNodesSize = childNodes.size();
         UIOutput.make(tableRow, "number-children", childrenNodesSize + "");
         if (childrenNodesSize <= 0) { 
             // no children nodes
@@ -239,9 +224,7 @@ public class HierarchyRenderUtil {
         }
 
         // Number of assigned users
-        int numAssignedUsers;
-        try { numAssignedUsers = hierarchyLogic.getUsersAndPermsForNodes( node.id ).get( node.id ).size(); }
-        catch( Exception ex ) { numAssignedUsers = 0; }
+        int numAssignedUsers = tree.countUsersForNode( node.id );
         UIOutput.make( tableRow, "assign-user-count", Integer.toString( numAssignedUsers ) );
 
         // assigned users (permissions)
@@ -249,9 +232,7 @@ public class HierarchyRenderUtil {
                 new HierarchyNodeParameters(ModifyHierarchyNodePermsProducer.VIEW_ID, node.id, expandedNodes));
 
         // Number of assigned rules
-        int numAssignedRules;
-        try { numAssignedRules = hierarchyLogic.getRulesByNodeID( Long.parseLong( node.id ) ).size(); }
-        catch( Exception ex ) { numAssignedRules = 0; }
+        int numAssignedRules = tree.countRulesForNode( node.id );
         UIOutput.make( tableRow, "assign-rule-count", Integer.toString( numAssignedRules ) );
 
         // Assign rules link (if hierarchy provider present)
@@ -265,7 +246,7 @@ public class HierarchyRenderUtil {
 
         // If there are any assigned groups, render them as their own rows if show is on
         if (showGroups && numberOfAssignedGroups > 0) {
-            Set<String> assignedGroupIDs = groupsNodesMap.get(node.id) != null ? groupsNodesMap.get(node.id) : new HashSet<>();
+            Set<String> assignedGroupIDs = tree.getEvalGroupsForNode(node.id);
             for (String assignedGroupID: assignedGroupIDs) {
                 EvalGroup assignedGroup = commonLogic.makeEvalGroupObject(assignedGroupID);
                 UIBranchContainer groupRow = UIBranchContainer.make(tofill, "hierarchy-level-row:");
@@ -277,11 +258,8 @@ public class HierarchyRenderUtil {
 
 //        // now render all direct children
         if(expanded){
-        	for (String childId : node.directChildNodeIds) {
-        		EvalHierarchyNode childNode = nodeIdToNode.get(childId);
-        		if (childNode != null) {
-        			renderHierarchyNode(tofill, childNode, level+1, groupsNodesMap, nodeIdToNode, showGroups, showUsers, expandedNodes);
-        		}
+        	for (EvalHierarchyNode childNode : childNodes) {
+        		renderHierarchyNode(tofill, childNode, level+1, tree, showGroups, showUsers, expandedNodes);
         	}
         }
     }
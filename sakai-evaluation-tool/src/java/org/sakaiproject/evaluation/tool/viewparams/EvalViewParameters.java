@@ -65,6 +65,11 @@ public class EvalViewParameters extends BaseViewParameters {
     * to restore administrate_search view after saving settings
     */ 
    public int adminSearchPage = 0;
+
+   /**
+    * The page of the responders roster to show in EvaluationRespondersProducer
+    */
+   public int respondersPage = 0;
    
    public String[] expanded = null;
    public String nodeClicked = null;
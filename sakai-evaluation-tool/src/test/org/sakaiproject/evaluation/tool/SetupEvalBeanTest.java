@@ -0,0 +1,109 @@
+/**
+ * Copyright 2005 Sakai Foundation Licensed under the
+ * Educational Community License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may
+ * obtain a copy of the License at
+ *
+ * http://www.osedu.org/licenses/ECL-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an "AS IS"
+ * BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing
+ * permissions and limitations under the License.
+ */
+package org.sakaiproject.evaluation.tool;
+
+import static org.junit.Assert.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sakaiproject.evaluation.constant.EvalConstants;
+import org.sakaiproject.evaluation.logic.EvalCommonLogic;
+import org.sakaiproject.evaluation.logic.EvalEvaluationService;
+import org.sakaiproject.evaluation.logic.model.EvalUser;
+import org.sakaiproject.evaluation.model.EvalEvaluation;
+
+import uk.org.ponder.messageutil.TargettedMessageList;
+
+/**
+ * Testing the assign confirm action of the setup eval bean
+ */
+public class SetupEvalBeanTest {
+
+    private static final Long EVAL_ID = 1L;
+    private static final String GROUP1 = "/site/site1";
+    private static final String GROUP2 = "/site/site2";
+    private static final String ANON_USER_ID = "anon-user";
+
+    private SetupEvalBean setupEvalBean;
+    private TargettedMessageList messages;
+    private EvalEvaluation eval;
+
+    @Before
+    public void setUp() {
+        eval = new EvalEvaluation();
+        eval.setId(EVAL_ID);
+        eval.setAuthControl(EvalConstants.EVALUATION_AUTHCONTROL_AUTH_REQ);
+        eval.setSectionAwareness(false);
+        eval.setState(EvalConstants.EVALUATION_STATE_INQUEUE);
+
+        messages = new TargettedMessageList();
+        setupEvalBean = new SetupEvalBean();
+        setupEvalBean.setMessages(messages);
+        setupEvalBean.setEvaluationService( stub(EvalEvaluationService.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getEvaluationById".equals(method.getName())) {
+                    return eval;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }) );
+        setupEvalBean.setCommonLogic( stub(EvalCommonLogic.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getUserIdsForEvalGroup".equals(method.getName())) {
+                    // the anonymous user is only a member of the second group
+                    if (GROUP2.equals(args[0]) && EvalConstants.PERM_TAKE_EVALUATION.equals(args[1])) {
+                        return new HashSet<>(Arrays.asList("user1", ANON_USER_ID));
+                    }
+                    return new HashSet<>(Arrays.asList("user1"));
+                } else if ("getEvalUsersByIds".equals(method.getName())) {
+                    // the user lookup never returns the anonymous type
+                    List<EvalUser> users = new ArrayList<>();
+                    for (Object userId : (List<?>) args[0]) {
+                        users.add( new EvalUser((String) userId, EvalUser.USER_TYPE_EXTERNAL, null, (String) userId, (String) userId) );
+                    }
+                    return users;
+                } else if ("isUserAnonymous".equals(method.getName())) {
+                    return ANON_USER_ID.equals(args[0]);
+                }
+                throw new UnsupportedOperationException(method.getName());
+            }
+        }) );
+        setupEvalBean.evaluationId = EVAL_ID;
+    }
+
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return type.cast( Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler) );
+    }
+
+    /**
+     * Test method for {@link org.sakaiproject.evaluation.tool.SetupEvalBean#completeConfirmAction()}.
+     */
+    @Test
+    public void testCompleteConfirmActionAnonymousUser() {
+        setupEvalBean.selectedGroupIDs = new String[] {GROUP1, GROUP2};
+        assertEquals("fail", setupEvalBean.completeConfirmAction());
+        assertEquals(1, messages.size());
+        assertEquals("assigneval.invalid.user", messages.messageAt(0).acquireMessageCode());
+    }
+
+}